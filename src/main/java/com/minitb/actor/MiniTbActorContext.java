@@ -10,15 +10,26 @@ public interface MiniTbActorContext {
      * 发送消息给其他 Actor
      * @param actorId 目标 Actor ID
      * @param msg 消息
+     * @return 发送结果（邮箱已满时为 REJECTED 或 BACKPRESSURE 等）
      */
-    void tell(String actorId, MiniTbActorMsg msg);
+    MiniTbTellResult tell(String actorId, MiniTbActorMsg msg);
     
     /**
      * 发送高优先级消息
      * @param actorId 目标 Actor ID
      * @param msg 消息
+     * @return 发送结果
      */
-    void tellWithHighPriority(String actorId, MiniTbActorMsg msg);
+    MiniTbTellResult tellWithHighPriority(String actorId, MiniTbActorMsg msg);
+    
+    /**
+     * 转发消息给下游 Actor，不阻塞当前线程：下游邮箱积压或已满时当前 Actor 的邮箱挂起，
+     * 下游消化积压后恢复（已满时消息先暂存，恢复后投递），背压由此传到当前 Actor 的邮箱
+     * @param actorId 目标 Actor ID
+     * @param msg 消息
+     * @return 发送结果（下游已满时为 STASHED）
+     */
+    MiniTbTellResult forward(String actorId, MiniTbActorMsg msg);
     
     /**
      * 获取当前 Actor 的 ID
@@ -2,8 +2,8 @@ package com.minitb.actor;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -11,41 +11,69 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * 负责消息的接收、排队和处理
  * 
  * 核心设计:
- * 1. 双队列: 高优先级队列 + 普通队列
+ * 1. 双队列: 高优先级队列 + 普通队列，均为有界无锁数组队列（容量和溢出策略来自调度器配置）
  * 2. 单线程处理: 保证同一 Actor 的消息串行处理
- * 3. 批量处理: 每次处理多个消息，提高吞吐量
+ * 3. 批量处理: 每次最多处理调度器吞吐量（throughput）个消息、且不超过时间片，之后让出线程给同一调度器上的其他 Actor；
+ *    启用自适应批量时，每次开始处理前按邮箱积压调整批量（积压超过批量则翻倍，回落到一半以下则减半）
+ * 4. 溢出处理: 队列满时按策略拒绝新消息或丢弃最旧的消息；BACKPRESSURE 策略下队列超过高水位（80%）
+ *    即通过 tell 的返回值通知发送方减速，内存占用不会无限增长
+ * 5. 转发挂起: forward 遇到下游邮箱超过高水位（BACKPRESSURE）或已满（消息暂存到 stash）时，
+ *    本邮箱挂起，不再处理普通消息，调度器线程立即让给其他 Actor；下游邮箱回落到一半以下（或下游停止）时
+ *    恢复，先投递 stash 中的消息。挂起期间本邮箱积压，上游的 tell 依次返回 BACKPRESSURE / REJECTED，
+ *    背压逐级传回传输层；高优先级消息照常处理
  */
 @Slf4j
 public class MiniTbActorMailbox implements MiniTbActorContext {
     
     private final String actorId;
     private final MiniTbActor actor;
-    private final ExecutorService executor;
+    private final MiniTbDispatcher dispatcher;
     private final MiniTbActorSystem system;
     
-    // 双队列
-    private final ConcurrentLinkedQueue<MiniTbActorMsg> highPriorityQueue = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<MiniTbActorMsg> normalQueue = new ConcurrentLinkedQueue<>();
+    // 双队列（有界）
+    private final MiniTbMailboxQueue<MiniTbActorMsg> highPriorityQueue;
+    private final MiniTbMailboxQueue<MiniTbActorMsg> normalQueue;
+    
+    // BACKPRESSURE 策略的高水位（消息数）
+    private final int highWatermark;
+    
+    // 低水位：普通队列回落到此以下时恢复等待本邮箱的发送方
+    private final int lowWatermark;
+    
+    // 转发时被下游拒绝、等待投递的消息（按转发顺序）
+    private final Queue<Stashed> stash = new ConcurrentLinkedQueue<>();
+    
+    // 因转发给本邮箱而挂起、等待本邮箱消化积压的发送方
+    private final Queue<MiniTbActorMailbox> suspendedSenders = new ConcurrentLinkedQueue<>();
+    
+    // 是否因转发而挂起（挂起时只处理高优先级消息）
+    private volatile boolean suspended;
+    
+    // 当前批量（自适应批量时调整；只由处理线程读写，processing 标记的 CAS 保证可见性）
+    private int batchSize;
     
     // 状态标记
     private final AtomicBoolean processing = new AtomicBoolean(false);
     private final AtomicBoolean destroyed = new AtomicBoolean(false);
     
-    // 批量处理配置
-    private static final int BATCH_SIZE = 10; // 每次最多处理10个消息
-    
-    public MiniTbActorMailbox(String actorId, MiniTbActor actor, ExecutorService executor, MiniTbActorSystem system) {
+    public MiniTbActorMailbox(String actorId, MiniTbActor actor, MiniTbDispatcher dispatcher, MiniTbActorSystem system) {
         this.actorId = actorId;
         this.actor = actor;
-        this.executor = executor;
+        this.dispatcher = dispatcher;
         this.system = system;
+        this.highPriorityQueue = new MiniTbMailboxQueue<>(dispatcher.getMailboxCapacity());
+        this.normalQueue = new MiniTbMailboxQueue<>(dispatcher.getMailboxCapacity());
+        this.highWatermark = Math.max(1, dispatcher.getMailboxCapacity() * 8 / 10);
+        this.lowWatermark = dispatcher.getMailboxCapacity() / 2;
+        this.batchSize = dispatcher.getThroughput();
     }
     
     /**
      * 初始化 Actor
      */
     public void init() {
-        executor.execute(() -> {
+        dispatcher.actorAttached();
+        dispatcher.execute(() -> {
             try {
                 log.debug("[{}] 初始化 Actor...", actorId);
                 actor.init(this);
@@ -60,35 +88,67 @@ public class MiniTbActorMailbox implements MiniTbActorContext {
     /**
      * 接收消息（普通优先级）
      */
-    public void tell(MiniTbActorMsg msg) {
-        enqueue(msg, false);
+    public MiniTbTellResult tell(MiniTbActorMsg msg) {
+        return enqueue(msg, false, true);
     }
     
     /**
      * 接收消息（高优先级）
      */
-    public void tellWithHighPriority(MiniTbActorMsg msg) {
-        enqueue(msg, true);
+    public MiniTbTellResult tellWithHighPriority(MiniTbActorMsg msg) {
+        return enqueue(msg, true, true);
     }
     
     /**
-     * 入队消息
+     * 尝试接收消息（普通优先级），邮箱已满被拒绝时不计入统计、不通知消息（调用方还会重试）
      */
-    private void enqueue(MiniTbActorMsg msg, boolean highPriority) {
+    MiniTbTellResult tryTell(MiniTbActorMsg msg) {
+        return enqueue(msg, false, false);
+    }
+    
+    /**
+     * 入队消息，队列满时按溢出策略处理
+     * @param notifyRejected 被拒绝时是否计入统计并通知消息（onDropped）
+     */
+    private MiniTbTellResult enqueue(MiniTbActorMsg msg, boolean highPriority, boolean notifyRejected) {
         if (destroyed.get()) {
             log.warn("[{}] Actor 已销毁，消息被丢弃: {}", actorId, msg.getActorMsgType());
             msg.onActorStopped();
-            return;
+            return MiniTbTellResult.NOT_FOUND;
         }
         
-        if (highPriority) {
-            highPriorityQueue.offer(msg);
-        } else {
-            normalQueue.offer(msg);
+        MiniTbMailboxQueue<MiniTbActorMsg> queue = highPriority ? highPriorityQueue : normalQueue;
+        MiniTbTellResult result = MiniTbTellResult.ACCEPTED;
+        if (!queue.offer(msg)) {
+            if (dispatcher.getOverflowPolicy() != MiniTbMailboxOverflowPolicy.DROP_OLDEST) {
+                if (!notifyRejected) {
+                    return MiniTbTellResult.REJECTED;
+                }
+                dispatcher.recordRejected();
+                log.debug("[{}] 邮箱已满（容量 {}），消息被拒绝: {}", actorId, queue.capacity(), msg.getActorMsgType());
+                msg.onDropped();
+                return MiniTbTellResult.REJECTED;
+            }
+            // 丢弃最旧的消息腾出位置（并发发送时可能需要多次）
+            do {
+                MiniTbActorMsg oldest = queue.poll();
+                if (oldest != null) {
+                    dispatcher.recordDropped();
+                    oldest.onDropped();
+                }
+            } while (!queue.offer(msg));
+            result = MiniTbTellResult.DROPPED_OLDEST;
+        } else if (dispatcher.getOverflowPolicy() == MiniTbMailboxOverflowPolicy.BACKPRESSURE
+                && queue.size() >= highWatermark) {
+            dispatcher.recordBackpressure();
+            result = MiniTbTellResult.BACKPRESSURE;
         }
         
-        // 触发处理
-        tryProcess();
+        // 触发处理（挂起时只为高优先级消息触发）
+        if (highPriority || !suspended) {
+            tryProcess();
+        }
+        return result;
     }
     
     /**
@@ -97,22 +157,105 @@ public class MiniTbActorMailbox implements MiniTbActorContext {
      */
     private void tryProcess() {
         if (processing.compareAndSet(false, true)) {
-            executor.execute(this::processMessages);
+            dispatcher.execute(this::processMessages);
+        }
+    }
+    
+    /**
+     * 转发消息给下游 Actor，不阻塞当前线程：
+     * - 下游超过高水位（BACKPRESSURE）：消息已进入下游邮箱，本邮箱挂起
+     * - 下游已满：消息暂存到 stash，本邮箱挂起，恢复后先投递 stash（返回 STASHED）
+     * - stash 非空时新的转发也进入 stash，保证投递顺序
+     */
+    private MiniTbTellResult forwardTo(String targetActorId, MiniTbActorMsg msg) {
+        if (!stash.isEmpty()) {
+            stash.add(new Stashed(targetActorId, msg));
+            return MiniTbTellResult.STASHED;
+        }
+        MiniTbActorMailbox target = system.getActor(targetActorId);
+        if (target == null) {
+            return system.tell(targetActorId, msg);
+        }
+        MiniTbTellResult result = target.tryTell(msg);
+        if (result == MiniTbTellResult.REJECTED) {
+            stash.add(new Stashed(targetActorId, msg));
+            result = MiniTbTellResult.STASHED;
+            log.debug("[{}] 下游 {} 邮箱已满，消息暂存，挂起邮箱", actorId, targetActorId);
+        }
+        if (result == MiniTbTellResult.BACKPRESSURE || result == MiniTbTellResult.STASHED) {
+            suspendOn(target);
+        }
+        return result;
+    }
+    
+    /**
+     * 依次投递 stash 中的消息，再次被拒绝时重新挂起
+     * 只在处理线程上调用
+     */
+    private void unstash() {
+        Stashed stashed;
+        while (!suspended && (stashed = stash.peek()) != null) {
+            MiniTbActorMailbox target = system.getActor(stashed.targetActorId());
+            if (target == null) {
+                stash.poll();
+                system.tell(stashed.targetActorId(), stashed.msg());
+                continue;
+            }
+            MiniTbTellResult result = target.tryTell(stashed.msg());
+            if (result != MiniTbTellResult.REJECTED) {
+                stash.poll();
+            }
+            if (result == MiniTbTellResult.BACKPRESSURE || result == MiniTbTellResult.REJECTED) {
+                suspendOn(target);
+            }
+        }
+    }
+    
+    /**
+     * 挂起本邮箱，等待下游恢复
+     * 先登记再检查下游积压：下游已经回落（或已停止）时立即恢复，不会错过唤醒
+     */
+    private void suspendOn(MiniTbActorMailbox target) {
+        suspended = true;
+        target.suspendedSenders.add(this);
+        if (target.destroyed.get() || target.normalQueue.size() <= target.lowWatermark) {
+            target.resumeSenders();
+        }
+    }
+    
+    /**
+     * 恢复因转发给本邮箱而挂起的发送方
+     */
+    private void resumeSenders() {
+        MiniTbActorMailbox sender;
+        while ((sender = suspendedSenders.poll()) != null) {
+            sender.resume();
+        }
+    }
+    
+    private void resume() {
+        if (suspended) {
+            suspended = false;
+            tryProcess();
         }
     }
     
     /**
-     * 批量处理消息
+     * 批量处理消息：处理满批量或时间片用完后让出线程
      */
     private void processMessages() {
+        long start = System.nanoTime();
+        long timeSliceNanos = dispatcher.getTimeSliceNanos();
+        int limit = nextBatchSize();
+        int processed = 0;
+        boolean timeSliceExpired = false;
         try {
-            int processed = 0;
-            
-            // 批量处理
-            for (int i = 0; i < BATCH_SIZE; i++) {
-                // 优先处理高优先级消息
+            // 恢复后先投递暂存的消息
+            unstash();
+            while (processed < limit) {
+                // 优先处理高优先级消息，挂起时不处理普通消息
                 MiniTbActorMsg msg = highPriorityQueue.poll();
-                if (msg == null) {
+                if (msg == null && !suspended) {
                     msg = normalQueue.poll();
                 }
                 
@@ -126,32 +269,61 @@ public class MiniTbActorMailbox implements MiniTbActorContext {
                     if (!handled) {
                         log.warn("[{}] 未处理的消息类型: {}", actorId, msg.getActorMsgType());
                     }
-                    processed++;
                 } catch (Exception e) {
                     log.error("[{}] 处理消息异常: {}", actorId, msg.getActorMsgType(), e);
                 }
+                processed++;
+                
+                // 消化积压后恢复等待本邮箱的发送方
+                if (!suspendedSenders.isEmpty() && normalQueue.size() <= lowWatermark) {
+                    resumeSenders();
+                }
+                
+                if (timeSliceNanos > 0 && System.nanoTime() - start >= timeSliceNanos) {
+                    timeSliceExpired = processed < limit;
+                    break;
+                }
             }
             
             if (processed > 0) {
-                log.trace("[{}] 本批次处理了 {} 个消息", actorId, processed);
+                log.trace("[{}] 本批次处理了 {} 个消息（批量 {}）", actorId, processed, limit);
             }
             
         } finally {
+            dispatcher.recordTurn(processed, System.nanoTime() - start, processed == limit, timeSliceExpired);
             processing.set(false);
             
-            // 如果队列还有消息，继续处理
-            if (!highPriorityQueue.isEmpty() || !normalQueue.isEmpty()) {
+            // 如果队列还有消息，继续处理（挂起时只为高优先级消息继续）
+            if (!highPriorityQueue.isEmpty()
+                    || (!suspended && (!normalQueue.isEmpty() || !stash.isEmpty()))) {
                 tryProcess();
             }
         }
     }
     
+    /**
+     * 本次处理的批量：固定为调度器吞吐量，或按邮箱积压自适应调整
+     */
+    private int nextBatchSize() {
+        if (!dispatcher.isAdaptiveThroughput()) {
+            return dispatcher.getThroughput();
+        }
+        int depth = getQueueSize();
+        if (depth > batchSize) {
+            batchSize = Math.min(dispatcher.getMaxThroughput(), batchSize * 2);
+        } else if (depth < batchSize / 2) {
+            batchSize = Math.max(dispatcher.getThroughput(), batchSize / 2);
+        }
+        return batchSize;
+    }
+    
     /**
      * 销毁 Actor
      */
     public void destroy() {
         if (destroyed.compareAndSet(false, true)) {
-            executor.execute(() -> {
+            dispatcher.actorDetached();
+            dispatcher.execute(() -> {
                 try {
                     log.debug("[{}] 销毁 Actor...", actorId);
                     actor.destroy();
@@ -164,6 +336,12 @@ public class MiniTbActorMailbox implements MiniTbActorContext {
                     while ((msg = normalQueue.poll()) != null) {
                         msg.onActorStopped();
                     }
+                    Stashed stashed;
+                    while ((stashed = stash.poll()) != null) {
+                        stashed.msg().onActorStopped();
+                    }
+                    // 等待本邮箱的发送方恢复后投递时得到 NOT_FOUND
+                    resumeSenders();
                     
                     log.debug("[{}] Actor 已销毁", actorId);
                 } catch (Exception e) {
@@ -176,13 +354,18 @@ public class MiniTbActorMailbox implements MiniTbActorContext {
     // ===== MiniTbActorContext 接口实现 =====
     
     @Override
-    public void tell(String targetActorId, MiniTbActorMsg msg) {
-        system.tell(targetActorId, msg);
+    public MiniTbTellResult tell(String targetActorId, MiniTbActorMsg msg) {
+        return system.tell(targetActorId, msg);
     }
     
     @Override
-    public void tellWithHighPriority(String targetActorId, MiniTbActorMsg msg) {
-        system.tellWithHighPriority(targetActorId, msg);
+    public MiniTbTellResult tellWithHighPriority(String targetActorId, MiniTbActorMsg msg) {
+        return system.tellWithHighPriority(targetActorId, msg);
+    }
+    
+    @Override
+    public MiniTbTellResult forward(String targetActorId, MiniTbActorMsg msg) {
+        return forwardTo(targetActorId, msg);
     }
     
     @Override
@@ -195,11 +378,38 @@ public class MiniTbActorMailbox implements MiniTbActorContext {
         system.stop(targetActorId);
     }
     
+    /**
+     * 所属调度器名称
+     */
+    public String getDispatcherName() {
+        return dispatcher.getName();
+    }
+    
+    /**
+     * 邮箱容量（每个队列）
+     */
+    public int getCapacity() {
+        return normalQueue.capacity();
+    }
+    
     /**
      * 获取队列大小（用于监控）
      */
     public int getQueueSize() {
         return highPriorityQueue.size() + normalQueue.size();
     }
+    
+    /**
+     * 是否因转发而挂起（用于监控）
+     */
+    public boolean isSuspended() {
+        return suspended;
+    }
+    
+    /**
+     * 暂存的转发消息
+     */
+    private record Stashed(String targetActorId, MiniTbActorMsg msg) {
+    }
 }
 
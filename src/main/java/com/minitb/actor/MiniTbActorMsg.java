@@ -24,6 +24,13 @@ public interface MiniTbActorMsg {
         // 默认不处理
     }
     
+    /**
+     * 邮箱已满、消息被拒绝或作为最旧的消息被丢弃时的回调
+     */
+    default void onDropped() {
+        // 默认不处理
+    }
+    
     /**
      * Actor 消息类型枚举
      * 
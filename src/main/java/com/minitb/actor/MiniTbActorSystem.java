@@ -2,10 +2,11 @@ package com.minitb.actor;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 /**
  * 简化版 Actor 系统
@@ -14,51 +15,108 @@ import java.util.concurrent.TimeUnit;
  * 1. Actor 注册与管理
  * 2. 消息路由
  * 3. 生命周期管理
+ * 4. 调度器: 按名称划分的独立线程池（设备、规则引擎、规则链、系统），创建 Actor 时选择，
+ *    各自配置线程数和吞吐量，互不抢占线程；getDispatcherStats 报告每个调度器的利用率
+ * 5. 有界邮箱: 容量和溢出策略（拒绝 / 丢弃最旧 / 背压）按调度器（即 Actor 类型）配置，
+ *    tell 返回发送结果，发送方据此减速或重试；Actor 之间用 ctx.forward 转发，下游积压时发送方的邮箱挂起
+ *    （不占用调度器线程），下游消化积压后恢复，背压逐级传回传输层
  * 
  * 简化点（相比 ThingsBoard）:
  * - 单租户，无需租户层级
- * - 无 Dispatcher 抽象，统一使用一个线程池
  * - 无父子关系管理
  * - 无分布式支持
  */
 @Slf4j
 public class MiniTbActorSystem {
     
-    private final ExecutorService executorService;
+    /**
+     * 设备 Actor 调度器
+     */
+    public static final String DEVICE_DISPATCHER = "device";
+    
+    /**
+     * 规则引擎 Actor 调度器
+     */
+    public static final String RULE_ENGINE_DISPATCHER = "rule-engine";
+    
+    /**
+     * 规则链 Actor 调度器
+     */
+    public static final String RULE_CHAIN_DISPATCHER = "rule-chain";
+    
+    /**
+     * 系统调度器（未指定调度器的 Actor）
+     */
+    public static final String SYSTEM_DISPATCHER = "system";
+    
+    // 调度器名称 -> 调度器（创建后不再变化）
+    private final Map<String, MiniTbDispatcher> dispatchers;
     private final ConcurrentHashMap<String, MiniTbActorMailbox> actors = new ConcurrentHashMap<>();
     private volatile boolean stopped = false;
     
     /**
-     * 创建 Actor 系统
-     * @param threadPoolSize 线程池大小
+     * 创建 Actor 系统：设备、规则引擎、规则链、系统四个调度器各使用 threadPoolSize 个线程
+     * @param threadPoolSize 每个调度器的线程数
      */
     public MiniTbActorSystem(int threadPoolSize) {
-        this.executorService = Executors.newFixedThreadPool(
-                threadPoolSize,
-                r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("minitb-actor-" + thread.getId());
-                    thread.setDaemon(true);
-                    return thread;
-                }
-        );
-        log.info("Actor 系统已创建，线程池大小: {}", threadPoolSize);
+        this(List.of(
+                MiniTbDispatcherConfig.builder().name(DEVICE_DISPATCHER).poolSize(threadPoolSize).build(),
+                MiniTbDispatcherConfig.builder().name(RULE_ENGINE_DISPATCHER).poolSize(threadPoolSize).build(),
+                MiniTbDispatcherConfig.builder().name(RULE_CHAIN_DISPATCHER).poolSize(threadPoolSize).build(),
+                MiniTbDispatcherConfig.builder().name(SYSTEM_DISPATCHER).poolSize(threadPoolSize).build()));
     }
     
     /**
-     * 创建 Actor
+     * 创建 Actor 系统
+     * @param dispatcherConfigs 调度器配置，必须包含系统调度器（SYSTEM_DISPATCHER）
+     */
+    public MiniTbActorSystem(List<MiniTbDispatcherConfig> dispatcherConfigs) {
+        Map<String, MiniTbDispatcher> created = new LinkedHashMap<>();
+        for (MiniTbDispatcherConfig config : dispatcherConfigs) {
+            if (created.containsKey(config.getName())) {
+                throw new IllegalArgumentException("duplicate dispatcher: " + config.getName());
+            }
+            created.put(config.getName(), new MiniTbDispatcher(config));
+        }
+        if (!created.containsKey(SYSTEM_DISPATCHER)) {
+            throw new IllegalArgumentException("dispatcher '" + SYSTEM_DISPATCHER + "' is required");
+        }
+        this.dispatchers = created;
+        dispatcherConfigs.forEach(config -> log.info("Actor 调度器 [{}]: 线程数 {}, 吞吐量 {}, 邮箱容量 {}, 溢出策略 {}",
+                config.getName(), config.getPoolSize(), config.getThroughput(),
+                config.getMailboxCapacity(), config.getOverflowPolicy()));
+        log.info("Actor 系统已创建，调度器: {}", dispatchers.keySet());
+    }
+    
+    /**
+     * 创建 Actor（使用系统调度器）
      * @param actorId Actor ID
      * @param actor Actor 实例
      * @return Actor 邮箱引用
      */
     public MiniTbActorMailbox createActor(String actorId, MiniTbActor actor) {
+        return createActor(actorId, actor, SYSTEM_DISPATCHER);
+    }
+    
+    /**
+     * 创建 Actor
+     * @param actorId Actor ID
+     * @param actor Actor 实例
+     * @param dispatcherName 调度器名称，Actor 的消息在该调度器的线程池中处理
+     * @return Actor 邮箱引用
+     */
+    public MiniTbActorMailbox createActor(String actorId, MiniTbActor actor, String dispatcherName) {
         if (stopped) {
             throw new IllegalStateException("Actor 系统已停止");
         }
+        MiniTbDispatcher dispatcher = dispatchers.get(dispatcherName);
+        if (dispatcher == null) {
+            throw new IllegalArgumentException("Unknown dispatcher: " + dispatcherName);
+        }
         
         MiniTbActorMailbox mailbox = actors.computeIfAbsent(actorId, id -> {
-            log.info("创建 Actor: {}", actorId);
-            MiniTbActorMailbox mb = new MiniTbActorMailbox(actorId, actor, executorService, this);
+            log.info("创建 Actor: {} (调度器: {})", actorId, dispatcherName);
+            MiniTbActorMailbox mb = new MiniTbActorMailbox(actorId, actor, dispatcher, this);
             mb.init();
             return mb;
         });
@@ -79,28 +137,30 @@ public class MiniTbActorSystem {
     
     /**
      * 发送消息（普通优先级）
+     * @return 发送结果，邮箱已满或需要减速时发送方可据此处理
      */
-    public void tell(String actorId, MiniTbActorMsg msg) {
+    public MiniTbTellResult tell(String actorId, MiniTbActorMsg msg) {
         MiniTbActorMailbox mailbox = actors.get(actorId);
         if (mailbox == null) {
             log.warn("Actor [{}] 不存在，消息被丢弃: {}", actorId, msg.getActorMsgType());
             msg.onActorStopped();
-            return;
+            return MiniTbTellResult.NOT_FOUND;
         }
-        mailbox.tell(msg);
+        return mailbox.tell(msg);
     }
     
     /**
      * 发送消息（高优先级）
+     * @return 发送结果
      */
-    public void tellWithHighPriority(String actorId, MiniTbActorMsg msg) {
+    public MiniTbTellResult tellWithHighPriority(String actorId, MiniTbActorMsg msg) {
         MiniTbActorMailbox mailbox = actors.get(actorId);
         if (mailbox == null) {
             log.warn("Actor [{}] 不存在，消息被丢弃: {}", actorId, msg.getActorMsgType());
             msg.onActorStopped();
-            return;
+            return MiniTbTellResult.NOT_FOUND;
         }
-        mailbox.tellWithHighPriority(msg);
+        return mailbox.tellWithHighPriority(msg);
     }
     
     /**
@@ -132,22 +192,22 @@ public class MiniTbActorSystem {
         });
         actors.clear();
         
-        // 关闭线程池
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
-                log.warn("线程池未能在10秒内关闭，强制关闭");
-                executorService.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            log.error("等待线程池关闭时被中断", e);
-            executorService.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
+        // 关闭线程池：先全部停止接收新任务，再逐个等待
+        dispatchers.values().forEach(MiniTbDispatcher::shutdown);
+        dispatchers.values().forEach(MiniTbDispatcher::awaitTermination);
         
         log.info("Actor 系统已关闭");
     }
     
+    /**
+     * 获取各调度器的统计（线程数、活跃线程、排队任务、利用率）
+     */
+    public List<MiniTbDispatcherStats> getDispatcherStats() {
+        List<MiniTbDispatcherStats> stats = new ArrayList<>(dispatchers.size());
+        dispatchers.values().forEach(dispatcher -> stats.add(dispatcher.getStats()));
+        return stats;
+    }
+    
     /**
      * 获取系统状态信息
      */
@@ -156,10 +216,19 @@ public class MiniTbActorSystem {
         sb.append("=== Actor 系统状态 ===\n");
         sb.append("总 Actor 数: ").append(actors.size()).append("\n");
         sb.append("已停止: ").append(stopped).append("\n");
+        sb.append("\n调度器:\n");
+        for (MiniTbDispatcherStats stats : getDispatcherStats()) {
+            sb.append("  - ").append(stats.getName())
+              .append(" (线程: ").append(stats.getPoolSize())
+              .append(", Actor: ").append(stats.getActorCount())
+              .append(", 利用率: ").append(String.format("%.1f%%", stats.getUtilization() * 100))
+              .append(")\n");
+        }
         sb.append("\nActor 列表:\n");
         actors.forEach((id, mailbox) -> {
             sb.append("  - ").append(id)
-              .append(" (队列: ").append(mailbox.getQueueSize()).append(")\n");
+              .append(" (调度器: ").append(mailbox.getDispatcherName())
+              .append(", 队列: ").append(mailbox.getQueueSize()).append(")\n");
         });
         return sb.toString();
     }
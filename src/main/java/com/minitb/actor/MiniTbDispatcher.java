@@ -0,0 +1,245 @@
+package com.minitb.actor;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 调度器 - 一组 Actor 共享的独立线程池
+ *
+ * 设计说明:
+ * - 设备、规则引擎、规则链、系统 Actor 各自使用独立的调度器，设备流量突增不会占满规则链的线程，反之亦然
+ * - 吞吐量（throughput）限制一个 Actor 每次占用线程处理的消息数，之后重新排队，同一调度器上的 Actor 轮流执行
+ * - 时间片（timeSliceMicros）另外限制每次占用线程的时间，一条慢消息之后即让出线程，不会长时间独占
+ * - 自适应批量：邮箱积压时增大批量，减少重复调度的开销；每次占用的消息数和耗时计入统计，用于调优
+ * - 同一调度器上的 Actor 邮箱使用相同的容量和溢出策略（每类 Actor 一个调度器，即按 Actor 类型配置）
+ * - 每个任务计时，累计忙碌时间用于计算利用率
+ */
+@Slf4j
+public class MiniTbDispatcher {
+
+    /**
+     * 默认吞吐量（每次最多处理的消息数）
+     */
+    public static final int DEFAULT_THROUGHPUT = 10;
+
+    /**
+     * 默认邮箱容量
+     */
+    public static final int DEFAULT_MAILBOX_CAPACITY = 1000;
+
+    /**
+     * 默认自适应批量上限
+     */
+    public static final int DEFAULT_MAX_THROUGHPUT = 100;
+
+    private final String name;
+    private final int poolSize;
+    private final int throughput;
+    private final long timeSliceNanos;
+    private final boolean adaptiveThroughput;
+    private final int maxThroughput;
+    private final int mailboxCapacity;
+    private final MiniTbMailboxOverflowPolicy overflowPolicy;
+    private final ThreadPoolExecutor executor;
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicInteger actorCount = new AtomicInteger();
+    private final AtomicInteger activeThreads = new AtomicInteger();
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder processedMessages = new LongAdder();
+    private final LongAdder turns = new LongAdder();
+    private final LongAdder turnNanos = new LongAdder();
+    private final LongAccumulator maxMessagesPerTurn = new LongAccumulator(Math::max, 0);
+    private final LongAdder throughputYields = new LongAdder();
+    private final LongAdder timeSliceYields = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder rejectedMessages = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder backpressureSignals = new LongAdder();
+
+    public MiniTbDispatcher(MiniTbDispatcherConfig config) {
+        if (config.getName() == null || config.getName().isEmpty()) {
+            throw new IllegalArgumentException("dispatcher name must not be empty");
+        }
+        if (config.getPoolSize() <= 0 || config.getThroughput() <= 0 || config.getMailboxCapacity() <= 0) {
+            throw new IllegalArgumentException(
+                    "dispatcher poolSize, throughput and mailboxCapacity must be positive: " + config.getName());
+        }
+        if (config.getTimeSliceMicros() < 0) {
+            throw new IllegalArgumentException("dispatcher timeSliceMicros must not be negative: " + config.getName());
+        }
+        if (config.isAdaptiveThroughput() && config.getMaxThroughput() < config.getThroughput()) {
+            throw new IllegalArgumentException("dispatcher maxThroughput must be >= throughput: " + config.getName());
+        }
+        if (config.getOverflowPolicy() == null) {
+            throw new IllegalArgumentException("dispatcher overflowPolicy must not be null: " + config.getName());
+        }
+        this.name = config.getName();
+        this.poolSize = config.getPoolSize();
+        this.throughput = config.getThroughput();
+        this.timeSliceNanos = TimeUnit.MICROSECONDS.toNanos(config.getTimeSliceMicros());
+        this.adaptiveThroughput = config.isAdaptiveThroughput();
+        this.maxThroughput = adaptiveThroughput ? config.getMaxThroughput() : throughput;
+        this.mailboxCapacity = config.getMailboxCapacity();
+        this.overflowPolicy = config.getOverflowPolicy();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r);
+                    thread.setName("minitb-" + name + "-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * 时间片（纳秒），0 表示不限制
+     */
+    long getTimeSliceNanos() {
+        return timeSliceNanos;
+    }
+
+    boolean isAdaptiveThroughput() {
+        return adaptiveThroughput;
+    }
+
+    int getMaxThroughput() {
+        return maxThroughput;
+    }
+
+    public int getMailboxCapacity() {
+        return mailboxCapacity;
+    }
+
+    public MiniTbMailboxOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * 提交任务（计入忙碌时间）
+     */
+    void execute(Runnable task) {
+        executor.execute(() -> {
+            activeThreads.incrementAndGet();
+            long begin = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                busyNanos.add(System.nanoTime() - begin);
+                activeThreads.decrementAndGet();
+                completedTasks.increment();
+            }
+        });
+    }
+
+    void actorAttached() {
+        actorCount.incrementAndGet();
+    }
+
+    void actorDetached() {
+        actorCount.decrementAndGet();
+    }
+
+    /**
+     * 记录一次占用线程的处理结果
+     * @param processed 处理的消息数
+     * @param limitReached 处理满批量后让出
+     * @param timeSliceExpired 时间片用完后让出
+     */
+    void recordTurn(int processed, long elapsedNanos, boolean limitReached, boolean timeSliceExpired) {
+        turns.increment();
+        turnNanos.add(elapsedNanos);
+        if (processed > 0) {
+            processedMessages.add(processed);
+            maxMessagesPerTurn.accumulate(processed);
+        }
+        if (timeSliceExpired) {
+            timeSliceYields.increment();
+        } else if (limitReached) {
+            throughputYields.increment();
+        }
+    }
+
+    void recordRejected() {
+        rejectedMessages.increment();
+    }
+
+    void recordDropped() {
+        droppedMessages.increment();
+    }
+
+    void recordBackpressure() {
+        backpressureSignals.increment();
+    }
+
+    public MiniTbDispatcherStats getStats() {
+        long busy = busyNanos.sum();
+        long turnCount = turns.sum();
+        long messages = processedMessages.sum();
+        long elapsed = Math.max(1, System.nanoTime() - startNanos);
+        return MiniTbDispatcherStats.builder()
+                .name(name)
+                .poolSize(poolSize)
+                .throughput(throughput)
+                .timeSliceMicros(TimeUnit.NANOSECONDS.toMicros(timeSliceNanos))
+                .adaptiveThroughput(adaptiveThroughput)
+                .maxThroughput(maxThroughput)
+                .mailboxCapacity(mailboxCapacity)
+                .overflowPolicy(overflowPolicy)
+                .actorCount(actorCount.get())
+                .activeThreads(activeThreads.get())
+                .queuedTasks(executor.getQueue().size())
+                .completedTasks(completedTasks.sum())
+                .processedMessages(messages)
+                .turns(turnCount)
+                .avgMessagesPerTurn(turnCount > 0 ? (double) messages / turnCount : 0)
+                .maxMessagesPerTurn((int) maxMessagesPerTurn.get())
+                .avgTurnMicros(turnCount > 0 ? turnNanos.sum() / 1000.0 / turnCount : 0)
+                .throughputYields(throughputYields.sum())
+                .timeSliceYields(timeSliceYields.sum())
+                .rejectedMessages(rejectedMessages.sum())
+                .droppedMessages(droppedMessages.sum())
+                .backpressureSignals(backpressureSignals.sum())
+                .busyMs(busy / 1_000_000.0)
+                .utilization(Math.min(1.0, (double) busy / ((double) elapsed * poolSize)))
+                .build();
+    }
+
+    /**
+     * 停止接收新任务
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 等待已提交的任务执行完（最多 10 秒），超时后强制关闭
+     */
+    void awaitTermination() {
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("调度器 [{}] 线程池未能在10秒内关闭，强制关闭", name);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            log.error("等待调度器 [{}] 线程池关闭时被中断", name, e);
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.minitb.actor;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * 调度器配置
+ */
+@Value
+@Builder
+public class MiniTbDispatcherConfig {
+
+    /**
+     * 调度器名称，创建 Actor 时按名称选择
+     */
+    String name;
+
+    /**
+     * 线程数
+     */
+    int poolSize;
+
+    /**
+     * 吞吐量：一个 Actor 每次占用线程最多处理的消息数，处理完后让出线程给同一调度器上的其他 Actor
+     */
+    @Builder.Default
+    int throughput = MiniTbDispatcher.DEFAULT_THROUGHPUT;
+
+    /**
+     * 时间片（微秒）：一个 Actor 每次占用线程的时间超过该值后，处理完当前消息即让出线程；0 表示只按消息数限制
+     */
+    @Builder.Default
+    long timeSliceMicros = 0;
+
+    /**
+     * 自适应批量：邮箱积压超过当前批量时批量翻倍（不超过 maxThroughput），积压回落后减半（不低于 throughput）
+     */
+    @Builder.Default
+    boolean adaptiveThroughput = false;
+
+    /**
+     * 自适应批量的上限
+     */
+    @Builder.Default
+    int maxThroughput = MiniTbDispatcher.DEFAULT_MAX_THROUGHPUT;
+
+    /**
+     * 该调度器上每个 Actor 邮箱的容量（高优先级、普通队列各自的消息数上限）
+     */
+    @Builder.Default
+    int mailboxCapacity = MiniTbDispatcher.DEFAULT_MAILBOX_CAPACITY;
+
+    /**
+     * 邮箱溢出策略
+     */
+    @Builder.Default
+    MiniTbMailboxOverflowPolicy overflowPolicy = MiniTbMailboxOverflowPolicy.BACKPRESSURE;
+}
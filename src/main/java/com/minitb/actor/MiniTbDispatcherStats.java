@@ -0,0 +1,96 @@
+package com.minitb.actor;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * 调度器统计快照
+ */
+@Value
+@Builder
+public class MiniTbDispatcherStats {
+
+    String name;
+
+    int poolSize;
+
+    int throughput;
+
+    long timeSliceMicros;
+
+    boolean adaptiveThroughput;
+
+    int maxThroughput;
+
+    int mailboxCapacity;
+
+    MiniTbMailboxOverflowPolicy overflowPolicy;
+
+    /**
+     * 绑定到该调度器的 Actor 数
+     */
+    int actorCount;
+
+    /**
+     * 正在执行任务的线程数
+     */
+    int activeThreads;
+
+    /**
+     * 等待线程的任务数（每个有消息待处理的 Actor 最多一个）
+     */
+    int queuedTasks;
+
+    long completedTasks;
+
+    long processedMessages;
+
+    /**
+     * Actor 占用线程的次数（每次处理一批消息）
+     */
+    long turns;
+
+    double avgMessagesPerTurn;
+
+    int maxMessagesPerTurn;
+
+    /**
+     * 每次占用线程的平均耗时（微秒）
+     */
+    double avgTurnMicros;
+
+    /**
+     * 处理满批量后让出线程的次数（批量偏小时该值高，可调大 throughput 或启用自适应批量）
+     */
+    long throughputYields;
+
+    /**
+     * 时间片用完后让出线程的次数（存在慢消息时该值高）
+     */
+    long timeSliceYields;
+
+    /**
+     * 邮箱已满被拒绝的消息数
+     */
+    long rejectedMessages;
+
+    /**
+     * DROP_OLDEST 策略丢弃的最旧消息数
+     */
+    long droppedMessages;
+
+    /**
+     * 超过高水位、通知发送方减速的次数
+     */
+    long backpressureSignals;
+
+    /**
+     * 线程累计忙碌时间（毫秒）
+     */
+    double busyMs;
+
+    /**
+     * 利用率 = 忙碌时间 / (运行时间 × 线程数)，0 ~ 1
+     */
+    double utilization;
+}
@@ -0,0 +1,29 @@
+package com.minitb.actor;
+
+/**
+ * 邮箱溢出策略 - 邮箱已满（或接近满）时如何处理新消息
+ */
+public enum MiniTbMailboxOverflowPolicy {
+
+    /**
+     * 拒绝新消息，发送方收到 REJECTED
+     */
+    REJECT,
+
+    /**
+     * 丢弃最旧的消息，接收新消息，发送方收到 DROPPED_OLDEST（适合只关心最新数据的场景）
+     */
+    DROP_OLDEST,
+
+    /**
+     * 队列达到高水位后仍接收消息，但发送方收到 BACKPRESSURE，应当减速；队列满时拒绝
+     */
+    BACKPRESSURE;
+
+    /**
+     * 解析策略名称（不区分大小写，支持 drop-oldest 写法）
+     */
+    public static MiniTbMailboxOverflowPolicy parse(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
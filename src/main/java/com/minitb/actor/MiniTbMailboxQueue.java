@@ -0,0 +1,92 @@
+package com.minitb.actor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁数组队列 - Actor 邮箱的消息队列
+ *
+ * 原理（Vyukov 有界队列）：
+ * - 创建时一次性分配 capacity 个槽位，之后不再分配内存，容量即内存上限
+ * - 每个槽位有一个序号：序号 == 写入位置表示空闲，== 写入位置 + 1 表示已写入；
+ *   生产者 CAS 推进 tail 认领槽位，消费者 CAS 推进 head 取出后把序号设为 位置 + capacity（下一圈可写）
+ * - 队列满时 offer 立即返回 false，不阻塞、不扩容
+ *
+ * 多生产者发送消息，正常情况下只有邮箱的处理线程消费；
+ * 出队同样使用 CAS，因此 DROP_OLDEST 策略下生产者可以安全地取出最旧的消息腾出位置
+ */
+final class MiniTbMailboxQueue<E> {
+
+    private final int capacity;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    MiniTbMailboxQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false 表示队列已满
+     */
+    boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position % capacity);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.set(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return null 表示队列为空
+     */
+    E poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) (position % capacity);
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = buffer.get(index);
+                    buffer.set(index, null);
+                    sequences.set(index, position + capacity);
+                    return element;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+        }
+    }
+
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
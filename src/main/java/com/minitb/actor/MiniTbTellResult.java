@@ -0,0 +1,44 @@
+package com.minitb.actor;
+
+/**
+ * 发送消息的结果
+ */
+public enum MiniTbTellResult {
+
+    /**
+     * 消息已进入邮箱
+     */
+    ACCEPTED,
+
+    /**
+     * 消息已进入邮箱，但邮箱超过高水位，发送方应当减速（BACKPRESSURE 策略）
+     */
+    BACKPRESSURE,
+
+    /**
+     * 消息已进入邮箱，为此丢弃了最旧的一条消息（DROP_OLDEST 策略）
+     */
+    DROPPED_OLDEST,
+
+    /**
+     * 下游邮箱已满，消息暂存在发送方，发送方邮箱暂停处理，下游邮箱消化积压后依次投递（forward）
+     */
+    STASHED,
+
+    /**
+     * 邮箱已满，消息被拒绝
+     */
+    REJECTED,
+
+    /**
+     * 目标 Actor 不存在或已停止，消息被丢弃
+     */
+    NOT_FOUND;
+
+    /**
+     * 消息是否进入了邮箱（STASHED 时稍后投递）
+     */
+    public boolean isAccepted() {
+        return this == ACCEPTED || this == BACKPRESSURE || this == DROPPED_OLDEST || this == STASHED;
+    }
+}
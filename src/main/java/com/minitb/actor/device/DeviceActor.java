@@ -3,6 +3,7 @@ package com.minitb.actor.device;
 import com.minitb.actor.MiniTbActor;
 import com.minitb.actor.MiniTbActorContext;
 import com.minitb.actor.MiniTbActorMsg;
+import com.minitb.actor.MiniTbTellResult;
 import com.minitb.actor.msg.ToRuleEngineMsg;
 import com.minitb.actor.msg.TransportToDeviceMsg;
 import com.minitb.domain.device.Device;
@@ -128,8 +129,12 @@ public class DeviceActor implements MiniTbActor {
         
         Message tbMsg = builder.build();
         
-        // 转发到规则引擎
-        ctx.tell(RULE_ENGINE_ACTOR_ID, new ToRuleEngineMsg(tbMsg));
+        // 转发到规则引擎（规则引擎邮箱积压时设备 Actor 的邮箱挂起，背压传回传输层）
+        MiniTbTellResult result = ctx.forward(RULE_ENGINE_ACTOR_ID, new ToRuleEngineMsg(tbMsg));
+        if (!result.isAccepted()) {
+            log.debug("[{}] 规则引擎未接收消息（{}），丢弃 {} 个数据点", deviceId, result, tsKvEntries.size());
+            return;
+        }
         
         log.debug("[{}] 消息已转发到规则引擎，包含 {} 个数据点", deviceId, tsKvEntries.size());
     }
@@ -53,8 +53,8 @@ public class RuleEngineActor implements MiniTbActor {
                 msg.getMessage().getType());
         
         try {
-            // 通过规则链处理消息
-            ruleEngineService.processMessage(msg.getMessage());
+            // 通过规则链处理消息（规则链邮箱积压时规则引擎 Actor 的邮箱挂起，背压传回上游）
+            ruleEngineService.forwardMessage(msg.getMessage(), ctx);
         } catch (Exception e) {
             log.error("规则引擎处理消息失败", e);
         }
@@ -0,0 +1,38 @@
+package com.minitb.application.service.telemetry;
+
+import com.minitb.storage.CompactionResult;
+import com.minitb.storage.TelemetryStorage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * 遥测数据压缩整理服务
+ * 
+ * 职责：
+ * - 定期按保留策略清理过期的遥测数据块
+ * - 封存长时间没有新数据的头块（压缩存储）
+ * - 记录回收的内存，便于评估堆大小
+ * 
+ * 整理间隔从配置文件读取: minitb.telemetry.compaction.interval
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TelemetryCompactionService {
+    
+    private final TelemetryStorage telemetryStorage;
+    
+    @Scheduled(fixedRateString = "${minitb.telemetry.compaction.interval:60000}",
+               initialDelayString = "${minitb.telemetry.compaction.initial-delay:60000}")
+    public void compact() {
+        try {
+            CompactionResult result = telemetryStorage.compact();
+            log.debug("遥测压缩整理: 扫描 {} 个序列, 回收 {} 字节, 耗时 {}ms",
+                    result.getSeriesScanned(), result.getReclaimedBytes(), result.getDurationMs());
+        } catch (Exception e) {
+            log.error("遥测压缩整理时发生错误", e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.minitb.application.service.telemetry;
+
+import com.minitb.storage.TelemetryStorage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * 遥测快照服务
+ *
+ * 职责：
+ * - 定期把内存中的遥测数据写成快照文件，重启时只需回放快照之后的 WAL
+ * - 快照写完后删除已被快照覆盖的 WAL 段
+ *
+ * 快照间隔从配置文件读取: minitb.telemetry.snapshot.interval
+ * 未启用快照（minitb.telemetry.snapshot.enabled=false）时为空操作
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TelemetrySnapshotService {
+
+    private final TelemetryStorage telemetryStorage;
+
+    @Scheduled(fixedDelayString = "${minitb.telemetry.snapshot.interval:300000}",
+               initialDelayString = "${minitb.telemetry.snapshot.interval:300000}")
+    public void snapshot() {
+        try {
+            telemetryStorage.snapshot();
+        } catch (Exception e) {
+            log.error("写入遥测快照时发生错误", e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.minitb.configuration;
+
+import com.minitb.actor.MiniTbDispatcherConfig;
+import com.minitb.actor.MiniTbMailboxOverflowPolicy;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Actor 系统配置（minitb.actor.*）
+ * 每个调度器一组线程数、吞吐量、时间片、自适应批量、邮箱容量和溢出策略，默认值与 application.yml 一致
+ */
+@Data
+@ConfigurationProperties(prefix = "minitb.actor")
+public class ActorSystemProperties {
+
+    private Dispatchers dispatchers = new Dispatchers();
+
+    @Data
+    public static class Dispatchers {
+
+        /**
+         * 设备 Actor：流量随设备数增长，积压时通知传输层减速
+         */
+        private Dispatcher device = new Dispatcher(2, 1000, "backpressure", true);
+
+        /**
+         * 规则引擎 Actor：所有设备的消息都经过这里，邮箱容量更大
+         */
+        private Dispatcher ruleEngine = new Dispatcher(1, 10000, "backpressure", true);
+
+        /**
+         * 规则链 Actor：卡住时拒绝新消息，内存不再增长
+         */
+        private Dispatcher ruleChain = new Dispatcher(2, 10000, "reject", false);
+
+        /**
+         * 未指定调度器的 Actor
+         */
+        private Dispatcher system = new Dispatcher(1, 1000, "reject", false);
+    }
+
+    /**
+     * 单个调度器的配置
+     */
+    @Data
+    @NoArgsConstructor
+    public static class Dispatcher {
+
+        private int poolSize = 1;
+        private int throughput = 10;
+        private long timeSliceMicros = 5000;
+        private boolean adaptive = false;
+        private int maxThroughput = 100;
+        private int mailboxCapacity = 1000;
+
+        /**
+         * 溢出策略: reject | drop-oldest | backpressure
+         */
+        private String overflowPolicy = "reject";
+
+        Dispatcher(int poolSize, int mailboxCapacity, String overflowPolicy, boolean adaptive) {
+            this.poolSize = poolSize;
+            this.mailboxCapacity = mailboxCapacity;
+            this.overflowPolicy = overflowPolicy;
+            this.adaptive = adaptive;
+        }
+
+        MiniTbDispatcherConfig toConfig(String name) {
+            return MiniTbDispatcherConfig.builder()
+                    .name(name)
+                    .poolSize(poolSize)
+                    .throughput(throughput)
+                    .timeSliceMicros(timeSliceMicros)
+                    .adaptiveThroughput(adaptive)
+                    .maxThroughput(maxThroughput)
+                    .mailboxCapacity(mailboxCapacity)
+                    .overflowPolicy(MiniTbMailboxOverflowPolicy.parse(overflowPolicy))
+                    .build();
+        }
+    }
+}
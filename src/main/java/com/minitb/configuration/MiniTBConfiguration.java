@@ -3,17 +3,27 @@ package com.minitb.configuration;
 import com.minitb.actor.MiniTbActorSystem;
 import com.minitb.application.service.DeviceService;
 import com.minitb.application.service.alarm.AlarmEvaluator;
+import com.minitb.domain.device.Device;
+import com.minitb.domain.device.DeviceProfile;
+import com.minitb.domain.device.TelemetryDefinition;
 import com.minitb.infrastructure.rule.AlarmEvaluatorNode;
 import com.minitb.infrastructure.rule.FilterNode;
 import com.minitb.infrastructure.rule.LogNode;
 import com.minitb.domain.rule.RuleChain;
+import com.minitb.domain.telemetry.TelemetryRepository;
 import com.minitb.infrastructure.rule.SaveTelemetryNode;
 import com.minitb.ruleengine.RuleEngineService;
 import com.minitb.storage.TelemetryStorage;
+import com.minitb.storage.TelemetryWriteBehind;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
 /**
  * MiniTB 核心配置类
  * 
@@ -22,26 +32,79 @@ import org.springframework.context.annotation.Configuration;
  * - 初始化 Actor 系统、规则引擎、存储层
  */
 @Configuration
+@EnableConfigurationProperties({ActorSystemProperties.class, TelemetryStorageProperties.class})
 @Slf4j
 public class MiniTBConfiguration {
     
     /**
      * 遥测数据存储
+     * 配置来自 minitb.telemetry（TelemetryStorageProperties）
+     * 保留策略：全局默认值来自配置文件，设备所属 DeviceProfile 的保留策略优先
+     * 存储模式：DeviceProfile 中 storageMode = RING 的遥测键使用定长环形缓冲区
+     * 持久化：启用 WAL 时启动即回放日志恢复数据（有快照时先加载快照，只回放之后的日志），
+     * 容器关闭时调用 close() 写快照并刷盘；
+     * 历史数据由后台线程批量写入 TelemetryRepository（每批一个事务），超出内存范围的查询从仓储读取
      */
     @Bean
-    public TelemetryStorage telemetryStorage() {
-        log.info("初始化遥测数据存储...");
-        return new TelemetryStorage(true);
+    public TelemetryStorage telemetryStorage(
+            DeviceService deviceService,
+            TelemetryStorageProperties properties,
+            ObjectProvider<TelemetryRepository> telemetryRepository) {
+        log.info("初始化遥测数据存储（原始数据保留 {}ms, 汇总分辨率 {}ms, 汇总保留 {}ms）...",
+                properties.getRetention().getRaw(), properties.getRollup().getIntervals(),
+                properties.getRetention().getRollup());
+        TelemetryStorage storage = new TelemetryStorage(properties.toConfig());
+        int ringDefaultCapacity = properties.getRingBuffer().getDefaultCapacity();
+        storage.setRetentionPolicyResolver(deviceId -> deviceService.findById(deviceId)
+                .map(Device::getDeviceProfileId)
+                .flatMap(deviceService::findProfileById)
+                .map(DeviceProfile::getRetentionPolicy)
+                .orElse(null));
+        storage.setRingBufferPolicyResolver((deviceId, key) -> deviceService.findById(deviceId)
+                .map(Device::getDeviceProfileId)
+                .flatMap(deviceService::findProfileById)
+                .flatMap(profile -> profile.findTelemetryDefinition(key))
+                .filter(TelemetryDefinition::isRingBuffer)
+                .map(definition -> definition.getRingCapacity() != null
+                        ? definition.getRingCapacity() : ringDefaultCapacity)
+                .orElse(0));
+        // 历史数据仓储（SQLite 存储模式下可用）
+        if (properties.getHistory().isEnabled()) {
+            telemetryRepository.ifAvailable(storage::setRepository);
+        }
+        return storage;
+    }
+    
+    /**
+     * 遥测异步批量写入
+     * 规则链只把数据放入有界缓冲区，由写入线程按批大小/等待时间批量写入存储；缓冲区满时阻塞规则链（背压）
+     * 容器关闭时调用 close() 写完缓冲区中的数据（先于 TelemetryStorage 关闭）
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "minitb.telemetry.write-behind.enabled", havingValue = "true", matchIfMissing = true)
+    public TelemetryWriteBehind telemetryWriteBehind(TelemetryStorage storage, TelemetryStorageProperties properties) {
+        TelemetryStorageProperties.WriteBehind writeBehind = properties.getWriteBehind();
+        log.info("初始化遥测异步写入（缓冲区 {}, 写入线程 {}, 批大小 {}, 等待时间 {}ms）...",
+                writeBehind.getCapacity(), writeBehind.getThreads(), writeBehind.getFlushSize(), writeBehind.getLinger());
+        return new TelemetryWriteBehind(storage, writeBehind.getCapacity(), writeBehind.getThreads(),
+                writeBehind.getFlushSize(), writeBehind.getLinger());
     }
     
     /**
      * Actor 系统
      * 必须先于RuleEngineService初始化
+     * 设备、规则引擎、规则链、系统 Actor 使用各自的调度器（独立线程池），线程数、吞吐量、时间片、
+     * 自适应批量、邮箱容量和溢出策略来自 minitb.actor.dispatchers（ActorSystemProperties）
      */
     @Bean
-    public MiniTbActorSystem actorSystem() {
-        log.info("初始化 Actor 系统（线程池大小: 5）...");
-        return new MiniTbActorSystem(5);
+    public MiniTbActorSystem actorSystem(ActorSystemProperties properties) {
+        log.info("初始化 Actor 系统...");
+        ActorSystemProperties.Dispatchers dispatchers = properties.getDispatchers();
+        return new MiniTbActorSystem(List.of(
+                dispatchers.getDevice().toConfig(MiniTbActorSystem.DEVICE_DISPATCHER),
+                dispatchers.getRuleEngine().toConfig(MiniTbActorSystem.RULE_ENGINE_DISPATCHER),
+                dispatchers.getRuleChain().toConfig(MiniTbActorSystem.RULE_CHAIN_DISPATCHER),
+                dispatchers.getSystem().toConfig(MiniTbActorSystem.SYSTEM_DISPATCHER)));
     }
     
     /**
@@ -52,7 +115,8 @@ public class MiniTBConfiguration {
             TelemetryStorage storage, 
             MiniTbActorSystem actorSystem,
             AlarmEvaluator alarmEvaluator,
-            DeviceService deviceService) {
+            DeviceService deviceService,
+            ObjectProvider<TelemetryWriteBehind> telemetryWriteBehind) {
         log.info("初始化规则引擎服务...");
         RuleEngineService service = new RuleEngineService();
         
@@ -65,7 +129,7 @@ public class MiniTBConfiguration {
                 .addNode(new LogNode("入口日志"))
                 .addNode(new FilterNode("temperature", 20.0))
                 .addNode(new LogNode("过滤后日志"))
-                .addNode(new SaveTelemetryNode(storage))
+                .addNode(new SaveTelemetryNode(storage, telemetryWriteBehind.getIfAvailable()))
                 .addNode(new AlarmEvaluatorNode(alarmEvaluator, deviceService))  // ⭐ 添加告警评估节点
                 .addNode(new LogNode("保存完成"));
         
@@ -0,0 +1,157 @@
+package com.minitb.configuration;
+
+import com.minitb.storage.TelemetryStorageConfig;
+import com.minitb.storage.WalFsyncPolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 遥测数据存储配置（minitb.telemetry.*），时长均为毫秒、大小均为字节，默认值与 application.yml 一致
+ * 快照间隔和压缩整理由各自的定时任务读取，不在这里
+ */
+@Data
+@ConfigurationProperties(prefix = "minitb.telemetry")
+public class TelemetryStorageProperties {
+
+    private Wal wal = new Wal();
+    private Snapshot snapshot = new Snapshot();
+    private History history = new History();
+    private OffHeap offHeap = new OffHeap();
+
+    /**
+     * 内存预算，0 表示不限制
+     */
+    private long memoryBudget = 0;
+
+    private ColdTier coldTier = new ColdTier();
+    private Retention retention = new Retention();
+    private Rollup rollup = new Rollup();
+    private RingBuffer ringBuffer = new RingBuffer();
+    private FleetQuery fleetQuery = new FleetQuery();
+    private WriteBehind writeBehind = new WriteBehind();
+
+    @Data
+    public static class Wal {
+        private boolean enabled = true;
+        private String dir = "data/telemetry-wal";
+        private long segmentSize = 64L * 1024 * 1024;
+
+        /**
+         * 刷盘策略: none | interval | every-batch
+         */
+        private String fsync = "interval";
+        private long fsyncInterval = 1000;
+    }
+
+    @Data
+    public static class Snapshot {
+        private boolean enabled = true;
+        private String dir = "data/telemetry-snapshot";
+        private int retained = 2;
+    }
+
+    @Data
+    public static class History {
+
+        /**
+         * 是否写入历史数据仓储（SQLite 存储模式下可用）
+         */
+        private boolean enabled = true;
+        private long retention = 2_592_000_000L;
+        private int bufferCapacity = 65536;
+        private int flushSize = 1000;
+        private long linger = 100;
+    }
+
+    @Data
+    public static class OffHeap {
+        private boolean enabled = false;
+        private int slabSize = 4 * 1024 * 1024;
+        private long maxSize = 1024L * 1024 * 1024;
+    }
+
+    @Data
+    public static class ColdTier {
+        private boolean enabled = false;
+        private String dir = "data/telemetry-cold";
+        private long after = 21_600_000L;
+    }
+
+    @Data
+    public static class Retention {
+        private long raw = 86_400_000L;
+        private long rollup = 2_592_000_000L;
+    }
+
+    @Data
+    public static class Rollup {
+        private List<Long> intervals = new ArrayList<>(List.of(60_000L, 3_600_000L));
+        private boolean sketches = true;
+    }
+
+    @Data
+    public static class RingBuffer {
+
+        /**
+         * TelemetryDefinition 未指定 ringCapacity 时的环形缓冲区容量（数据点数）
+         */
+        private int defaultCapacity = 600;
+    }
+
+    @Data
+    public static class FleetQuery {
+
+        /**
+         * 0 表示 CPU 核数
+         */
+        private int parallelism = 0;
+    }
+
+    /**
+     * 规则链的异步批量写入（TelemetryWriteBehind），enabled 由 @ConditionalOnProperty 判断
+     */
+    @Data
+    public static class WriteBehind {
+        private boolean enabled = true;
+
+        /**
+         * 缓冲区容量（消息数），满时阻塞规则链
+         */
+        private int capacity = 65536;
+        private int threads = 1;
+        private int flushSize = 1000;
+        private long linger = 20;
+    }
+
+    TelemetryStorageConfig toConfig() {
+        return TelemetryStorageConfig.builder()
+                .walEnabled(wal.isEnabled())
+                .walDir(wal.getDir())
+                .walSegmentBytes(wal.getSegmentSize())
+                .walFsyncPolicy(WalFsyncPolicy.parse(wal.getFsync()))
+                .walFsyncIntervalMs(wal.getFsyncInterval())
+                .snapshotEnabled(snapshot.isEnabled())
+                .snapshotDir(snapshot.getDir())
+                .snapshotRetained(snapshot.getRetained())
+                .offHeapEnabled(offHeap.isEnabled())
+                .offHeapSlabBytes(offHeap.getSlabSize())
+                .offHeapMaxBytes(offHeap.getMaxSize())
+                .memoryBudgetBytes(memoryBudget)
+                .coldTierEnabled(coldTier.isEnabled())
+                .coldTierDir(coldTier.getDir())
+                .coldAfterMs(coldTier.getAfter())
+                .historyRetentionMs(history.getRetention())
+                .historyBufferCapacity(history.getBufferCapacity())
+                .historyFlushSize(history.getFlushSize())
+                .historyLingerMs(history.getLinger())
+                .rawRetentionMs(retention.getRaw())
+                .rollupRetentionMs(retention.getRollup())
+                .rollupIntervalsMs(rollup.getIntervals())
+                .rollupSketchesEnabled(rollup.isSketches())
+                .fleetQueryParallelism(fleetQuery.getParallelism())
+                .build();
+    }
+}
@@ -7,6 +7,7 @@ import com.minitb.domain.device.DeviceProfile;
 import com.minitb.domain.device.IpmiDeviceConfiguration;
 import com.minitb.domain.device.TelemetryDefinition;
 import com.minitb.domain.protocol.IpmiConfig;
+import com.minitb.infrastructure.transport.service.TransportResult;
 import com.minitb.infrastructure.transport.service.TransportService;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -19,6 +20,7 @@ import org.springframework.stereotype.Component;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -47,6 +49,14 @@ public class IpmiDataPuller {
     private final TransportService transportService;
     private final ObjectMapper objectMapper = new ObjectMapper();
     
+    /**
+     * 设备 Actor 邮箱已满时，一次上报最多等待的时间（毫秒）
+     */
+    private static final long SUBMIT_TIMEOUT_MS = 1000;
+    
+    // 未被接收而丢弃的数据点数（邮箱已满重试超时、认证失败等）
+    private final LongAdder rejectedPoints = new LongAdder();
+    
     // 解析 ipmitool sensor list 输出的正则表达式
     // 格式: CPU0_TEMP        | 30.000     | degrees C  | ok    | ...
     private static final Pattern SENSOR_PATTERN = Pattern.compile(
@@ -77,6 +87,7 @@ public class IpmiDataPuller {
             // 2. 对每个设备拉取数据
             int successCount = 0;
             int failCount = 0;
+            long rejectedBefore = rejectedPoints.sum();
             
             for (Device device : ipmiDevices) {
                 try {
@@ -88,7 +99,8 @@ public class IpmiDataPuller {
                 }
             }
             
-            log.info("✅ IPMI 数据拉取完成: 成功 {}, 失败 {}", successCount, failCount);
+            log.info("✅ IPMI 数据拉取完成: 成功 {}, 失败 {}, 未被接收的数据点 {}",
+                    successCount, failCount, rejectedPoints.sum() - rejectedBefore);
             
         } catch (Exception e) {
             log.error("IPMI 数据拉取整体失败", e);
@@ -181,7 +193,20 @@ public class IpmiDataPuller {
         log.debug("📤 设备 {} 拉取到 {} 个指标，调用 processTelemetry", 
                  device.getName(), telemetryData.size());
         
-        transportService.processTelemetry(device.getAccessToken(), json);
+        // 邮箱已满时重试，积压时减速
+        TransportResult result = transportService.processTelemetryWithRetry(
+                device.getAccessToken(), json, SUBMIT_TIMEOUT_MS);
+        if (!result.isAccepted()) {
+            rejectedPoints.add(telemetryData.size());
+            log.warn("设备 {} 的 {} 个指标未被接收（{}），已丢弃", device.getName(), telemetryData.size(), result);
+        }
+    }
+    
+    /**
+     * 累计未被接收而丢弃的数据点数
+     */
+    public long getRejectedPoints() {
+        return rejectedPoints.sum();
     }
     
     /**
@@ -10,6 +10,7 @@ import com.minitb.domain.device.DeviceProfile;
 import com.minitb.domain.device.PrometheusDeviceConfiguration;
 import com.minitb.domain.device.TelemetryDefinition;
 import com.minitb.domain.protocol.PrometheusConfig;
+import com.minitb.infrastructure.transport.service.TransportResult;
 import com.minitb.infrastructure.transport.service.TransportService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,6 +23,7 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -48,6 +50,14 @@ public class PrometheusDataPuller {
     private final HttpClient httpClient = HttpClient.newHttpClient();
     private final Gson gson = new Gson();
     
+    /**
+     * 设备 Actor 邮箱已满时，一次上报最多等待的时间（毫秒）
+     */
+    private static final long SUBMIT_TIMEOUT_MS = 1000;
+    
+    // 未被接收而丢弃的数据点数（邮箱已满重试超时、认证失败等）
+    private final LongAdder rejectedPoints = new LongAdder();
+    
     /**
      * 定时拉取所有 Prometheus 设备的数据
      * 拉取间隔和延迟时间从配置文件读取: minitb.datasource.prometheus.pull-interval 和 initial-delay
@@ -71,6 +81,7 @@ public class PrometheusDataPuller {
             // 2. 对每个设备拉取数据
             int successCount = 0;
             int failCount = 0;
+            long rejectedBefore = rejectedPoints.sum();
             
             for (Device device : prometheusDevices) {
                 try {
@@ -82,13 +93,21 @@ public class PrometheusDataPuller {
                 }
             }
             
-            log.info("✅ Prometheus 数据拉取完成: 成功 {}, 失败 {}", successCount, failCount);
+            log.info("✅ Prometheus 数据拉取完成: 成功 {}, 失败 {}, 未被接收的数据点 {}",
+                    successCount, failCount, rejectedPoints.sum() - rejectedBefore);
             
         } catch (Exception e) {
             log.error("Prometheus 数据拉取整体失败", e);
         }
     }
     
+    /**
+     * 累计未被接收而丢弃的数据点数
+     */
+    public long getRejectedPoints() {
+        return rejectedPoints.sum();
+    }
+    
     /**
      * 拉取单个设备的指标数据
      */
@@ -186,11 +205,16 @@ public class PrometheusDataPuller {
                 device.getName(), telemetryData.size());
             
             // ✅ 关键：使用 Device 的 AccessToken 调用 processTelemetry
-            // 这样数据就能通过统一流程关联到设备
-            transportService.processTelemetry(
+            // 这样数据就能通过统一流程关联到设备（邮箱已满时重试，积压时减速）
+            TransportResult result = transportService.processTelemetryWithRetry(
                 device.getAccessToken(),  // ← 通过 Token 关联设备！
-                telemetryJson
+                telemetryJson,
+                SUBMIT_TIMEOUT_MS
             );
+            if (!result.isAccepted()) {
+                rejectedPoints.add(telemetryData.size());
+                log.warn("设备 {} 的 {} 个指标未被接收（{}），已丢弃", device.getName(), telemetryData.size(), result);
+            }
         } else {
             log.debug("设备 {} 没有拉取到任何数据", device.getName());
         }
@@ -105,6 +105,12 @@ public class DeviceProfile {
      */
     private String prometheusDeviceLabelKey;
     
+    /**
+     * 遥测数据保留策略（可选）
+     * 为 null 时使用全局保留配置
+     */
+    private TelemetryRetentionPolicy retentionPolicy;
+    
     /**
      * 创建时间
      */
@@ -144,6 +150,18 @@ public class DeviceProfile {
                 .anyMatch(def -> def.getKey().equals(key));
     }
     
+    /**
+     * 查找指定键的遥测定义
+     */
+    public Optional<TelemetryDefinition> findTelemetryDefinition(String key) {
+        if (telemetryDefinitions == null) {
+            return Optional.empty();
+        }
+        return telemetryDefinitions.stream()
+                .filter(def -> key.equals(def.getKey()))
+                .findFirst();
+    }
+    
     /**
      * 检查是否包含指定的遥测定义
      */
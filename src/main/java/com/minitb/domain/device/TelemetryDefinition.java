@@ -64,6 +64,17 @@ public class TelemetryDefinition {
      */
     private ProtocolConfig protocolConfig;
     
+    /**
+     * 存储模式（可选），为 null 时使用完整时间序列（SERIES）
+     */
+    private TelemetryStorageMode storageMode;
+    
+    /**
+     * 环形缓冲区容量（数据点数，仅 RING 模式），为 null 时使用全局默认值
+     * 例如每秒采集一次、仪表盘只看最近 60 秒时设为 60 以上
+     */
+    private Integer ringCapacity;
+    
     // ==================== 便捷方法 ====================
     
     /**
@@ -108,6 +119,13 @@ public class TelemetryDefinition {
         return isHttp() ? (HttpConfig) protocolConfig : null;
     }
     
+    /**
+     * 判断是否使用环形缓冲区存储
+     */
+    public boolean isRingBuffer() {
+        return storageMode == TelemetryStorageMode.RING;
+    }
+    
     /**
      * 获取协议类型名称
      */
@@ -0,0 +1,34 @@
+package com.minitb.domain.device;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 遥测数据保留策略
+ *
+ * 挂在 DeviceProfile 上，覆盖全局默认值：
+ * - 字段为 null 时使用全局配置（minitb.telemetry.retention.*）
+ * - 值 <= 0 表示永久保留
+ *
+ * 例如：原始数据保留 24 小时，汇总数据保留 30 天
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TelemetryRetentionPolicy {
+
+    /**
+     * 原始数据保留时长（毫秒）
+     */
+    private Long rawRetentionMs;
+
+    /**
+     * 汇总数据（1 分钟 / 1 小时等汇总桶）保留时长（毫秒）
+     */
+    private Long rollupRetentionMs;
+}
@@ -0,0 +1,17 @@
+package com.minitb.domain.device;
+
+/**
+ * 遥测数据存储模式（按遥测键配置，见 TelemetryDefinition）
+ */
+public enum TelemetryStorageMode {
+    /**
+     * 完整时间序列：数据块、压缩、汇总桶、保留策略
+     */
+    SERIES,
+
+    /**
+     * 最近 N 个数据点的定长环形缓冲区：内存恒定，不维护汇总桶，
+     * 适合只看最近一段时间的仪表盘指标
+     */
+    RING
+}
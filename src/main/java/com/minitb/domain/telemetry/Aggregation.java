@@ -0,0 +1,54 @@
+package com.minitb.domain.telemetry;
+
+/**
+ * 聚合函数枚举
+ * 用于按时间间隔聚合数值型遥测数据（DOUBLE / LONG）
+ * 分位数（P50/P90/P95/P99）由汇总桶的分位数草图合并得出，相对误差约 1%
+ */
+public enum Aggregation {
+    AVG,        // 平均值
+    MIN,        // 最小值
+    MAX,        // 最大值
+    SUM,        // 求和
+    COUNT,      // 数据点数
+    LAST,       // 间隔内最新的值
+    P50(0.50),  // 中位数
+    P90(0.90),  // 90 分位
+    P95(0.95),  // 95 分位
+    P99(0.99);  // 99 分位
+
+    private final double quantile;
+
+    Aggregation() {
+        this(Double.NaN);
+    }
+
+    Aggregation(double quantile) {
+        this.quantile = quantile;
+    }
+
+    /**
+     * 是否为分位数聚合
+     */
+    public boolean isPercentile() {
+        return !Double.isNaN(quantile);
+    }
+
+    /**
+     * 分位数（0 ~ 1），非分位数聚合返回 NaN
+     */
+    public double getQuantile() {
+        return quantile;
+    }
+
+    /**
+     * 解析聚合函数名称（不区分大小写）
+     */
+    public static Aggregation parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的聚合函数: " + name);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.minitb.domain.telemetry;
+
+import com.minitb.domain.id.DeviceId;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 遥测数据仓储接口（Port）
+ *
+ * 遵循六边形架构，领域层定义接口，基础设施层实现
+ * 内存中的 TelemetryStorage 负责近期数据，仓储负责持久化的历史数据
+ */
+public interface TelemetryRepository {
+
+    /**
+     * 批量保存遥测数据（一次刷写，在一个事务内完成）
+     * 同一设备、键、时间戳的数据点覆盖已有记录
+     *
+     * @param entries 设备ID -> 数据点列表
+     */
+    void saveAll(Map<DeviceId, List<TsKvEntry>> entries);
+
+    /**
+     * 查询设备特定键在时间范围内的数据
+     *
+     * @param startTs 开始时间（毫秒，包含）
+     * @param endTs 结束时间（毫秒，包含）
+     * @return 数据点列表（按 ts 升序）
+     */
+    List<TsKvEntry> findByKey(DeviceId deviceId, String key, long startTs, long endTs);
+
+    /**
+     * 查询设备特定键在时间范围内最早的 limit 个数据点（分页读取）
+     * 默认实现截取 findByKey 的结果，适配器可下推到查询语句
+     *
+     * @return 数据点列表（按 ts 升序，最多 limit 个）
+     */
+    default List<TsKvEntry> findByKey(DeviceId deviceId, String key, long startTs, long endTs, int limit) {
+        List<TsKvEntry> all = findByKey(deviceId, key, startTs, endTs);
+        return all.size() > limit ? all.subList(0, limit) : all;
+    }
+
+    /**
+     * 删除早于指定时间的数据
+     *
+     * @return 删除的数据点数
+     */
+    long deleteOlderThan(long ts);
+}
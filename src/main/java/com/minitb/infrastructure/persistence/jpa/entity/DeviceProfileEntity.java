@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.minitb.domain.device.DeviceProfile;
 import com.minitb.domain.device.TelemetryDefinition;
+import com.minitb.domain.device.TelemetryRetentionPolicy;
 import com.minitb.domain.id.DeviceProfileId;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -84,6 +85,12 @@ public class DeviceProfileEntity {
     @Column(name = "prometheus_device_label_key", length = 100)
     private String prometheusDeviceLabelKey;
     
+    /**
+     * 遥测数据保留策略（JSON 格式存储，可选）
+     */
+    @Column(name = "retention_policy", columnDefinition = "TEXT")
+    private String retentionPolicyJson;
+    
     /**
      * 创建时间
      */
@@ -116,6 +123,15 @@ public class DeviceProfileEntity {
             builder.telemetryDefinitionsJson("[]");
         }
         
+        // 序列化保留策略为 JSON
+        if (profile.getRetentionPolicy() != null) {
+            try {
+                builder.retentionPolicyJson(OBJECT_MAPPER.writeValueAsString(profile.getRetentionPolicy()));
+            } catch (JsonProcessingException e) {
+                log.error("序列化保留策略失败", e);
+            }
+        }
+        
         return builder.build();
     }
     
@@ -150,6 +166,15 @@ public class DeviceProfileEntity {
             builder.telemetryDefinitions(new ArrayList<>());
         }
         
+        // 反序列化保留策略
+        if (retentionPolicyJson != null && !retentionPolicyJson.isEmpty()) {
+            try {
+                builder.retentionPolicy(OBJECT_MAPPER.readValue(retentionPolicyJson, TelemetryRetentionPolicy.class));
+            } catch (JsonProcessingException e) {
+                log.error("反序列化保留策略失败: {}", retentionPolicyJson, e);
+            }
+        }
+        
         return builder.build();
     }
 }
@@ -128,6 +128,7 @@ public class HikariCpSqliteConnectionManager implements DatabaseConnectionManage
                 prometheus_device_label_key TEXT,
                 default_rule_chain_id TEXT,
                 default_queue_name TEXT,
+                retention_policy_json TEXT,
                 created_time INTEGER,
                 updated_time INTEGER,
                 UNIQUE(name)
@@ -194,6 +195,7 @@ public class HikariCpSqliteConnectionManager implements DatabaseConnectionManage
         
         try (Statement stmt = conn.createStatement()) {
             stmt.execute(createDeviceProfileTable);
+            SqliteSchema.addColumnIfMissing(conn, "device_profile", "retention_policy_json", "TEXT");
             log.info("✓ device_profile 表已就绪");
             
             stmt.execute(createDeviceTable);
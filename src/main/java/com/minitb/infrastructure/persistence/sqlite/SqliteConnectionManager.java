@@ -95,6 +95,19 @@ public class SqliteConnectionManager {
         }
     }
     
+    /**
+     * 创建一个独立的数据库连接（调用方负责关闭）
+     * 用于需要独占事务的组件（如遥测批量写入），避免在共享连接上切换自动提交
+     */
+    public Connection openConnection() {
+        try {
+            return createConnection();
+        } catch (SQLException e) {
+            log.error("创建 SQLite 连接失败", e);
+            throw new RuntimeException("Failed to open SQLite connection", e);
+        }
+    }
+    
     /**
      * 创建表结构（如果不存在）
      */
@@ -115,6 +128,7 @@ public class SqliteConnectionManager {
                 prometheus_device_label_key TEXT,
                 default_rule_chain_id TEXT,
                 default_queue_name TEXT,
+                retention_policy_json TEXT,
                 created_time INTEGER,
                 updated_time INTEGER,
                 UNIQUE(name)
@@ -157,6 +171,7 @@ public class SqliteConnectionManager {
         
         try (Statement stmt = connection.createStatement()) {
             stmt.execute(createDeviceProfileTable);
+            SqliteSchema.addColumnIfMissing(connection, "device_profile", "retention_policy_json", "TEXT");
             log.info("✓ device_profile 表已就绪");
             
             stmt.execute(createDeviceTable);
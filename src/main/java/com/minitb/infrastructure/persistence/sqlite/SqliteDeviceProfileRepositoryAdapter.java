@@ -42,9 +42,9 @@ public class SqliteDeviceProfileRepositoryAdapter implements DeviceProfileReposi
             INSERT OR REPLACE INTO device_profile 
             (id, name, description, telemetry_definitions_json, alarm_rules_json, strict_mode,
              data_source_type, prometheus_endpoint, prometheus_device_label_key,
-             default_rule_chain_id, default_queue_name,
+             default_rule_chain_id, default_queue_name, retention_policy_json,
              created_time, updated_time)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
         """;
         
         Connection conn = connectionManager.getConnection();
@@ -73,8 +73,12 @@ public class SqliteDeviceProfileRepositoryAdapter implements DeviceProfileReposi
                 profile.getDefaultRuleChainId().toString() : null);
             stmt.setString(11, profile.getDefaultQueueName());
             
-            stmt.setLong(12, profile.getCreatedTime());
-            stmt.setLong(13, System.currentTimeMillis());
+            // 序列化保留策略为 JSON
+            stmt.setString(12, profile.getRetentionPolicy() != null ?
+                objectMapper.writeValueAsString(profile.getRetentionPolicy()) : null);
+            
+            stmt.setLong(13, profile.getCreatedTime());
+            stmt.setLong(14, System.currentTimeMillis());
             
             int affected = stmt.executeUpdate();
             log.debug("DeviceProfile saved, affected rows: {}", affected);
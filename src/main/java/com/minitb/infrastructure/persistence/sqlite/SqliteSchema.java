@@ -0,0 +1,36 @@
+package com.minitb.infrastructure.persistence.sqlite;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * SQLite 表结构迁移工具（两种连接管理器共用）
+ */
+@Slf4j
+final class SqliteSchema {
+
+    private SqliteSchema() {
+    }
+
+    /**
+     * 为旧版本创建的表补充新增列（CREATE TABLE IF NOT EXISTS 不会修改已有表）
+     */
+    static void addColumnIfMissing(Connection conn, String table, String column, String type) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+            log.info("✓ {} 表已添加列 {}", table, column);
+        }
+    }
+}
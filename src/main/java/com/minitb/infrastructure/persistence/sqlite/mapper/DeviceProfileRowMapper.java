@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.minitb.domain.alarm.AlarmRule;
 import com.minitb.domain.device.DeviceProfile;
 import com.minitb.domain.device.TelemetryDefinition;
+import com.minitb.domain.device.TelemetryRetentionPolicy;
 import com.minitb.domain.id.DeviceProfileId;
 import com.minitb.domain.id.RuleChainId;
 import lombok.extern.slf4j.Slf4j;
@@ -67,6 +68,9 @@ public class DeviceProfileRowMapper {
         }
         builder.defaultQueueName(rs.getString("default_queue_name"));
         
+        // 解析保留策略 JSON
+        builder.retentionPolicy(parseRetentionPolicy(rs.getString("retention_policy_json")));
+        
         return builder.build();
     }
     
@@ -86,6 +90,22 @@ public class DeviceProfileRowMapper {
         }
     }
     
+    /**
+     * 解析保留策略 JSON
+     */
+    private TelemetryRetentionPolicy parseRetentionPolicy(String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        
+        try {
+            return objectMapper.readValue(json, TelemetryRetentionPolicy.class);
+        } catch (Exception e) {
+            log.error("解析保留策略 JSON 失败: {}", json, e);
+            return null;
+        }
+    }
+    
     /**
      * 解析告警规则 JSON
      */
@@ -0,0 +1,339 @@
+package com.minitb.infrastructure.persistence.sqlite.telemetry;
+
+import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.telemetry.*;
+import com.minitb.infrastructure.persistence.sqlite.SqliteConnectionManager;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SQLite 遥测仓储适配器
+ *
+ * 表结构：
+ * - ts_kv_dictionary: 键名 -> 整数 key_id，ts_kv 中不重复存储键名
+ * - ts_kv: 主键 (device_id, key_id, ts)，WITHOUT ROWID 按主键聚簇存储，范围查询按序读取
+ *
+ * 写入：
+ * - 每次刷写在独立连接上开启一个事务，所有数据点通过多行 INSERT 预编译语句批量写入
+ * - 独立连接避免在共享连接上切换自动提交，影响设备、告警等其他仓储
+ */
+@Component
+@ConditionalOnProperty(name = "minitb.storage.type", havingValue = "sqlite", matchIfMissing = true)
+@Slf4j
+public class SqliteTelemetryRepositoryAdapter implements TelemetryRepository {
+
+    /**
+     * 每条 INSERT 语句的行数（8 个参数/行，低于 SQLite 默认的 999 参数上限）
+     */
+    private static final int ROWS_PER_STATEMENT = 100;
+    private static final int COLUMNS = 8;
+
+    private final SqliteConnectionManager connectionManager;
+    private final Map<String, Integer> keyIds = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private Connection writeConnection;
+
+    public SqliteTelemetryRepositoryAdapter(SqliteConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+        initTable();
+    }
+
+    /**
+     * 初始化遥测表
+     */
+    private void initTable() {
+        String sql = """
+            CREATE TABLE IF NOT EXISTS ts_kv_dictionary (
+                key_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                key TEXT NOT NULL UNIQUE
+            );
+
+            CREATE TABLE IF NOT EXISTS ts_kv (
+                device_id TEXT NOT NULL,
+                key_id INTEGER NOT NULL,
+                ts INTEGER NOT NULL,
+                data_type TEXT NOT NULL,
+                bool_v INTEGER,
+                long_v INTEGER,
+                dbl_v REAL,
+                str_v TEXT,
+                PRIMARY KEY (device_id, key_id, ts)
+            ) WITHOUT ROWID;
+
+            CREATE INDEX IF NOT EXISTS idx_ts_kv_ts ON ts_kv(ts);
+            """;
+
+        Connection conn = connectionManager.getConnection();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql);
+            log.debug("遥测表初始化完成");
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to initialize ts_kv table", e);
+        }
+    }
+
+    @Override
+    public void saveAll(Map<DeviceId, List<TsKvEntry>> entries) {
+        int total = entries.values().stream().mapToInt(List::size).sum();
+        if (total == 0) {
+            return;
+        }
+
+        synchronized (writeLock) {
+            Connection conn = getWriteConnection();
+            try {
+                conn.setAutoCommit(false);
+                List<Row> rows = new ArrayList<>(total);
+                Map<String, Integer> createdKeys = new HashMap<>();
+                for (Map.Entry<DeviceId, List<TsKvEntry>> device : entries.entrySet()) {
+                    String deviceId = device.getKey().toString();
+                    for (TsKvEntry entry : device.getValue()) {
+                        rows.add(new Row(deviceId, getOrCreateKeyId(conn, entry.getKey(), createdKeys), entry));
+                    }
+                }
+
+                // 整批使用同一条预编译语句，最后不足一批的部分单独编译一次
+                int full = total / ROWS_PER_STATEMENT * ROWS_PER_STATEMENT;
+                if (full > 0) {
+                    try (PreparedStatement ps = conn.prepareStatement(insertSql(ROWS_PER_STATEMENT))) {
+                        for (int from = 0; from < full; from += ROWS_PER_STATEMENT) {
+                            bindRows(ps, rows, from, ROWS_PER_STATEMENT);
+                            ps.executeUpdate();
+                        }
+                    }
+                }
+                if (full < total) {
+                    try (PreparedStatement ps = conn.prepareStatement(insertSql(total - full))) {
+                        bindRows(ps, rows, full, total - full);
+                        ps.executeUpdate();
+                    }
+                }
+
+                conn.commit();
+                // 事务提交后才缓存新键，回滚时不会留下无效的 key_id
+                keyIds.putAll(createdKeys);
+                log.debug("遥测数据写入 SQLite: {} 条", total);
+            } catch (SQLException e) {
+                rollback(conn);
+                throw new RuntimeException("Failed to save telemetry", e);
+            } finally {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    log.warn("恢复自动提交失败", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<TsKvEntry> findByKey(DeviceId deviceId, String key, long startTs, long endTs) {
+        return findByKey(deviceId, key, startTs, endTs, -1);
+    }
+
+    /**
+     * limit < 0 时不限制行数（SQLite 中 LIMIT -1 表示无上限）
+     */
+    @Override
+    public List<TsKvEntry> findByKey(DeviceId deviceId, String key, long startTs, long endTs, int limit) {
+        List<TsKvEntry> result = new ArrayList<>();
+        Integer keyId = findKeyId(key);
+        if (keyId == null) {
+            return result;
+        }
+
+        String sql = """
+            SELECT ts, data_type, bool_v, long_v, dbl_v, str_v FROM ts_kv
+            WHERE device_id = ? AND key_id = ? AND ts >= ? AND ts <= ?
+            ORDER BY ts
+            LIMIT ?
+            """;
+
+        Connection conn = connectionManager.getConnection();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setString(1, deviceId.toString());
+            ps.setInt(2, keyId);
+            ps.setLong(3, startTs);
+            ps.setLong(4, endTs);
+            ps.setInt(5, limit);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(mapRow(rs, key));
+                }
+            }
+            return result;
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to query telemetry", e);
+        }
+    }
+
+    @Override
+    public long deleteOlderThan(long ts) {
+        String sql = "DELETE FROM ts_kv WHERE ts < ?";
+
+        synchronized (writeLock) {
+            try (PreparedStatement ps = getWriteConnection().prepareStatement(sql)) {
+                ps.setLong(1, ts);
+                return ps.executeUpdate();
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to delete telemetry", e);
+            }
+        }
+    }
+
+    /**
+     * 关闭写入连接
+     */
+    @PreDestroy
+    public void cleanup() {
+        synchronized (writeLock) {
+            if (writeConnection != null) {
+                try {
+                    writeConnection.close();
+                } catch (SQLException e) {
+                    log.error("关闭遥测写入连接失败", e);
+                }
+                writeConnection = null;
+            }
+        }
+    }
+
+    /**
+     * 获取写入专用连接（调用方持有 writeLock）
+     */
+    private Connection getWriteConnection() {
+        try {
+            if (writeConnection == null || writeConnection.isClosed()) {
+                writeConnection = connectionManager.openConnection();
+            }
+            return writeConnection;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get telemetry write connection", e);
+        }
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder(
+                "INSERT OR REPLACE INTO ts_kv (device_id, key_id, ts, data_type, bool_v, long_v, dbl_v, str_v) VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    private static void bindRows(PreparedStatement ps, List<Row> rows, int from, int count) throws SQLException {
+        for (int i = 0; i < count; i++) {
+            Row row = rows.get(from + i);
+            bindRow(ps, i * COLUMNS, row.deviceId(), row.keyId(), row.entry());
+        }
+    }
+
+    private static void bindRow(PreparedStatement ps, int offset, String deviceId, int keyId, TsKvEntry entry)
+            throws SQLException {
+        ps.setString(offset + 1, deviceId);
+        ps.setInt(offset + 2, keyId);
+        ps.setLong(offset + 3, entry.getTs());
+        ps.setString(offset + 4, entry.getDataType().name());
+        ps.setObject(offset + 5, entry.getBooleanValue().map(b -> b ? 1 : 0).orElse(null));
+        ps.setObject(offset + 6, entry.getLongValue().orElse(null));
+        ps.setObject(offset + 7, entry.getDoubleValue().orElse(null));
+        ps.setString(offset + 8, entry.getDataType() == DataType.JSON
+                ? entry.getJsonValue().orElse(null)
+                : entry.getStrValue().orElse(null));
+    }
+
+    private TsKvEntry mapRow(ResultSet rs, String key) throws SQLException {
+        long ts = rs.getLong("ts");
+        DataType type = DataType.valueOf(rs.getString("data_type"));
+        KvEntry kv = switch (type) {
+            case BOOLEAN -> {
+                int value = rs.getInt("bool_v");
+                yield new BooleanDataEntry(key, rs.wasNull() ? null : value != 0);
+            }
+            case LONG -> {
+                long value = rs.getLong("long_v");
+                yield new LongDataEntry(key, rs.wasNull() ? null : value);
+            }
+            case DOUBLE -> {
+                double value = rs.getDouble("dbl_v");
+                yield new DoubleDataEntry(key, rs.wasNull() ? null : value);
+            }
+            case STRING -> new StringDataEntry(key, rs.getString("str_v"));
+            case JSON -> new JsonDataEntry(key, rs.getString("str_v"));
+        };
+        return new BasicTsKvEntry(ts, kv);
+    }
+
+    /**
+     * 获取键名对应的 key_id，不存在时在当前事务中创建（记录到 created，提交后再缓存）
+     */
+    private int getOrCreateKeyId(Connection conn, String key, Map<String, Integer> created) throws SQLException {
+        Integer cached = keyIds.get(key);
+        if (cached == null) {
+            cached = created.get(key);
+        }
+        if (cached != null) {
+            return cached;
+        }
+        try (PreparedStatement ps = conn.prepareStatement("INSERT OR IGNORE INTO ts_kv_dictionary (key) VALUES (?)")) {
+            ps.setString(1, key);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement("SELECT key_id FROM ts_kv_dictionary WHERE key = ?")) {
+            ps.setString(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                int keyId = rs.getInt(1);
+                created.put(key, keyId);
+                return keyId;
+            }
+        }
+    }
+
+    /**
+     * 查找键名对应的 key_id，不存在时返回 null
+     */
+    private Integer findKeyId(String key) {
+        Integer cached = keyIds.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        Connection conn = connectionManager.getConnection();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT key_id FROM ts_kv_dictionary WHERE key = ?")) {
+            ps.setString(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                int keyId = rs.getInt(1);
+                keyIds.put(key, keyId);
+                return keyId;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to find telemetry key", e);
+        }
+    }
+
+    private void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            log.error("遥测写入回滚失败", e);
+        }
+    }
+
+    private record Row(String deviceId, int keyId, TsKvEntry entry) {
+    }
+}
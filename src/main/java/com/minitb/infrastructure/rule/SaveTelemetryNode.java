@@ -6,21 +6,29 @@ import com.minitb.domain.rule.RuleNode;
 import com.minitb.domain.rule.RuleNodeConfig;
 import com.minitb.domain.rule.RuleNodeContext;
 import com.minitb.storage.TelemetryStorage;
+import com.minitb.storage.TelemetryWriteBehind;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * 保存遥测数据节点 - 将数据持久化到存储
+ * 配置了 TelemetryWriteBehind 时强类型数据交给异步写入线程批量写入，Actor 线程不等待 I/O
  */
 @Slf4j
 public class SaveTelemetryNode implements RuleNode {
     
     private final RuleNodeId id;
     private final TelemetryStorage storage;
+    private final TelemetryWriteBehind writer;
     private RuleNode next;
     
     public SaveTelemetryNode(TelemetryStorage storage) {
+        this(storage, null);
+    }
+    
+    public SaveTelemetryNode(TelemetryStorage storage, TelemetryWriteBehind writer) {
         this.id = RuleNodeId.random();
         this.storage = storage;
+        this.writer = writer;
     }
 
     @Override
@@ -52,7 +60,11 @@ public class SaveTelemetryNode implements RuleNode {
     public void onMsg(Message msg, RuleNodeContext context) {
         try {
             // 优先使用强类型数据
-            if (msg.hasTsKvEntries()) {
+            if (msg.hasTsKvEntries() && writer != null) {
+                writer.submit(msg.getOriginator(), msg.getTsKvEntries());
+                log.debug("[{}] 遥测数据已提交异步写入: deviceId={}, 数据点数={}", 
+                        getName(), msg.getOriginator(), msg.getTsKvEntries().size());
+            } else if (msg.hasTsKvEntries()) {
                 storage.save(msg.getOriginator(), msg.getTsKvEntries());
                 log.debug("[{}] 保存遥测数据成功（强类型）: deviceId={}, 数据点数={}", 
                         getName(), msg.getOriginator(), msg.getTsKvEntries().size());
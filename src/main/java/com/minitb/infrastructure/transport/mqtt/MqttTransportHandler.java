@@ -1,5 +1,6 @@
 package com.minitb.infrastructure.transport.mqtt;
 
+import com.minitb.infrastructure.transport.service.TransportResult;
 import com.minitb.infrastructure.transport.service.TransportService;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
@@ -8,16 +9,26 @@ import io.netty.handler.codec.mqtt.*;
 import io.netty.util.CharsetUtil;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * MQTT传输处理器 - 核心数据流的第一层
  * 职责：
  * 1. 处理MQTT协议消息
  * 2. 设备连接管理
  * 3. 消息解析和转发
+ * 4. 背压：设备 Actor 邮箱积压时暂停读取该连接（TCP 窗口随之收缩，设备端自然减速），
+ *    设备 Actor 邮箱已满时不回复 PUBACK，QoS 1 的客户端会重发；
+ *    认证失败时断开连接，限流等无法通过重发恢复的情况照常确认并丢弃数据
  */
 @Slf4j
 public class MqttTransportHandler extends SimpleChannelInboundHandler<MqttMessage> {
     
+    /**
+     * 收到背压信号后暂停读取连接的时长（毫秒）
+     */
+    private static final long BACKPRESSURE_PAUSE_MS = 100;
+    
     private final TransportService transportService;
     private String deviceToken; // 设备令牌（从CONNECT消息的username获取）
     
@@ -85,9 +96,23 @@ public class MqttTransportHandler extends SimpleChannelInboundHandler<MqttMessag
         log.info("接收PUBLISH消息: topic={}, payload={}", topic, payloadString);
         
         // 根据topic类型处理不同的消息
+        boolean ack = true;
         if (topic.startsWith("v1/devices/me/telemetry")) {
             // 遥测数据上报
-            transportService.processTelemetry(deviceToken, payloadString);
+            TransportResult result = transportService.processTelemetry(deviceToken, payloadString);
+            switch (result) {
+                case BACKPRESSURE -> pauseReading(ctx);
+                // 邮箱已满：不确认，客户端稍后重发
+                case OVERFLOW -> ack = false;
+                case UNAUTHORIZED -> {
+                    // token 无效，重发也不会成功，断开连接
+                    log.warn("设备认证失败，断开连接: token={}", deviceToken);
+                    ctx.close();
+                    return;
+                }
+                // 限流或服务不可用：确认并丢弃，避免客户端无限重发
+                default -> { }
+            }
         } else if (topic.startsWith("v1/devices/me/attributes")) {
             // 属性数据上报
             transportService.processAttributes(deviceToken, payloadString);
@@ -95,8 +120,8 @@ public class MqttTransportHandler extends SimpleChannelInboundHandler<MqttMessag
             log.warn("不支持的topic: {}", topic);
         }
         
-        // 如果QoS > 0，需要发送PUBACK
-        if (msg.fixedHeader().qosLevel() == MqttQoS.AT_LEAST_ONCE) {
+        // 如果QoS > 0，需要发送PUBACK（仅设备 Actor 邮箱已满时不确认，客户端重发）
+        if (msg.fixedHeader().qosLevel() == MqttQoS.AT_LEAST_ONCE && ack) {
             MqttMessage pubAck = MqttMessageBuilders.pubAck()
                     .packetId(msg.variableHeader().packetId())
                     .build();
@@ -104,6 +129,19 @@ public class MqttTransportHandler extends SimpleChannelInboundHandler<MqttMessag
         }
     }
 
+    /**
+     * 暂停读取连接，BACKPRESSURE_PAUSE_MS 后恢复
+     */
+    private void pauseReading(ChannelHandlerContext ctx) {
+        if (!ctx.channel().config().isAutoRead()) {
+            return;
+        }
+        log.debug("设备 Actor 邮箱积压，暂停读取连接 {}ms: token={}", BACKPRESSURE_PAUSE_MS, deviceToken);
+        ctx.channel().config().setAutoRead(false);
+        ctx.executor().schedule(() -> ctx.channel().config().setAutoRead(true),
+                BACKPRESSURE_PAUSE_MS, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * 处理SUBSCRIBE消息
      */
@@ -0,0 +1,59 @@
+package com.minitb.infrastructure.transport.service;
+
+import com.minitb.actor.MiniTbTellResult;
+
+/**
+ * 遥测数据上报的处理结果
+ * 传输层据此决定是否确认（PUBACK）、是否让设备减速、是否重试
+ */
+public enum TransportResult {
+
+    /**
+     * 数据已进入设备 Actor 的邮箱
+     */
+    ACCEPTED,
+
+    /**
+     * 数据已进入邮箱，但邮箱积压（下游规则引擎 / 规则链处理不过来），调用方应当减速
+     */
+    BACKPRESSURE,
+
+    /**
+     * 设备 Actor 邮箱已满，数据未被接收，稍后重试可能成功
+     */
+    OVERFLOW,
+
+    /**
+     * 设备认证失败（token 无效）
+     */
+    UNAUTHORIZED,
+
+    /**
+     * 设备超过速率限制，数据被丢弃
+     */
+    RATE_LIMITED,
+
+    /**
+     * Actor 系统未初始化或设备 Actor 不存在，数据被丢弃
+     */
+    UNAVAILABLE;
+
+    /**
+     * 数据是否被接收
+     */
+    public boolean isAccepted() {
+        return this == ACCEPTED || this == BACKPRESSURE;
+    }
+
+    /**
+     * 设备 Actor 的发送结果对应的处理结果（DROPPED_OLDEST 时新数据已进入邮箱）
+     */
+    static TransportResult of(MiniTbTellResult result) {
+        return switch (result) {
+            case ACCEPTED, DROPPED_OLDEST -> ACCEPTED;
+            case BACKPRESSURE, STASHED -> BACKPRESSURE;
+            case REJECTED -> OVERFLOW;
+            case NOT_FOUND -> UNAVAILABLE;
+        };
+    }
+}
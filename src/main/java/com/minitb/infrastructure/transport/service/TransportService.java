@@ -4,6 +4,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.minitb.actor.MiniTbActorSystem;
+import com.minitb.actor.MiniTbTellResult;
 import com.minitb.actor.device.DeviceActor;
 import com.minitb.actor.msg.TransportToDeviceMsg;
 import com.minitb.actor.ruleengine.RuleEngineActor;
@@ -21,6 +22,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 传输服务 - 核心数据流的第二层
@@ -67,7 +69,7 @@ public class TransportService {
         
         // 创建规则引擎 Actor
         RuleEngineActor ruleEngineActor = new RuleEngineActor(ruleEngineService);
-        actorSystem.createActor("RuleEngineActor", ruleEngineActor);
+        actorSystem.createActor("RuleEngineActor", ruleEngineActor, MiniTbActorSystem.RULE_ENGINE_DISPATCHER);
         log.info("规则引擎 Actor 已创建");
         
         // 为数据库中的所有设备创建 DeviceActor
@@ -94,47 +96,56 @@ public class TransportService {
                 profile -> {
                     // 使用带DeviceProfile的构造函数
                     DeviceActor actor = new DeviceActor(device.getId(), device, profile);
-                    actorSystem.createActor(actor.getActorId(), actor);
+                    actorSystem.createActor(actor.getActorId(), actor, MiniTbActorSystem.DEVICE_DISPATCHER);
                     log.debug("为设备 {} 创建 DeviceActor（含Profile）: {}", device.getName(), actor.getActorId());
                 },
                 () -> {
                     // 降级：不带DeviceProfile
                     DeviceActor actor = new DeviceActor(device.getId(), device);
-                    actorSystem.createActor(actor.getActorId(), actor);
+                    actorSystem.createActor(actor.getActorId(), actor, MiniTbActorSystem.DEVICE_DISPATCHER);
                     log.debug("为设备 {} 创建 DeviceActor（无Profile）: {}", device.getName(), actor.getActorId());
                 }
             );
         } else {
             deviceActor = new DeviceActor(device.getId(), device);
-            actorSystem.createActor(deviceActor.getActorId(), deviceActor);
+            actorSystem.createActor(deviceActor.getActorId(), deviceActor, MiniTbActorSystem.DEVICE_DISPATCHER);
             log.debug("为设备 {} 创建 DeviceActor（无ProfileId）: {}", device.getName(), deviceActor.getActorId());
         }
     }
 
+    /**
+     * 拉取型数据源重试时的等待间隔（毫秒），BACKPRESSURE 时也暂停这么久
+     */
+    static final long RETRY_BACKOFF_MS = 50;
+
     /**
      * 处理遥测数据上报
      * 这是核心入口方法！通过 Actor 系统异步处理
+     * 
+     * @return 处理结果：BACKPRESSURE 表示设备 Actor 邮箱积压，调用方应当减速；
+     *         OVERFLOW 表示邮箱已满，数据未被接收，稍后可以重试；
+     *         UNAUTHORIZED / RATE_LIMITED / UNAVAILABLE 表示数据被丢弃，重试也不会成功
      */
-    public void processTelemetry(String accessToken, String telemetryJson) {
+    public TransportResult processTelemetry(String accessToken, String telemetryJson) {
         log.debug("接收到遥测数据: token={}, data={}", accessToken, telemetryJson);
         
         // 1. 设备认证
         Device device = authenticateDevice(accessToken);
         if (device == null) {
             log.warn("设备认证失败: token={}", accessToken);
-            return;
+            return TransportResult.UNAUTHORIZED;
         }
         
         // 2. 限流检查
         if (!checkRateLimit(device)) {
             log.warn("设备 {} 超过速率限制", device.getName());
-            return;
+            return TransportResult.RATE_LIMITED;
         }
         
         // 3. 通过 Actor 系统异步发送
         if (actorSystem == null) {
             log.error("Actor 系统未初始化，无法处理消息");
-            return;
+            return TransportResult.UNAVAILABLE;
         }
         
         TransportToDeviceMsg actorMsg = new TransportToDeviceMsg(
@@ -148,7 +159,47 @@ public class TransportService {
         String actorId = DeviceActor.actorIdFor(device.getId());
         
         log.debug("通过 Actor 系统发送消息: deviceId={}, actorId={}", device.getId(), actorId);
-        actorSystem.tell(actorId, actorMsg);
+        MiniTbTellResult result = actorSystem.tell(actorId, actorMsg);
+        switch (result) {
+            case BACKPRESSURE -> log.debug("设备 {} 的 Actor 邮箱积压，通知调用方减速", device.getName());
+            case DROPPED_OLDEST -> log.debug("设备 {} 的 Actor 邮箱已满，丢弃了最旧的遥测消息", device.getName());
+            case REJECTED -> log.warn("设备 {} 的 Actor 邮箱已满，遥测数据被拒绝", device.getName());
+            default -> { }
+        }
+        return TransportResult.of(result);
+    }
+
+    /**
+     * 处理遥测数据上报，供拉取型数据源（Prometheus、IPMI）使用：没有客户端可以通知减速，改为在拉取线程上等待
+     * - OVERFLOW：每 RETRY_BACKOFF_MS 重试一次，timeoutMs 后仍然失败则返回 OVERFLOW
+     * - BACKPRESSURE：数据已接收，暂停 RETRY_BACKOFF_MS 后返回，拉取随之减速
+     * 
+     * @return 最终的处理结果
+     */
+    public TransportResult processTelemetryWithRetry(String accessToken, String telemetryJson, long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        TransportResult result = processTelemetry(accessToken, telemetryJson);
+        while (result == TransportResult.OVERFLOW && System.nanoTime() - deadline < 0 && backoff()) {
+            result = processTelemetry(accessToken, telemetryJson);
+        }
+        if (result == TransportResult.BACKPRESSURE) {
+            backoff();
+        }
+        return result;
+    }
+
+    /**
+     * 等待 RETRY_BACKOFF_MS
+     * @return false 表示线程被中断，不再等待
+     */
+    private static boolean backoff() {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
     /**
@@ -181,8 +232,11 @@ public class TransportService {
             tsKvEntries
         );
         
-        // 直接调用规则引擎（简化实现）
-        ruleEngineService.processMessage(tbMsg);
+        // 直接调用规则引擎（简化实现），规则链 Actor 邮箱已满时属性数据被丢弃
+        MiniTbTellResult result = ruleEngineService.processMessage(tbMsg);
+        if (!result.isAccepted()) {
+            log.warn("设备 {} 的属性数据未被规则引擎接收: {}", device.getName(), result);
+        }
     }
 
     /**
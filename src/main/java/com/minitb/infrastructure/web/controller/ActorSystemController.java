@@ -0,0 +1,30 @@
+package com.minitb.infrastructure.web.controller;
+
+import com.minitb.actor.MiniTbActorSystem;
+import com.minitb.actor.MiniTbDispatcherStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Actor 系统 REST API
+ */
+@RestController
+@RequestMapping("/api/actors")
+@RequiredArgsConstructor
+public class ActorSystemController {
+
+    private final MiniTbActorSystem actorSystem;
+
+    /**
+     * 获取各调度器的统计（线程数、Actor 数、排队任务、利用率）
+     * GET /api/actors/dispatchers
+     */
+    @GetMapping("/dispatchers")
+    public List<MiniTbDispatcherStats> getDispatcherStats() {
+        return actorSystem.getDispatcherStats();
+    }
+}
@@ -3,13 +3,27 @@ package com.minitb.infrastructure.web.controller;
 import com.minitb.application.service.DeviceService;
 import com.minitb.domain.device.Device;
 import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.id.DeviceProfileId;
+import com.minitb.domain.telemetry.Aggregation;
 import com.minitb.domain.telemetry.TsKvEntry;
 import com.minitb.infrastructure.web.dto.LatestTelemetryDto;
 import com.minitb.infrastructure.web.dto.TelemetryDataPointDto;
+import com.minitb.infrastructure.web.dto.TelemetryPageDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.minitb.storage.LatestSnapshot;
+import com.minitb.storage.TelemetryPage;
 import com.minitb.storage.TelemetryStorage;
+import com.minitb.storage.TelemetryStorageStats;
+import com.minitb.storage.TelemetryStorageUsage;
+import com.minitb.storage.TelemetryWriteBehind;
+import com.minitb.storage.TelemetryWriteBehindStats;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -25,6 +39,18 @@ public class TelemetryController {
     
     private final DeviceService deviceService;
     private final TelemetryStorage telemetryStorage;
+    private final ObjectProvider<TelemetryWriteBehind> telemetryWriteBehind;
+    private final ObjectMapper objectMapper;
+    
+    /**
+     * 分页查询每页最多数据点数
+     */
+    private static final int MAX_PAGE_SIZE = 10_000;
+    
+    /**
+     * 流式查询每次从存储读取的数据点数
+     */
+    private static final int STREAM_PAGE_SIZE = 1_000;
     
     /**
      * 获取设备最新遥测数据
@@ -41,32 +67,22 @@ public class TelemetryController {
             throw new RuntimeException("设备不存在: " + deviceId);
         }
         
-        // 获取所有遥测键
-        Map<String, TsKvEntry> latestData = telemetryStorage.getLatestAll(devId);
+        // 最新值快照（不可变，时间戳已随快照计算好）
+        LatestSnapshot snapshot = telemetryStorage.getLatestSnapshot(devId);
         
         // 转换为简单的键值对
         Map<String, Object> telemetryMap = new HashMap<>();
-        Long latestTimestamp = null;
-        
-        for (Map.Entry<String, TsKvEntry> entry : latestData.entrySet()) {
-            TsKvEntry tsKv = entry.getValue();
-            
-            // 提取值
-            Object value = extractValue(tsKv);
+        for (Map.Entry<String, TsKvEntry> entry : snapshot.getEntries().entrySet()) {
+            Object value = extractValue(entry.getValue());
             if (value != null) {
                 telemetryMap.put(entry.getKey(), value);
             }
-            
-            // 记录最新时间戳
-            if (latestTimestamp == null || tsKv.getTs() > latestTimestamp) {
-                latestTimestamp = tsKv.getTs();
-            }
         }
         
         return LatestTelemetryDto.builder()
                 .deviceId(deviceId)
                 .deviceName(device.get().getName())
-                .timestamp(latestTimestamp)
+                .timestamp(snapshot.getTimestamp())
                 .telemetry(telemetryMap)
                 .build();
     }
@@ -75,6 +91,13 @@ public class TelemetryController {
      * 获取指定指标的历史数据
      * GET /api/telemetry/{deviceId}/history/{key}?startTime=xxx&endTime=xxx
      * 或 GET /api/telemetry/{deviceId}/history/{key}?duration=60
+     * 
+     * 聚合查询（数值型指标）：
+     * GET /api/telemetry/{deviceId}/history/{key}?duration=3600&interval=60000&agg=AVG
+     * - interval: 聚合间隔（毫秒），省略时整个时间范围聚合为一个值
+     * - agg: AVG | MIN | MAX | SUM | COUNT | LAST | P50 | P90 | P95 | P99，省略时默认 AVG
+     *        分位数由汇总桶的分位数草图合并得出，相对误差约 1%
+     * 每个间隔返回一个数据点，timestamp 为间隔起始时间
      */
     @GetMapping("/{deviceId}/history/{key}")
     public List<TelemetryDataPointDto> getHistory(
@@ -82,24 +105,24 @@ public class TelemetryController {
             @PathVariable String key,
             @RequestParam(required = false) Long startTime,
             @RequestParam(required = false) Long endTime,
-            @RequestParam(required = false, defaultValue = "60") Integer duration) {
+            @RequestParam(required = false, defaultValue = "60") Integer duration,
+            @RequestParam(required = false) Long interval,
+            @RequestParam(required = false) String agg) {
         
         DeviceId devId = DeviceId.fromString(deviceId);
+        long[] range = timeRange(startTime, endTime, duration);
+        long startTs = range[0];
+        long endTs = range[1];
+        log.debug("API: 获取历史数据: device={}, key={}, range=[{}, {}]", deviceId, key, startTs, endTs);
         
-        // 计算时间范围
-        long startTs, endTs;
-        
-        if (startTime != null && endTime != null) {
-            // 使用绝对时间
-            startTs = startTime;
-            endTs = endTime;
-            log.debug("API: 获取历史数据: device={}, key={}, startTime={}, endTime={}", 
-                     deviceId, key, startTime, endTime);
-        } else {
-            // 使用相对时间（最近 N 秒）
-            endTs = System.currentTimeMillis();
-            startTs = endTs - (duration * 1000L);
-            log.debug("API: 获取历史数据: device={}, key={}, duration={}s", deviceId, key, duration);
+        // 聚合查询
+        if (interval != null || agg != null) {
+            Aggregation aggregation = agg != null ? Aggregation.parse(agg) : Aggregation.AVG;
+            long intervalMs = interval != null ? interval : 0L;
+            log.debug("API: 聚合查询: device={}, key={}, interval={}ms, agg={}", deviceId, key, intervalMs, aggregation);
+            return telemetryStorage.query(devId, key, startTs, endTs, intervalMs, aggregation).stream()
+                    .map(point -> TelemetryDataPointDto.fromAggregatedPoint(key, point, aggregation))
+                    .collect(Collectors.toList());
         }
         
         // 查询数据
@@ -110,6 +133,124 @@ public class TelemetryController {
                 .collect(Collectors.toList());
     }
     
+    /**
+     * 分页获取指定指标的历史数据（原始数据点）
+     * GET /api/telemetry/{deviceId}/history/{key}/page?duration=86400&limit=1000
+     * GET /api/telemetry/{deviceId}/history/{key}/page?startTime=xxx&endTime=xxx&limit=1000&cursor=xxx
+     * - limit: 每页最多数据点数（1 ~ 10000），默认 1000
+     * - cursor: 上一页返回的 nextCursor，nextCursor 为 null 表示已到最后一页
+     * 翻页时 startTime/endTime 需与第一页一致（使用 duration 时请改用第一页计算出的绝对时间）
+     */
+    @GetMapping("/{deviceId}/history/{key}/page")
+    public TelemetryPageDto getHistoryPage(
+            @PathVariable String deviceId,
+            @PathVariable String key,
+            @RequestParam(required = false) Long startTime,
+            @RequestParam(required = false) Long endTime,
+            @RequestParam(required = false, defaultValue = "60") Integer duration,
+            @RequestParam(required = false, defaultValue = "1000") Integer limit,
+            @RequestParam(required = false) String cursor) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit 必须在 1 ~ " + MAX_PAGE_SIZE + " 之间");
+        }
+        long[] range = timeRange(startTime, endTime, duration);
+        log.debug("API: 分页获取历史数据: device={}, key={}, range=[{}, {}], limit={}", deviceId, key, range[0], range[1], limit);
+        
+        TelemetryPage page = telemetryStorage.queryPage(DeviceId.fromString(deviceId), key,
+                range[0], range[1], limit, cursor);
+        return TelemetryPageDto.builder()
+                .data(page.getEntries().stream()
+                        .map(TelemetryDataPointDto::fromTsKvEntry)
+                        .collect(Collectors.toList()))
+                .nextCursor(page.getNextCursor())
+                .build();
+    }
+    
+    /**
+     * 流式获取指定指标的历史数据（NDJSON，每行一个数据点）
+     * GET /api/telemetry/{deviceId}/history/{key}/stream?duration=86400
+     * 按续页令牌逐页读取（每页 STREAM_PAGE_SIZE 个数据点）再写入响应输出流，不在内存中构建完整结果列表；
+     * 写客户端时不持有存储的读保护（堆外块回收纪元），慢客户端不会阻塞数据块回收
+     */
+    @GetMapping(value = "/{deviceId}/history/{key}/stream", produces = "application/x-ndjson")
+    public StreamingResponseBody streamHistory(
+            @PathVariable String deviceId,
+            @PathVariable String key,
+            @RequestParam(required = false) Long startTime,
+            @RequestParam(required = false) Long endTime,
+            @RequestParam(required = false, defaultValue = "60") Integer duration) {
+        DeviceId devId = DeviceId.fromString(deviceId);
+        long[] range = timeRange(startTime, endTime, duration);
+        log.debug("API: 流式获取历史数据: device={}, key={}, range=[{}, {}]", deviceId, key, range[0], range[1]);
+        
+        ObjectWriter writer = objectMapper.writerFor(TelemetryDataPointDto.class);
+        return outputStream -> {
+            String cursor = null;
+            do {
+                TelemetryPage page = telemetryStorage.queryPage(devId, key, range[0], range[1], STREAM_PAGE_SIZE, cursor);
+                for (TsKvEntry entry : page.getEntries()) {
+                    outputStream.write(writer.writeValueAsBytes(TelemetryDataPointDto.fromTsKvEntry(entry)));
+                    outputStream.write('\n');
+                }
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+        };
+    }
+    
+    /**
+     * 设备群历史查询：同一指标、一组设备，服务端并行扫描，按设备分组返回
+     * GET /api/telemetry/fleet/history/{key}?profileId=xxx&duration=3600
+     * GET /api/telemetry/fleet/history/{key}?deviceIds=id1,id2&startTime=xxx&endTime=xxx
+     * 
+     * 按设备聚合（减小返回数据量）：
+     * GET /api/telemetry/fleet/history/{key}?profileId=xxx&duration=3600&agg=MAX
+     * - interval: 聚合间隔（毫秒），省略时每台设备只返回一个聚合值
+     * 返回: 设备ID -> 数据点列表，没有数据的设备不返回
+     */
+    @GetMapping("/fleet/history/{key}")
+    public Map<String, List<TelemetryDataPointDto>> getFleetHistory(
+            @PathVariable String key,
+            @RequestParam(required = false) String profileId,
+            @RequestParam(required = false) List<String> deviceIds,
+            @RequestParam(required = false) Long startTime,
+            @RequestParam(required = false) Long endTime,
+            @RequestParam(required = false, defaultValue = "60") Integer duration,
+            @RequestParam(required = false) Long interval,
+            @RequestParam(required = false) String agg) {
+        
+        List<DeviceId> targets;
+        if (profileId != null) {
+            targets = deviceService.findByDeviceProfileId(DeviceProfileId.fromString(profileId)).stream()
+                    .map(Device::getId)
+                    .collect(Collectors.toList());
+        } else if (deviceIds != null && !deviceIds.isEmpty()) {
+            targets = deviceIds.stream().map(DeviceId::fromString).collect(Collectors.toList());
+        } else {
+            throw new IllegalArgumentException("需要指定 profileId 或 deviceIds");
+        }
+        
+        long[] range = timeRange(startTime, endTime, duration);
+        long startTs = range[0];
+        long endTs = range[1];
+        log.debug("API: 设备群查询: key={}, 设备数={}, 范围=[{}, {}]", key, targets.size(), startTs, endTs);
+        
+        Map<String, List<TelemetryDataPointDto>> result = new LinkedHashMap<>();
+        if (interval != null || agg != null) {
+            Aggregation aggregation = agg != null ? Aggregation.parse(agg) : Aggregation.AVG;
+            long intervalMs = interval != null ? interval : 0L;
+            telemetryStorage.queryFleet(targets, key, startTs, endTs, intervalMs, aggregation)
+                    .forEach((deviceId, points) -> result.put(deviceId.toString(), points.stream()
+                            .map(point -> TelemetryDataPointDto.fromAggregatedPoint(key, point, aggregation))
+                            .collect(Collectors.toList())));
+        } else {
+            telemetryStorage.queryFleet(targets, key, startTs, endTs)
+                    .forEach((deviceId, entries) -> result.put(deviceId.toString(), entries.stream()
+                            .map(TelemetryDataPointDto::fromTsKvEntry)
+                            .collect(Collectors.toList())));
+        }
+        return result;
+    }
+    
     /**
      * 获取设备所有指标的最新值（简化版，用于首页卡片）
      * GET /api/telemetry/{deviceId}/summary
@@ -133,6 +274,53 @@ public class TelemetryController {
         return summary;
     }
     
+    /**
+     * 获取异步写入统计（队列深度、背压次数、刷写延迟）
+     * GET /api/telemetry/writer/stats
+     */
+    @GetMapping("/writer/stats")
+    public ResponseEntity<TelemetryWriteBehindStats> getWriterStats() {
+        TelemetryWriteBehind writer = telemetryWriteBehind.getIfAvailable();
+        if (writer == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(writer.getStats());
+    }
+    
+    /**
+     * 获取存储统计（序列数、数据块、压缩率、堆外分配器和冷数据层占用）
+     * GET /api/telemetry/storage/stats
+     */
+    @GetMapping("/storage/stats")
+    public ResponseEntity<TelemetryStorageStats> getStorageStats() {
+        return ResponseEntity.ok(telemetryStorage.getStatistics());
+    }
+    
+    /**
+     * 获取存储占用（序列数、数据点数、估算字节数、内存预算），由计数器直接读取，可高频轮询
+     * GET /api/telemetry/storage/usage
+     * GET /api/telemetry/storage/usage?deviceId=xxx
+     */
+    @GetMapping("/storage/usage")
+    public ResponseEntity<TelemetryStorageUsage> getStorageUsage(@RequestParam(required = false) String deviceId) {
+        if (deviceId == null) {
+            return ResponseEntity.ok(telemetryStorage.getUsage());
+        }
+        return ResponseEntity.ok(telemetryStorage.getUsage(DeviceId.fromString(deviceId)));
+    }
+    
+    /**
+     * 计算查询时间范围：同时给出 startTime 和 endTime 时使用绝对时间，否则为最近 duration 秒
+     * @return {startTs, endTs}
+     */
+    private static long[] timeRange(Long startTime, Long endTime, Integer duration) {
+        if (startTime != null && endTime != null) {
+            return new long[]{startTime, endTime};
+        }
+        long endTs = System.currentTimeMillis();
+        return new long[]{endTs - (duration * 1000L), endTs};
+    }
+    
     /**
      * 提取值（根据数据类型）
      */
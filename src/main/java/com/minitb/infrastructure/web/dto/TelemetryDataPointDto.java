@@ -1,6 +1,9 @@
 package com.minitb.infrastructure.web.dto;
 
+import com.minitb.domain.telemetry.Aggregation;
+import com.minitb.domain.telemetry.DataType;
 import com.minitb.domain.telemetry.TsKvEntry;
+import com.minitb.storage.AggregatedPoint;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -44,5 +47,18 @@ public class TelemetryDataPointDto {
                 .dataType(entry.getDataType().name())
                 .build();
     }
+    
+    /**
+     * 从聚合结果转换（COUNT 为 LONG，其他聚合为 DOUBLE）
+     */
+    public static TelemetryDataPointDto fromAggregatedPoint(String key, AggregatedPoint point, Aggregation aggregation) {
+        boolean isCount = aggregation == Aggregation.COUNT;
+        return TelemetryDataPointDto.builder()
+                .timestamp(point.getTs())
+                .key(key)
+                .value(isCount ? (Object) point.getCount() : (Object) point.getValue())
+                .dataType(isCount ? DataType.LONG.name() : DataType.DOUBLE.name())
+                .build();
+    }
 }
 
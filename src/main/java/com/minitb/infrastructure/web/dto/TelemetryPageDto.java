@@ -0,0 +1,21 @@
+package com.minitb.infrastructure.web.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 历史数据分页传输对象
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TelemetryPageDto {
+    
+    private List<TelemetryDataPointDto> data;    // 本页数据点（按时间升序）
+    private String nextCursor;                   // 续页令牌，没有更多数据时为 null
+}
@@ -1,6 +1,8 @@
 package com.minitb.ruleengine;
 
+import com.minitb.actor.MiniTbActorContext;
 import com.minitb.actor.MiniTbActorSystem;
+import com.minitb.actor.MiniTbTellResult;
 import com.minitb.actor.msg.ToRuleChainMsg;
 import com.minitb.actor.rulechain.RuleChainActor;
 import com.minitb.domain.id.RuleChainId;
@@ -24,6 +26,7 @@ import java.util.concurrent.Executors;
  * - 每个RuleChain有独立的RuleChainActor
  * - 消息通过Actor系统异步路由到RuleChainActor
  * - 规则链之间完全隔离，互不阻塞
+ * - 规则链 Actor 邮箱积压时，规则引擎 Actor 通过 forwardMessage 挂起自己的邮箱，背压传回上游
  */
 @Slf4j
 public class RuleEngineService {
@@ -88,30 +91,73 @@ public class RuleEngineService {
      */
     private void createRuleChainActor(RuleChainId ruleChainId, RuleChain ruleChain) {
         RuleChainActor actor = new RuleChainActor(ruleChainId, ruleChain);
-        actorSystem.createActor(RuleChainActor.actorIdFor(ruleChainId), actor);
+        actorSystem.createActor(RuleChainActor.actorIdFor(ruleChainId), actor, MiniTbActorSystem.RULE_CHAIN_DISPATCHER);
         log.info("✓ 创建RuleChainActor: {} (id: {})", ruleChain.getName(), ruleChainId);
     }
 
     /**
      * 处理消息 - 规则引擎的核心入口
-     * 这是从TransportService接收消息的地方
+     * 这是从TransportService接收消息的地方，不等待：规则链 Actor 邮箱已满时直接返回 REJECTED
+     * 
+     * @return 投递到规则链 Actor 的结果（Actor系统未设置时为 ACCEPTED）
+     */
+    public MiniTbTellResult processMessage(Message msg) {
+        return route(msg, null);
+    }
+
+    /**
+     * 处理消息，由规则引擎 Actor 调用，通过 ctx.forward 投递：规则链 Actor 邮箱积压或已满时
+     * 规则引擎 Actor 的邮箱挂起（不占用调度器线程），背压传回设备 Actor 和传输层
+     * 
+     * @param ctx 规则引擎 Actor 的上下文
+     * @return 投递到规则链 Actor 的结果
      */
-    public void processMessage(Message msg) {
+    public MiniTbTellResult forwardMessage(Message msg, MiniTbActorContext ctx) {
+        return route(msg, ctx);
+    }
+
+    /**
+     * 路由消息：Actor系统已设置时直接投递到规则链 Actor（本身就是异步处理），
+     * 否则交给线程池同步执行规则链（向后兼容）
+     * @param sender 发送方 Actor 的上下文，为 null 时直接 tell
+     */
+    private MiniTbTellResult route(Message msg, MiniTbActorContext sender) {
         log.info("规则引擎接收消息: type={}, originator={}", 
                 msg.getType(), msg.getOriginator());
         
-        // 异步处理消息（模拟真实ThingsBoard的异步处理）
-        executorService.submit(() -> {
-            try {
-                processMessageInternal(msg);
-            } catch (Exception e) {
-                log.error("处理消息异常: {}", msg.getId(), e);
-            }
-        });
+        if (actorSystem == null) {
+            // 异步处理消息（模拟真实ThingsBoard的异步处理）
+            executorService.submit(() -> {
+                try {
+                    processMessageInternal(msg);
+                } catch (Exception e) {
+                    log.error("处理消息异常: {}", msg.getId(), e);
+                }
+            });
+            return MiniTbTellResult.ACCEPTED;
+        }
+        
+        // 1. 根据消息类型和规则链ID选择规则链
+        RuleChain targetRuleChain = selectRuleChain(msg);
+        if (targetRuleChain == null) {
+            log.warn("未找到合适的规则链处理消息: {}", msg.getId());
+            return MiniTbTellResult.NOT_FOUND;
+        }
+        
+        // 2. 通过RuleChainActor处理（推荐方式）
+        RuleChainId targetRuleChainId = getRuleChainId(msg, targetRuleChain);
+        String actorId = RuleChainActor.actorIdFor(targetRuleChainId);
+        log.debug("路由消息到RuleChainActor: {} [{}]", targetRuleChain.getName(), actorId);
+        ToRuleChainMsg actorMsg = new ToRuleChainMsg(msg);
+        MiniTbTellResult result = sender != null ? sender.forward(actorId, actorMsg) : actorSystem.tell(actorId, actorMsg);
+        if (result == MiniTbTellResult.REJECTED) {
+            log.warn("规则链 {} 的 Actor 邮箱已满，消息被拒绝: {}", targetRuleChain.getName(), msg.getId());
+        }
+        return result;
     }
 
     /**
-     * 内部消息处理逻辑
+     * 内部消息处理逻辑（Actor系统未设置时的降级方案，同步执行规则链）
      */
     private void processMessageInternal(Message msg) {
         // 1. 根据消息类型和规则链ID选择规则链
@@ -122,19 +168,8 @@ public class RuleEngineService {
             return;
         }
         
-        // 2. 如果Actor系统已设置，通过RuleChainActor处理（推荐方式）
-        if (actorSystem != null) {
-            RuleChainId targetRuleChainId = getRuleChainId(msg, targetRuleChain);
-            String actorId = RuleChainActor.actorIdFor(targetRuleChainId);
-            
-            log.debug("路由消息到RuleChainActor: {} [{}]", targetRuleChain.getName(), actorId);
-            actorSystem.tell(actorId, new ToRuleChainMsg(msg));
-            
-        } else {
-            // 3. 降级方案：如果Actor系统未设置，同步处理（向后兼容）
-            log.debug("使用同步模式处理消息（Actor系统未设置）");
-            targetRuleChain.process(msg);
-        }
+        log.debug("使用同步模式处理消息（Actor系统未设置）");
+        targetRuleChain.process(msg);
     }
     
     /**
@@ -0,0 +1,22 @@
+package com.minitb.storage;
+
+import lombok.Value;
+
+/**
+ * 聚合结果 - 一个时间间隔的聚合值
+ */
+@Value
+public class AggregatedPoint {
+
+    /**
+     * 间隔起始时间（按间隔对齐；不分间隔时为查询起始时间）
+     */
+    long ts;
+
+    /**
+     * 参与聚合的数据点数
+     */
+    long count;
+
+    double value;
+}
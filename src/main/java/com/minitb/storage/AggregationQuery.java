@@ -0,0 +1,99 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.Aggregation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 聚合查询的结果收集器
+ *
+ * 查询计划由 TieredQueryPlanner 决定：各数据层按时间先后把认领范围内的数据交给同一个 AggregationQuery，
+ * 原始数据逐点 add，汇总数据层直接 merge 汇总桶（分位数聚合 merge 分位数草图）。
+ * 跨越两个数据层边界的聚合间隔由 currentBucket 在数据层之间延续，合并为一个结果点
+ *
+ * 数据按时间先后到达，结果按间隔顺序直接产出，不需要中间映射表
+ */
+final class AggregationQuery {
+
+    private final long startTs;
+    private final long endTs;
+    private final long intervalMs;
+    private final Aggregation aggregation;
+
+    private final Aggregator aggregator;
+    private final List<AggregatedPoint> result = new ArrayList<>();
+    private long currentBucket;
+    private long inputs;
+
+    /**
+     * @param intervalMs 聚合间隔，<= 0 表示整个范围聚合为一个值
+     */
+    AggregationQuery(long startTs, long endTs, long intervalMs, Aggregation aggregation) {
+        this.startTs = startTs;
+        // 结束时间包含在内，限制上界避免计算对齐边界时溢出
+        this.endTs = Math.min(endTs, Long.MAX_VALUE - 1);
+        this.intervalMs = intervalMs;
+        this.aggregation = aggregation;
+        this.aggregator = new Aggregator(aggregation.isPercentile());
+    }
+
+    long startTs() {
+        return startTs;
+    }
+
+    long endTs() {
+        return endTs;
+    }
+
+    /**
+     * 已接收的数据点数和汇总桶数
+     */
+    long inputs() {
+        return inputs;
+    }
+
+    /**
+     * 输出最后一个间隔并返回结果
+     */
+    List<AggregatedPoint> finish() {
+        flush();
+        return result;
+    }
+
+    private long bucketOf(long ts) {
+        return intervalMs > 0 ? Math.floorDiv(ts, intervalMs) * intervalMs : startTs;
+    }
+
+    void add(long ts, double value) {
+        inputs++;
+        moveTo(bucketOf(ts));
+        aggregator.add(ts, value);
+    }
+
+    void merge(RollupBucket bucket) {
+        inputs++;
+        moveTo(bucketOf(bucket.getStartTs()));
+        aggregator.merge(bucket);
+    }
+
+    void merge(long bucketStart, QuantileSketch sketch) {
+        inputs++;
+        moveTo(bucketOf(bucketStart));
+        aggregator.merge(sketch);
+    }
+
+    private void moveTo(long bucket) {
+        if (bucket != currentBucket) {
+            flush();
+            currentBucket = bucket;
+        }
+    }
+
+    private void flush() {
+        if (aggregator.count() > 0) {
+            result.add(new AggregatedPoint(currentBucket, aggregator.count(), aggregator.result(aggregation)));
+            aggregator.reset();
+        }
+    }
+}
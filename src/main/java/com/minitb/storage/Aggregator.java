@@ -0,0 +1,94 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.Aggregation;
+
+/**
+ * 聚合累加器 - 可逐点累加，也可合并预聚合的汇总桶
+ * 所有支持的聚合函数（count/sum/min/max/last）都可合并，因此汇总桶与原始数据可混合使用
+ * 分位数聚合另外维护一个分位数草图，逐点写入或合并汇总桶的草图
+ */
+final class Aggregator {
+
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double last;
+    private long lastTs = Long.MIN_VALUE;
+    private final QuantileSketch sketch;
+
+    Aggregator() {
+        this(false);
+    }
+
+    /**
+     * @param withSketch 是否维护分位数草图（分位数聚合）
+     */
+    Aggregator(boolean withSketch) {
+        this.sketch = withSketch ? new QuantileSketch() : null;
+    }
+
+    void add(long ts, double value) {
+        if (sketch != null) {
+            sketch.add(value);
+        }
+        count++;
+        sum += value;
+        if (value < min) min = value;
+        if (value > max) max = value;
+        if (ts >= lastTs) {
+            last = value;
+            lastTs = ts;
+        }
+    }
+
+    void merge(RollupBucket bucket) {
+        if (bucket.getCount() == 0) {
+            return;
+        }
+        count += bucket.getCount();
+        sum += bucket.getSum();
+        if (bucket.getMin() < min) min = bucket.getMin();
+        if (bucket.getMax() > max) max = bucket.getMax();
+        if (bucket.getLastTs() >= lastTs) {
+            last = bucket.getLast();
+            lastTs = bucket.getLastTs();
+        }
+    }
+
+    /**
+     * 合并一个汇总桶的分位数草图（只用于分位数聚合，其余统计量不更新）
+     */
+    void merge(QuantileSketch bucketSketch) {
+        count += bucketSketch.count();
+        sketch.merge(bucketSketch);
+    }
+
+    long count() {
+        return count;
+    }
+
+    double result(Aggregation aggregation) {
+        return switch (aggregation) {
+            case AVG -> sum / count;
+            case MIN -> min;
+            case MAX -> max;
+            case SUM -> sum;
+            case COUNT -> count;
+            case LAST -> last;
+            case P50, P90, P95, P99 -> sketch.quantile(aggregation.getQuantile());
+        };
+    }
+
+    void reset() {
+        count = 0;
+        sum = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        last = 0;
+        lastTs = Long.MIN_VALUE;
+        if (sketch != null) {
+            sketch.clear();
+        }
+    }
+}
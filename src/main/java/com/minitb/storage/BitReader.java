@@ -0,0 +1,46 @@
+package com.minitb.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 位读取器 - 从 ByteBuffer 中按位解码
+ *
+ * 只使用绝对位置读取，不修改 ByteBuffer 的 position，
+ * 因此多个读取器可以并发共享同一个（堆内、堆外或内存映射的）缓冲区
+ */
+final class BitReader {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private int bitPosition;
+
+    /**
+     * @param offset 起始字节位置（绝对位置）
+     */
+    BitReader(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    boolean readBit() {
+        int b = buffer.get(offset + (bitPosition >>> 3));
+        boolean bit = (b & (0x80 >>> (bitPosition & 7))) != 0;
+        bitPosition++;
+        return bit;
+    }
+
+    long readBits(int bits) {
+        long value = 0;
+        for (int i = 0; i < bits; i++) {
+            value = (value << 1) | (readBit() ? 1L : 0L);
+        }
+        return value;
+    }
+
+    /**
+     * 当前字节位置（绝对位置，向上对齐）
+     */
+    int bytePosition() {
+        return offset + ((bitPosition + 7) >>> 3);
+    }
+}
@@ -0,0 +1,102 @@
+package com.minitb.storage;
+
+import java.util.Arrays;
+
+/**
+ * 位写入器 - 压缩编码使用的按位输出缓冲区
+ * 位序为高位在前（MSB first）
+ */
+final class BitWriter {
+
+    private byte[] buffer;
+    private int bitPosition;
+
+    BitWriter(int initialBytes) {
+        this.buffer = new byte[Math.max(initialBytes, 8)];
+    }
+
+    void writeBit(boolean bit) {
+        ensureBits(1);
+        if (bit) {
+            buffer[bitPosition >>> 3] |= (byte) (0x80 >>> (bitPosition & 7));
+        }
+        bitPosition++;
+    }
+
+    /**
+     * 写入 value 的低 bits 位
+     */
+    void writeBits(long value, int bits) {
+        ensureBits(bits);
+        for (int i = bits - 1; i >= 0; i--) {
+            if (((value >>> i) & 1L) != 0) {
+                buffer[bitPosition >>> 3] |= (byte) (0x80 >>> (bitPosition & 7));
+            }
+            bitPosition++;
+        }
+    }
+
+    void writeByte(int value) {
+        alignToByte();
+        ensureBits(8);
+        buffer[bitPosition >>> 3] = (byte) value;
+        bitPosition += 8;
+    }
+
+    void writeInt(int value) {
+        alignToByte();
+        writeBits(value & 0xFFFFFFFFL, 32);
+    }
+
+    void writeLong(long value) {
+        alignToByte();
+        writeBits(value, 64);
+    }
+
+    void writeBytes(byte[] bytes) {
+        alignToByte();
+        ensureBits(bytes.length * 8);
+        System.arraycopy(bytes, 0, buffer, bitPosition >>> 3, bytes.length);
+        bitPosition += bytes.length * 8;
+    }
+
+    /**
+     * 写入无符号变长整数（LEB128）
+     */
+    void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    /**
+     * 在指定字节位置回填 int（用于写入长度前缀）
+     */
+    void putInt(int bytePosition, int value) {
+        buffer[bytePosition] = (byte) (value >>> 24);
+        buffer[bytePosition + 1] = (byte) (value >>> 16);
+        buffer[bytePosition + 2] = (byte) (value >>> 8);
+        buffer[bytePosition + 3] = (byte) value;
+    }
+
+    void alignToByte() {
+        bitPosition = (bitPosition + 7) & ~7;
+    }
+
+    int bytePosition() {
+        return (bitPosition + 7) >>> 3;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, bytePosition());
+    }
+
+    private void ensureBits(int bits) {
+        int requiredBytes = ((bitPosition + bits) >>> 3) + 1;
+        if (requiredBytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, requiredBytes));
+        }
+    }
+}
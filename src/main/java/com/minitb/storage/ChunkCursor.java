@@ -0,0 +1,51 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.*;
+
+/**
+ * 数据块游标 - 按时间顺序逐点读取数据块
+ *
+ * 用法：
+ * <pre>
+ * ChunkCursor cursor = chunk.cursor(startTs);
+ * while (cursor.next() &amp;&amp; cursor.ts() &lt;= endTs) { ... }
+ * </pre>
+ * 值访问方法按数据块类型调用，避免装箱；需要对象时再调用 toEntry 物化
+ */
+interface ChunkCursor {
+
+    /**
+     * 前进到下一个数据点
+     * @return false 表示已无数据
+     */
+    boolean next();
+
+    long ts();
+
+    DataType dataType();
+
+    boolean isNull();
+
+    double doubleValue();
+
+    long longValue();
+
+    boolean booleanValue();
+
+    String stringValue();
+
+    /**
+     * 将当前数据点物化为 TsKvEntry
+     */
+    default TsKvEntry toEntry(String key) {
+        boolean isNull = isNull();
+        KvEntry kv = switch (dataType()) {
+            case DOUBLE -> new DoubleDataEntry(key, isNull ? null : doubleValue());
+            case LONG -> new LongDataEntry(key, isNull ? null : longValue());
+            case BOOLEAN -> new BooleanDataEntry(key, isNull ? null : booleanValue());
+            case STRING -> new StringDataEntry(key, stringValue());
+            case JSON -> new JsonDataEntry(key, stringValue());
+        };
+        return new BasicTsKvEntry(ts(), kv);
+    }
+}
@@ -0,0 +1,180 @@
+package com.minitb.storage;
+
+import com.minitb.domain.id.DeviceId;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * 冷数据块存储 - 把长时间未变化的压缩数据块写到磁盘段文件，再通过内存映射读回
+ *
+ * 文件布局：
+ * - 每个设备一个子目录，每次下沉写一个段文件：{dir}/{deviceId}/cold-00000000000000000001.seg
+ * - 段文件就是若干 GorillaChunk 编码的简单拼接，写完后整体以只读方式映射
+ *
+ * 内存：
+ * - 下沉后的数据块是映射缓冲区的切片，查询直接从页缓存解码，不占用 Java 堆
+ * - 页缓存由操作系统按需换入换出，小堆设备也能保留数周的历史数据
+ *
+ * 生命周期：
+ * - 段文件的最新数据早于原始数据过期边界时删除（其中的数据块已被保留策略移除）
+ * - 冷数据只是内存数据的换出副本，恢复由 WAL 负责；启动时清理上次运行遗留的段文件
+ */
+@Slf4j
+final class ColdChunkStore {
+
+    private static final String SEGMENT_PREFIX = "cold-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path dir;
+    private final Map<DeviceId, Deque<Segment>> segments = new ConcurrentHashMap<>();
+    private long nextSegmentIndex = 1;
+
+    ColdChunkStore(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        deleteStaleSegments();
+    }
+
+    /**
+     * 把一个设备的若干数据块写入新段文件并映射
+     * @return 与入参顺序一致的映射数据块
+     */
+    List<GorillaChunk> offload(DeviceId deviceId, List<GorillaChunk> chunks) throws IOException {
+        Path deviceDir = dir.resolve(deviceId.getId().toString());
+        Files.createDirectories(deviceDir);
+        Path path = deviceDir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextIndex(), SEGMENT_SUFFIX));
+
+        long maxTs = Long.MIN_VALUE;
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (GorillaChunk chunk : chunks) {
+                ByteBuffer data = chunk.data();
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                maxTs = Math.max(maxTs, chunk.maxTs());
+            }
+            channel.force(false);
+            // 映射在通道关闭后仍然有效
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        List<GorillaChunk> result = new ArrayList<>(chunks.size());
+        int offset = 0;
+        for (GorillaChunk chunk : chunks) {
+            int length = chunk.compressedBytes();
+            result.add(GorillaChunk.wrap(mapped.slice(offset, length)));
+            offset += length;
+        }
+
+        Deque<Segment> deviceSegments = segments.computeIfAbsent(deviceId, id -> new ArrayDeque<>());
+        synchronized (deviceSegments) {
+            deviceSegments.addLast(new Segment(path, maxTs, offset));
+        }
+        return result;
+    }
+
+    /**
+     * 删除设备中最新数据早于 expireBefore 的段文件
+     * 已删除文件的映射在数据块被回收前仍然可读（Linux 下文件在最后一个映射释放后才真正删除）
+     *
+     * @return 删除的字节数
+     */
+    long deleteExpired(DeviceId deviceId, long expireBefore) {
+        Deque<Segment> deviceSegments = segments.get(deviceId);
+        if (deviceSegments == null) {
+            return 0;
+        }
+        long deleted = 0;
+        synchronized (deviceSegments) {
+            Iterator<Segment> it = deviceSegments.iterator();
+            while (it.hasNext()) {
+                Segment segment = it.next();
+                if (segment.maxTs >= expireBefore) {
+                    continue;
+                }
+                try {
+                    Files.deleteIfExists(segment.path);
+                    it.remove();
+                    deleted += segment.bytes;
+                } catch (IOException e) {
+                    log.error("删除过期冷数据段失败: {}", segment.path, e);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 当前段文件总字节数
+     */
+    long fileBytes() {
+        long bytes = 0;
+        for (Deque<Segment> deviceSegments : segments.values()) {
+            synchronized (deviceSegments) {
+                for (Segment segment : deviceSegments) {
+                    bytes += segment.bytes;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private synchronized long nextIndex() {
+        return nextSegmentIndex++;
+    }
+
+    /**
+     * 清理上次运行遗留的段文件（只删除本存储创建的文件和空目录）
+     */
+    private void deleteStaleSegments() throws IOException {
+        List<Path> stale;
+        try (Stream<Path> files = Files.walk(dir)) {
+            stale = files.filter(path -> !path.equals(dir))
+                    .filter(path -> Files.isDirectory(path) || isSegment(path))
+                    .sorted(Comparator.reverseOrder())
+                    .toList();
+        }
+        int deleted = 0;
+        for (Path path : stale) {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> children = Files.list(path)) {
+                    if (children.findAny().isPresent()) {
+                        continue;
+                    }
+                }
+            } else {
+                deleted++;
+            }
+            Files.deleteIfExists(path);
+        }
+        if (deleted > 0) {
+            log.info("清理上次运行遗留的冷数据段 {} 个: {}", deleted, dir);
+        }
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private record Segment(Path path, long maxTs, long bytes) {
+    }
+}
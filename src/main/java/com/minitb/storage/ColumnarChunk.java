@@ -0,0 +1,504 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.*;
+
+import java.util.Arrays;
+
+/**
+ * 列式数据块 - 单个时间序列的一段连续数据
+ *
+ * 存储布局：
+ * - long[] 时间戳列
+ * - 值列按数据类型选择：double[] / long[] / 布尔位图 / String[]
+ * - 空值使用位图标记（按需分配）
+ *
+ * 设计说明：
+ * 1. 一个数据块只保存一种数据类型，类型变化时由 TimeSeries 开启新块
+ * 2. 数组按需倍增，直到达到固定容量，避免小序列浪费内存
+ * 3. 只在查询时才物化为 TsKvEntry 视图对象
+ * 4. 块内时间戳严格递增，支持二分查找定位时间范围
+ *
+ * 重排缓冲区（头块）：
+ * - 早于块内最新时间戳的迟到数据点和重复时间戳的数据点不写入列，而是写入一个小的有序覆盖层
+ *   （不可变的 ColumnarChunk，写时复制发布），同一时间戳覆盖层中的值优先（后写覆盖先写）
+ * - 游标把列和覆盖层按时间戳归并，查询结果有序且无重复，读取时不需要排序
+ * - 封存前（或覆盖层写满时）由 merged() 合并成一个普通数据块，之后才能压缩编码
+ *
+ * 并发模型（单写多读）：
+ * - 写入由 TimeSeries 的写锁串行化，同一时刻只有一个写线程
+ * - 先写数组元素，再写 volatile size 发布；读线程先读 size，再读取 [0, size) 内的元素
+ * - 数组扩容时旧数组内容保持不变，读线程持有旧引用也能读到完整数据，无需加锁或复制
+ * - 覆盖层整体替换发布，读线程读到新旧覆盖层中的任意一个都是一致的视图
+ */
+class ColumnarChunk implements TsChunk {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final DataType dataType;
+    private final int capacity;
+
+    private long[] timestamps;
+    private double[] doubleValues;
+    private long[] longValues;
+    private long[] booleanBits;
+    private String[] stringValues;
+    private long[] nullBits;
+
+    private volatile int size;
+
+    // 迟到和重复时间戳数据点的有序覆盖层，没有时为 null
+    private volatile LateBuffer late;
+
+    ColumnarChunk(DataType dataType, int capacity) {
+        this.dataType = dataType;
+        this.capacity = capacity;
+        int initial = Math.min(INITIAL_CAPACITY, capacity);
+        this.timestamps = new long[initial];
+        switch (dataType) {
+            case DOUBLE -> doubleValues = new double[initial];
+            case LONG -> longValues = new long[initial];
+            case BOOLEAN -> booleanBits = new long[wordsFor(initial)];
+            default -> stringValues = new String[initial];
+        }
+    }
+
+    /**
+     * 追加数据点
+     * @return false 表示数据块已满或类型不匹配，需要开启新块
+     */
+    boolean append(TsKvEntry entry) {
+        if (size() >= capacity || entry.getDataType() != dataType) {
+            return false;
+        }
+        if (size == timestamps.length) {
+            grow();
+        }
+
+        int i = size;
+        timestamps[i] = entry.getTs();
+        switch (dataType) {
+            case DOUBLE -> {
+                Double v = entry.getDoubleValue().orElse(null);
+                if (v == null) {
+                    markNull(i);
+                } else {
+                    doubleValues[i] = v;
+                }
+            }
+            case LONG -> {
+                Long v = entry.getLongValue().orElse(null);
+                if (v == null) {
+                    markNull(i);
+                } else {
+                    longValues[i] = v;
+                }
+            }
+            case BOOLEAN -> {
+                Boolean v = entry.getBooleanValue().orElse(null);
+                if (v == null) {
+                    markNull(i);
+                } else if (v) {
+                    booleanBits[i >>> 6] |= 1L << i;
+                }
+            }
+            case STRING -> stringValues[i] = entry.getStrValue().orElse(null);
+            case JSON -> stringValues[i] = entry.getJsonValue().orElse(null);
+        }
+        size = i + 1;
+        return true;
+    }
+
+    /**
+     * 把迟到或重复时间戳的数据点写入覆盖层（调用方保证 ts <= maxTs() 且类型相同）
+     * 同一时间戳已有数据点时替换它，不增加数据点数
+     *
+     * @param maxLate 覆盖层最多容纳的数据点数
+     * @return false 表示覆盖层已满或数据块已满，需要先合并或重建
+     */
+    boolean upsertLate(TsKvEntry entry, int maxLate) {
+        long ts = entry.getTs();
+        LateBuffer current = late;
+        ColumnarChunk points = current != null ? current.points() : null;
+        int n = points != null ? points.size : 0;
+        int at = points != null ? points.lowerBound(ts, n) : 0;
+        boolean replacesLate = at < n && points.timestamps[at] == ts;
+        int columnAt = lowerBound(ts, size);
+        boolean replacesColumn = columnAt < size && timestamps[columnAt] == ts;
+        if (!replacesLate && (n >= maxLate || !replacesColumn && size() >= capacity)) {
+            return false;
+        }
+
+        ColumnarChunk next = new ColumnarChunk(dataType, replacesLate ? n : n + 1);
+        for (int i = 0; i < at; i++) {
+            next.appendFrom(points, i);
+        }
+        next.append(entry);
+        for (int i = replacesLate ? at + 1 : at; i < n; i++) {
+            next.appendFrom(points, i);
+        }
+        int shadowed = current != null ? current.shadowed() : 0;
+        late = new LateBuffer(next, !replacesLate && replacesColumn ? shadowed + 1 : shadowed);
+        return true;
+    }
+
+    /**
+     * 覆盖层中的数据点数
+     */
+    int lateCount() {
+        LateBuffer current = late;
+        return current != null ? current.points().size : 0;
+    }
+
+    /**
+     * 合并覆盖层：返回列和覆盖层按时间戳归并后的新数据块（同一时间戳取覆盖层的值），
+     * 没有覆盖层时返回自身。原数据块不变，读线程持有的旧引用仍然有效
+     */
+    ColumnarChunk merged() {
+        LateBuffer current = late;
+        if (current == null) {
+            return this;
+        }
+        ColumnarChunk points = current.points();
+        int limit = size;
+        ColumnarChunk result = new ColumnarChunk(dataType, capacity);
+        int i = 0;
+        int j = 0;
+        while (i < limit || j < points.size) {
+            if (j == points.size || i < limit && timestamps[i] < points.timestamps[j]) {
+                result.appendFrom(this, i++);
+            } else {
+                if (i < limit && timestamps[i] == points.timestamps[j]) {
+                    i++;
+                }
+                result.appendFrom(points, j++);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 复制 source 的第 i 个数据点（同类型，调用方保证容量）
+     */
+    private void appendFrom(ColumnarChunk source, int i) {
+        if (size == timestamps.length) {
+            grow();
+        }
+        int at = size;
+        timestamps[at] = source.timestamps[i];
+        if (source.isNull(i)) {
+            markNull(at);
+        } else {
+            switch (dataType) {
+                case DOUBLE -> doubleValues[at] = source.doubleValues[i];
+                case LONG -> longValues[at] = source.longValues[i];
+                case BOOLEAN -> {
+                    if (source.booleanAt(i)) {
+                        booleanBits[at >>> 6] |= 1L << at;
+                    }
+                }
+                default -> stringValues[at] = source.stringValues[i];
+            }
+        }
+        size = at + 1;
+    }
+
+    /**
+     * 将第 i 个数据点物化为 TsKvEntry（只访问列，不含覆盖层）
+     * 调用方必须保证 i 小于此前读到的列长度
+     */
+    TsKvEntry entryAt(String key, int i) {
+        boolean isNull = isNull(i);
+        KvEntry kv = switch (dataType) {
+            case DOUBLE -> new DoubleDataEntry(key, isNull ? null : doubleValues[i]);
+            case LONG -> new LongDataEntry(key, isNull ? null : longValues[i]);
+            case BOOLEAN -> new BooleanDataEntry(key, isNull ? null : booleanAt(i));
+            case STRING -> new StringDataEntry(key, stringValues[i]);
+            case JSON -> new JsonDataEntry(key, stringValues[i]);
+        };
+        return new BasicTsKvEntry(timestamps[i], kv);
+    }
+
+    long tsAt(int i) {
+        return timestamps[i];
+    }
+
+    double doubleAt(int i) {
+        return doubleValues[i];
+    }
+
+    long longAt(int i) {
+        return longValues[i];
+    }
+
+    boolean booleanAt(int i) {
+        return (booleanBits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    String stringAt(int i) {
+        return stringValues[i];
+    }
+
+    boolean isNull(int i) {
+        return nullBits != null && (nullBits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    boolean hasNulls() {
+        return nullBits != null;
+    }
+
+    /**
+     * 数据点数（列 + 覆盖层中不与列重复的数据点）
+     */
+    @Override
+    public int size() {
+        LateBuffer current = late;
+        return current != null ? size + current.points().size - current.shadowed() : size;
+    }
+
+    boolean isFull() {
+        return size() >= capacity;
+    }
+
+    @Override
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    /**
+     * 块内最小时间戳（块不能为空）
+     */
+    @Override
+    public long minTs() {
+        LateBuffer current = late;
+        return current != null ? Math.min(timestamps[0], current.points().timestamps[0]) : timestamps[0];
+    }
+
+    /**
+     * 块内最大时间戳（块不能为空）
+     */
+    @Override
+    public long maxTs() {
+        return timestamps[size - 1];
+    }
+
+    /**
+     * 二分查找：返回 [0, size) 中第一个时间戳 >= ts 的位置，不存在时返回 size
+     */
+    int lowerBound(long ts, int size) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[mid] < ts) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 二分查找：返回 [0, size) 中第一个时间戳 > ts 的位置，不存在时返回 size
+     */
+    int upperBound(long ts, int size) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[mid] <= ts) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public ChunkCursor cursor(long fromTs) {
+        LateBuffer current = late;
+        int limit = size;
+        Cursor columns = new Cursor(lowerBound(fromTs, limit) - 1, limit);
+        return current != null ? new MergeCursor(columns, current.points().cursor(fromTs)) : columns;
+    }
+
+    /**
+     * 估算占用字节数（数组主体，不含对象头）
+     */
+    @Override
+    public long estimatedBytes() {
+        long bytes = (long) timestamps.length * Long.BYTES;
+        if (doubleValues != null) bytes += (long) doubleValues.length * Double.BYTES;
+        if (longValues != null) bytes += (long) longValues.length * Long.BYTES;
+        if (booleanBits != null) bytes += (long) booleanBits.length * Long.BYTES;
+        if (stringValues != null) bytes += (long) stringValues.length * 4;
+        if (nullBits != null) bytes += (long) nullBits.length * Long.BYTES;
+        LateBuffer current = late;
+        if (current != null) bytes += current.points().estimatedBytes();
+        return bytes;
+    }
+
+    private void markNull(int i) {
+        if (nullBits == null) {
+            nullBits = new long[wordsFor(timestamps.length)];
+        }
+        nullBits[i >>> 6] |= 1L << i;
+    }
+
+    private void grow() {
+        int newLength = Math.min(timestamps.length * 2, capacity);
+        timestamps = Arrays.copyOf(timestamps, newLength);
+        if (doubleValues != null) doubleValues = Arrays.copyOf(doubleValues, newLength);
+        if (longValues != null) longValues = Arrays.copyOf(longValues, newLength);
+        if (booleanBits != null) booleanBits = Arrays.copyOf(booleanBits, wordsFor(newLength));
+        if (stringValues != null) stringValues = Arrays.copyOf(stringValues, newLength);
+        if (nullBits != null) nullBits = Arrays.copyOf(nullBits, wordsFor(newLength));
+    }
+
+    private static int wordsFor(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /**
+     * 覆盖层：有序且时间戳唯一的数据点，shadowed 为其中与列重复（覆盖列中数据点）的个数
+     */
+    private record LateBuffer(ColumnarChunk points, int shadowed) {
+    }
+
+    /**
+     * 归并游标：按时间戳归并列和覆盖层，时间戳相同时跳过列中的数据点
+     */
+    private static final class MergeCursor implements ChunkCursor {
+
+        private final ChunkCursor columns;
+        private final ChunkCursor late;
+        private boolean hasColumn;
+        private boolean hasLate;
+        private ChunkCursor current;
+
+        private MergeCursor(ChunkCursor columns, ChunkCursor late) {
+            this.columns = columns;
+            this.late = late;
+        }
+
+        @Override
+        public boolean next() {
+            if (current == null) {
+                hasColumn = columns.next();
+                hasLate = late.next();
+            } else if (current == columns) {
+                hasColumn = columns.next();
+            } else {
+                hasLate = late.next();
+            }
+            if (hasColumn && hasLate && columns.ts() == late.ts()) {
+                hasColumn = columns.next();
+            }
+            if (!hasColumn && !hasLate) {
+                return false;
+            }
+            current = !hasLate || hasColumn && columns.ts() < late.ts() ? columns : late;
+            return true;
+        }
+
+        @Override
+        public long ts() {
+            return current.ts();
+        }
+
+        @Override
+        public DataType dataType() {
+            return current.dataType();
+        }
+
+        @Override
+        public boolean isNull() {
+            return current.isNull();
+        }
+
+        @Override
+        public double doubleValue() {
+            return current.doubleValue();
+        }
+
+        @Override
+        public long longValue() {
+            return current.longValue();
+        }
+
+        @Override
+        public boolean booleanValue() {
+            return current.booleanValue();
+        }
+
+        @Override
+        public String stringValue() {
+            return current.stringValue();
+        }
+
+        @Override
+        public TsKvEntry toEntry(String key) {
+            return current.toEntry(key);
+        }
+    }
+
+    /**
+     * 列式游标：下标访问，读取范围在创建时固定为当时的 size
+     */
+    private final class Cursor implements ChunkCursor {
+
+        private final int limit;
+        private int index;
+
+        private Cursor(int index, int limit) {
+            this.index = index;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean next() {
+            return ++index < limit;
+        }
+
+        @Override
+        public long ts() {
+            return timestamps[index];
+        }
+
+        @Override
+        public DataType dataType() {
+            return dataType;
+        }
+
+        @Override
+        public boolean isNull() {
+            return ColumnarChunk.this.isNull(index);
+        }
+
+        @Override
+        public double doubleValue() {
+            return doubleValues[index];
+        }
+
+        @Override
+        public long longValue() {
+            return longValues[index];
+        }
+
+        @Override
+        public boolean booleanValue() {
+            return booleanAt(index);
+        }
+
+        @Override
+        public String stringValue() {
+            return stringValues[index];
+        }
+
+        @Override
+        public TsKvEntry toEntry(String key) {
+            return entryAt(key, index);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.minitb.storage;
+
+import lombok.Data;
+
+/**
+ * 单次压缩整理（过期清理 + 封存空闲头块 + 冷数据下沉 + 内存预算淘汰）的结果
+ */
+@Data
+public class CompactionResult {
+
+    private int seriesScanned;
+
+    /**
+     * 因过期被删除的数据块数
+     */
+    private int chunksDropped;
+
+    /**
+     * 空闲头块被封存压缩的数量
+     */
+    private int chunksSealed;
+
+    private long pointsDropped;
+
+    /**
+     * 因过期被删除的汇总桶数
+     */
+    private long rollupBucketsDropped;
+
+    /**
+     * 数据全部过期而被移除的序列数
+     */
+    private int seriesRemoved;
+
+    /**
+     * 回收的内存字节数（删除的数据块 + 封存压缩节省的空间）
+     */
+    private long reclaimedBytes;
+
+    /**
+     * 下沉到内存映射冷存储的数据块数
+     */
+    private int chunksOffloaded;
+
+    /**
+     * 从历史数据仓储删除的过期数据点数
+     */
+    private long historyPointsDeleted;
+
+    /**
+     * 删除的磁盘文件字节数（过期的 WAL 段和冷数据段）
+     */
+    private long diskBytesDeleted;
+
+    /**
+     * 放回 slab 空闲链表的堆外字节数（之前释放且已没有读线程访问）
+     */
+    private long offHeapBytesReclaimed;
+
+    /**
+     * 超出内存预算被淘汰的数据块数（更早的数据只能从历史数据仓储查询）
+     */
+    private int chunksEvicted;
+
+    private long pointsEvicted;
+
+    private long durationMs;
+
+    void addDropped(TsChunk chunk) {
+        chunksDropped++;
+        pointsDropped += chunk.size();
+        reclaimedBytes += chunk.estimatedBytes();
+    }
+
+    void addEvicted(TsChunk chunk) {
+        chunksEvicted++;
+        pointsEvicted += chunk.size();
+        reclaimedBytes += chunk.estimatedBytes();
+    }
+
+    void addOffloaded(TsChunk before, TsChunk after) {
+        chunksOffloaded++;
+        reclaimedBytes += before.estimatedBytes() - after.estimatedBytes();
+    }
+
+    void addSealed(TsChunk before, TsChunk after) {
+        chunksSealed++;
+        reclaimedBytes += before.estimatedBytes() - after.estimatedBytes();
+    }
+}
@@ -0,0 +1,527 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.DataType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Gorilla 压缩数据块 - 封存后的只读数据块
+ *
+ * 编码方式（参考 Facebook Gorilla 论文）：
+ * - 时间戳：首个时间戳记录在块头，之后使用差值的差值（delta-of-delta）变长编码，
+ *   规律采样时绝大多数数据点只占 1 位
+ * - DOUBLE：与前一个值异或（XOR），只记录有效位
+ * - LONG：与时间戳相同的 delta-of-delta 编码
+ * - BOOLEAN：每点 1 位
+ * - STRING/JSON：时间戳位流之后按 变长长度 + UTF-8 字节 顺序存储
+ *
+ * 字节布局（自描述，可直接从文件或堆外内存解码）：
+ * <pre>
+ * [类型 1B][标志 1B][点数 4B][最小时间戳 8B][最大时间戳 8B][原始字节数 4B]
+ * [空值位图（可选）][位流 ...]
+ * </pre>
+ * 解码只使用 ByteBuffer 的绝对读取，多个读线程可以并发解码同一个数据块
+ */
+final class GorillaChunk implements TsChunk {
+
+    static final int HEADER_BYTES = 26;
+
+    private static final int FLAG_HAS_NULLS = 1;
+    private static final DataType[] TYPES = DataType.values();
+
+    private final ByteBuffer data;
+    private final SlabAllocator.Block block;
+    private final DataType dataType;
+    private final boolean hasNulls;
+    private final int count;
+    private final long minTs;
+    private final long maxTs;
+    private final int uncompressedBytes;
+
+    private GorillaChunk(ByteBuffer data, SlabAllocator.Block block) {
+        this.data = data;
+        this.block = block;
+        this.dataType = TYPES[data.get(0)];
+        this.hasNulls = (data.get(1) & FLAG_HAS_NULLS) != 0;
+        this.count = data.getInt(2);
+        this.minTs = data.getLong(6);
+        this.maxTs = data.getLong(14);
+        this.uncompressedBytes = data.getInt(22);
+    }
+
+    /**
+     * 从已编码的字节缓冲区创建数据块（position 0 为块头）
+     */
+    static GorillaChunk wrap(ByteBuffer data) {
+        return new GorillaChunk(data, null);
+    }
+
+    /**
+     * 压缩编码一个列式数据块
+     */
+    static GorillaChunk encode(ColumnarChunk chunk) {
+        return wrap(ByteBuffer.wrap(encodeToBytes(chunk)));
+    }
+
+    /**
+     * 压缩编码一个列式数据块，编码结果复制到 slab 分配器的堆外块中
+     * 分配失败（块过大或达到上限）时保留在堆上
+     */
+    static GorillaChunk encode(ColumnarChunk chunk, SlabAllocator allocator) {
+        return copyOf(ByteBuffer.wrap(encodeToBytes(chunk)), allocator);
+    }
+
+    /**
+     * 把已编码的数据（position 0 为块头）复制到 slab 分配器的堆外块中，分配失败时直接包装原缓冲区
+     */
+    static GorillaChunk copyOf(ByteBuffer data, SlabAllocator allocator) {
+        SlabAllocator.Block block = allocator.allocate(data.remaining());
+        if (block == null) {
+            return wrap(data);
+        }
+        ByteBuffer buffer = allocator.buffer(block);
+        buffer.put(0, data, data.position(), data.remaining());
+        return new GorillaChunk(buffer, block);
+    }
+
+    static byte[] encodeToBytes(ColumnarChunk chunk) {
+        return encodeToBytes(chunk, chunk.size());
+    }
+
+    /**
+     * 只编码列式数据块的前 count 个数据点（头块在此之后的追加不影响编码结果）
+     */
+    static byte[] encodeToBytes(ColumnarChunk chunk, int count) {
+        int n = Math.min(count, chunk.size());
+        DataType type = chunk.getDataType();
+        boolean nulls = false;
+        for (int i = 0; i < n && !nulls; i++) {
+            nulls = isNull(chunk, i);
+        }
+        BitWriter out = new BitWriter(HEADER_BYTES + n * 2);
+
+        out.writeByte(type.ordinal());
+        out.writeByte(nulls ? FLAG_HAS_NULLS : 0);
+        out.writeInt(n);
+        out.writeLong(chunk.tsAt(0));
+        out.writeLong(chunk.tsAt(n - 1));
+        int uncompressedPosition = out.bytePosition();
+        out.writeInt(0);
+
+        if (nulls) {
+            byte[] bitmap = new byte[(n + 7) >>> 3];
+            for (int i = 0; i < n; i++) {
+                if (isNull(chunk, i)) {
+                    bitmap[i >>> 3] |= (byte) (0x80 >>> (i & 7));
+                }
+            }
+            out.writeBytes(bitmap);
+        }
+
+        int uncompressed;
+        if (type == DataType.STRING || type == DataType.JSON) {
+            uncompressed = encodeStrings(chunk, n, out);
+        } else {
+            uncompressed = encodeNumeric(chunk, n, type, out);
+        }
+        out.putInt(uncompressedPosition, uncompressed);
+        return out.toByteArray();
+    }
+
+    /**
+     * 列式块中字符串列的空值直接存为 null，不占空值位图，这里统一判断
+     */
+    private static boolean isNull(ColumnarChunk chunk, int i) {
+        return chunk.isNull(i) || (chunk.getDataType() == DataType.STRING || chunk.getDataType() == DataType.JSON)
+                && chunk.stringAt(i) == null;
+    }
+
+    private static int encodeNumeric(ColumnarChunk chunk, int n, DataType type, BitWriter out) {
+        long prevTs = chunk.tsAt(0);
+        long prevDelta = 0;
+        long prevBits = 0;
+        long prevLong = 0;
+        long prevLongDelta = 0;
+        int prevLeading = -1;
+        int prevTrailing = 0;
+        boolean first = true;
+
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                long delta = chunk.tsAt(i) - prevTs;
+                writeDod(out, delta - prevDelta);
+                prevDelta = delta;
+                prevTs = chunk.tsAt(i);
+            }
+            if (chunk.isNull(i)) {
+                continue;
+            }
+            switch (type) {
+                case DOUBLE -> {
+                    long bits = Double.doubleToRawLongBits(chunk.doubleAt(i));
+                    if (first) {
+                        out.writeBits(bits, 64);
+                    } else {
+                        long xor = bits ^ prevBits;
+                        if (xor == 0) {
+                            out.writeBit(false);
+                        } else {
+                            out.writeBit(true);
+                            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                            int trailing = Long.numberOfTrailingZeros(xor);
+                            if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                                out.writeBit(false);
+                                out.writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+                            } else {
+                                int meaningful = 64 - leading - trailing;
+                                out.writeBit(true);
+                                out.writeBits(leading, 5);
+                                out.writeBits(meaningful == 64 ? 0 : meaningful, 6);
+                                out.writeBits(xor >>> trailing, meaningful);
+                                prevLeading = leading;
+                                prevTrailing = trailing;
+                            }
+                        }
+                    }
+                    prevBits = bits;
+                }
+                case LONG -> {
+                    long value = chunk.longAt(i);
+                    if (first) {
+                        out.writeBits(value, 64);
+                    } else {
+                        long delta = value - prevLong;
+                        writeDod(out, delta - prevLongDelta);
+                        prevLongDelta = delta;
+                    }
+                    prevLong = value;
+                }
+                default -> out.writeBit(chunk.booleanAt(i));
+            }
+            first = false;
+        }
+        return n * (type == DataType.BOOLEAN ? Long.BYTES + 1 : Long.BYTES * 2);
+    }
+
+    private static int encodeStrings(ColumnarChunk chunk, int n, BitWriter out) {
+        int lengthPosition = out.bytePosition();
+        out.writeInt(0);
+        int bitsStart = out.bytePosition();
+        long prevTs = chunk.tsAt(0);
+        long prevDelta = 0;
+        for (int i = 1; i < n; i++) {
+            long delta = chunk.tsAt(i) - prevTs;
+            writeDod(out, delta - prevDelta);
+            prevDelta = delta;
+            prevTs = chunk.tsAt(i);
+        }
+        out.alignToByte();
+        out.putInt(lengthPosition, out.bytePosition() - bitsStart);
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        int uncompressed = n * Long.BYTES;
+        for (int i = 0; i < n; i++) {
+            String value = chunk.stringAt(i);
+            if (value == null) {
+                continue;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            uncompressed += bytes.length;
+            int length = bytes.length;
+            while ((length & ~0x7F) != 0) {
+                strings.write((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            strings.write(length);
+            strings.write(bytes, 0, bytes.length);
+        }
+        out.writeBytes(strings.toByteArray());
+        return uncompressed;
+    }
+
+    /**
+     * delta-of-delta 变长编码
+     * 前缀: 0 → 0; 10 → 7 位; 110 → 9 位; 1110 → 12 位; 11110 → 32 位; 11111 → 64 位
+     */
+    static void writeDod(BitWriter out, long dod) {
+        if (dod == 0) {
+            out.writeBit(false);
+        } else if (dod >= -64 && dod <= 63) {
+            out.writeBits(0b10, 2);
+            out.writeBits(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            out.writeBits(0b110, 3);
+            out.writeBits(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            out.writeBits(0b1110, 4);
+            out.writeBits(dod, 12);
+        } else if (dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE) {
+            out.writeBits(0b11110, 5);
+            out.writeBits(dod, 32);
+        } else {
+            out.writeBits(0b11111, 5);
+            out.writeBits(dod, 64);
+        }
+    }
+
+    static long readDod(BitReader in) {
+        if (!in.readBit()) {
+            return 0;
+        }
+        int bits;
+        if (!in.readBit()) {
+            bits = 7;
+        } else if (!in.readBit()) {
+            bits = 9;
+        } else if (!in.readBit()) {
+            bits = 12;
+        } else if (!in.readBit()) {
+            bits = 32;
+        } else {
+            return in.readBits(64);
+        }
+        long value = in.readBits(bits);
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    @Override
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public long minTs() {
+        return minTs;
+    }
+
+    @Override
+    public long maxTs() {
+        return maxTs;
+    }
+
+    /**
+     * 压缩后字节数
+     */
+    int compressedBytes() {
+        return data.capacity();
+    }
+
+    /**
+     * 未压缩时的等价字节数（时间戳 + 原始值），用于计算压缩率
+     */
+    int uncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    /**
+     * 底层编码数据（只读视图，position 0 为块头）
+     */
+    ByteBuffer data() {
+        return data.asReadOnlyBuffer();
+    }
+
+    /**
+     * 数据是否位于 Java 堆外（slab 分配的堆外块或内存映射的冷数据块）
+     */
+    boolean isOffHeap() {
+        return data.isDirect();
+    }
+
+    /**
+     * 是否为内存映射的冷数据块
+     */
+    boolean isMapped() {
+        return isOffHeap() && block == null;
+    }
+
+    /**
+     * slab 分配的堆外块，不在 slab 中时为 null
+     */
+    SlabAllocator.Block slabBlock() {
+        return block;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return isOffHeap() ? 0 : data.capacity();
+    }
+
+    @Override
+    public ChunkCursor cursor(long fromTs) {
+        Decoder decoder = new Decoder();
+        if (fromTs > minTs) {
+            decoder.seek(fromTs);
+        }
+        return decoder;
+    }
+
+    /**
+     * 流式解码器：逐点解码，不分配中间数组
+     */
+    private final class Decoder implements ChunkCursor {
+
+        private final BitReader bits;
+        private final int nullsOffset;
+        private int stringPosition;
+
+        private int index = -1;
+        private long ts;
+        private long delta;
+        private boolean isNull;
+        private long valueBits;
+        private long longDelta;
+        private int leading = -1;
+        private int trailing;
+        private boolean firstValue = true;
+        private String stringValue;
+        private boolean pending;
+
+        private Decoder() {
+            int position = HEADER_BYTES;
+            nullsOffset = position;
+            if (hasNulls) {
+                position += (count + 7) >>> 3;
+            }
+            if (dataType == DataType.STRING || dataType == DataType.JSON) {
+                int bitsLength = data.getInt(position);
+                position += Integer.BYTES;
+                stringPosition = position + bitsLength;
+            }
+            bits = new BitReader(data, position);
+        }
+
+        /**
+         * 解码到第一个时间戳 >= fromTs 的数据点，下一次 next() 返回该点
+         */
+        private void seek(long fromTs) {
+            while (decodeNext()) {
+                if (ts >= fromTs) {
+                    pending = true;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean next() {
+            if (pending) {
+                pending = false;
+                return true;
+            }
+            return decodeNext();
+        }
+
+        private boolean decodeNext() {
+            if (index + 1 >= count) {
+                index = count;
+                return false;
+            }
+            index++;
+            if (index == 0) {
+                ts = minTs;
+            } else {
+                delta += readDod(bits);
+                ts += delta;
+            }
+            isNull = hasNulls && (data.get(nullsOffset + (index >>> 3)) & (0x80 >>> (index & 7))) != 0;
+            if (isNull) {
+                stringValue = null;
+                return true;
+            }
+            switch (dataType) {
+                case DOUBLE -> decodeDouble();
+                case LONG -> {
+                    if (firstValue) {
+                        valueBits = bits.readBits(64);
+                    } else {
+                        longDelta += readDod(bits);
+                        valueBits += longDelta;
+                    }
+                }
+                case BOOLEAN -> valueBits = bits.readBit() ? 1 : 0;
+                default -> stringValue = readString();
+            }
+            firstValue = false;
+            return true;
+        }
+
+        private void decodeDouble() {
+            if (firstValue) {
+                valueBits = bits.readBits(64);
+                return;
+            }
+            if (!bits.readBit()) {
+                return;
+            }
+            if (bits.readBit()) {
+                leading = (int) bits.readBits(5);
+                int meaningful = (int) bits.readBits(6);
+                if (meaningful == 0) {
+                    meaningful = 64;
+                }
+                trailing = 64 - leading - meaningful;
+            }
+            int meaningful = 64 - leading - trailing;
+            valueBits ^= bits.readBits(meaningful) << trailing;
+        }
+
+        private String readString() {
+            int length = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = data.get(stringPosition++);
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = data.get(stringPosition + i);
+            }
+            stringPosition += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public long ts() {
+            return ts;
+        }
+
+        @Override
+        public DataType dataType() {
+            return dataType;
+        }
+
+        @Override
+        public boolean isNull() {
+            return isNull;
+        }
+
+        @Override
+        public double doubleValue() {
+            return Double.longBitsToDouble(valueBits);
+        }
+
+        @Override
+        public long longValue() {
+            return valueBits;
+        }
+
+        @Override
+        public boolean booleanValue() {
+            return valueBits != 0;
+        }
+
+        @Override
+        public String stringValue() {
+            return stringValue;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.TsKvEntry;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 设备最新值快照 - 不可变，写入时整体替换
+ *
+ * 读取方（/latest、/summary 等高频轮询接口）拿到的是已发布的快照本身，
+ * 无需遍历序列、无需复制；写入方按设备串行地基于旧快照构造新快照再发布
+ */
+public final class LatestSnapshot {
+
+    static final LatestSnapshot EMPTY = new LatestSnapshot(Collections.emptyMap(), null);
+
+    private final Map<String, TsKvEntry> entries;
+    private final Long timestamp;
+
+    private LatestSnapshot(Map<String, TsKvEntry> entries, Long timestamp) {
+        this.entries = entries;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * 键名 -> 最新数据点（只读）
+     */
+    public Map<String, TsKvEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * 所有键中最新的时间戳，没有数据时为 null
+     */
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * 合并一个数据点，早于当前最新值的乱序数据点不改变快照
+     */
+    LatestSnapshot with(TsKvEntry entry) {
+        TsKvEntry current = entries.get(entry.getKey());
+        if (current != null && entry.getTs() < current.getTs()) {
+            return this;
+        }
+        Map<String, TsKvEntry> next = new HashMap<>(entries);
+        next.put(entry.getKey(), entry);
+        return of(next);
+    }
+
+    /**
+     * 合并一批数据点，只复制一次
+     */
+    LatestSnapshot with(List<TsKvEntry> batch) {
+        Map<String, TsKvEntry> next = null;
+        for (TsKvEntry entry : batch) {
+            TsKvEntry current = (next != null ? next : entries).get(entry.getKey());
+            if (current != null && entry.getTs() < current.getTs()) {
+                continue;
+            }
+            if (next == null) {
+                next = new HashMap<>(entries);
+            }
+            next.put(entry.getKey(), entry);
+        }
+        return next != null ? of(next) : this;
+    }
+
+    /**
+     * 去掉最新值早于 expireBefore 的键（对应序列的原始数据已全部过期）
+     * @return 新快照，全部过期时返回 null
+     */
+    LatestSnapshot expire(long expireBefore) {
+        if (timestamp != null && timestamp >= expireBefore
+                && entries.values().stream().allMatch(entry -> entry.getTs() >= expireBefore)) {
+            return this;
+        }
+        Map<String, TsKvEntry> next = new HashMap<>(entries);
+        next.values().removeIf(entry -> entry.getTs() < expireBefore);
+        return next.isEmpty() ? null : of(next);
+    }
+
+    static LatestSnapshot of(Map<String, TsKvEntry> entries) {
+        if (entries.isEmpty()) {
+            return EMPTY;
+        }
+        long timestamp = Long.MIN_VALUE;
+        for (TsKvEntry entry : entries.values()) {
+            timestamp = Math.max(timestamp, entry.getTs());
+        }
+        return new LatestSnapshot(Collections.unmodifiableMap(entries), timestamp);
+    }
+}
@@ -0,0 +1,51 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.TsKvEntry;
+
+import java.util.function.Predicate;
+
+/**
+ * 内存数据层 - 序列的原始数据块（列式头块、Gorilla 压缩块、堆外块、内存映射的冷数据块或环形缓冲区）
+ *
+ * 认领 [max(startTs, 内存中最早的时间戳), endTs]：内存中最早时间戳之后的数据点全部在数据块数组中。
+ * 压缩块、堆外块和冷数据块只是同一个数据块数组中的不同编码，扫描时取一次数组快照，
+ * 不再分别作为数据层，避免压缩整理并发替换数据块时两层之间漏读或重复
+ */
+final class MemoryTier implements TelemetryTier {
+
+    private final int cost;
+
+    MemoryTier(int cost) {
+        this.cost = cost;
+    }
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+
+    @Override
+    public int cost() {
+        return cost;
+    }
+
+    @Override
+    public Range coverage(Request request, long startTs, long endTs) {
+        TimeSeries series = request.series();
+        if (series == null) {
+            return null;
+        }
+        long from = Math.max(startTs, series.minTs());
+        return from <= endTs ? new Range(from, endTs) : null;
+    }
+
+    @Override
+    public boolean scan(Request request, long startTs, long endTs, Predicate<TsKvEntry> visitor) {
+        return request.series().scan(startTs, endTs, visitor);
+    }
+
+    @Override
+    public void aggregate(Request request, long startTs, long endTs, AggregationQuery sink) {
+        request.series().scanNumeric(startTs, endTs, sink::add);
+    }
+}
@@ -0,0 +1,314 @@
+package com.minitb.storage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 分位数草图（DDSketch）- 以固定的相对误差估算任意分位数，可合并
+ *
+ * 原理：
+ * - 数值 v 按对数映射到桶编号 ceil(log_γ |v|)，γ = (1 + α) / (1 - α)，α 为相对误差（1%）
+ * - 每个桶只记录计数，分位数按累计计数定位到桶，返回桶的代表值，相对误差不超过 α
+ * - 同样 α 的两个草图逐桶相加即为合并结果，与把原始数据点写入同一个草图完全相同，
+ *   因此汇总桶的草图可以任意合并成更长时间窗口的分位数
+ *
+ * 存储布局：正数、负数各一组按桶编号升序的稀疏数组（编号 int[] + 计数 long[]），绝对值极小的数值计入零桶。
+ * 每组最多 MAX_BINS 个桶，超出时合并编号最小的桶（只降低绝对值最小一端的精度）
+ *
+ * 非线程安全：写入由所属 RollupSeries 的锁保护，查询时的合并结果只属于单个查询
+ */
+final class QuantileSketch {
+
+    /**
+     * 相对误差
+     */
+    static final double RELATIVE_ACCURACY = 0.01;
+
+    /**
+     * 正数、负数各自的最大桶数
+     */
+    static final int MAX_BINS = 512;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final double MIN_INDEXABLE = 1e-9;
+    private static final int INITIAL_BINS = 4;
+
+    private final Bins positive = new Bins();
+    private Bins negative;
+    private long zeroCount;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (value > MIN_INDEXABLE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_INDEXABLE) {
+            negatives().add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    /**
+     * 移除一个之前写入的数值（数据点被同一时间戳的新值覆盖时）
+     * 桶计数精确扣减；min/max 无法回退，保持不变
+     */
+    void remove(double value) {
+        if (Double.isNaN(value) || count == 0) {
+            return;
+        }
+        boolean removed;
+        if (value > MIN_INDEXABLE) {
+            removed = positive.remove(index(value));
+        } else if (value < -MIN_INDEXABLE) {
+            removed = negative != null && negative.remove(index(-value));
+        } else {
+            removed = zeroCount > 0;
+            if (removed) {
+                zeroCount--;
+            }
+        }
+        if (removed && --count == 0) {
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        positive.merge(other.positive);
+        if (other.negative != null) {
+            negatives().merge(other.negative);
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        if (other.min < min) min = other.min;
+        if (other.max > max) max = other.max;
+    }
+
+    /**
+     * 估算分位数（0 <= q <= 1），没有数据时返回 NaN
+     * 结果限制在实际的最小值和最大值之间，因此 q = 0 / 1 时返回精确的 min / max
+     */
+    double quantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(q * (count - 1));
+        long seen = 0;
+        double value = max;
+        found:
+        {
+            if (negative != null) {
+                // 负数按绝对值从大到小，即数值从小到大
+                for (int i = negative.size - 1; i >= 0; i--) {
+                    seen += negative.counts[i];
+                    if (seen > rank) {
+                        value = -representative(negative.indexes[i]);
+                        break found;
+                    }
+                }
+            }
+            seen += zeroCount;
+            if (seen > rank) {
+                value = 0;
+                break found;
+            }
+            for (int i = 0; i < positive.size; i++) {
+                seen += positive.counts[i];
+                if (seen > rank) {
+                    value = representative(positive.indexes[i]);
+                    break found;
+                }
+            }
+        }
+        return Math.max(min, Math.min(max, value));
+    }
+
+    long count() {
+        return count;
+    }
+
+    void clear() {
+        positive.clear();
+        negative = null;
+        zeroCount = 0;
+        count = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch();
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * 估算占用字节数（桶数组 + 对象头）
+     */
+    long estimatedBytes() {
+        return 64 + positive.estimatedBytes() + (negative != null ? negative.estimatedBytes() : 0);
+    }
+
+    // ==================== 序列化（快照） ====================
+
+    int serializedBytes() {
+        return 4 * Long.BYTES + positive.serializedBytes() + (negative != null ? negative.serializedBytes() : Integer.BYTES);
+    }
+
+    /**
+     * 布局：[计数 8B][最小 8B][最大 8B][零桶 8B] 正数桶 负数桶，每组 [桶数 4B] { [编号 4B][计数 8B] }
+     */
+    void writeTo(ByteBuffer out) {
+        out.putLong(count).putDouble(min).putDouble(max).putLong(zeroCount);
+        positive.writeTo(out);
+        if (negative != null) {
+            negative.writeTo(out);
+        } else {
+            out.putInt(0);
+        }
+    }
+
+    static QuantileSketch readFrom(ByteBuffer in) {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.count = in.getLong();
+        sketch.min = in.getDouble();
+        sketch.max = in.getDouble();
+        sketch.zeroCount = in.getLong();
+        sketch.positive.readFrom(in);
+        Bins negative = new Bins();
+        negative.readFrom(in);
+        sketch.negative = negative.size > 0 ? negative : null;
+        return sketch;
+    }
+
+    private Bins negatives() {
+        if (negative == null) {
+            negative = new Bins();
+        }
+        return negative;
+    }
+
+    private static int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / LOG_GAMMA);
+    }
+
+    /**
+     * 桶的代表值：桶区间 (γ^(i-1), γ^i] 内相对误差最小的点
+     */
+    private static double representative(int index) {
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+
+    /**
+     * 一组稀疏桶：编号升序
+     */
+    private static final class Bins {
+
+        private int[] indexes = new int[0];
+        private long[] counts = new long[0];
+        private int size;
+
+        void add(int index, long n) {
+            int i = Arrays.binarySearch(indexes, 0, size, index);
+            if (i >= 0) {
+                counts[i] += n;
+                return;
+            }
+            i = -i - 1;
+            if (size == MAX_BINS) {
+                // 桶数达到上限：编号更小的新值并入最小的桶，否则合并最小的两个桶腾出位置
+                if (i == 0) {
+                    counts[0] += n;
+                    return;
+                }
+                counts[1] += counts[0];
+                System.arraycopy(indexes, 1, indexes, 0, i - 1);
+                System.arraycopy(counts, 1, counts, 0, i - 1);
+                indexes[i - 1] = index;
+                counts[i - 1] = n;
+                return;
+            }
+            if (size == indexes.length) {
+                int capacity = Math.min(Math.max(INITIAL_BINS, size * 2), MAX_BINS);
+                indexes = Arrays.copyOf(indexes, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+            }
+            System.arraycopy(indexes, i, indexes, i + 1, size - i);
+            System.arraycopy(counts, i, counts, i + 1, size - i);
+            indexes[i] = index;
+            counts[i] = n;
+            size++;
+        }
+
+        /**
+         * @return false 表示没有对应的桶（已被合并到最小的桶时扣减最小的桶）
+         */
+        boolean remove(int index) {
+            if (size == 0) {
+                return false;
+            }
+            int i = Arrays.binarySearch(indexes, 0, size, index);
+            if (i < 0) {
+                i = -i - 1 == 0 ? 0 : -1;
+                if (i < 0) {
+                    return false;
+                }
+            }
+            if (--counts[i] == 0) {
+                System.arraycopy(indexes, i + 1, indexes, i, size - i - 1);
+                System.arraycopy(counts, i + 1, counts, i, size - i - 1);
+                size--;
+            }
+            return true;
+        }
+
+        void merge(Bins other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.indexes[i], other.counts[i]);
+            }
+        }
+
+        void clear() {
+            indexes = new int[0];
+            counts = new long[0];
+            size = 0;
+        }
+
+        long estimatedBytes() {
+            return 32 + (long) indexes.length * (Integer.BYTES + Long.BYTES);
+        }
+
+        int serializedBytes() {
+            return Integer.BYTES + size * (Integer.BYTES + Long.BYTES);
+        }
+
+        void writeTo(ByteBuffer out) {
+            out.putInt(size);
+            for (int i = 0; i < size; i++) {
+                out.putInt(indexes[i]).putLong(counts[i]);
+            }
+        }
+
+        void readFrom(ByteBuffer in) {
+            size = in.getInt();
+            indexes = new int[size];
+            counts = new long[size];
+            for (int i = 0; i < size; i++) {
+                indexes[i] = in.getInt();
+                counts[i] = in.getLong();
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.DataType;
+import com.minitb.domain.telemetry.TelemetryRepository;
+import com.minitb.domain.telemetry.TsKvEntry;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 仓储数据层 - 历史数据仓储（TelemetryRepository，如 SQLite），代价最高
+ *
+ * 设置了仓储时认领整个剩余范围：每个数据点都会写入仓储，内存和汇总桶回答不了的部分只能从这里读取。
+ * 按页读取（每页 pageSize 个数据点），聚合时逐页把数值型数据点交给聚合查询，不构建完整结果列表
+ */
+final class RepositoryTier implements TelemetryTier {
+
+    private final Supplier<TelemetryRepository> repository;
+    private final int pageSize;
+    private final int cost;
+
+    /**
+     * @param repository 仓储在运行期间才设置，每次查询时读取
+     */
+    RepositoryTier(Supplier<TelemetryRepository> repository, int pageSize, int cost) {
+        this.repository = repository;
+        this.pageSize = pageSize;
+        this.cost = cost;
+    }
+
+    @Override
+    public String name() {
+        return "repository";
+    }
+
+    @Override
+    public int cost() {
+        return cost;
+    }
+
+    @Override
+    public Range coverage(Request request, long startTs, long endTs) {
+        return repository.get() != null && startTs <= endTs ? new Range(startTs, endTs) : null;
+    }
+
+    @Override
+    public boolean scan(Request request, long startTs, long endTs, Predicate<TsKvEntry> visitor) {
+        TelemetryRepository source = repository.get();
+        if (source == null) {
+            return true;
+        }
+        long from = startTs;
+        while (from <= endTs) {
+            List<TsKvEntry> page = source.findByKey(request.deviceId(), request.key(), from, endTs, pageSize);
+            for (TsKvEntry entry : page) {
+                if (!visitor.test(entry)) {
+                    return false;
+                }
+            }
+            if (page.size() < pageSize) {
+                break;
+            }
+            // 仓储中 (设备, 键, 时间戳) 唯一，从下一毫秒继续
+            from = page.get(page.size() - 1).getTs() + 1;
+        }
+        return true;
+    }
+
+    @Override
+    public void aggregate(Request request, long startTs, long endTs, AggregationQuery sink) {
+        scan(request, startTs, endTs, entry -> {
+            if (entry.getDataType() == DataType.DOUBLE) {
+                entry.getDoubleValue().ifPresent(value -> sink.add(entry.getTs(), value));
+            } else if (entry.getDataType() == DataType.LONG) {
+                entry.getLongValue().ifPresent(value -> sink.add(entry.getTs(), value));
+            }
+            return true;
+        });
+    }
+}
@@ -0,0 +1,21 @@
+package com.minitb.storage;
+
+import com.minitb.domain.device.TelemetryRetentionPolicy;
+import com.minitb.domain.id.DeviceId;
+
+/**
+ * 保留策略解析器 - 按设备查找遥测数据保留策略
+ *
+ * 由配置层注入（通常根据设备的 DeviceProfile 解析），
+ * 返回 null 或策略字段为 null 时使用存储的全局默认值
+ */
+@FunctionalInterface
+public interface RetentionPolicyResolver {
+
+    /**
+     * 不做任何覆盖，全部使用全局默认值
+     */
+    RetentionPolicyResolver DEFAULTS = deviceId -> null;
+
+    TelemetryRetentionPolicy resolve(DeviceId deviceId);
+}
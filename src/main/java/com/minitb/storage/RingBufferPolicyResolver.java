@@ -0,0 +1,23 @@
+package com.minitb.storage;
+
+import com.minitb.domain.id.DeviceId;
+
+/**
+ * 环形缓冲区策略解析器 - 按 (设备, 键) 决定序列是否使用定长环形缓冲区
+ *
+ * 由配置层注入（通常根据设备 DeviceProfile 中的 TelemetryDefinition 解析），
+ * 序列创建时解析一次；设置解析器时已有的序列按新策略转换
+ */
+@FunctionalInterface
+public interface RingBufferPolicyResolver {
+
+    /**
+     * 所有键都使用完整时间序列
+     */
+    RingBufferPolicyResolver NONE = (deviceId, key) -> 0;
+
+    /**
+     * @return 环形缓冲区容量（数据点数），<= 0 表示使用完整时间序列
+     */
+    int resolveCapacity(DeviceId deviceId, String key);
+}
@@ -0,0 +1,254 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.DataType;
+import com.minitb.domain.telemetry.TsKvEntry;
+
+/**
+ * 环形数据块 - 只保留最近 capacity 个数据点的定长缓冲区（环形缓冲区模式的序列只有这一个数据块）
+ *
+ * 存储布局：
+ * - 创建时一次性分配 capacity + 1 个槽位，之后内存不再变化
+ * - long[] 时间戳列，long[] 值列（DOUBLE 存原始位、LONG 原值、BOOLEAN 0/1），STRING/JSON 使用 String[]
+ * - 空值标记按需分配
+ * - 逻辑位置 p（累计写入序号）存放在槽位 p % (capacity + 1)，写满后覆盖最旧的数据点
+ *
+ * 写入规则：
+ * - 新于最新时间戳的数据点追加；与已有时间戳相同的数据点原地覆盖（后写覆盖先写）
+ * - 早于最新时间戳、又不在缓冲区中的迟到数据点直接丢弃（仪表盘只关心最近的数据）
+ *
+ * 并发模型（单写多读）：
+ * - 写入由 TimeSeries 的写锁串行化；先写槽位，再写 volatile written 发布
+ * - 读线程把 [fromTs, 最新] 范围内的槽位整段复制（最多两段 System.arraycopy），
+ *   复制后重新读取 written，丢弃复制期间被覆盖的位置
+ * - 多出的一个槽位保证正在写入（尚未发布）的数据点不会覆盖逻辑范围内最旧的数据点
+ */
+final class RingChunk implements TsChunk {
+
+    private final DataType dataType;
+    private final int capacity;
+    private final int slots;
+
+    private final long[] timestamps;
+    private final long[] values;
+    private final String[] strings;
+    private boolean[] nulls;
+
+    // 累计写入的数据点数（下一个数据点的逻辑位置）
+    private volatile long written;
+
+    RingChunk(DataType dataType, int capacity) {
+        this.dataType = dataType;
+        this.capacity = capacity;
+        this.slots = capacity + 1;
+        this.timestamps = new long[slots];
+        boolean text = dataType == DataType.STRING || dataType == DataType.JSON;
+        this.values = text ? null : new long[slots];
+        this.strings = text ? new String[slots] : null;
+    }
+
+    /**
+     * 写入数据点（调用方持有写锁，且类型相同）
+     * @return false 表示迟到数据点被丢弃
+     */
+    boolean append(TsKvEntry entry) {
+        long end = written;
+        long ts = entry.getTs();
+        if (end > 0 && ts <= timestamps[slot(end - 1)]) {
+            long p = lowerBound(ts, Math.max(0, end - capacity), end);
+            if (p == end || timestamps[slot(p)] != ts) {
+                return false;
+            }
+            write(slot(p), entry);
+            return true;
+        }
+        int i = slot(end);
+        timestamps[i] = ts;
+        write(i, entry);
+        written = end + 1;
+        return true;
+    }
+
+    private void write(int i, TsKvEntry entry) {
+        boolean isNull;
+        switch (dataType) {
+            case DOUBLE -> {
+                Double v = entry.getDoubleValue().orElse(null);
+                isNull = v == null;
+                values[i] = isNull ? 0 : Double.doubleToRawLongBits(v);
+            }
+            case LONG -> {
+                Long v = entry.getLongValue().orElse(null);
+                isNull = v == null;
+                values[i] = isNull ? 0 : v;
+            }
+            case BOOLEAN -> {
+                Boolean v = entry.getBooleanValue().orElse(null);
+                isNull = v == null;
+                values[i] = Boolean.TRUE.equals(v) ? 1 : 0;
+            }
+            case STRING -> {
+                strings[i] = entry.getStrValue().orElse(null);
+                isNull = false;
+            }
+            default -> {
+                strings[i] = entry.getJsonValue().orElse(null);
+                isNull = false;
+            }
+        }
+        if (isNull && nulls == null) {
+            nulls = new boolean[slots];
+        }
+        if (nulls != null) {
+            nulls[i] = isNull;
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(written, capacity);
+    }
+
+    @Override
+    public long minTs() {
+        long end = written;
+        return timestamps[slot(Math.max(0, end - capacity))];
+    }
+
+    @Override
+    public long maxTs() {
+        return timestamps[slot(written - 1)];
+    }
+
+    @Override
+    public long estimatedBytes() {
+        long bytes = (long) slots * Long.BYTES;
+        if (values != null) bytes += (long) slots * Long.BYTES;
+        if (strings != null) bytes += (long) slots * 4;
+        if (nulls != null) bytes += slots;
+        return bytes;
+    }
+
+    /**
+     * 把 [fromTs, 最新] 范围内的数据点整段复制出来，游标在副本上读取
+     */
+    @Override
+    public ChunkCursor cursor(long fromTs) {
+        long end = written;
+        long from = lowerBound(fromTs, Math.max(0, end - capacity), end);
+        int n = (int) (end - from);
+        long[] ts = new long[n];
+        long[] vals = values != null ? new long[n] : null;
+        String[] strs = strings != null ? new String[n] : null;
+        boolean[] nullFlags = nulls;
+        boolean[] nls = nullFlags != null ? new boolean[n] : null;
+        copy(timestamps, from, ts, n);
+        if (vals != null) copy(values, from, vals, n);
+        if (strs != null) copy(strings, from, strs, n);
+        if (nls != null) copy(nullFlags, from, nls, n);
+        // 复制期间被覆盖的位置（早于 written - capacity）丢弃
+        int start = (int) Math.max(0, Math.min(n, written - capacity - from));
+        while (start < n && ts[start] < fromTs) {
+            start++;
+        }
+        return new Cursor(ts, vals, strs, nls, start - 1, n);
+    }
+
+    private void copy(Object src, long from, Object dst, int n) {
+        if (n == 0) {
+            return;
+        }
+        int i = slot(from);
+        int first = Math.min(n, slots - i);
+        System.arraycopy(src, i, dst, 0, first);
+        if (first < n) {
+            System.arraycopy(src, 0, dst, first, n - first);
+        }
+    }
+
+    /**
+     * 逻辑范围 [lo, hi) 内第一个时间戳 >= ts 的位置
+     */
+    private long lowerBound(long ts, long lo, long hi) {
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timestamps[slot(mid)] < ts) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int slot(long position) {
+        return (int) (position % slots);
+    }
+
+    private final class Cursor implements ChunkCursor {
+
+        private final long[] ts;
+        private final long[] vals;
+        private final String[] strs;
+        private final boolean[] nls;
+        private final int limit;
+        private int index;
+
+        private Cursor(long[] ts, long[] vals, String[] strs, boolean[] nls, int index, int limit) {
+            this.ts = ts;
+            this.vals = vals;
+            this.strs = strs;
+            this.nls = nls;
+            this.index = index;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean next() {
+            return ++index < limit;
+        }
+
+        @Override
+        public long ts() {
+            return ts[index];
+        }
+
+        @Override
+        public DataType dataType() {
+            return dataType;
+        }
+
+        @Override
+        public boolean isNull() {
+            return nls != null && nls[index] || strs != null && strs[index] == null;
+        }
+
+        @Override
+        public double doubleValue() {
+            return dataType == DataType.DOUBLE ? Double.longBitsToDouble(vals[index]) : vals[index];
+        }
+
+        @Override
+        public long longValue() {
+            return vals[index];
+        }
+
+        @Override
+        public boolean booleanValue() {
+            return vals[index] != 0;
+        }
+
+        @Override
+        public String stringValue() {
+            return strs != null ? strs[index] : null;
+        }
+    }
+}
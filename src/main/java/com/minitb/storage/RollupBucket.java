@@ -0,0 +1,39 @@
+package com.minitb.storage;
+
+import lombok.Value;
+
+/**
+ * 汇总桶 - 一个时间窗口内数值型数据点的预聚合结果
+ *
+ * 窗口为 [startTs, startTs + intervalMs)
+ */
+@Value
+public class RollupBucket {
+
+    long startTs;
+
+    long intervalMs;
+
+    long count;
+
+    double sum;
+
+    double min;
+
+    double max;
+
+    /**
+     * 窗口内时间戳最大的数据点的值
+     */
+    double last;
+
+    long lastTs;
+
+    public double getAvg() {
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    public long getEndTs() {
+        return startTs + intervalMs;
+    }
+}
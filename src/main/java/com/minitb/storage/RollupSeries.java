@@ -0,0 +1,393 @@
+package com.minitb.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 汇总序列 - 单个序列在某一分辨率下的汇总桶（count/sum/min/max/last，以及可选的分位数草图）
+ *
+ * 存储布局：按桶起始时间升序排列的并行原始类型数组，不为每个桶创建对象；
+ * 启用分位数草图时每个桶另有一个 QuantileSketch（第一个数据点写入时创建）
+ *
+ * 增量维护：
+ * - 数据点落在最新的桶（或其后）时 O(1) 更新/追加
+ * - 迟到的数据点二分定位到历史桶，必要时插入新桶
+ * - 同一时间戳的数据点被覆盖（upsert）时用新值替换旧值：count/sum/last 精确修正，
+ *   min/max 无法撤销旧值，只随新值扩展
+ *
+ * 并发模型：
+ * - 写入由所属 TimeSeries 的写锁串行化，这里再用 StampedLock 写锁保护数组
+ * - 读线程持读锁复制所需的桶，持锁时间只与返回的桶数相关
+ */
+class RollupSeries {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final long intervalMs;
+    private final StampedLock lock = new StampedLock();
+
+    private long[] starts = new long[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private double[] sums = new double[INITIAL_CAPACITY];
+    private double[] mins = new double[INITIAL_CAPACITY];
+    private double[] maxs = new double[INITIAL_CAPACITY];
+    private double[] lasts = new double[INITIAL_CAPACITY];
+    private long[] lastTss = new long[INITIAL_CAPACITY];
+    private QuantileSketch[] sketches;
+    private long sketchBytes;
+    private int size;
+
+    RollupSeries(long intervalMs) {
+        this(intervalMs, false);
+    }
+
+    /**
+     * @param sketchesEnabled 是否为每个桶维护分位数草图
+     */
+    RollupSeries(long intervalMs, boolean sketchesEnabled) {
+        this.intervalMs = intervalMs;
+        this.sketches = sketchesEnabled ? new QuantileSketch[INITIAL_CAPACITY] : null;
+    }
+
+    long getIntervalMs() {
+        return intervalMs;
+    }
+
+    boolean sketchesEnabled() {
+        return sketches != null;
+    }
+
+    /**
+     * 最早的桶的起始时间，没有桶时返回 Long.MAX_VALUE
+     */
+    long firstStart() {
+        long stamp = lock.readLock();
+        try {
+            return size > 0 ? starts[0] : Long.MAX_VALUE;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 累加一个数据点
+     * @return 数组扩容和草图增长增加的字节数
+     */
+    long add(long ts, double value) {
+        long start = Math.floorDiv(ts, intervalMs) * intervalMs;
+        long stamp = lock.writeLock();
+        try {
+            long before = bytes();
+            int i;
+            if (size > 0 && starts[size - 1] == start) {
+                i = size - 1;
+            } else if (size == 0 || starts[size - 1] < start) {
+                i = insertAt(size, start);
+            } else {
+                i = Arrays.binarySearch(starts, 0, size, start);
+                if (i < 0) {
+                    i = insertAt(-i - 1, start);
+                }
+            }
+            counts[i]++;
+            sums[i] += value;
+            if (value < mins[i]) mins[i] = value;
+            if (value > maxs[i]) maxs[i] = value;
+            if (ts >= lastTss[i]) {
+                lasts[i] = value;
+                lastTss[i] = ts;
+            }
+            if (sketches != null) {
+                QuantileSketch sketch = sketches[i];
+                if (sketch == null) {
+                    sketch = sketches[i] = new QuantileSketch();
+                    sketchBytes += sketch.estimatedBytes();
+                }
+                long sketchBefore = sketch.estimatedBytes();
+                sketch.add(value);
+                sketchBytes += sketch.estimatedBytes() - sketchBefore;
+            }
+            return bytes() - before;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 用新值替换同一时间戳的旧值，null 表示非数值（不参与汇总）
+     * 分位数草图精确移除旧值、加入新值
+     * @return 数组扩容和草图增长增加的字节数
+     */
+    long replace(long ts, Double oldValue, Double newValue) {
+        if (oldValue == null) {
+            return newValue != null ? add(ts, newValue) : 0;
+        }
+        long start = Math.floorDiv(ts, intervalMs) * intervalMs;
+        long stamp = lock.writeLock();
+        try {
+            int i = Arrays.binarySearch(starts, 0, size, start);
+            if (i < 0) {
+                // 旧值所在的桶已过期
+                return 0;
+            }
+            long before = bytes();
+            QuantileSketch sketch = sketches != null ? sketches[i] : null;
+            if (sketch != null) {
+                sketchBytes -= sketch.estimatedBytes();
+                sketch.remove(oldValue);
+            }
+            if (newValue == null) {
+                counts[i]--;
+                sums[i] -= oldValue;
+            } else {
+                sums[i] += newValue - oldValue;
+                if (newValue < mins[i]) mins[i] = newValue;
+                if (newValue > maxs[i]) maxs[i] = newValue;
+                if (lastTss[i] == ts) {
+                    lasts[i] = newValue;
+                }
+                if (sketch != null) {
+                    sketch.add(newValue);
+                }
+            }
+            if (sketch != null) {
+                sketchBytes += sketch.estimatedBytes();
+            }
+            return bytes() - before;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 删除结束时间早于 expireBefore 的桶
+     * @return 删除的桶数
+     */
+    int expire(long expireBefore) {
+        long stamp = lock.writeLock();
+        try {
+            int drop = 0;
+            while (drop < size && starts[drop] + intervalMs <= expireBefore) {
+                drop++;
+            }
+            if (drop > 0) {
+                int remaining = size - drop;
+                System.arraycopy(starts, drop, starts, 0, remaining);
+                System.arraycopy(counts, drop, counts, 0, remaining);
+                System.arraycopy(sums, drop, sums, 0, remaining);
+                System.arraycopy(mins, drop, mins, 0, remaining);
+                System.arraycopy(maxs, drop, maxs, 0, remaining);
+                System.arraycopy(lasts, drop, lasts, 0, remaining);
+                System.arraycopy(lastTss, drop, lastTss, 0, remaining);
+                if (sketches != null) {
+                    for (int i = 0; i < drop; i++) {
+                        if (sketches[i] != null) {
+                            sketchBytes -= sketches[i].estimatedBytes();
+                        }
+                    }
+                    System.arraycopy(sketches, drop, sketches, 0, remaining);
+                    Arrays.fill(sketches, remaining, size, null);
+                }
+                size = remaining;
+            }
+            return drop;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 查询与 [startTs, endTs] 有交集的桶
+     */
+    List<RollupBucket> query(long startTs, long endTs) {
+        List<RollupBucket> result = new ArrayList<>();
+        long stamp = lock.readLock();
+        try {
+            int i = firstEndingAfter(startTs);
+            for (; i < size && starts[i] <= endTs; i++) {
+                result.add(new RollupBucket(starts[i], intervalMs, counts[i], sums[i],
+                        mins[i], maxs[i], lasts[i], lastTss[i]));
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return result;
+    }
+
+    /**
+     * 依次访问与 [startTs, endTs] 有交集的桶的分位数草图（持读锁，consumer 不能保留草图引用）
+     * @return false 表示未启用分位数草图
+     */
+    boolean forEachSketch(long startTs, long endTs, SketchConsumer consumer) {
+        long stamp = lock.readLock();
+        try {
+            if (sketches == null) {
+                return false;
+            }
+            int i = firstEndingAfter(startTs);
+            for (; i < size && starts[i] <= endTs; i++) {
+                if (sketches[i] != null) {
+                    consumer.accept(starts[i], sketches[i]);
+                }
+            }
+            return true;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 复制当前所有桶（快照用）
+     */
+    State copy() {
+        long stamp = lock.readLock();
+        try {
+            QuantileSketch[] sketchCopies = null;
+            if (sketches != null) {
+                sketchCopies = new QuantileSketch[size];
+                for (int i = 0; i < size; i++) {
+                    sketchCopies[i] = sketches[i] != null ? sketches[i].copy() : null;
+                }
+            }
+            return new State(intervalMs, Arrays.copyOf(starts, size), Arrays.copyOf(counts, size),
+                    Arrays.copyOf(sums, size), Arrays.copyOf(mins, size), Arrays.copyOf(maxs, size),
+                    Arrays.copyOf(lasts, size), Arrays.copyOf(lastTss, size), sketchCopies);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 用快照中的桶替换当前内容（启动恢复时调用）
+     * 快照中没有分位数草图（旧版本快照或写入时未启用）时，这些桶不参与分位数查询
+     */
+    void restore(State state) {
+        int n = state.starts().length;
+        int capacity = Math.max(INITIAL_CAPACITY, n);
+        long stamp = lock.writeLock();
+        try {
+            starts = Arrays.copyOf(state.starts(), capacity);
+            counts = Arrays.copyOf(state.counts(), capacity);
+            sums = Arrays.copyOf(state.sums(), capacity);
+            mins = Arrays.copyOf(state.mins(), capacity);
+            maxs = Arrays.copyOf(state.maxs(), capacity);
+            lasts = Arrays.copyOf(state.lasts(), capacity);
+            lastTss = Arrays.copyOf(state.lastTss(), capacity);
+            if (sketches != null) {
+                sketches = state.sketches() != null
+                        ? Arrays.copyOf(state.sketches(), capacity) : new QuantileSketch[capacity];
+                sketchBytes = 0;
+                for (int i = 0; i < n; i++) {
+                    if (sketches[i] != null) {
+                        sketchBytes += sketches[i].estimatedBytes();
+                    }
+                }
+            }
+            size = n;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    long estimatedBytes() {
+        long stamp = lock.readLock();
+        try {
+            return bytes();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 并行数组加草图的字节数（调用方持有锁）
+     */
+    private long bytes() {
+        int slotBytes = 7 * Long.BYTES + (sketches != null ? Long.BYTES : 0);
+        return (long) starts.length * slotBytes + sketchBytes;
+    }
+
+    /**
+     * 第一个结束时间 > ts 的桶下标
+     */
+    private int firstEndingAfter(long ts) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] + intervalMs <= ts) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int insertAt(int i, long start) {
+        if (size == starts.length) {
+            grow();
+        }
+        int tail = size - i;
+        if (tail > 0) {
+            System.arraycopy(starts, i, starts, i + 1, tail);
+            System.arraycopy(counts, i, counts, i + 1, tail);
+            System.arraycopy(sums, i, sums, i + 1, tail);
+            System.arraycopy(mins, i, mins, i + 1, tail);
+            System.arraycopy(maxs, i, maxs, i + 1, tail);
+            System.arraycopy(lasts, i, lasts, i + 1, tail);
+            System.arraycopy(lastTss, i, lastTss, i + 1, tail);
+            if (sketches != null) {
+                System.arraycopy(sketches, i, sketches, i + 1, tail);
+            }
+        }
+        if (sketches != null) {
+            sketches[i] = null;
+        }
+        starts[i] = start;
+        counts[i] = 0;
+        sums[i] = 0;
+        mins[i] = Double.POSITIVE_INFINITY;
+        maxs[i] = Double.NEGATIVE_INFINITY;
+        lasts[i] = 0;
+        lastTss[i] = Long.MIN_VALUE;
+        size++;
+        return i;
+    }
+
+    private void grow() {
+        int newLength = starts.length * 2;
+        starts = Arrays.copyOf(starts, newLength);
+        counts = Arrays.copyOf(counts, newLength);
+        sums = Arrays.copyOf(sums, newLength);
+        mins = Arrays.copyOf(mins, newLength);
+        maxs = Arrays.copyOf(maxs, newLength);
+        lasts = Arrays.copyOf(lasts, newLength);
+        lastTss = Arrays.copyOf(lastTss, newLength);
+        if (sketches != null) {
+            sketches = Arrays.copyOf(sketches, newLength);
+        }
+    }
+
+    /**
+     * 一个分辨率下所有桶的副本（并行数组，长度即桶数；sketches 为 null 表示没有分位数草图）
+     */
+    record State(long intervalMs, long[] starts, long[] counts, double[] sums, double[] mins, double[] maxs,
+                 double[] lasts, long[] lastTss, QuantileSketch[] sketches) {
+    }
+
+    @FunctionalInterface
+    interface SketchConsumer {
+        void accept(long bucketStart, QuantileSketch sketch);
+    }
+}
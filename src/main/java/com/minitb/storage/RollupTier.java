@@ -0,0 +1,90 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.TsKvEntry;
+
+import java.util.function.Predicate;
+
+/**
+ * 汇总数据层 - 某一分辨率的汇总桶，只回答聚合查询
+ *
+ * 认领条件：分辨率整除聚合间隔（不分间隔时任意分辨率均可），分位数聚合要求启用了分位数草图；
+ * 认领范围是 [startTs, endTs] 中按分辨率对齐、且不早于最早的汇总桶的部分。
+ * 聚合直接合并汇总桶（或分位数草图），与桶内原始数据点数无关
+ */
+final class RollupTier implements TelemetryTier {
+
+    private final long resolution;
+    private final int cost;
+
+    /**
+     * @param cost 分辨率越大、需要合并的桶越少，代价越低
+     */
+    RollupTier(long resolution, int cost) {
+        this.resolution = resolution;
+        this.cost = cost;
+    }
+
+    @Override
+    public String name() {
+        return "rollup-" + resolution + "ms";
+    }
+
+    @Override
+    public int cost() {
+        return cost;
+    }
+
+    @Override
+    public boolean supportsScan() {
+        return false;
+    }
+
+    @Override
+    public Range coverage(Request request, long startTs, long endTs) {
+        if (!request.isAggregation() || request.series() == null) {
+            return null;
+        }
+        if (request.intervalMs() > 0 && request.intervalMs() % resolution != 0) {
+            return null;
+        }
+        RollupSeries rollup = find(request.series());
+        if (rollup == null || request.aggregation().isPercentile() && !rollup.sketchesEnabled()) {
+            return null;
+        }
+        long first = rollup.firstStart();
+        if (first > endTs) {
+            return null;
+        }
+        long from = Math.max(startTs, first);
+        long innerStart = Math.floorDiv(from + resolution - 1, resolution) * resolution;
+        long innerEnd = Math.floorDiv(endTs + 1, resolution) * resolution;
+        return innerStart < innerEnd ? new Range(innerStart, innerEnd - 1) : null;
+    }
+
+    @Override
+    public boolean scan(Request request, long startTs, long endTs, Predicate<TsKvEntry> visitor) {
+        // supportsScan() 为 false，计划器不会把原始数据扫描交给汇总层
+        throw new IllegalStateException("Rollup tier " + name() + " cannot scan raw points");
+    }
+
+    @Override
+    public void aggregate(Request request, long startTs, long endTs, AggregationQuery sink) {
+        TimeSeries series = request.series();
+        if (request.aggregation().isPercentile()) {
+            series.forEachRollupSketch(resolution, startTs, endTs, sink::merge);
+        } else {
+            for (RollupBucket bucket : series.queryRollups(resolution, startTs, endTs)) {
+                sink.merge(bucket);
+            }
+        }
+    }
+
+    private RollupSeries find(TimeSeries series) {
+        for (RollupSeries rollup : series.rollups()) {
+            if (rollup.getIntervalMs() == resolution) {
+                return rollup;
+            }
+        }
+        return null;
+    }
+}
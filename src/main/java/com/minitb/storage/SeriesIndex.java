@@ -0,0 +1,289 @@
+package com.minitb.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+import java.util.function.LongFunction;
+
+/**
+ * 序列索引 - 按打包的 long 序列编号寻址的并发开放寻址表
+ *
+ * 读取（get）无锁：键数组和值数组按槽位发布，先写键再以 volatile 写入值；
+ * 新建、移除序列持有表锁（只在序列首次出现或被压缩整理移除时发生）
+ *
+ * 同时按设备编号维护每个设备的状态（键编号列表、最新值快照、占用计数器），
+ * 设备编号连续分配，直接用数组下标寻址
+ */
+final class SeriesIndex {
+
+    /**
+     * 已移除序列的槽位标记：保留键，序列再次出现时复用槽位
+     */
+    private static final Object REMOVED = new Object();
+
+    private volatile Table table = new Table(1024);
+    private int size;
+    private int used;
+
+    private volatile DeviceSeries[] devices = new DeviceSeries[64];
+
+    // 全局数据点数和字节数（各设备计数器的汇总）
+    private final TelemetryCounters total = new TelemetryCounters(null);
+
+    /**
+     * 查找序列，不存在时返回 null
+     */
+    TimeSeries get(long seriesId) {
+        return table.get(seriesId);
+    }
+
+    /**
+     * 查找序列，不存在时创建
+     */
+    TimeSeries computeIfAbsent(long seriesId, LongFunction<TimeSeries> factory) {
+        TimeSeries series = table.get(seriesId);
+        if (series != null) {
+            return series;
+        }
+        synchronized (this) {
+            Table current = table;
+            int slot = current.find(seriesId);
+            Object value = slot >= 0 ? current.values.get(slot) : null;
+            if (value instanceof TimeSeries existing) {
+                return existing;
+            }
+            TimeSeries created = factory.apply(seriesId);
+            if (value == null) {
+                if ((used + 1) * 4 > current.capacity() * 3) {
+                    current = rehash(current);
+                }
+                current.insert(seriesId, created);
+                used++;
+            } else {
+                current.values.set(slot, created);
+            }
+            size++;
+            device(TelemetryDictionary.deviceIndexOf(seriesId)).addKey(TelemetryDictionary.keyIdOf(seriesId));
+            return created;
+        }
+    }
+
+    /**
+     * 当前映射仍为 expected 时移除
+     */
+    synchronized boolean remove(long seriesId, TimeSeries expected) {
+        Table current = table;
+        int slot = current.find(seriesId);
+        if (slot < 0 || current.values.get(slot) != expected) {
+            return false;
+        }
+        current.values.set(slot, REMOVED);
+        size--;
+        devices[TelemetryDictionary.deviceIndexOf(seriesId)].removeKey(TelemetryDictionary.keyIdOf(seriesId));
+        return true;
+    }
+
+    /**
+     * 当前映射仍为 expected 时替换为 replacement（序列转换存储模式时）
+     */
+    synchronized boolean replace(long seriesId, TimeSeries expected, TimeSeries replacement) {
+        Table current = table;
+        int slot = current.find(seriesId);
+        if (slot < 0 || current.values.get(slot) != expected) {
+            return false;
+        }
+        current.values.set(slot, replacement);
+        return true;
+    }
+
+    /**
+     * 设备的状态，设备从未出现时返回 null
+     */
+    DeviceSeries getDevice(int deviceIndex) {
+        DeviceSeries[] current = devices;
+        return deviceIndex >= 0 && deviceIndex < current.length ? current[deviceIndex] : null;
+    }
+
+    /**
+     * 设备的状态，不存在时创建
+     */
+    DeviceSeries device(int deviceIndex) {
+        DeviceSeries existing = getDevice(deviceIndex);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (this) {
+            DeviceSeries[] current = devices;
+            if (deviceIndex >= current.length) {
+                current = Arrays.copyOf(current, Math.max(current.length * 2, deviceIndex + 1));
+            }
+            if (current[deviceIndex] == null) {
+                current[deviceIndex] = new DeviceSeries(new TelemetryCounters(total));
+            }
+            devices = current;
+            return current[deviceIndex];
+        }
+    }
+
+    /**
+     * 遍历有状态的设备编号
+     */
+    void forEachDevice(IntConsumer action) {
+        DeviceSeries[] current = devices;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] != null) {
+                action.accept(i);
+            }
+        }
+    }
+
+    /**
+     * 全局计数器
+     */
+    TelemetryCounters total() {
+        return total;
+    }
+
+    /**
+     * 当前序列数
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized void clear() {
+        table = new Table(1024);
+        size = 0;
+        used = 0;
+        devices = new DeviceSeries[64];
+    }
+
+    /**
+     * 扩容并丢弃已移除的槽位（持有表锁）
+     */
+    private Table rehash(Table current) {
+        int live = 0;
+        for (int i = 0; i < current.capacity(); i++) {
+            if (current.values.get(i) instanceof TimeSeries) {
+                live++;
+            }
+        }
+        int capacity = current.capacity();
+        while ((live + 1) * 2 > capacity) {
+            capacity *= 2;
+        }
+        Table next = new Table(capacity);
+        for (int i = 0; i < current.capacity(); i++) {
+            if (current.values.get(i) instanceof TimeSeries series) {
+                next.insert(current.keys[i], series);
+            }
+        }
+        used = live;
+        table = next;
+        return next;
+    }
+
+    private static int hash(long seriesId) {
+        long h = seriesId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 线性探测表；槽位一旦写入键就不再改变，值可在 TimeSeries 与 REMOVED 之间切换
+     */
+    private static final class Table {
+
+        private final long[] keys;
+        private final AtomicReferenceArray<Object> values;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        private int capacity() {
+            return keys.length;
+        }
+
+        private TimeSeries get(long seriesId) {
+            int slot = find(seriesId);
+            return slot >= 0 && values.get(slot) instanceof TimeSeries series ? series : null;
+        }
+
+        private int find(long seriesId) {
+            for (int i = hash(seriesId) & mask; ; i = (i + 1) & mask) {
+                // 先读值（volatile）再读键：读到非空值时一定能看到该槽位的键
+                if (values.get(i) == null) {
+                    return -1;
+                }
+                if (keys[i] == seriesId) {
+                    return i;
+                }
+            }
+        }
+
+        private void insert(long seriesId, TimeSeries series) {
+            int i = hash(seriesId) & mask;
+            while (values.get(i) != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = seriesId;
+            values.set(i, series);
+        }
+    }
+
+    /**
+     * 单个设备的状态：序列键编号列表（写时复制）、最新值快照和占用计数器
+     */
+    static final class DeviceSeries {
+
+        private volatile int[] keyIds = new int[0];
+        private final AtomicReference<LatestSnapshot> latest = new AtomicReference<>(LatestSnapshot.EMPTY);
+        private final TelemetryCounters counters;
+
+        private DeviceSeries(TelemetryCounters counters) {
+            this.counters = counters;
+        }
+
+        /**
+         * 当前有序列的键编号（只读）
+         */
+        int[] keyIds() {
+            return keyIds;
+        }
+
+        AtomicReference<LatestSnapshot> latest() {
+            return latest;
+        }
+
+        /**
+         * 设备的数据点数和字节数（计入全局计数器）
+         */
+        TelemetryCounters counters() {
+            return counters;
+        }
+
+        private void addKey(int keyId) {
+            int[] current = keyIds;
+            int[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = keyId;
+            keyIds = next;
+        }
+
+        private void removeKey(int keyId) {
+            int[] current = keyIds;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == keyId) {
+                    int[] next = new int[current.length - 1];
+                    System.arraycopy(current, 0, next, 0, i);
+                    System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                    keyIds = next;
+                    return;
+                }
+            }
+        }
+    }
+}
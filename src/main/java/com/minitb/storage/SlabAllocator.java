@@ -0,0 +1,225 @@
+package com.minitb.storage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 堆外 Slab 分配器 - 为封存的压缩数据块分配堆外内存
+ *
+ * 结构：
+ * - 按 slabBytes 大小一次性申请直接内存（DirectByteBuffer），块从 slab 中顺序切分
+ * - 分配大小向上取整到 2 的幂（最小 64 字节），每个大小级别维护空闲链表，释放的块按级别复用
+ * - 超过 slab 大小或达到 maxBytes 上限时返回 null，由调用方保留在堆上
+ *
+ * 回收（基于纪元）：
+ * - 数据块被替换（过期删除、乱序重建、冷数据下沉）后调用 free，块进入当前纪元的待回收列表
+ * - 读线程在访问数据块前登记所在纪元（beginRead / endRead），持有的旧快照在读完前不会被复用
+ * - 压缩整理时调用 advanceEpoch：只有早于所有活跃读线程纪元的待回收块才放回空闲链表
+ */
+final class SlabAllocator {
+
+    static final int MIN_BLOCK_BYTES = 64;
+
+    private final int slabBytes;
+    private final long maxBytes;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private int slabOffset;
+
+    /**
+     * 各大小级别的空闲块，下标为 log2(块大小)
+     */
+    @SuppressWarnings("unchecked")
+    private final Deque<Block>[] freeLists = new Deque[32];
+
+    /**
+     * 待回收块：纪元 -> 该纪元内释放的块
+     */
+    private final Deque<Retired> retired = new ArrayDeque<>();
+
+    private volatile long epoch;
+    private final ConcurrentHashMap<Long, AtomicInteger> readers = new ConcurrentHashMap<>();
+
+    private long usedBytes;
+    private long requestedBytes;
+    private long retiredBytes;
+    private int liveBlocks;
+    private long allocations;
+    private long frees;
+    private long fallbacks;
+
+    /**
+     * @param slabBytes 每个 slab 的字节数
+     * @param maxBytes 堆外内存上限（字节），<= 0 表示不限制
+     */
+    SlabAllocator(int slabBytes, long maxBytes) {
+        if (slabBytes < MIN_BLOCK_BYTES || Integer.bitCount(slabBytes) != 1) {
+            throw new IllegalArgumentException("slabBytes must be a power of two >= " + MIN_BLOCK_BYTES);
+        }
+        this.slabBytes = slabBytes;
+        this.maxBytes = maxBytes;
+        for (int i = 0; i < freeLists.length; i++) {
+            freeLists[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * 分配 size 字节的堆外块
+     * @return 分配的块，超过 slab 大小或达到上限时返回 null
+     */
+    synchronized Block allocate(int size) {
+        int sizeClass = sizeClass(size);
+        int blockBytes = 1 << sizeClass;
+        if (blockBytes > slabBytes) {
+            fallbacks++;
+            return null;
+        }
+        Block block = freeLists[sizeClass].pollFirst();
+        if (block == null) {
+            block = carve(sizeClass, blockBytes);
+            if (block == null) {
+                fallbacks++;
+                return null;
+            }
+        }
+        block = new Block(block.slab, block.offset, sizeClass, size);
+        usedBytes += blockBytes;
+        requestedBytes += size;
+        liveBlocks++;
+        allocations++;
+        return block;
+    }
+
+    /**
+     * 块对应的缓冲区切片（容量等于请求大小）
+     */
+    ByteBuffer buffer(Block block) {
+        ByteBuffer slab;
+        synchronized (this) {
+            slab = slabs.get(block.slab);
+        }
+        return slab.slice(block.offset, block.size);
+    }
+
+    /**
+     * 释放块：先进入待回收列表，确认没有读线程仍可能访问后才复用
+     */
+    synchronized void free(Block block) {
+        int blockBytes = 1 << block.sizeClass;
+        usedBytes -= blockBytes;
+        requestedBytes -= block.size;
+        liveBlocks--;
+        frees++;
+        retiredBytes += blockBytes;
+        Retired last = retired.peekLast();
+        if (last == null || last.epoch != epoch) {
+            last = new Retired(epoch);
+            retired.addLast(last);
+        }
+        last.blocks.add(block);
+    }
+
+    /**
+     * 进入新纪元，并回收早于所有活跃读线程纪元的待回收块
+     * @return 放回空闲链表的字节数
+     */
+    synchronized long advanceEpoch() {
+        // 先发布新纪元再检查活跃读线程：之后登记的读线程只能看到替换后的数据块数组
+        epoch = epoch + 1;
+        long oldestReader = epoch;
+        for (var entry : readers.entrySet()) {
+            if (entry.getValue().get() > 0) {
+                oldestReader = Math.min(oldestReader, entry.getKey());
+            }
+        }
+        long reclaimed = 0;
+        while (!retired.isEmpty() && retired.peekFirst().epoch < oldestReader) {
+            for (Block block : retired.pollFirst().blocks) {
+                freeLists[block.sizeClass].addFirst(block);
+                reclaimed += 1L << block.sizeClass;
+            }
+        }
+        retiredBytes -= reclaimed;
+        long current = epoch;
+        readers.entrySet().removeIf(entry -> entry.getKey() < current && entry.getValue().get() == 0);
+        return reclaimed;
+    }
+
+    /**
+     * 登记读线程，返回的纪元需传给 endRead
+     */
+    long beginRead() {
+        while (true) {
+            long current = epoch;
+            AtomicInteger count = readers.computeIfAbsent(current, e -> new AtomicInteger());
+            count.incrementAndGet();
+            // 登记期间纪元已推进：重新登记，避免 advanceEpoch 漏看本线程
+            if (epoch == current) {
+                return current;
+            }
+            count.decrementAndGet();
+        }
+    }
+
+    void endRead(long readEpoch) {
+        AtomicInteger count = readers.get(readEpoch);
+        if (count != null) {
+            count.decrementAndGet();
+        }
+    }
+
+    synchronized SlabAllocatorStats getStats() {
+        return SlabAllocatorStats.builder()
+                .slabCount(slabs.size())
+                .reservedBytes((long) slabs.size() * slabBytes)
+                .usedBytes(usedBytes)
+                .requestedBytes(requestedBytes)
+                .retiredBytes(retiredBytes)
+                .liveBlocks(liveBlocks)
+                .allocations(allocations)
+                .frees(frees)
+                .fallbacks(fallbacks)
+                .build();
+    }
+
+    /**
+     * 从当前 slab 顺序切分，空间不足时申请新 slab
+     */
+    private Block carve(int sizeClass, int blockBytes) {
+        if (slabs.isEmpty() || slabOffset + blockBytes > slabBytes) {
+            if (maxBytes > 0 && (long) (slabs.size() + 1) * slabBytes > maxBytes) {
+                return null;
+            }
+            slabs.add(ByteBuffer.allocateDirect(slabBytes));
+            slabOffset = 0;
+        }
+        Block block = new Block(slabs.size() - 1, slabOffset, sizeClass, blockBytes);
+        slabOffset += blockBytes;
+        return block;
+    }
+
+    private static int sizeClass(int size) {
+        int bytes = Math.max(size, MIN_BLOCK_BYTES);
+        return 32 - Integer.numberOfLeadingZeros(bytes - 1);
+    }
+
+    /**
+     * 已分配的堆外块
+     */
+    record Block(int slab, int offset, int sizeClass, int size) {
+    }
+
+    private static final class Retired {
+
+        private final long epoch;
+        private final List<Block> blocks = new ArrayList<>();
+
+        private Retired(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.minitb.storage;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * 堆外 Slab 分配器统计快照
+ */
+@Value
+@Builder
+public class SlabAllocatorStats {
+
+    /**
+     * 已申请的 slab 数
+     */
+    int slabCount;
+
+    /**
+     * 已申请的堆外内存（slab 数 × slab 大小）
+     */
+    long reservedBytes;
+
+    /**
+     * 已分配块占用的字节数（按大小级别取整）
+     */
+    long usedBytes;
+
+    /**
+     * 已分配块实际请求的字节数，与 usedBytes 的差为内部碎片
+     */
+    long requestedBytes;
+
+    /**
+     * 已释放、等待读线程退出后复用的字节数
+     */
+    long retiredBytes;
+
+    int liveBlocks;
+
+    long allocations;
+
+    long frees;
+
+    /**
+     * 因块过大或达到上限而留在堆上的分配次数
+     */
+    long fallbacks;
+}
@@ -0,0 +1,217 @@
+package com.minitb.storage;
+
+import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.telemetry.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 遥测数据的有界批量队列 - 一个有界缓冲区加一个后台线程，
+ * 规则链异步写入（TelemetryWriteBehind）和历史数据仓储写入（TelemetryHistoryWriter）共用
+ *
+ * - 提交线程只把数据点放入缓冲区；缓冲区满时阻塞等待（背压），不丢弃数据
+ * - 攒够 flushSize 个数据点，或第一条数据等待超过 lingerMs，即交给 Sink 写一批
+ * - 一批内同一设备的数据按提交顺序合并
+ * - 关闭后或等待被中断时由提交线程同步写入；close() 写完缓冲区中剩余的数据
+ */
+final class TelemetryBatchQueue {
+
+    /**
+     * 一批数据的写入方，在后台线程（或关闭后的提交线程）中调用，自行处理写入失败
+     */
+    @FunctionalInterface
+    interface Sink {
+
+        void write(Map<DeviceId, List<TsKvEntry>> byDevice, int points);
+    }
+
+    private final ArrayBlockingQueue<Pending> queue;
+    private final int flushSize;
+    private final long lingerNanos;
+    private final Sink sink;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // 已提交的消息数；已写完的消息数由 this 保护，flush() 等待两者相等
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong backpressureWaits = new AtomicLong();
+    private long completed;
+
+    /**
+     * @param capacity 缓冲区容量（消息数）
+     * @param flushSize 每批数据点数
+     * @param lingerMs 批次最长等待时间（毫秒）
+     */
+    TelemetryBatchQueue(String threadName, int capacity, int flushSize, long lingerMs, Sink sink) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flushSize = flushSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.sink = sink;
+        this.thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 提交数据点，缓冲区满时阻塞（背压）；关闭后或等待被中断时同步写入
+     */
+    void submit(Map<DeviceId, List<TsKvEntry>> entries) {
+        submitted.incrementAndGet();
+        Pending pending = Pending.of(entries);
+        if (running) {
+            if (queue.offer(pending)) {
+                return;
+            }
+            backpressureWaits.incrementAndGet();
+            try {
+                queue.put(pending);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        write(List.of(pending));
+    }
+
+    /**
+     * 等待已提交的数据全部写完
+     */
+    void flush() {
+        long target = submitted.get();
+        synchronized (this) {
+            while (completed < target && thread.isAlive()) {
+                try {
+                    wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 是否仍在接收数据（close() 之后为 false）
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    int capacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    long getSubmitted() {
+        return submitted.get();
+    }
+
+    long getBackpressureWaits() {
+        return backpressureWaits.get();
+    }
+
+    /**
+     * 停止接收并写完缓冲区中剩余的数据
+     * 不中断后台线程（避免中断正在进行的文件 I/O），等待其在下一次轮询时退出
+     */
+    void close() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 关闭过程中才入队的数据由当前线程写完
+        List<Pending> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            write(rest);
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = running ? queue.poll(100, TimeUnit.MILLISECONDS) : queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fill(batch, first.points());
+            } catch (InterruptedException e) {
+                // 被外部中断：写完已取出的数据后退出，缓冲区剩余数据由 close() 写完
+                Thread.currentThread().interrupt();
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+                return;
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 继续取数据直到达到批大小或等待时间用完
+     */
+    private void fill(List<Pending> batch, int points) throws InterruptedException {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (points < flushSize) {
+            Pending next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (!running || remaining <= 0) {
+                    return;
+                }
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+            }
+            batch.add(next);
+            points += next.points();
+        }
+    }
+
+    /**
+     * 按设备合并一批数据交给 sink
+     */
+    private void write(List<Pending> batch) {
+        Map<DeviceId, List<TsKvEntry>> byDevice = new LinkedHashMap<>();
+        int points = 0;
+        for (Pending pending : batch) {
+            pending.entries().forEach((deviceId, entries) ->
+                    byDevice.computeIfAbsent(deviceId, id -> new ArrayList<>()).addAll(entries));
+            points += pending.points();
+        }
+        try {
+            sink.write(byDevice, points);
+        } finally {
+            synchronized (this) {
+                completed += batch.size();
+                notifyAll();
+            }
+        }
+    }
+
+    private record Pending(Map<DeviceId, List<TsKvEntry>> entries, int points) {
+
+        static Pending of(Map<DeviceId, List<TsKvEntry>> entries) {
+            int points = 0;
+            for (List<TsKvEntry> list : entries.values()) {
+                points += list.size();
+            }
+            return new Pending(entries, points);
+        }
+    }
+}
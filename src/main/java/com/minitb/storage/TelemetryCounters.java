@@ -0,0 +1,43 @@
+package com.minitb.storage;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 数据点数和估算字节数计数器
+ *
+ * 每个设备一个，计入全局计数器（parent）；序列在写入、封存、过期、下沉时按增量更新，
+ * 读取是 O(1) 的，不需要遍历序列。使用 LongAdder，多个写线程更新全局计数器时不争用同一个缓存行
+ */
+final class TelemetryCounters {
+
+    private final TelemetryCounters parent;
+    private final LongAdder points = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    TelemetryCounters(TelemetryCounters parent) {
+        this.parent = parent;
+    }
+
+    void add(long pointDelta, long byteDelta) {
+        if (pointDelta != 0) {
+            points.add(pointDelta);
+        }
+        if (byteDelta != 0) {
+            bytes.add(byteDelta);
+        }
+        if (parent != null) {
+            parent.add(pointDelta, byteDelta);
+        }
+    }
+
+    long points() {
+        return points.sum();
+    }
+
+    /**
+     * 估算堆内存占用（数据块 + 汇总桶，不含堆外和内存映射的数据块）
+     */
+    long bytes() {
+        return bytes.sum();
+    }
+}
@@ -0,0 +1,129 @@
+package com.minitb.storage;
+
+import com.minitb.domain.id.DeviceId;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 遥测字典 - 键名和设备的整数编码
+ *
+ * - 键名字典：全局共享，键名 -> 连续的 int 编号，所有设备的同名序列共用同一个 String 实例
+ * - 设备索引：DeviceId -> 连续的 int 编号
+ * - 序列编号：设备编号（高 32 位）和键编号（低 32 位）打包为一个 long，存储内部的序列表按 long 寻址
+ *
+ * 入口处每个设备、每个键名只做一次哈希查找，之后全部使用整数；
+ * 编号只增不减（设备或键被移除后编号保留，再次出现时复用）
+ */
+final class TelemetryDictionary {
+
+    private final Map<String, Integer> keyIds = new ConcurrentHashMap<>();
+    private volatile String[] keys = new String[64];
+    private int keyCount;
+
+    private final Map<DeviceId, Integer> deviceIndexes = new ConcurrentHashMap<>();
+    private volatile DeviceId[] devices = new DeviceId[64];
+    private int deviceCount;
+
+    /**
+     * 获取键名编号，不存在时分配
+     */
+    int keyId(String key) {
+        Integer id = keyIds.get(key);
+        return id != null ? id : register(key);
+    }
+
+    /**
+     * 查找键名编号，不存在时返回 -1
+     */
+    int findKeyId(String key) {
+        Integer id = keyIds.get(key);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * 编号对应的键名（字典中的唯一实例）
+     */
+    String key(int keyId) {
+        return keys[keyId];
+    }
+
+    /**
+     * 获取设备编号，不存在时分配
+     */
+    int deviceIndex(DeviceId deviceId) {
+        Integer index = deviceIndexes.get(deviceId);
+        return index != null ? index : register(deviceId);
+    }
+
+    /**
+     * 查找设备编号，不存在时返回 -1
+     */
+    int findDeviceIndex(DeviceId deviceId) {
+        Integer index = deviceIndexes.get(deviceId);
+        return index != null ? index : -1;
+    }
+
+    DeviceId device(int deviceIndex) {
+        return devices[deviceIndex];
+    }
+
+    int keyCount() {
+        return keyIds.size();
+    }
+
+    /**
+     * 已登记的键名（下标即键编号）
+     */
+    String[] keys() {
+        return Arrays.copyOf(keys, keyIds.size());
+    }
+
+    static long seriesId(int deviceIndex, int keyId) {
+        return ((long) deviceIndex << 32) | (keyId & 0xFFFFFFFFL);
+    }
+
+    static int deviceIndexOf(long seriesId) {
+        return (int) (seriesId >>> 32);
+    }
+
+    static int keyIdOf(long seriesId) {
+        return (int) seriesId;
+    }
+
+    /**
+     * 先写反查数组再发布正向映射：读到编号的线程一定能反查到键名
+     */
+    private synchronized int register(String key) {
+        Integer id = keyIds.get(key);
+        if (id != null) {
+            return id;
+        }
+        int keyId = keyCount++;
+        String[] current = keys;
+        if (keyId == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[keyId] = key;
+        keys = current;
+        keyIds.put(key, keyId);
+        return keyId;
+    }
+
+    private synchronized int register(DeviceId deviceId) {
+        Integer index = deviceIndexes.get(deviceId);
+        if (index != null) {
+            return index;
+        }
+        int deviceIndex = deviceCount++;
+        DeviceId[] current = devices;
+        if (deviceIndex == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[deviceIndex] = deviceId;
+        devices = current;
+        deviceIndexes.put(deviceId, deviceIndex);
+        return deviceIndex;
+    }
+}
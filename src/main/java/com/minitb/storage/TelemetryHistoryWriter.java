@@ -0,0 +1,130 @@
+package com.minitb.storage;
+
+import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.telemetry.TelemetryRepository;
+import com.minitb.domain.telemetry.TsKvEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 历史数据仓储的批量写入
+ *
+ * 写入线程（规则链 Actor 等）把数据写入内存后，只把数据点放入有界批量队列（TelemetryBatchQueue）即返回，
+ * 由后台线程攒批，每批调用一次 TelemetryRepository.saveAll（一个事务）：
+ * - 攒够 flushSize 个数据点，或第一条数据等待超过 lingerMs，即写一批；一批内同一设备的数据合并
+ * - 缓冲区满时提交线程阻塞等待（背压），不丢弃数据
+ * - 写入失败时按指数退避（100ms 起，最长 5s）重试同一批，直到仓储恢复：
+ *   数据只在内存中保留到原始数据过期，丢弃失败的批次会让这段历史永久缺失；
+ *   重试期间缓冲区写满后提交线程等待，和缓冲区满时的背压一致
+ * - 关闭时不再无限重试，最多重试 RETRIES_ON_CLOSE 次后丢弃并计入失败数
+ *
+ * 尚未写入仓储的数据是刚写入内存的最新数据，范围查询由内存数据块回答，不会出现空洞
+ */
+@Slf4j
+final class TelemetryHistoryWriter {
+
+    static final long RETRY_INITIAL_BACKOFF_MS = 100;
+    static final long RETRY_MAX_BACKOFF_MS = 5000;
+    static final int RETRIES_ON_CLOSE = 3;
+
+    private final Supplier<TelemetryRepository> repository;
+    private final TelemetryBatchQueue queue;
+
+    private final AtomicLong flushedPoints = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failedPoints = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * @param capacity 缓冲区容量（消息数）
+     * @param flushSize 每批数据点数
+     * @param lingerMs 批次最长等待时间（毫秒）
+     */
+    TelemetryHistoryWriter(Supplier<TelemetryRepository> repository, int capacity, int flushSize, long lingerMs) {
+        this.repository = repository;
+        this.queue = new TelemetryBatchQueue("telemetry-history-writer", capacity, flushSize, lingerMs, this::write);
+        log.info("历史数据批量写入已启动: 缓冲区容量 {}, 批大小 {}, 等待时间 {}ms", capacity, flushSize, lingerMs);
+    }
+
+    /**
+     * 提交数据点，缓冲区满时阻塞（背压）；关闭后或等待被中断时同步写入
+     */
+    void submit(Map<DeviceId, List<TsKvEntry>> entries) {
+        queue.submit(entries);
+    }
+
+    /**
+     * 等待已提交的数据全部写入仓储
+     */
+    void flush() {
+        queue.flush();
+    }
+
+    long getFlushedPoints() {
+        return flushedPoints.get();
+    }
+
+    long getFlushCount() {
+        return flushCount.get();
+    }
+
+    long getFailedPoints() {
+        return failedPoints.get();
+    }
+
+    long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * 停止接收并写完缓冲区中剩余的数据
+     */
+    void close() {
+        queue.close();
+        log.info("历史数据批量写入已停止: 共写入 {} 批, {} 个数据点", flushCount.get(), flushedPoints.get());
+    }
+
+    /**
+     * 把一批数据作为一次 saveAll 写入仓储，失败时退避重试
+     */
+    private void write(Map<DeviceId, List<TsKvEntry>> byDevice, int points) {
+        long backoffMs = RETRY_INITIAL_BACKOFF_MS;
+        for (int attempt = 0; ; attempt++) {
+            TelemetryRepository target = repository.get();
+            if (target == null) {
+                return;
+            }
+            try {
+                target.saveAll(byDevice);
+                flushedPoints.addAndGet(points);
+                flushCount.incrementAndGet();
+                if (attempt > 0) {
+                    log.info("遥测数据重试写入仓储成功: {} 个设备, {} 个数据点, 重试 {} 次", byDevice.size(), points, attempt);
+                }
+                return;
+            } catch (Exception e) {
+                boolean giveUp = !queue.isRunning() && attempt >= RETRIES_ON_CLOSE
+                        || Thread.currentThread().isInterrupted();
+                if (giveUp) {
+                    failedPoints.addAndGet(points);
+                    log.error("遥测数据写入仓储失败，放弃这一批: {} 个设备, {} 个数据点", byDevice.size(), points, e);
+                    return;
+                }
+                retries.incrementAndGet();
+                log.warn("遥测数据写入仓储失败，{}ms 后重试: {} 个设备, {} 个数据点, {}",
+                        backoffMs, byDevice.size(), points, e.toString());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoffMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                backoffMs = Math.min(backoffMs * 2, RETRY_MAX_BACKOFF_MS);
+            }
+        }
+    }
+}
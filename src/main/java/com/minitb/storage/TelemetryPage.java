@@ -0,0 +1,53 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.TsKvEntry;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 历史数据分页结果
+ *
+ * 续页令牌记录本页最后一个数据点的时间戳，以及该时间戳上已返回的数据点数
+ * （内存中同一时间戳可能有多个数据点），下一页从该位置之后继续，不受期间新写入数据的影响
+ */
+@Value
+public class TelemetryPage {
+
+    /**
+     * 本页数据点（按 ts 升序）
+     */
+    List<TsKvEntry> entries;
+
+    /**
+     * 续页令牌，没有更多数据时为 null
+     */
+    String nextCursor;
+
+    static String encodeCursor(long ts, int seenAtTs) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((ts + ":" + seenAtTs).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 解析续页令牌
+     * @return {时间戳, 该时间戳上已返回的数据点数}
+     */
+    static long[] decodeCursor(String cursor) {
+        long[] position;
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int separator = decoded.indexOf(':');
+            position = new long[]{Long.parseLong(decoded.substring(0, separator)),
+                    Integer.parseInt(decoded.substring(separator + 1))};
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+        if (position[1] < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        return position;
+    }
+}
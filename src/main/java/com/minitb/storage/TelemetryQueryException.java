@@ -0,0 +1,36 @@
+package com.minitb.storage;
+
+/**
+ * 遥测数据查询失败 - 查询计划中某个数据层读取失败
+ *
+ * 计划器不会跳过失败的数据层返回部分结果（缺失的区间会让历史数据出现空洞、聚合的计数和平均值出错），
+ * 而是中止整个查询并抛出本异常，由调用方决定重试或报错
+ */
+public class TelemetryQueryException extends RuntimeException {
+
+    private final String tier;
+    private final long startTs;
+    private final long endTs;
+
+    public TelemetryQueryException(String tier, long startTs, long endTs, Throwable cause) {
+        super("Telemetry tier " + tier + " failed for [" + startTs + ", " + endTs + "]", cause);
+        this.tier = tier;
+        this.startTs = startTs;
+        this.endTs = endTs;
+    }
+
+    /**
+     * 失败的数据层名称
+     */
+    public String getTier() {
+        return tier;
+    }
+
+    public long getStartTs() {
+        return startTs;
+    }
+
+    public long getEndTs() {
+        return endTs;
+    }
+}
@@ -0,0 +1,453 @@
+package com.minitb.storage;
+
+import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.telemetry.TsKvEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 遥测快照存储 - 把整个内存存储写成一个紧凑的二进制文件，启动时批量读回，只需回放之后的 WAL
+ *
+ * 文件布局（snapshot-00000000000000000001.snap，大端序）：
+ * <pre>
+ * [魔数 4B][版本 4B][WAL 段编号 8B][创建时间 8B]
+ * [键数 4B] { [键长度 2B][键 UTF-8] }                         键编号即下标
+ * [设备数 4B] {
+ *   [设备ID 16B]
+ *   [最新值数 4B] { 与 WAL 记录相同的数据点编码 }
+ *   [序列数 4B] {
+ *     [键编号 4B][数据点数 8B][头块点数 4B][数据块数 4B] { [长度 4B][GorillaChunk 编码] }
+ *     [汇总分辨率数 4B] { [分辨率 8B][桶数 4B][起始时间][计数][和][最小][最大][最后值][最后时间]
+ *                         [有草图 1B] { [分位数草图]（每个桶一个，计数为 0 表示该桶没有草图） } }
+ *   }
+ * }
+ * [CRC32 4B]
+ * </pre>
+ * 版本 1 没有分位数草图字段，仍可读取（恢复后这些桶不参与分位数查询）
+ * 头块点数 > 0 表示最后一个数据块在快照时是可写的列式头块（按快照时的长度编码），恢复后继续写入
+ *
+ * 写入：先写临时文件并刷盘，再原子重命名，崩溃不会留下半个快照；只保留最新的 retained 个快照
+ * 读取：整个文件只读映射，先校验 CRC，再用批量读取解析；最新快照损坏时退回到上一个
+ */
+@Slf4j
+final class TelemetrySnapshotStore {
+
+    private static final String FILE_PREFIX = "snapshot-";
+    private static final String FILE_SUFFIX = ".snap";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x4D545353;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 24;
+    private static final int BUFFER_BYTES = 1024 * 1024;
+    private static final QuantileSketch EMPTY_SKETCH = new QuantileSketch();
+
+    private final Path dir;
+    private final int retained;
+
+    // 已有的快照文件（按编号升序）
+    private final Deque<SnapshotFile> files = new ArrayDeque<>();
+    private long nextIndex = 1;
+
+    TelemetrySnapshotStore(Path dir, int retained) throws IOException {
+        this.dir = dir;
+        this.retained = retained;
+        Files.createDirectories(dir);
+        scan();
+    }
+
+    /**
+     * 读取最新的完整快照，损坏的快照跳过
+     * @return 没有可用快照时返回 null
+     */
+    Snapshot loadLatest() {
+        Iterator<SnapshotFile> it = files.descendingIterator();
+        while (it.hasNext()) {
+            SnapshotFile file = it.next();
+            try {
+                return read(file.path);
+            } catch (IOException | RuntimeException e) {
+                log.warn("遥测快照不可用，尝试上一个: {}", file.path, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 写入新快照并删除超出保留个数的旧快照
+     * @return 快照文件字节数
+     */
+    long write(Snapshot snapshot) throws IOException {
+        Path target = dir.resolve(fileName(nextIndex));
+        Path temp = dir.resolve(target.getFileName() + TEMP_SUFFIX);
+        long bytes;
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            writeSnapshot(out, snapshot);
+            bytes = out.finish();
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        files.addLast(new SnapshotFile(nextIndex, target, snapshot.walSegment()));
+        nextIndex++;
+
+        while (files.size() > retained) {
+            SnapshotFile old = files.pollFirst();
+            try {
+                Files.deleteIfExists(old.path);
+            } catch (IOException e) {
+                log.error("删除旧遥测快照失败: {}", old.path, e);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 保留的快照中最早的 WAL 段编号：之前的段不再需要（最新快照损坏时仍可从上一个快照恢复）
+     */
+    long oldestWalSegment() {
+        return files.isEmpty() ? 0 : files.peekFirst().walSegment;
+    }
+
+    // ==================== 写入 ====================
+
+    private static void writeSnapshot(Output out, Snapshot snapshot) throws IOException {
+        ByteBuffer header = out.reserve(HEADER_BYTES);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(snapshot.walSegment());
+        header.putLong(System.currentTimeMillis());
+
+        out.reserve(Integer.BYTES).putInt(snapshot.keys().length);
+        for (String key : snapshot.keys()) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            out.reserve(Short.BYTES + bytes.length).putShort((short) bytes.length).put(bytes);
+        }
+
+        out.reserve(Integer.BYTES).putInt(snapshot.devices().size());
+        for (DeviceState device : snapshot.devices()) {
+            UUID id = device.deviceId().getId();
+            out.reserve(2 * Long.BYTES + Integer.BYTES)
+                    .putLong(id.getMostSignificantBits())
+                    .putLong(id.getLeastSignificantBits())
+                    .putInt(device.latest().size());
+            for (TsKvEntry entry : device.latest().values()) {
+                TelemetryWal.EncodedEntry encoded = TelemetryWal.EncodedEntry.of(entry);
+                encoded.put(out.reserve(encoded.bytes()));
+            }
+            out.reserve(Integer.BYTES).putInt(device.series().size());
+            for (SeriesState series : device.series()) {
+                writeSeries(out, series);
+            }
+        }
+    }
+
+    private static void writeSeries(Output out, SeriesState series) throws IOException {
+        TsChunk[] chunks = series.chunks();
+        out.reserve(Integer.BYTES + Long.BYTES + 2 * Integer.BYTES)
+                .putInt(series.keyId())
+                .putLong(series.pointCount())
+                .putInt(series.headSize())
+                .putInt(chunks.length);
+        for (int i = 0; i < chunks.length; i++) {
+            ByteBuffer data;
+            if (chunks[i] instanceof GorillaChunk gorilla) {
+                data = gorilla.data();
+            } else {
+                ColumnarChunk columnar = (ColumnarChunk) chunks[i];
+                int size = i == chunks.length - 1 && series.headSize() > 0 ? series.headSize() : columnar.size();
+                data = ByteBuffer.wrap(GorillaChunk.encodeToBytes(columnar, size));
+            }
+            out.reserve(Integer.BYTES).putInt(data.remaining());
+            out.write(data);
+        }
+
+        out.reserve(Integer.BYTES).putInt(series.rollups().length);
+        for (RollupSeries.State rollup : series.rollups()) {
+            int n = rollup.starts().length;
+            out.reserve(Long.BYTES + Integer.BYTES).putLong(rollup.intervalMs()).putInt(n);
+            out.putLongs(rollup.starts());
+            out.putLongs(rollup.counts());
+            out.putDoubles(rollup.sums());
+            out.putDoubles(rollup.mins());
+            out.putDoubles(rollup.maxs());
+            out.putDoubles(rollup.lasts());
+            out.putLongs(rollup.lastTss());
+            QuantileSketch[] sketches = rollup.sketches();
+            out.reserve(1).put((byte) (sketches != null ? 1 : 0));
+            if (sketches != null) {
+                for (QuantileSketch sketch : sketches) {
+                    QuantileSketch written = sketch != null ? sketch : EMPTY_SKETCH;
+                    written.writeTo(out.reserve(written.serializedBytes()));
+                }
+            }
+        }
+    }
+
+    /**
+     * 带 CRC 的缓冲写出：小字段先写入堆缓冲区，数据块内容满缓冲时直接写通道
+     */
+    private static final class Output {
+
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        private long bytes;
+
+        private Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * 返回至少有 n 字节剩余空间的缓冲区
+         */
+        private ByteBuffer reserve(int n) throws IOException {
+            if (buffer.remaining() < n) {
+                flush();
+                if (buffer.capacity() < n) {
+                    buffer = ByteBuffer.allocate(n);
+                }
+            }
+            return buffer;
+        }
+
+        private void write(ByteBuffer data) throws IOException {
+            if (data.remaining() <= buffer.remaining()) {
+                buffer.put(data);
+                return;
+            }
+            flush();
+            crc.update(data.duplicate());
+            bytes += data.remaining();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+
+        private void putLongs(long[] values) throws IOException {
+            ByteBuffer target = reserve(values.length * Long.BYTES);
+            target.asLongBuffer().put(values);
+            target.position(target.position() + values.length * Long.BYTES);
+        }
+
+        private void putDoubles(double[] values) throws IOException {
+            ByteBuffer target = reserve(values.length * Double.BYTES);
+            target.asDoubleBuffer().put(values);
+            target.position(target.position() + values.length * Double.BYTES);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.array(), 0, buffer.limit());
+            bytes += buffer.limit();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * 写出剩余内容和 CRC
+         * @return 文件总字节数
+         */
+        private long finish() throws IOException {
+            flush();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return bytes + Integer.BYTES;
+        }
+    }
+
+    // ==================== 读取 ====================
+
+    private static Snapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + Integer.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot size: " + size);
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int end = (int) size - Integer.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(in.slice(0, end));
+            if ((int) crc.getValue() != in.getInt(end)) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            int version;
+            if (in.getInt() != MAGIC || (version = in.getInt()) < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot format");
+            }
+            long walSegment = in.getLong();
+            in.getLong();
+
+            String[] keys = new String[in.getInt()];
+            for (int i = 0; i < keys.length; i++) {
+                byte[] bytes = new byte[in.getShort() & 0xFFFF];
+                in.get(bytes);
+                keys[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            int deviceCount = in.getInt();
+            List<DeviceState> devices = new ArrayList<>(deviceCount);
+            for (int d = 0; d < deviceCount; d++) {
+                DeviceId deviceId = new DeviceId(new UUID(in.getLong(), in.getLong()));
+                int latestCount = in.getInt();
+                Map<String, TsKvEntry> latest = new HashMap<>(latestCount * 2);
+                for (int i = 0; i < latestCount; i++) {
+                    TsKvEntry entry = TelemetryWal.decodeEntry(in);
+                    latest.put(entry.getKey(), entry);
+                }
+                int seriesCount = in.getInt();
+                List<SeriesState> series = new ArrayList<>(seriesCount);
+                for (int s = 0; s < seriesCount; s++) {
+                    series.add(readSeries(in, version));
+                }
+                devices.add(new DeviceState(deviceId, latest, series));
+            }
+            if (in.position() != end) {
+                throw new IOException("Unexpected trailing bytes in snapshot");
+            }
+            return new Snapshot(walSegment, keys, devices);
+        }
+    }
+
+    private static SeriesState readSeries(ByteBuffer in, int version) {
+        int keyId = in.getInt();
+        long pointCount = in.getLong();
+        int headSize = in.getInt();
+        TsChunk[] chunks = new TsChunk[in.getInt()];
+        for (int i = 0; i < chunks.length; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            chunks[i] = GorillaChunk.wrap(ByteBuffer.wrap(bytes));
+        }
+        RollupSeries.State[] rollups = new RollupSeries.State[in.getInt()];
+        for (int i = 0; i < rollups.length; i++) {
+            long intervalMs = in.getLong();
+            int n = in.getInt();
+            long[] starts = getLongs(in, n);
+            long[] counts = getLongs(in, n);
+            double[] sums = getDoubles(in, n);
+            double[] mins = getDoubles(in, n);
+            double[] maxs = getDoubles(in, n);
+            double[] lasts = getDoubles(in, n);
+            long[] lastTss = getLongs(in, n);
+            QuantileSketch[] sketches = null;
+            if (version >= 2 && in.get() != 0) {
+                sketches = new QuantileSketch[n];
+                for (int b = 0; b < n; b++) {
+                    QuantileSketch sketch = QuantileSketch.readFrom(in);
+                    sketches[b] = sketch.count() > 0 ? sketch : null;
+                }
+            }
+            rollups[i] = new RollupSeries.State(intervalMs, starts, counts, sums, mins, maxs, lasts, lastTss, sketches);
+        }
+        return new SeriesState(keyId, chunks, headSize, pointCount, rollups);
+    }
+
+    private static long[] getLongs(ByteBuffer in, int n) {
+        long[] values = new long[n];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + n * Long.BYTES);
+        return values;
+    }
+
+    private static double[] getDoubles(ByteBuffer in, int n) {
+        double[] values = new double[n];
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + n * Double.BYTES);
+        return values;
+    }
+
+    // ==================== 快照文件 ====================
+
+    /**
+     * 登记已有的快照文件（只读文件头），删除写入中途崩溃留下的临时文件
+     */
+    private void scan() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> list = Files.list(dir)) {
+            list.forEach(paths::add);
+        }
+        List<SnapshotFile> found = new ArrayList<>();
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            if (name.startsWith(FILE_PREFIX) && name.endsWith(TEMP_SUFFIX)) {
+                Files.deleteIfExists(path);
+            } else if (name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX)) {
+                long index = Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+                found.add(new SnapshotFile(index, path, readWalSegment(path)));
+                nextIndex = Math.max(nextIndex, index + 1);
+            }
+        }
+        found.sort((a, b) -> Long.compare(a.index, b.index));
+        files.addAll(found);
+    }
+
+    private static long readWalSegment(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // 读满文件头
+            }
+            // 文件头不完整的快照在读取时会校验失败，这里按 0 处理（不删除任何 WAL 段）
+            return header.hasRemaining() ? 0 : header.getLong(8);
+        }
+    }
+
+    private static String fileName(long index) {
+        return String.format("%s%020d%s", FILE_PREFIX, index, FILE_SUFFIX);
+    }
+
+    private record SnapshotFile(long index, Path path, long walSegment) {
+    }
+
+    /**
+     * 一次快照的全部内容
+     *
+     * @param walSegment 快照之后的记录所在的第一个 WAL 段（未启用 WAL 时为 0）
+     * @param keys 键名字典，下标即键编号
+     */
+    record Snapshot(long walSegment, String[] keys, List<DeviceState> devices) {
+    }
+
+    /**
+     * 单个设备：最新值和各序列
+     */
+    record DeviceState(DeviceId deviceId, Map<String, TsKvEntry> latest, List<SeriesState> series) {
+    }
+
+    /**
+     * 单个序列的状态
+     *
+     * @param chunks 数据块（读取时全部为堆上的 GorillaChunk）
+     * @param headSize 大于 0 时最后一个数据块是可写的头块，只包含前 headSize 个数据点
+     */
+    record SeriesState(int keyId, TsChunk[] chunks, int headSize, long pointCount, RollupSeries.State[] rollups) {
+    }
+}
@@ -1,20 +1,31 @@
 package com.minitb.storage;
 
+import com.minitb.domain.device.TelemetryRetentionPolicy;
 import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.telemetry.Aggregation;
+import com.minitb.domain.telemetry.BasicTsKvEntry;
 import com.minitb.domain.telemetry.DataType;
+import com.minitb.domain.telemetry.JsonDataEntry;
+import com.minitb.domain.telemetry.TelemetryRepository;
 import com.minitb.domain.telemetry.TsKvEntry;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * 遥测数据存储 - 核心数据流的最后一层
@@ -25,55 +36,411 @@ import java.util.stream.Collectors;
  * 2. 按键名查询
  * 3. 按数据类型过滤
  * 4. 兼容旧版字符串存储
+ * 
+ * 列式存储：
+ * - 每个 (设备, 键) 序列由固定容量的列式数据块组成（long[] 时间戳 + 原始类型值列）
+ * - 只在查询时物化 TsKvEntry 视图，避免每个数据点常驻包装对象
+ * 
+ * 压缩：
+ * - 头块写满、类型变化或超过最大时间跨度后封存为 Gorilla 压缩块
+ *   （时间戳 delta-of-delta、浮点 XOR），查询时流式解码
+ * - printStatistics 输出整体压缩率
+ * 
+ * 汇总（Rollup）：
+ * - 写入时按配置的分辨率（默认 1 分钟 / 1 小时）增量维护 count/sum/min/max/last
+ * - 汇总数据单独设置保留时长（默认 30 天），原始数据过期后仍可查询长期趋势
+ * 
+ * 环形缓冲区模式：
+ * - 按 (设备, 键) 由 RingBufferPolicyResolver 决定（通常来自 TelemetryDefinition.storageMode = RING），
+ *   只保留最近 N 个数据点，内存恒定，不维护汇总桶；"最近 60 秒"这类查询是一次整段数组复制
+ * - 启动恢复时解析器尚未设置，设置解析器时把已有序列转换到对应的模式
+ * 
+ * 乱序与重复数据：
+ * - 同一 (设备, 键, 时间戳) 后写覆盖先写（upsert），重复投递的采集结果、设备重连后重发的数据不会重复存储，
+ *   WAL 回放也是幂等的
+ * - 迟到数据点先进入头块的重排缓冲区，封存时合并，查询结果有序且无重复，读取时不需要排序
+ * 
+ * 最新值：
+ * - 每个设备维护一份不可变的最新值快照（LatestSnapshot），save 时基于旧快照构造新快照并发布
+ * - getLatest / getLatestAll 只是一次设备编号查找，不遍历序列也不复制
+ * 
+ * 字典编码：
+ * - 键名和 DeviceId 在入口处各编码为一个 int（TelemetryDictionary），序列按打包的 long 寻址
+ * - 内部表以原始类型为键（SeriesIndex），同名序列共享一个键名实例，批量写入只查找一次设备
+ * 
+ * 聚合查询：
+ * - query(deviceId, key, start, end, interval, aggregation) 支持 AVG/MIN/MAX/SUM/COUNT/LAST 和 P50/P90/P95/P99
+ * - 间隔允许时使用汇总桶，否则对原始数据块流式扫描一次
+ * - 分位数聚合合并汇总桶的分位数草图（DDSketch，相对误差 1%），不排序原始数据
+ * 
+ * 分层查询：
+ * - 范围查询和聚合查询由 TieredQueryPlanner 拆分给代价最低的数据层（TelemetryTier）：
+ *   各分辨率的汇总桶、内存数据块（含压缩块、堆外块和内存映射的冷数据块）、历史数据仓储
+ * - 各层认领的区间互不重叠、按时间先后执行，结果天然按时间戳有序；聚合下推到每一层
+ * - getStatistics().tiers 报告每一层的命中区间数、数据点数、失败数和耗时
+ * 
+ * 设备群查询：
+ * - queryFleet 对一组设备的同一个键并行扫描（独立的 ForkJoinPool），按设备分组返回
+ * - 可按设备聚合（如每台设备一个平均值），减小返回数据量
+ * 
+ * 保留策略：
+ * - 原始数据和汇总数据按全局配置或设备 DeviceProfile 的保留策略过期
+ * - compact() 由后台定时任务调用，删除过期数据块、封存空闲头块，并报告回收的字节数
+ * 
+ * 持久化：
+ * - 启用 WAL 时每个数据点追加到二进制预写日志（组提交 + 可配置刷盘策略），启动时回放日志恢复内存数据
+ * - WAL 段按原始数据保留时长删除（所有设备中最长的），重启回放的数据量不超过原始数据的保留范围；
+ *   早于原始数据保留时长的汇总桶由快照恢复，未启用快照时重启后只能从 WAL 中的原始数据重建汇总桶
+ * 
+ * 快照：
+ * - snapshot() 在短暂的写屏障内截断 WAL 并取得各序列数据块数组、汇总桶副本和最新值，之后在屏障外编码写文件
+ * - 启动时加载最新快照（键字典、压缩块、汇总桶、最新值），只回放截断点之后的 WAL 段
+ * - 快照写完后删除最早保留快照之前的 WAL 段，重启耗时与快照大小相关而不是与历史长度相关
+ * 
+ * 历史数据持久化：
+ * - 设置 TelemetryRepository 后，save 的数据点写入内存后放入有界缓冲区，由后台线程（TelemetryHistoryWriter）
+ *   按批大小 / 等待时间攒批，每批一个仓储事务；写入线程不等待 SQLite
+ * - 写入仓储失败时退避重试同一批，仓储恢复前缓冲区写满后写入线程等待，数据不会在内存过期后从历史中消失
+ * - 范围查询早于内存中最早数据的部分从仓储读取，内存数据过期或重启后仍可查询历史
+ * 
+ * 堆外存储：
+ * - 启用后封存的压缩数据块写入 slab 分配器的堆外内存，堆上只保留头块、索引和汇总桶，GC 停顿与历史数据量无关
+ * - 数据块被过期删除、乱序重建或下沉到冷数据层时显式释放，读线程退出后由压缩整理放回空闲链表复用
+ * 
+ * 冷数据层：
+ * - 启用后压缩整理把长时间未变化的压缩块写入按设备划分的段文件，并替换为内存映射的副本
+ * - 历史查询直接从页缓存解码，不复制到堆上，小堆设备也能保留数周数据
+ * 
+ * 占用计数与内存预算：
+ * - 每个设备和全局维护数据点数、估算字节数计数器，序列写入、封存、过期、下沉时按增量更新，
+ *   getTotalMessages / getUsage 是 O(1) 的
+ * - 配置内存预算后，写入或压缩整理发现超出预算时先把最早的压缩块下沉到冷数据层（启用时），
+ *   仍然超出则从全局最早的数据块开始淘汰，直到回到预算的 90%；被淘汰时间段的查询由历史数据仓储负责
+ * 
+ * 线程安全：
+ * - 每个序列单写多读，写线程之间按序列串行化，读线程无锁扫描
+ * - 规则链 Actor 线程写入与 REST 线程查询互不阻塞，可多线程运行规则引擎
  */
 @Slf4j
 public class TelemetryStorage {
     
-    // 内存存储：设备ID -> 键名 -> 时间序列数据列表
-    private final Map<DeviceId, Map<String, List<TsKvEntry>>> dataStore = new ConcurrentHashMap<>();
+    /**
+     * 默认数据块容量（每块数据点数）
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+    
+    /**
+     * 流式扫描时每次从仓储读取的数据点数
+     */
+    private static final int REPOSITORY_PAGE_SIZE = 1000;
+    
+    /**
+     * 数据层代价：汇总桶 < 内存数据块 < 历史数据仓储
+     */
+    private static final int MEMORY_TIER_COST = 100;
+    private static final int REPOSITORY_TIER_COST = 1000;
+    
+    // 键名字典和设备索引：入口处把键名、DeviceId 编码为整数
+    private final TelemetryDictionary dictionary = new TelemetryDictionary();
+    
+    // 内存存储：序列编号（设备编号 + 键编号）-> 时间序列（列式数据块）；
+    // 每个设备的键编号列表和最新值快照（save 时整体替换，读取只需一次查找）
+    private final SeriesIndex seriesIndex = new SeriesIndex();
+    
+    // 存储配置（数据块容量、压缩等）
+    private final TelemetryStorageConfig config;
+    
+    // 按设备解析保留策略（默认全部使用全局配置）
+    private volatile RetentionPolicyResolver retentionPolicyResolver = RetentionPolicyResolver.DEFAULTS;
+    
+    // 按 (设备, 键) 解析环形缓冲区策略（默认全部使用完整时间序列）
+    private volatile RingBufferPolicyResolver ringBufferPolicyResolver = RingBufferPolicyResolver.NONE;
+    
+    // 历史数据仓储（未设置时只使用内存）
+    private volatile TelemetryRepository repository;
+    
+    // 历史数据批量写入（第一次设置仓储时创建）
+    private volatile TelemetryHistoryWriter historyWriter;
+    
+    // 压缩整理累计回收的字节数
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    
+    // 内存预算累计淘汰的数据块数和数据点数
+    private final AtomicLong evictedChunks = new AtomicLong();
+    private final AtomicLong evictedPoints = new AtomicLong();
+    
+    // 同一时间只有一个线程执行预算淘汰，其余写线程直接返回
+    private final AtomicBoolean enforcingBudget = new AtomicBoolean();
     
-    // 是否启用文件备份
-    private final boolean enableFileBackup;
-    private final String backupDir;
+    // 预写日志（未启用时为 null）
+    private final TelemetryWal wal;
+    
+    // 快照存储（未启用时为 null）
+    private final TelemetrySnapshotStore snapshotStore;
+    
+    // 快照写屏障：写入线程共享持有，快照只在截断 WAL 和取得序列状态时独占持有（未启用快照时为 null）
+    private final ReentrantReadWriteLock snapshotBarrier;
+    
+    // 串行化快照
+    private final Object snapshotLock = new Object();
+    
+    // 冷数据层（未启用时为 null）
+    private final ColdChunkStore coldStore;
+    
+    // 堆外数据块分配器（未启用时为 null）
+    private final SlabAllocator allocator;
+    
+    // 设备群查询线程池（按设备并行扫描，不占用公共池）
+    private final ForkJoinPool fleetPool;
+    
+    // 分层查询计划器（汇总桶、内存数据块、历史数据仓储）
+    private final TieredQueryPlanner planner;
     
     private static final DateTimeFormatter FORMATTER = 
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
                     .withZone(ZoneId.systemDefault());
     
-    public TelemetryStorage(boolean enableFileBackup) {
-        this.enableFileBackup = enableFileBackup;
-        this.backupDir = "minitb/data";
+    public TelemetryStorage(boolean walEnabled) {
+        this(walEnabled, DEFAULT_CHUNK_SIZE);
+    }
+    
+    public TelemetryStorage(boolean walEnabled, int chunkSize) {
+        this(TelemetryStorageConfig.builder()
+                .walEnabled(walEnabled)
+                .chunkSize(chunkSize)
+                .build());
+    }
+    
+    public TelemetryStorage(TelemetryStorageConfig config) {
+        if (config.getChunkSize() <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        if (config.getChunkMaxAgeMs() <= 0) {
+            throw new IllegalArgumentException("chunkMaxAgeMs must be positive");
+        }
+        if (config.getReorderBufferSize() < 0) {
+            throw new IllegalArgumentException("reorderBufferSize must not be negative");
+        }
+        if (config.getRollupIntervalsMs().stream().anyMatch(interval -> interval <= 0)) {
+            throw new IllegalArgumentException("rollup intervals must be positive");
+        }
+        if (config.isWalEnabled() && (config.getWalSegmentBytes() <= 0 || config.getWalFsyncIntervalMs() <= 0)) {
+            throw new IllegalArgumentException("WAL segment size and fsync interval must be positive");
+        }
+        if (config.isSnapshotEnabled() && config.getSnapshotRetained() <= 0) {
+            throw new IllegalArgumentException("snapshotRetained must be positive");
+        }
+        if (config.isColdTierEnabled() && config.getColdAfterMs() <= 0) {
+            throw new IllegalArgumentException("coldAfterMs must be positive");
+        }
+        if (config.getHistoryBufferCapacity() <= 0 || config.getHistoryFlushSize() <= 0 || config.getHistoryLingerMs() < 0) {
+            throw new IllegalArgumentException("history buffer capacity and flush size must be positive, linger non-negative");
+        }
+        if (config.isOffHeapEnabled() && (config.getOffHeapSlabBytes() < SlabAllocator.MIN_BLOCK_BYTES
+                || Integer.bitCount(config.getOffHeapSlabBytes()) != 1)) {
+            throw new IllegalArgumentException("offHeapSlabBytes must be a power of two >= " + SlabAllocator.MIN_BLOCK_BYTES);
+        }
+        this.config = config;
+        this.allocator = config.isOffHeapEnabled()
+                ? new SlabAllocator(config.getOffHeapSlabBytes(), config.getOffHeapMaxBytes()) : null;
+        this.fleetPool = new ForkJoinPool(config.getFleetQueryParallelism() > 0
+                ? config.getFleetQueryParallelism() : Runtime.getRuntime().availableProcessors());
+        this.planner = new TieredQueryPlanner(createTiers());
+        this.snapshotStore = config.isSnapshotEnabled() ? openSnapshotStore() : null;
+        this.snapshotBarrier = snapshotStore != null ? new ReentrantReadWriteLock() : null;
+        long walSegment = snapshotStore != null ? loadSnapshot() : 0;
+        this.wal = config.isWalEnabled() ? openWal(walSegment) : null;
+        this.coldStore = config.isColdTierEnabled() ? openColdStore() : null;
+        // 快照和 WAL 恢复的数据可能超出（调小后的）预算
+        checkMemoryBudget();
         
-        if (enableFileBackup) {
-            try {
-                Files.createDirectories(Paths.get(backupDir));
-                log.info("遥测数据存储初始化完成（强类型模式），文件备份目录: {}", backupDir);
-            } catch (IOException e) {
-                log.error("创建备份目录失败", e);
-            }
+        if (wal != null) {
+            log.info("遥测数据存储初始化完成（强类型模式），WAL 目录: {}", config.getWalDir());
         } else {
             log.info("遥测数据存储初始化完成（强类型模式，仅内存）");
         }
     }
+    
+    /**
+     * 查询数据层：每个汇总分辨率一层（分辨率越大代价越低），其后是内存数据块和历史数据仓储
+     */
+    private List<TelemetryTier> createTiers() {
+        List<TelemetryTier> tiers = new ArrayList<>();
+        List<Long> resolutions = new ArrayList<>(config.getRollupIntervalsMs());
+        resolutions.sort(Comparator.reverseOrder());
+        for (int i = 0; i < resolutions.size(); i++) {
+            tiers.add(new RollupTier(resolutions.get(i), i + 1));
+        }
+        tiers.add(new MemoryTier(MEMORY_TIER_COST));
+        tiers.add(new RepositoryTier(() -> repository, REPOSITORY_PAGE_SIZE, REPOSITORY_TIER_COST));
+        return tiers;
+    }
+    
+    /**
+     * 打开 WAL：先回放已有日志恢复内存数据，再开启新段接收写入
+     * 打开失败时记录错误并退化为仅内存模式
+     * 
+     * @param fromSegment 从该段开始回放（之前的段已包含在加载的快照中）
+     */
+    private TelemetryWal openWal(long fromSegment) {
+        TelemetryWal telemetryWal = new TelemetryWal(Paths.get(config.getWalDir()), config.getWalSegmentBytes(),
+                config.getWalFsyncPolicy(), config.getWalFsyncIntervalMs());
+        try {
+            long startNanos = System.nanoTime();
+            BitSet replayed = new BitSet();
+            long records = telemetryWal.replay(fromSegment, (deviceId, entry) -> {
+                int deviceIndex = dictionary.deviceIndex(deviceId);
+                saveInMemory(deviceIndex, entry);
+                replayed.set(deviceIndex);
+            });
+            rebuildLatest(replayed);
+            telemetryWal.start();
+            log.info("从 WAL 恢复 {} 条遥测数据, 耗时 {}ms", records, (System.nanoTime() - startNanos) / 1_000_000);
+            return telemetryWal;
+        } catch (IOException e) {
+            log.error("打开遥测 WAL 失败，仅使用内存存储: {}", config.getWalDir(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 从各序列的最新数据点重建指定设备的最新值快照（WAL 回放后调用）
+     */
+    private void rebuildLatest(BitSet deviceIndexes) {
+        deviceIndexes.stream().forEach(deviceIndex -> {
+            SeriesIndex.DeviceSeries device = seriesIndex.getDevice(deviceIndex);
+            Map<String, TsKvEntry> entries = new HashMap<>();
+            for (int keyId : device.keyIds()) {
+                TimeSeries series = seriesIndex.get(TelemetryDictionary.seriesId(deviceIndex, keyId));
+                TsKvEntry entry = series != null ? series.getLatest() : null;
+                if (entry != null) {
+                    entries.put(dictionary.key(keyId), entry);
+                }
+            }
+            device.latest().set(LatestSnapshot.of(entries));
+        });
+    }
+
+    /**
+     * 打开快照存储，失败时记录错误并只使用 WAL 恢复
+     */
+    private TelemetrySnapshotStore openSnapshotStore() {
+        try {
+            return new TelemetrySnapshotStore(Paths.get(config.getSnapshotDir()), config.getSnapshotRetained());
+        } catch (IOException e) {
+            log.error("打开遥测快照目录失败，不使用快照: {}", config.getSnapshotDir(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 加载最新的快照到内存
+     * @return 需要继续回放的第一个 WAL 段，没有可用快照时为 0（回放全部日志）
+     */
+    private long loadSnapshot() {
+        long startNanos = System.nanoTime();
+        TelemetrySnapshotStore.Snapshot snapshot = snapshotStore.loadLatest();
+        if (snapshot == null) {
+            return 0;
+        }
+        int[] keyIds = new int[snapshot.keys().length];
+        for (int i = 0; i < keyIds.length; i++) {
+            keyIds[i] = dictionary.keyId(snapshot.keys()[i]);
+        }
+        long points = 0;
+        int seriesCount = 0;
+        for (TelemetrySnapshotStore.DeviceState state : snapshot.devices()) {
+            int deviceIndex = dictionary.deviceIndex(state.deviceId());
+            for (TelemetrySnapshotStore.SeriesState series : state.series()) {
+                long seriesId = TelemetryDictionary.seriesId(deviceIndex, keyIds[series.keyId()]);
+                getOrCreateSeries(seriesId).restore(series);
+                points += series.pointCount();
+                seriesCount++;
+            }
+            seriesIndex.device(deviceIndex).latest().set(LatestSnapshot.of(state.latest()));
+        }
+        log.info("从快照恢复 {} 个设备、{} 个序列、{} 条遥测数据, 耗时 {}ms",
+                snapshot.devices().size(), seriesCount, points, (System.nanoTime() - startNanos) / 1_000_000);
+        return snapshot.walSegment();
+    }
+
+    /**
+     * 打开冷数据层，失败时记录错误并保持所有数据在堆上
+     */
+    private ColdChunkStore openColdStore() {
+        try {
+            ColdChunkStore store = new ColdChunkStore(Paths.get(config.getColdTierDir()));
+            log.info("遥测冷数据层已启用: 目录={}, 下沉阈值={}ms", config.getColdTierDir(), config.getColdAfterMs());
+            return store;
+        } catch (IOException e) {
+            log.error("打开遥测冷数据层失败，数据保留在堆上: {}", config.getColdTierDir(), e);
+            return null;
+        }
+    }
 
     /**
      * 保存单个遥测数据点
      */
     public void save(DeviceId deviceId, TsKvEntry tsKvEntry) {
-        String key = tsKvEntry.getKey();
+        int deviceIndex = dictionary.deviceIndex(deviceId);
+        beginWrite();
+        try {
+            append(deviceId, deviceIndex, tsKvEntry);
+            seriesIndex.device(deviceIndex).latest().updateAndGet(snapshot -> snapshot.with(tsKvEntry));
+        } finally {
+            endWrite();
+        }
+        persist(Map.of(deviceId, List.of(tsKvEntry)));
+        checkMemoryBudget();
+    }
+    
+    /**
+     * 进入写入区：快照取得序列状态期间等待（未启用快照时为空操作）
+     */
+    private void beginWrite() {
+        if (snapshotBarrier != null) {
+            snapshotBarrier.readLock().lock();
+        }
+    }
+    
+    private void endWrite() {
+        if (snapshotBarrier != null) {
+            snapshotBarrier.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 写入序列和预写日志（不更新最新值快照）
+     */
+    private void append(DeviceId deviceId, int deviceIndex, TsKvEntry tsKvEntry) {
+        appendInMemory(deviceId, deviceIndex, tsKvEntry);
         
-        // 保存到内存
-        dataStore.computeIfAbsent(deviceId, k -> new ConcurrentHashMap<>())
-                .computeIfAbsent(key, k -> new ArrayList<>())
-                .add(tsKvEntry);
+        // 追加到预写日志（EVERY_BATCH 策略下等待刷盘）
+        if (wal != null) {
+            wal.append(deviceId, tsKvEntry);
+        }
+    }
+    
+    /**
+     * 写入序列（不写预写日志、不更新最新值快照）
+     */
+    private void appendInMemory(DeviceId deviceId, int deviceIndex, TsKvEntry tsKvEntry) {
+        saveInMemory(deviceIndex, tsKvEntry);
         
         log.trace("保存遥测数据: deviceId={}, key={}, type={}, ts={}, value={}", 
-                deviceId, key, tsKvEntry.getDataType(), 
+                deviceId, tsKvEntry.getKey(), tsKvEntry.getDataType(), 
                 formatTimestamp(tsKvEntry.getTs()), tsKvEntry.getValueAsString());
-        
-        // 可选：备份到文件
-        if (enableFileBackup) {
-            backupToFile(deviceId, tsKvEntry);
+    }
+    
+    /**
+     * 保存到内存（序列被压缩整理移除时重新创建）
+     */
+    private void saveInMemory(int deviceIndex, TsKvEntry tsKvEntry) {
+        long seriesId = TelemetryDictionary.seriesId(deviceIndex, dictionary.keyId(tsKvEntry.getKey()));
+        TimeSeries series = getOrCreateSeries(seriesId);
+        while (!series.append(tsKvEntry)) {
+            seriesIndex.remove(seriesId, series);
+            series = getOrCreateSeries(seriesId);
         }
     }
 
@@ -85,93 +452,150 @@ public class TelemetryStorage {
             return;
         }
         
-        for (TsKvEntry entry : entries) {
-            save(deviceId, entry);
-        }
+        // 整批只查找一次设备、只发布一次新快照、只刷写一次仓储
+        appendAll(deviceId, entries);
+        persist(Map.of(deviceId, entries));
+        checkMemoryBudget();
         
         log.debug("批量保存遥测数据: deviceId={}, 数据点数={}", deviceId, entries.size());
     }
 
     /**
-     * 兼容旧版API：保存JSON字符串数据
-     * @deprecated 建议使用 save(DeviceId, TsKvEntry) 或 save(DeviceId, List<TsKvEntry>)
+     * 保存多个设备的遥测数据（一次刷写）
+     * 每个设备只发布一次最新值快照，所有设备的数据在一个仓储事务中写入
      */
-    @Deprecated
-    public void save(DeviceId deviceId, long timestamp, String jsonData) {
-        log.warn("使用了已废弃的API save(DeviceId, long, String)，建议升级到强类型API");
-        
-        // 简单处理：作为一个JSON类型的数据点存储
-        // 实际应该解析JSON并创建多个TsKvEntry
-        if (enableFileBackup) {
-            backupToFileLegacy(deviceId, timestamp, jsonData);
-        }
+    public void saveAll(Map<DeviceId, List<TsKvEntry>> entries) {
+        entries.forEach(this::appendAll);
+        persist(entries);
+        checkMemoryBudget();
     }
 
     /**
-     * 备份到文件（强类型）
+     * 写入一个设备的一批数据点并发布一次最新值快照
      */
-    private void backupToFile(DeviceId deviceId, TsKvEntry entry) {
+    private void appendAll(DeviceId deviceId, List<TsKvEntry> entries) {
+        int deviceIndex = dictionary.deviceIndex(deviceId);
+        beginWrite();
         try {
-            String filename = backupDir + "/telemetry_" + deviceId.getId() + ".log";
-            try (FileWriter writer = new FileWriter(filename, true)) {
-                writer.write(String.format("[%s] %s=%s (%s)%n", 
-                        formatTimestamp(entry.getTs()), 
-                        entry.getKey(),
-                        entry.getValueAsString(),
-                        entry.getDataType()));
+            for (TsKvEntry entry : entries) {
+                appendInMemory(deviceId, deviceIndex, entry);
             }
-        } catch (IOException e) {
-            log.error("备份到文件失败", e);
+            // 整批追加到预写日志，EVERY_BATCH 策略下只等待一次刷盘
+            if (wal != null) {
+                wal.appendAll(deviceId, entries);
+            }
+            seriesIndex.device(deviceIndex).latest().updateAndGet(snapshot -> snapshot.with(entries));
+        } finally {
+            endWrite();
         }
     }
 
     /**
-     * 备份到文件（兼容旧版）
+     * 放入历史数据批量写入的缓冲区（缓冲区满时等待），由后台线程攒批写入仓储
      */
-    private void backupToFileLegacy(DeviceId deviceId, long timestamp, String jsonData) {
-        try {
-            String filename = backupDir + "/telemetry_" + deviceId.getId() + "_legacy.log";
-            try (FileWriter writer = new FileWriter(filename, true)) {
-                writer.write(String.format("[%s] %s%n", formatTimestamp(timestamp), jsonData));
-            }
-        } catch (IOException e) {
-            log.error("备份到文件失败", e);
+    private void persist(Map<DeviceId, List<TsKvEntry>> entries) {
+        TelemetryHistoryWriter writer = historyWriter;
+        if (writer == null || repository == null) {
+            return;
         }
+        writer.submit(entries);
+    }
+
+    /**
+     * 等待已保存的数据全部写入历史数据仓储
+     */
+    public void flushHistory() {
+        TelemetryHistoryWriter writer = historyWriter;
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * 兼容旧版API：保存JSON字符串数据
+     * @deprecated 建议使用 save(DeviceId, TsKvEntry) 或 save(DeviceId, List<TsKvEntry>)
+     */
+    @Deprecated
+    public void save(DeviceId deviceId, long timestamp, String jsonData) {
+        log.warn("使用了已废弃的API save(DeviceId, long, String)，建议升级到强类型API");
+        
+        // 作为一个JSON类型的数据点存储
+        save(deviceId, new BasicTsKvEntry(timestamp, new JsonDataEntry("data", jsonData)));
     }
 
     /**
      * 查询设备的特定键的遥测数据（时间范围）
      */
     public List<TsKvEntry> query(DeviceId deviceId, String key, long startTs, long endTs) {
-        Map<String, List<TsKvEntry>> deviceData = dataStore.get(deviceId);
-        if (deviceData == null) {
-            return new ArrayList<>();
+        List<TsKvEntry> result = new ArrayList<>();
+        scan(deviceId, key, startTs, endTs, result::add);
+        return result;
+    }
+    
+    /**
+     * 流式扫描设备特定键的数据（时间范围，按 ts 升序）
+     * 数据点逐个交给 visitor，不构建完整结果列表；visitor 返回 false 时停止
+     * 内存数据块回答内存中最早数据之后的部分，更早的部分按页从仓储读取
+     */
+    public void scan(DeviceId deviceId, String key, long startTs, long endTs, Predicate<TsKvEntry> visitor) {
+        TelemetryTier.Request request = new TelemetryTier.Request(deviceId, key, getSeries(deviceId, key), 0, null);
+        planner.scan(request, startTs, endTs, visitor);
+    }
+    
+    /**
+     * 分页查询设备特定键的数据（时间范围，按 ts 升序）
+     * 
+     * @param limit 每页最多数据点数
+     * @param cursor 上一页返回的续页令牌，第一页为 null
+     */
+    public TelemetryPage queryPage(DeviceId deviceId, String key, long startTs, long endTs, int limit, String cursor) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        long from = startTs;
+        long skipAtFrom = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            long[] position = TelemetryPage.decodeCursor(cursor);
+            from = Math.max(startTs, position[0]);
+            skipAtFrom = from == position[0] ? position[1] : 0;
         }
         
-        List<TsKvEntry> keyData = deviceData.get(key);
-        if (keyData == null) {
-            return new ArrayList<>();
+        // 多读一个数据点判断是否还有下一页
+        List<TsKvEntry> entries = new ArrayList<>(Math.min(limit, 1024) + 1);
+        long[] skipped = {0};
+        long firstTs = from;
+        long skip = skipAtFrom;
+        scan(deviceId, key, from, endTs, entry -> {
+            if (entry.getTs() == firstTs && skipped[0] < skip) {
+                skipped[0]++;
+                return true;
+            }
+            entries.add(entry);
+            return entries.size() <= limit;
+        });
+        if (entries.size() <= limit) {
+            return new TelemetryPage(entries, null);
         }
         
-        return keyData.stream()
-                .filter(entry -> entry.getTs() >= startTs && entry.getTs() <= endTs)
-                .collect(Collectors.toList());
+        List<TsKvEntry> page = entries.subList(0, limit);
+        long lastTs = page.get(limit - 1).getTs();
+        int seenAtLastTs = 0;
+        for (int i = limit - 1; i >= 0 && page.get(i).getTs() == lastTs; i--) {
+            seenAtLastTs++;
+        }
+        if (lastTs == from) {
+            seenAtLastTs += (int) skipAtFrom;
+        }
+        return new TelemetryPage(new ArrayList<>(page), TelemetryPage.encodeCursor(lastTs, seenAtLastTs));
     }
 
     /**
      * 查询设备的所有键的遥测数据（时间范围）
      */
     public Map<String, List<TsKvEntry>> queryAll(DeviceId deviceId, long startTs, long endTs) {
-        Map<String, List<TsKvEntry>> deviceData = dataStore.get(deviceId);
-        if (deviceData == null) {
-            return new HashMap<>();
-        }
-        
         Map<String, List<TsKvEntry>> result = new HashMap<>();
-        deviceData.forEach((key, entries) -> {
-            List<TsKvEntry> filtered = entries.stream()
-                    .filter(entry -> entry.getTs() >= startTs && entry.getTs() <= endTs)
-                    .collect(Collectors.toList());
+        forEachSeries(dictionary.findDeviceIndex(deviceId), (key, series) -> {
+            List<TsKvEntry> filtered = series.query(startTs, endTs);
             if (!filtered.isEmpty()) {
                 result.put(key, filtered);
             }
@@ -184,67 +608,600 @@ public class TelemetryStorage {
      * 按数据类型查询
      */
     public List<TsKvEntry> queryByType(DeviceId deviceId, DataType dataType, long startTs, long endTs) {
-        Map<String, List<TsKvEntry>> deviceData = dataStore.get(deviceId);
-        if (deviceData == null) {
-            return new ArrayList<>();
-        }
-        
         List<TsKvEntry> result = new ArrayList<>();
-        deviceData.values().forEach(entries -> {
-            entries.stream()
-                    .filter(entry -> entry.getDataType() == dataType)
-                    .filter(entry -> entry.getTs() >= startTs && entry.getTs() <= endTs)
-                    .forEach(result::add);
-        });
+        forEachSeries(dictionary.findDeviceIndex(deviceId),
+                (key, series) -> result.addAll(series.query(startTs, endTs, dataType)));
         
         return result;
     }
 
     /**
-     * 获取设备特定键的最新数据
+     * 聚合查询：按时间间隔聚合数值型数据（DOUBLE / LONG）
+     * 
+     * 由分层查询计划器拆分：间隔能被汇总分辨率整除时，对齐部分直接合并汇总桶（优先使用大分辨率），
+     * 首尾部分扫描内存数据块，早于内存数据的部分从仓储读取。没有数据的间隔不返回
+     * 
+     * @param intervalMs 聚合间隔（毫秒），<= 0 表示整个时间范围聚合为一个值
      */
-    public TsKvEntry getLatest(DeviceId deviceId, String key) {
-        Map<String, List<TsKvEntry>> deviceData = dataStore.get(deviceId);
-        if (deviceData == null) {
-            return null;
+    public List<AggregatedPoint> query(DeviceId deviceId, String key, long startTs, long endTs,
+                                       long intervalMs, Aggregation aggregation) {
+        TelemetryTier.Request request = new TelemetryTier.Request(
+                deviceId, key, getSeries(deviceId, key), intervalMs, aggregation);
+        return planner.aggregate(request, new AggregationQuery(startTs, endTs, intervalMs, aggregation));
+    }
+    
+    /**
+     * 设备群查询：并行查询一组设备同一个键的数据（时间范围）
+     * 
+     * @return 设备ID -> 数据点列表，按传入顺序排列，没有数据的设备不返回
+     */
+    public Map<DeviceId, List<TsKvEntry>> queryFleet(Collection<DeviceId> deviceIds, String key,
+                                                     long startTs, long endTs) {
+        return queryFleet(deviceIds, deviceId -> query(deviceId, key, startTs, endTs));
+    }
+    
+    /**
+     * 设备群聚合查询：并行地对每台设备分别聚合
+     * 
+     * @param intervalMs 聚合间隔（毫秒），<= 0 表示每台设备只返回一个聚合值
+     * @return 设备ID -> 聚合结果，按传入顺序排列，没有数据的设备不返回
+     */
+    public Map<DeviceId, List<AggregatedPoint>> queryFleet(Collection<DeviceId> deviceIds, String key,
+                                                           long startTs, long endTs,
+                                                           long intervalMs, Aggregation aggregation) {
+        return queryFleet(deviceIds, deviceId -> query(deviceId, key, startTs, endTs, intervalMs, aggregation));
+    }
+    
+    /**
+     * 每台设备一个任务提交到设备群线程池，等待全部完成后按传入顺序合并
+     */
+    private <T> Map<DeviceId, List<T>> queryFleet(Collection<DeviceId> deviceIds, Function<DeviceId, List<T>> scan) {
+        List<DeviceId> targets = new ArrayList<>(new LinkedHashSet<>(deviceIds));
+        List<Callable<List<T>>> tasks = new ArrayList<>(targets.size());
+        for (DeviceId deviceId : targets) {
+            tasks.add(() -> scan.apply(deviceId));
         }
+        List<Future<List<T>>> futures = fleetPool.invokeAll(tasks);
         
-        List<TsKvEntry> keyData = deviceData.get(key);
-        if (keyData == null || keyData.isEmpty()) {
-            return null;
+        Map<DeviceId, List<T>> result = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < targets.size(); i++) {
+                List<T> points = futures.get(i).get();
+                if (!points.isEmpty()) {
+                    result.put(targets.get(i), points);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Fleet query interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Fleet query failed", e.getCause());
         }
-        
-        return keyData.get(keyData.size() - 1);
+        return result;
+    }
+    
+    /**
+     * 查询预聚合的汇总桶（与时间范围有交集的桶，按时间升序）
+     * 
+     * @param intervalMs 汇总分辨率，必须是已配置的分辨率之一
+     */
+    public List<RollupBucket> queryRollups(DeviceId deviceId, String key, long intervalMs, long startTs, long endTs) {
+        if (!config.getRollupIntervalsMs().contains(intervalMs)) {
+            throw new IllegalArgumentException("Rollup interval not configured: " + intervalMs);
+        }
+        TimeSeries series = getSeries(deviceId, key);
+        List<RollupBucket> buckets = series != null ? series.queryRollups(intervalMs, startTs, endTs) : null;
+        // 环形缓冲区模式的序列没有汇总桶
+        return buckets != null ? buckets : new ArrayList<>();
+    }
+    
+    /**
+     * 已配置的汇总分辨率（毫秒）
+     */
+    public List<Long> getRollupIntervals() {
+        return config.getRollupIntervalsMs();
+    }
+    
+    /**
+     * 获取设备特定键的最新数据
+     */
+    public TsKvEntry getLatest(DeviceId deviceId, String key) {
+        return getLatestSnapshot(deviceId).getEntries().get(key);
     }
 
     /**
-     * 获取设备所有键的最新数据
+     * 获取设备所有键的最新数据（只读）
      */
     public Map<String, TsKvEntry> getLatestAll(DeviceId deviceId) {
-        Map<String, List<TsKvEntry>> deviceData = dataStore.get(deviceId);
-        if (deviceData == null) {
-            return new HashMap<>();
+        return getLatestSnapshot(deviceId).getEntries();
+    }
+
+    /**
+     * 获取设备的最新值快照：不遍历序列、不复制，适合高频轮询
+     */
+    public LatestSnapshot getLatestSnapshot(DeviceId deviceId) {
+        SeriesIndex.DeviceSeries device = seriesIndex.getDevice(dictionary.findDeviceIndex(deviceId));
+        return device != null ? device.latest().get() : LatestSnapshot.EMPTY;
+    }
+
+    /**
+     * 获取设备的所有键名
+     */
+    public Set<String> getKeys(DeviceId deviceId) {
+        Set<String> keys = new HashSet<>();
+        forEachSeries(dictionary.findDeviceIndex(deviceId), (key, series) -> keys.add(key));
+        return keys;
+    }
+    
+    /**
+     * 设置历史数据仓储（null 表示只使用内存）
+     */
+    public synchronized void setRepository(TelemetryRepository repository) {
+        this.repository = repository;
+        if (repository != null && historyWriter == null) {
+            historyWriter = new TelemetryHistoryWriter(() -> this.repository, config.getHistoryBufferCapacity(),
+                    config.getHistoryFlushSize(), config.getHistoryLingerMs());
         }
+    }
+    
+    /**
+     * 设置按设备的保留策略解析器
+     */
+    public void setRetentionPolicyResolver(RetentionPolicyResolver resolver) {
+        this.retentionPolicyResolver = resolver != null ? resolver : RetentionPolicyResolver.DEFAULTS;
+    }
+    
+    /**
+     * 设置按 (设备, 键) 的环形缓冲区策略解析器，已有序列按新策略转换（保留最近的数据点）
+     */
+    public void setRingBufferPolicyResolver(RingBufferPolicyResolver resolver) {
+        this.ringBufferPolicyResolver = resolver != null ? resolver : RingBufferPolicyResolver.NONE;
+        int[] converted = {0};
+        seriesIndex.forEachDevice(deviceIndex -> {
+            for (int keyId : seriesIndex.getDevice(deviceIndex).keyIds()) {
+                long seriesId = TelemetryDictionary.seriesId(deviceIndex, keyId);
+                TimeSeries series = seriesIndex.get(seriesId);
+                if (series == null) {
+                    continue;
+                }
+                int ringCapacity = resolveRingCapacity(seriesId);
+                if (series.ringCapacity() == ringCapacity) {
+                    continue;
+                }
+                TimeSeries target = newSeries(seriesId, ringCapacity);
+                series.transferTo(target, () -> seriesIndex.replace(seriesId, series, target));
+                converted[0]++;
+            }
+        });
+        if (converted[0] > 0) {
+            log.info("按环形缓冲区策略转换了 {} 个序列", converted[0]);
+        }
+    }
+    
+    /**
+     * 压缩整理：按保留策略删除过期数据块，封存空闲的头块，并把冷数据块下沉到内存映射文件
+     * 每个序列只在替换数据块数组时短暂持有写锁，不会长时间阻塞写入（写文件不持锁）
+     */
+    public CompactionResult compact() {
+        return compact(System.currentTimeMillis());
+    }
+    
+    /**
+     * 以指定时间为"当前时间"执行压缩整理
+     */
+    public CompactionResult compact(long now) {
+        long startNanos = System.nanoTime();
+        CompactionResult result = new CompactionResult();
+        if (allocator != null) {
+            // 上一轮及更早释放、且已没有读线程访问的堆外块放回空闲链表
+            result.setOffHeapBytesReclaimed(allocator.advanceEpoch());
+        }
+        long sealBefore = now - config.getChunkMaxAgeMs();
+        long coldBefore = now - config.getColdAfterMs();
+        // WAL 段保留到所有设备的原始数据都过期；更早的汇总桶由快照保存，不靠回放 WAL 重建
+        long[] walExpireBefore = {expireBefore(now, null, config.getRawRetentionMs())};
         
-        Map<String, TsKvEntry> result = new HashMap<>();
-        deviceData.forEach((key, entries) -> {
-            if (!entries.isEmpty()) {
-                result.put(key, entries.get(entries.size() - 1));
+        seriesIndex.forEachDevice(deviceIndex -> {
+            DeviceId deviceId = dictionary.device(deviceIndex);
+            TelemetryRetentionPolicy policy = resolveRetentionPolicy(deviceId);
+            long expireBefore = expireBefore(now, policy != null ? policy.getRawRetentionMs() : null,
+                    config.getRawRetentionMs());
+            long rollupExpireBefore = expireBefore(now, policy != null ? policy.getRollupRetentionMs() : null,
+                    config.getRollupRetentionMs());
+            walExpireBefore[0] = Math.min(walExpireBefore[0], expireBefore);
+            SeriesIndex.DeviceSeries device = seriesIndex.getDevice(deviceIndex);
+            for (int keyId : device.keyIds()) {
+                long seriesId = TelemetryDictionary.seriesId(deviceIndex, keyId);
+                TimeSeries series = seriesIndex.get(seriesId);
+                if (series == null) {
+                    continue;
+                }
+                result.setSeriesScanned(result.getSeriesScanned() + 1);
+                if (series.compact(expireBefore, rollupExpireBefore, sealBefore, result)
+                        && seriesIndex.remove(seriesId, series)) {
+                    result.setSeriesRemoved(result.getSeriesRemoved() + 1);
+                }
+            }
+            // 原始数据全部过期的键不再有最新值
+            device.latest().updateAndGet(snapshot -> {
+                LatestSnapshot expired = snapshot.expire(expireBefore);
+                return expired != null ? expired : LatestSnapshot.EMPTY;
+            });
+            if (coldStore != null) {
+                result.setDiskBytesDeleted(result.getDiskBytesDeleted() + coldStore.deleteExpired(deviceId, expireBefore));
+                offloadColdChunks(deviceId, deviceIndex, coldBefore, result);
             }
         });
         
+        TelemetryRepository target = repository;
+        if (target != null && config.getHistoryRetentionMs() > 0) {
+            try {
+                result.setHistoryPointsDeleted(target.deleteOlderThan(now - config.getHistoryRetentionMs()));
+            } catch (Exception e) {
+                log.error("删除过期的历史遥测数据失败", e);
+            }
+        }
+        
+        if (wal != null) {
+            result.setDiskBytesDeleted(result.getDiskBytesDeleted() + wal.deleteSegmentsBefore(walExpireBefore[0]));
+        }
+        
+        enforceMemoryBudget(result);
+        
+        result.setDurationMs((System.nanoTime() - startNanos) / 1_000_000);
+        reclaimedBytes.addAndGet(result.getReclaimedBytes());
+        if (result.getChunksDropped() > 0 || result.getChunksSealed() > 0 || result.getRollupBucketsDropped() > 0
+                || result.getChunksOffloaded() > 0 || result.getChunksEvicted() > 0
+                || result.getDiskBytesDeleted() > 0 || result.getHistoryPointsDeleted() > 0) {
+            log.info("遥测压缩整理完成: 删除 {} 个过期数据块（{} 条数据点）, {} 个过期汇总桶, 封存 {} 个空闲数据块, 下沉 {} 个冷数据块, 超出内存预算淘汰 {} 个数据块（{} 条数据点）, 移除 {} 个序列, 回收约 {} 字节内存, 删除 {} 字节过期文件、{} 条过期历史数据, 耗时 {}ms",
+                    result.getChunksDropped(), result.getPointsDropped(), result.getRollupBucketsDropped(),
+                    result.getChunksSealed(), result.getChunksOffloaded(), result.getChunksEvicted(),
+                    result.getPointsEvicted(), result.getSeriesRemoved(),
+                    result.getReclaimedBytes(), result.getDiskBytesDeleted(), result.getHistoryPointsDeleted(),
+                    result.getDurationMs());
+        }
         return result;
     }
+    
+    /**
+     * 写入后检查内存预算，超出时就地淘汰（在写屏障和序列锁之外执行）
+     */
+    private void checkMemoryBudget() {
+        long budget = config.getMemoryBudgetBytes();
+        if (budget <= 0 || seriesIndex.total().bytes() <= budget) {
+            return;
+        }
+        CompactionResult result = new CompactionResult();
+        enforceMemoryBudget(result);
+        reclaimedBytes.addAndGet(result.getReclaimedBytes());
+        if (result.getChunksOffloaded() > 0 || result.getChunksEvicted() > 0) {
+            log.info("遥测存储超出内存预算 {} 字节: 下沉 {} 个冷数据块, 淘汰 {} 个数据块（{} 条数据点）, 当前约 {} 字节",
+                    budget, result.getChunksOffloaded(), result.getChunksEvicted(), result.getPointsEvicted(),
+                    seriesIndex.total().bytes());
+        }
+    }
+    
+    /**
+     * 内存预算淘汰：超出预算时把占用降到预算的 90%（留出余量，避免每次写入都触发）
+     * 1. 启用冷数据层时，先把最早的压缩块下沉为内存映射副本（数据仍可查询）
+     * 2. 仍然超出时按全局时间顺序从最早的数据块开始淘汰，所有序列使用同一个截止时间，
+     *    内存中的数据始终是一个连续的时间窗口，更早的查询由历史数据仓储负责
+     */
+    private void enforceMemoryBudget(CompactionResult result) {
+        long budget = config.getMemoryBudgetBytes();
+        if (budget <= 0 || seriesIndex.total().bytes() <= budget || !enforcingBudget.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long target = budget - budget / 10;
+            if (coldStore != null) {
+                long cutoff = evictionCutoff(seriesIndex.total().bytes() - target, true);
+                if (cutoff != Long.MIN_VALUE) {
+                    seriesIndex.forEachDevice(deviceIndex ->
+                            offloadColdChunks(dictionary.device(deviceIndex), deviceIndex, cutoff + 1, result));
+                }
+            }
+            long excess = seriesIndex.total().bytes() - target;
+            if (excess > 0) {
+                long cutoff = evictionCutoff(excess, false);
+                if (cutoff != Long.MIN_VALUE) {
+                    int chunksBefore = result.getChunksEvicted();
+                    long pointsBefore = result.getPointsEvicted();
+                    seriesIndex.forEachDevice(deviceIndex ->
+                            forEachSeries(deviceIndex, (key, series) -> series.evict(cutoff, result)));
+                    evictedChunks.addAndGet(result.getChunksEvicted() - chunksBefore);
+                    evictedPoints.addAndGet(result.getPointsEvicted() - pointsBefore);
+                }
+            }
+        } finally {
+            enforcingBudget.set(false);
+        }
+    }
+    
+    /**
+     * 按最新时间戳从早到晚累加可淘汰数据块的字节数，返回累计达到 excess 时的截止时间
+     * 
+     * @param spillableOnly 只统计可以下沉到冷数据层的压缩块
+     * @return 截止时间（含），没有可淘汰的数据块时返回 Long.MIN_VALUE
+     */
+    private long evictionCutoff(long excess, boolean spillableOnly) {
+        TreeMap<Long, Long> bytesByMaxTs = new TreeMap<>();
+        seriesIndex.forEachDevice(deviceIndex -> forEachSeries(deviceIndex, (key, series) ->
+                series.forEachEvictable(spillableOnly, (maxTs, bytes) -> bytesByMaxTs.merge(maxTs, bytes, Long::sum))));
+        long cutoff = Long.MIN_VALUE;
+        long freed = 0;
+        for (Map.Entry<Long, Long> entry : bytesByMaxTs.entrySet()) {
+            cutoff = entry.getKey();
+            freed += entry.getValue();
+            if (freed >= excess) {
+                break;
+            }
+        }
+        return cutoff;
+    }
+    
+    /**
+     * 写入快照：在写屏障内截断 WAL 并取得所有序列的状态（只复制数组引用和汇总桶），
+     * 之后在屏障外编码、写文件，并删除已被快照覆盖的 WAL 段
+     * 
+     * @return 是否写入成功（未启用快照时返回 false）
+     */
+    public boolean snapshot() {
+        if (snapshotStore == null) {
+            return false;
+        }
+        synchronized (snapshotLock) {
+            long startNanos = System.nanoTime();
+            // 编码期间持有读纪元，被并发释放的堆外块在写完前不会被复用
+            long epoch = allocator != null ? allocator.beginRead() : 0L;
+            try {
+                String[] keys;
+                List<TelemetrySnapshotStore.DeviceState> devices = new ArrayList<>();
+                long[] points = {0};
+                snapshotBarrier.writeLock().lock();
+                try {
+                    if (wal != null) {
+                        wal.requestRotation();
+                    }
+                    keys = dictionary.keys();
+                    seriesIndex.forEachDevice(deviceIndex -> {
+                        List<TelemetrySnapshotStore.SeriesState> series = new ArrayList<>();
+                        SeriesIndex.DeviceSeries device = seriesIndex.getDevice(deviceIndex);
+                        for (int keyId : device.keyIds()) {
+                            TimeSeries timeSeries = seriesIndex.get(TelemetryDictionary.seriesId(deviceIndex, keyId));
+                            if (timeSeries != null) {
+                                TelemetrySnapshotStore.SeriesState state = timeSeries.capture(keyId);
+                                series.add(state);
+                                points[0] += state.pointCount();
+                            }
+                        }
+                        devices.add(new TelemetrySnapshotStore.DeviceState(dictionary.device(deviceIndex),
+                                device.latest().get().getEntries(), series));
+                    });
+                } finally {
+                    snapshotBarrier.writeLock().unlock();
+                }
+                long pauseMs = (System.nanoTime() - startNanos) / 1_000_000;
+                
+                long walSegment = wal != null ? wal.awaitRotation() : 0;
+                if (wal != null && walSegment <= 0) {
+                    log.error("遥测快照失败: WAL 截断失败");
+                    return false;
+                }
+                long bytes = snapshotStore.write(new TelemetrySnapshotStore.Snapshot(walSegment, keys, devices));
+                long walDeleted = wal != null ? wal.deleteSegmentsBeforeIndex(snapshotStore.oldestWalSegment()) : 0;
+                log.info("遥测快照完成: {} 个设备, {} 条数据点, {} 字节, 删除 {} 字节 WAL, 写屏障 {}ms, 耗时 {}ms",
+                        devices.size(), points[0], bytes, walDeleted, pauseMs, (System.nanoTime() - startNanos) / 1_000_000);
+                return true;
+            } catch (IOException e) {
+                log.error("写入遥测快照失败: {}", config.getSnapshotDir(), e);
+                return false;
+            } finally {
+                if (allocator != null) {
+                    allocator.endRead(epoch);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 把设备的冷数据块写入一个段文件，再逐序列替换为映射副本
+     * 写文件期间不持有序列写锁；失败时记录错误，数据块保留在堆上，下次压缩整理重试
+     */
+    private void offloadColdChunks(DeviceId deviceId, int deviceIndex, long coldBefore, CompactionResult result) {
+        Map<TimeSeries, List<GorillaChunk>> candidates = new LinkedHashMap<>();
+        List<GorillaChunk> all = new ArrayList<>();
+        List<GorillaChunk> mapped;
+        // 写文件期间持有读纪元，被并发替换的堆外块在写完前不会被复用
+        long epoch = allocator != null ? allocator.beginRead() : 0L;
+        try {
+            forEachSeries(deviceIndex, (key, series) -> {
+                List<GorillaChunk> cold = series.coldChunks(coldBefore);
+                if (!cold.isEmpty()) {
+                    candidates.put(series, cold);
+                    all.addAll(cold);
+                }
+            });
+            if (all.isEmpty()) {
+                return;
+            }
+            mapped = coldStore.offload(deviceId, all);
+        } catch (IOException e) {
+            log.error("冷数据块下沉失败: deviceId={}", deviceId, e);
+            return;
+        } finally {
+            if (allocator != null) {
+                allocator.endRead(epoch);
+            }
+        }
+        int offset = 0;
+        for (Map.Entry<TimeSeries, List<GorillaChunk>> entry : candidates.entrySet()) {
+            int n = entry.getValue().size();
+            entry.getKey().replaceChunks(entry.getValue(), mapped.subList(offset, offset + n), result);
+            offset += n;
+        }
+    }
+    
+    private TelemetryRetentionPolicy resolveRetentionPolicy(DeviceId deviceId) {
+        try {
+            return retentionPolicyResolver.resolve(deviceId);
+        } catch (Exception e) {
+            log.warn("解析设备保留策略失败，使用全局默认值: deviceId={}", deviceId, e);
+            return null;
+        }
+    }
+    
+    /**
+     * 计算过期边界：设备策略优先，其次全局配置；保留时长 <= 0 表示永不过期
+     */
+    private static long expireBefore(long now, Long overrideMs, long defaultMs) {
+        long retentionMs = overrideMs != null ? overrideMs : defaultMs;
+        return retentionMs > 0 ? now - retentionMs : Long.MIN_VALUE;
+    }
+    
+    /**
+     * 查找序列，不存在时创建
+     * 环形缓冲区策略在 computeIfAbsent 之外解析：解析器通常要查询设备和设备配置（数据库），
+     * 不能在持有序列索引的锁时执行，否则一次查询会阻塞所有设备新序列的创建；
+     * 并发创建同一序列时可能重复解析，只有一个结果生效
+     */
+    private TimeSeries getOrCreateSeries(long seriesId) {
+        TimeSeries series = seriesIndex.get(seriesId);
+        if (series != null) {
+            return series;
+        }
+        int ringCapacity = resolveRingCapacity(seriesId);
+        return seriesIndex.computeIfAbsent(seriesId, id -> newSeries(id, ringCapacity));
+    }
+    
+    /**
+     * 创建序列，键名使用字典中的唯一实例（所有设备的同名序列共享）
+     */
+    private TimeSeries newSeries(long seriesId, int ringCapacity) {
+        int deviceIndex = TelemetryDictionary.deviceIndexOf(seriesId);
+        return new TimeSeries(dictionary.key(TelemetryDictionary.keyIdOf(seriesId)), config, allocator,
+                seriesIndex.device(deviceIndex).counters(), ringCapacity);
+    }
+    
+    /**
+     * 解析序列的环形缓冲区容量，0 表示完整时间序列
+     */
+    private int resolveRingCapacity(long seriesId) {
+        DeviceId deviceId = dictionary.device(TelemetryDictionary.deviceIndexOf(seriesId));
+        String key = dictionary.key(TelemetryDictionary.keyIdOf(seriesId));
+        try {
+            return Math.max(0, ringBufferPolicyResolver.resolveCapacity(deviceId, key));
+        } catch (Exception e) {
+            log.warn("解析环形缓冲区策略失败，使用完整时间序列: deviceId={}, key={}", deviceId, key, e);
+            return 0;
+        }
+    }
+    
+    /**
+     * 获取指定序列
+     */
+    private TimeSeries getSeries(DeviceId deviceId, String key) {
+        int deviceIndex = dictionary.findDeviceIndex(deviceId);
+        int keyId = dictionary.findKeyId(key);
+        if (deviceIndex < 0 || keyId < 0) {
+            return null;
+        }
+        return seriesIndex.get(TelemetryDictionary.seriesId(deviceIndex, keyId));
+    }
+    
+    /**
+     * 遍历设备的所有序列（设备编号为 -1 或没有序列时不执行）
+     */
+    private void forEachSeries(int deviceIndex, BiConsumer<String, TimeSeries> action) {
+        SeriesIndex.DeviceSeries device = seriesIndex.getDevice(deviceIndex);
+        if (device == null) {
+            return;
+        }
+        for (int keyId : device.keyIds()) {
+            TimeSeries series = seriesIndex.get(TelemetryDictionary.seriesId(deviceIndex, keyId));
+            if (series != null) {
+                action.accept(dictionary.key(keyId), series);
+            }
+        }
+    }
 
     /**
-     * 获取设备的所有键名
+     * 获取存储统计（数据点、数据块、压缩率等）
      */
-    public Set<String> getKeys(DeviceId deviceId) {
-        Map<String, List<TsKvEntry>> deviceData = dataStore.get(deviceId);
-        if (deviceData == null) {
-            return new HashSet<>();
+    public TelemetryStorageStats getStatistics() {
+        int seriesCount = 0;
+        long points = 0;
+        int chunkCount = 0;
+        int compressedChunks = 0;
+        long compressedBytes = 0;
+        long uncompressedBytes = 0;
+        long estimatedBytes = 0;
+        long rollupBuckets = 0;
+        int mappedChunks = 0;
+        long mappedBytes = 0;
+        int offHeapChunks = 0;
+        int ringSeries = 0;
+        int[] deviceCount = {0};
+        List<TimeSeries> all = new ArrayList<>();
+        seriesIndex.forEachDevice(deviceIndex -> {
+            int before = all.size();
+            forEachSeries(deviceIndex, (key, series) -> all.add(series));
+            if (all.size() > before) {
+                deviceCount[0]++;
+            }
+        });
+        for (TimeSeries series : all) {
+            seriesCount++;
+            points += series.size();
+            if (series.ringCapacity() > 0) {
+                ringSeries++;
+            }
+            for (RollupSeries rollup : series.rollups()) {
+                rollupBuckets += rollup.size();
+                estimatedBytes += rollup.estimatedBytes();
+            }
+            for (TsChunk chunk : series.chunks()) {
+                chunkCount++;
+                estimatedBytes += chunk.estimatedBytes();
+                if (chunk instanceof GorillaChunk gorilla) {
+                    compressedChunks++;
+                    compressedBytes += gorilla.compressedBytes();
+                    uncompressedBytes += gorilla.uncompressedBytes();
+                    if (gorilla.isMapped()) {
+                        mappedChunks++;
+                        mappedBytes += gorilla.compressedBytes();
+                    } else if (gorilla.isOffHeap()) {
+                        offHeapChunks++;
+                    }
+                }
+            }
         }
-        return new HashSet<>(deviceData.keySet());
+        TelemetryHistoryWriter writer = historyWriter;
+        return TelemetryStorageStats.builder()
+                .deviceCount(deviceCount[0])
+                .seriesCount(seriesCount)
+                .pointCount(points)
+                .chunkCount(chunkCount)
+                .compressedChunkCount(compressedChunks)
+                .compressedBytes(compressedBytes)
+                .uncompressedBytes(uncompressedBytes)
+                .mappedChunkCount(mappedChunks)
+                .mappedBytes(mappedBytes)
+                .offHeapChunkCount(offHeapChunks)
+                .offHeap(allocator != null ? allocator.getStats() : null)
+                .estimatedBytes(estimatedBytes)
+                .ringSeriesCount(ringSeries)
+                .rollupBucketCount(rollupBuckets)
+                .reclaimedBytes(reclaimedBytes.get())
+                .memoryBudgetBytes(config.getMemoryBudgetBytes())
+                .evictedChunks(evictedChunks.get())
+                .evictedPoints(evictedPoints.get())
+                .historyFlushCount(writer != null ? writer.getFlushCount() : 0)
+                .historyFlushedPoints(writer != null ? writer.getFlushedPoints() : 0)
+                .historyRetries(writer != null ? writer.getRetries() : 0)
+                .historyFailedPoints(writer != null ? writer.getFailedPoints() : 0)
+                .tiers(planner.getStats())
+                .build();
     }
 
     /**
@@ -252,21 +1209,55 @@ public class TelemetryStorage {
      */
     public void printStatistics() {
         log.info("=== 遥测数据统计（强类型模式） ===");
-        dataStore.forEach((deviceId, keyData) -> {
-            int totalDataPoints = keyData.values().stream()
-                    .mapToInt(List::size)
+        seriesIndex.forEachDevice(deviceIndex -> {
+            Map<String, TimeSeries> keyData = new TreeMap<>();
+            forEachSeries(deviceIndex, keyData::put);
+            if (keyData.isEmpty()) {
+                return;
+            }
+            long totalDataPoints = keyData.values().stream()
+                    .mapToLong(TimeSeries::size)
                     .sum();
-            log.info("设备 {}: {} 个键, {} 条数据点", deviceId, keyData.size(), totalDataPoints);
+            log.info("设备 {}: {} 个键, {} 条数据点", dictionary.device(deviceIndex), keyData.size(), totalDataPoints);
             
-            keyData.forEach((key, entries) -> {
-                if (!entries.isEmpty()) {
-                    TsKvEntry latest = entries.get(entries.size() - 1);
-                    log.info("  键 '{}': {} 条数据, 类型={}, 最新值={}, 最新时间={}", 
-                            key, entries.size(), latest.getDataType(), 
-                            latest.getValueAsString(), formatTimestamp(latest.getTs()));
+            keyData.forEach((key, series) -> {
+                TsKvEntry latest = series.getLatest();
+                if (latest != null) {
+                    log.info("  键 '{}': {} 条数据, {} 个数据块, 约 {} 字节, 类型={}, 最新值={}, 最新时间={}", 
+                            key, series.size(), series.chunkCount(), series.estimatedBytes(),
+                            latest.getDataType(), latest.getValueAsString(), formatTimestamp(latest.getTs()));
                 }
             });
         });
+        
+        TelemetryStorageStats stats = getStatistics();
+        log.info("压缩: {}/{} 个数据块已压缩, 原始 {} 字节 -> 压缩后 {} 字节, 压缩率 {}",
+                stats.getCompressedChunkCount(), stats.getChunkCount(),
+                stats.getUncompressedBytes(), stats.getCompressedBytes(),
+                String.format("%.2fx", stats.getCompressionRatio()));
+        log.info("汇总: 分辨率 {}ms, {} 个汇总桶", config.getRollupIntervalsMs(), stats.getRollupBucketCount());
+        log.info("保留策略: 原始数据默认保留 {}ms, 汇总数据默认保留 {}ms, 压缩整理累计回收 {} 字节",
+                config.getRawRetentionMs(), config.getRollupRetentionMs(), stats.getReclaimedBytes());
+        if (config.getMemoryBudgetBytes() > 0) {
+            log.info("内存预算: {} 字节, 当前约 {} 字节, 累计淘汰 {} 个数据块（{} 条数据点）",
+                    config.getMemoryBudgetBytes(), seriesIndex.total().bytes(),
+                    stats.getEvictedChunks(), stats.getEvictedPoints());
+        }
+        if (allocator != null) {
+            SlabAllocatorStats offHeap = stats.getOffHeap();
+            log.info("堆外存储: {} 个数据块, {} 个 slab 共 {} 字节, 已用 {} 字节（请求 {} 字节）, 待回收 {} 字节, 分配 {} 次, 释放 {} 次, 留在堆上 {} 次",
+                    stats.getOffHeapChunkCount(), offHeap.getSlabCount(), offHeap.getReservedBytes(),
+                    offHeap.getUsedBytes(), offHeap.getRequestedBytes(), offHeap.getRetiredBytes(),
+                    offHeap.getAllocations(), offHeap.getFrees(), offHeap.getFallbacks());
+        }
+        if (coldStore != null) {
+            log.info("冷数据层: {} 个数据块内存映射, {} 字节, 段文件共 {} 字节",
+                    stats.getMappedChunkCount(), stats.getMappedBytes(), coldStore.fileBytes());
+        }
+        if (wal != null) {
+            log.info("WAL: 刷盘策略 {}, 已写入 {} 批, 刷盘 {} 次",
+                    config.getWalFsyncPolicy(), wal.getBatches(), wal.getSyncs());
+        }
     }
 
     /**
@@ -277,20 +1268,63 @@ public class TelemetryStorage {
     }
     
     /**
-     * 获取总消息数
+     * 获取总消息数（读取全局计数器，不遍历序列）
      */
     public int getTotalMessages() {
-        return dataStore.values().stream()
-                .mapToInt(deviceData -> deviceData.values().stream()
-                        .mapToInt(List::size).sum())
-                .sum();
+        return (int) seriesIndex.total().points();
+    }
+    
+    /**
+     * 获取全局存储占用（序列数、数据点数、估算字节数），O(1)
+     */
+    public TelemetryStorageUsage getUsage() {
+        TelemetryCounters total = seriesIndex.total();
+        return TelemetryStorageUsage.builder()
+                .seriesCount(seriesIndex.size())
+                .pointCount(total.points())
+                .estimatedBytes(total.bytes())
+                .memoryBudgetBytes(config.getMemoryBudgetBytes())
+                .build();
+    }
+    
+    /**
+     * 获取单个设备的存储占用，设备不存在时各项为 0
+     */
+    public TelemetryStorageUsage getUsage(DeviceId deviceId) {
+        int deviceIndex = dictionary.findDeviceIndex(deviceId);
+        SeriesIndex.DeviceSeries device = deviceIndex >= 0 ? seriesIndex.getDevice(deviceIndex) : null;
+        if (device == null) {
+            return TelemetryStorageUsage.builder().build();
+        }
+        return TelemetryStorageUsage.builder()
+                .seriesCount(device.keyIds().length)
+                .pointCount(device.counters().points())
+                .estimatedBytes(device.counters().bytes())
+                .build();
     }
     
     /**
      * 清空所有数据
      */
     public void clear() {
-        dataStore.clear();
+        // 字典编号保留，数据再次写入时复用；堆外块在读线程退出后回收
+        seriesIndex.forEachDevice(deviceIndex -> forEachSeries(deviceIndex, (key, series) -> series.release()));
+        seriesIndex.clear();
         log.info("遥测数据存储已清空");
     }
+    
+    /**
+     * 关闭存储：写完历史数据缓冲区，停止设备群查询线程池，写入最终快照（加快下次启动），写出并刷盘 WAL 中剩余的记录
+     */
+    public void close() {
+        TelemetryHistoryWriter writer = historyWriter;
+        if (writer != null) {
+            writer.close();
+        }
+        fleetPool.shutdown();
+        snapshot();
+        if (wal != null) {
+            wal.close();
+        }
+    }
 }
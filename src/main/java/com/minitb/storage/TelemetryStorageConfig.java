@@ -0,0 +1,194 @@
+package com.minitb.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 遥测存储配置
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class TelemetryStorageConfig {
+
+    /**
+     * 是否启用预写日志（WAL），启用后重启时从日志恢复内存数据
+     */
+    @Builder.Default
+    private boolean walEnabled = false;
+
+    /**
+     * WAL 目录
+     */
+    @Builder.Default
+    private String walDir = "data/telemetry-wal";
+
+    /**
+     * WAL 单个段文件的大小上限（字节），超过后切换到新段
+     */
+    @Builder.Default
+    private long walSegmentBytes = 64 * 1024 * 1024L;
+
+    /**
+     * WAL 刷盘策略
+     */
+    @Builder.Default
+    private WalFsyncPolicy walFsyncPolicy = WalFsyncPolicy.INTERVAL;
+
+    /**
+     * INTERVAL 策略下的刷盘间隔（毫秒）
+     */
+    @Builder.Default
+    private long walFsyncIntervalMs = 1000L;
+
+    /**
+     * 是否启用快照：定期把整个内存存储写成二进制快照文件，启动时加载最新快照，只回放之后的 WAL
+     */
+    @Builder.Default
+    private boolean snapshotEnabled = false;
+
+    /**
+     * 快照文件目录
+     */
+    @Builder.Default
+    private String snapshotDir = "data/telemetry-snapshot";
+
+    /**
+     * 保留的快照个数（>= 1），最新快照损坏时可以退回到上一个
+     */
+    @Builder.Default
+    private int snapshotRetained = 2;
+
+    /**
+     * 是否启用冷数据层：压缩块超过 coldAfterMs 后写入磁盘段文件并以内存映射方式读取
+     */
+    @Builder.Default
+    private boolean coldTierEnabled = false;
+
+    /**
+     * 冷数据段文件目录
+     */
+    @Builder.Default
+    private String coldTierDir = "data/telemetry-cold";
+
+    /**
+     * 数据块最新数据早于 now - coldAfterMs 时下沉到冷数据层（毫秒）
+     */
+    @Builder.Default
+    private long coldAfterMs = 6 * 60 * 60 * 1000L;
+
+    /**
+     * 是否把封存的压缩数据块分配到堆外（slab 分配器），堆上只保留头块、索引和汇总桶
+     */
+    @Builder.Default
+    private boolean offHeapEnabled = false;
+
+    /**
+     * 堆外 slab 大小（字节，2 的幂），超过该大小的数据块保留在堆上
+     */
+    @Builder.Default
+    private int offHeapSlabBytes = 4 * 1024 * 1024;
+
+    /**
+     * 堆外内存上限（字节），达到后新封存的数据块保留在堆上；<= 0 表示不限制
+     * 同时受 JVM -XX:MaxDirectMemorySize 限制
+     */
+    @Builder.Default
+    private long offHeapMaxBytes = 1024 * 1024 * 1024L;
+
+    /**
+     * 内存预算（字节，数据块和汇总桶的堆上估算大小），<= 0 表示不限制
+     * 超过后先把最早的压缩块下沉到冷数据层（启用时），仍然超出则从最早的数据块开始淘汰，
+     * 被淘汰时间段的查询由历史数据仓储（TelemetryRepository）负责
+     */
+    @Builder.Default
+    private long memoryBudgetBytes = 0;
+
+    /**
+     * 每个数据块的容量（数据点数）
+     */
+    @Builder.Default
+    private int chunkSize = TelemetryStorage.DEFAULT_CHUNK_SIZE;
+
+    /**
+     * 每个序列头块的重排缓冲区容量（数据点数），迟到数据点先写入缓冲区，封存时合并；
+     * 0 表示不使用缓冲区，每个迟到数据点都重建目标块
+     */
+    @Builder.Default
+    private int reorderBufferSize = 32;
+
+    /**
+     * 是否对封存的数据块进行 Gorilla 压缩
+     */
+    @Builder.Default
+    private boolean compressionEnabled = true;
+
+    /**
+     * 头块最大时间跨度（毫秒），超过后即使未写满也封存
+     * 保证低频序列的数据也能及时压缩
+     */
+    @Builder.Default
+    private long chunkMaxAgeMs = 60 * 60 * 1000L;
+
+    /**
+     * 原始数据默认保留时长（毫秒），<= 0 表示永久保留
+     * 可由 DeviceProfile 的保留策略按设备覆盖
+     */
+    @Builder.Default
+    private long rawRetentionMs = 24 * 60 * 60 * 1000L;
+
+    /**
+     * 持久化历史数据（TelemetryRepository）保留时长（毫秒），<= 0 表示永久保留
+     */
+    @Builder.Default
+    private long historyRetentionMs = 30 * 24 * 60 * 60 * 1000L;
+
+    /**
+     * 历史数据批量写入的缓冲区容量（消息数），满时写入线程阻塞
+     */
+    @Builder.Default
+    private int historyBufferCapacity = 65536;
+
+    /**
+     * 历史数据每批写入的数据点数（一批一个事务）
+     */
+    @Builder.Default
+    private int historyFlushSize = 1000;
+
+    /**
+     * 历史数据批次最长等待时间（毫秒）
+     */
+    @Builder.Default
+    private long historyLingerMs = 100;
+
+    /**
+     * 汇总桶分辨率（毫秒），默认 1 分钟和 1 小时
+     */
+    @Builder.Default
+    private List<Long> rollupIntervalsMs = List.of(60 * 1000L, 60 * 60 * 1000L);
+
+    /**
+     * 是否为每个汇总桶维护分位数草图（DDSketch，相对误差 1%），
+     * 启用后 P50/P90/P95/P99 聚合合并汇总桶的草图，不需要排序原始数据
+     */
+    @Builder.Default
+    private boolean rollupSketchesEnabled = true;
+
+    /**
+     * 汇总数据默认保留时长（毫秒），<= 0 表示永久保留
+     * 通常长于原始数据保留时长，原始数据过期后仍可查询长期趋势
+     */
+    @Builder.Default
+    private long rollupRetentionMs = 30 * 24 * 60 * 60 * 1000L;
+
+    /**
+     * 设备群查询（queryFleet）的并行度，<= 0 表示使用 CPU 核数
+     */
+    @Builder.Default
+    private int fleetQueryParallelism = 0;
+}
@@ -0,0 +1,121 @@
+package com.minitb.storage;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * 遥测存储统计快照
+ */
+@Value
+@Builder
+public class TelemetryStorageStats {
+
+    int deviceCount;
+
+    int seriesCount;
+
+    long pointCount;
+
+    int chunkCount;
+
+    /**
+     * 已压缩（封存）的数据块数
+     */
+    int compressedChunkCount;
+
+    /**
+     * 已压缩数据块的编码后字节数
+     */
+    long compressedBytes;
+
+    /**
+     * 已压缩数据块的原始等价字节数（时间戳 + 原始值）
+     */
+    long uncompressedBytes;
+
+    /**
+     * 内存映射的冷数据块数
+     */
+    int mappedChunkCount;
+
+    /**
+     * 内存映射的冷数据块字节数（位于页缓存，不计入堆内存）
+     */
+    long mappedBytes;
+
+    /**
+     * 位于堆外 slab 中的数据块数
+     */
+    int offHeapChunkCount;
+
+    /**
+     * 堆外 slab 分配器统计，未启用堆外存储时为 null
+     */
+    SlabAllocatorStats offHeap;
+
+    /**
+     * 估算堆内存占用（字节，含汇总桶，不含冷数据块和堆外数据块）
+     */
+    long estimatedBytes;
+
+    /**
+     * 环形缓冲区模式的序列数
+     */
+    int ringSeriesCount;
+
+    /**
+     * 汇总桶总数
+     */
+    long rollupBucketCount;
+
+    /**
+     * 压缩整理累计回收的字节数
+     */
+    long reclaimedBytes;
+
+    /**
+     * 内存预算（字节），<= 0 表示不限制
+     */
+    long memoryBudgetBytes;
+
+    /**
+     * 超出内存预算累计淘汰的数据块数
+     */
+    long evictedChunks;
+
+    /**
+     * 超出内存预算累计淘汰的数据点数
+     */
+    long evictedPoints;
+
+    /**
+     * 写入历史数据仓储的批数（每批一个事务）和数据点数
+     */
+    long historyFlushCount;
+
+    long historyFlushedPoints;
+
+    /**
+     * 写入历史数据仓储失败后的重试次数
+     */
+    long historyRetries;
+
+    /**
+     * 关闭时重试仍失败而丢弃的数据点数
+     */
+    long historyFailedPoints;
+
+    /**
+     * 各查询数据层的命中与耗时统计（按代价升序）
+     */
+    List<TelemetryTierStats> tiers;
+
+    /**
+     * 压缩率 = 原始字节数 / 压缩后字节数，没有压缩块时为 0
+     */
+    public double getCompressionRatio() {
+        return compressedBytes > 0 ? (double) uncompressedBytes / compressedBytes : 0.0;
+    }
+}
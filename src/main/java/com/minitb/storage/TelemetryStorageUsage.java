@@ -0,0 +1,26 @@
+package com.minitb.storage;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * 存储占用（全局或单个设备），由增量维护的计数器直接读取，O(1)
+ */
+@Value
+@Builder
+public class TelemetryStorageUsage {
+
+    int seriesCount;
+
+    long pointCount;
+
+    /**
+     * 估算堆内存占用（字节，含汇总桶，不含冷数据块和堆外数据块）
+     */
+    long estimatedBytes;
+
+    /**
+     * 内存预算（字节），<= 0 表示不限制；单个设备的占用中为 0
+     */
+    long memoryBudgetBytes;
+}
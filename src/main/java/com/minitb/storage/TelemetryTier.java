@@ -0,0 +1,71 @@
+package com.minitb.storage;
+
+import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.telemetry.Aggregation;
+import com.minitb.domain.telemetry.TsKvEntry;
+
+import java.util.function.Predicate;
+
+/**
+ * 遥测数据层 - 查询计划器（TieredQueryPlanner）可以组合的一个数据来源
+ *
+ * 每个数据层声明：
+ * - cost：相对代价，计划器按代价从低到高依次让数据层认领查询范围
+ * - coverage：在 [startTs, endTs] 中能完整回答的最大连续子范围（之内的数据全部在本层），不能回答时返回 null
+ * - scan / aggregate：在认领的子范围内按时间戳升序产出原始数据点，或把聚合下推到本层（直接合并汇总桶等）
+ * - supportsScan：只能回答聚合查询的数据层（汇总桶）返回 false，计划器不会把原始数据扫描交给它
+ *
+ * 各数据层认领的子范围互不重叠，因此同一个数据点只会从一层读出
+ */
+interface TelemetryTier {
+
+    String name();
+
+    /**
+     * 相对代价，越小越优先
+     */
+    int cost();
+
+    /**
+     * 在 [startTs, endTs] 中本层能完整回答的最大连续子范围
+     * @return null 表示本层不能回答这个范围的任何部分
+     */
+    Range coverage(Request request, long startTs, long endTs);
+
+    /**
+     * 能否扫描原始数据点；返回 false 时计划器只把聚合查询交给本层，不会调用 scan
+     */
+    default boolean supportsScan() {
+        return true;
+    }
+
+    /**
+     * 按时间戳升序流式产出 [startTs, endTs] 内的数据点
+     * @return false 表示 visitor 要求停止
+     */
+    boolean scan(Request request, long startTs, long endTs, Predicate<TsKvEntry> visitor);
+
+    /**
+     * 把 [startTs, endTs] 内的数据按时间先后交给聚合查询
+     */
+    void aggregate(Request request, long startTs, long endTs, AggregationQuery sink);
+
+    /**
+     * 一次查询的参数
+     *
+     * @param series 内存中的序列，没有时为 null
+     * @param aggregation 聚合方式，原始数据扫描时为 null
+     */
+    record Request(DeviceId deviceId, String key, TimeSeries series, long intervalMs, Aggregation aggregation) {
+
+        boolean isAggregation() {
+            return aggregation != null;
+        }
+    }
+
+    /**
+     * 闭区间 [startTs, endTs]
+     */
+    record Range(long startTs, long endTs) {
+    }
+}
@@ -0,0 +1,41 @@
+package com.minitb.storage;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * 单个遥测数据层的查询统计快照
+ */
+@Value
+@Builder
+public class TelemetryTierStats {
+
+    String name;
+
+    /**
+     * 相对代价，查询计划器按代价从低到高选择数据层
+     */
+    int cost;
+
+    /**
+     * 查询计划中由本层回答的区间数
+     */
+    long hits;
+
+    /**
+     * 本层产出的数据点数（汇总数据层为汇总桶数）
+     */
+    long points;
+
+    /**
+     * 读取失败的区间数（失败时整个查询抛出 TelemetryQueryException）
+     */
+    long errors;
+
+    /**
+     * 本层读取的累计耗时（毫秒）
+     */
+    double totalLatencyMs;
+
+    double avgLatencyMs;
+}
@@ -0,0 +1,609 @@
+package com.minitb.storage;
+
+import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.telemetry.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 遥测预写日志（WAL）- 追加写的二进制日志，用于重启后恢复内存存储
+ *
+ * 文件布局：
+ * - 日志按段存储：wal-00000000000000000001.log、wal-00000000000000000002.log ...
+ * - 当前段超过 segmentBytes 后关闭并开启新段
+ * - 每条记录: [长度 4B][CRC32 4B][设备ID 16B][键长度 2B][键 UTF-8][时间戳 8B][类型 1B][空值标志 1B][值]
+ *
+ * 组提交（group commit）：
+ * - 写入线程只把记录编码到内存缓冲区（持锁时间极短）
+ * - 独立的日志线程交换双缓冲区，一次 write 写出整批记录，再按刷盘策略 fsync
+ * - EVERY_BATCH 策略下写入线程等待所在批次刷盘完成，多个写入线程共享一次 fsync
+ * - 待写缓冲区超过上限时写入线程等待（背压），避免磁盘变慢时内存无限增长
+ * - write / fsync 失败后日志停止写入：失败批次不算写入，等待刷盘的写入线程和之后的追加都抛出 UncheckedIOException，
+ *   不会把没有落盘的记录当作已持久化（段文件末尾可能已有半批记录，无法安全重试）
+ *
+ * 恢复：
+ * - 启动时按段顺序回放所有记录；遇到长度或 CRC 不合法的记录（写入中途崩溃留下的残缺尾部）停止回放该段
+ * - 回放完成后总是开启新段写入，不会在残缺的记录后追加
+ *
+ * 快照截断点：
+ * - requestRotation() 记录待写缓冲区的当前位置，日志线程写到该位置后切换到新段
+ * - 截断点之前的记录都在旧段中，快照从新段开始回放；写入线程不等待截断完成
+ */
+@Slf4j
+final class TelemetryWal implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_PENDING_BYTES = 16 * 1024 * 1024;
+    private static final DataType[] TYPES = DataType.values();
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final WalFsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMs;
+
+    // 以下字段由 lock 保护
+    private final Object lock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private long pendingMaxTs = Long.MIN_VALUE;
+    private long appendedSeq;
+    private long writtenSeq;
+    private boolean closed;
+    private IOException failure;
+    private int rotateAt = -1;
+    private long rotatedSegment = -1;
+
+    // 以下字段只由日志线程访问（恢复阶段除外）
+    private ByteBuffer writing = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private FileChannel channel;
+    private long segmentIndex;
+    private long segmentSize;
+    private long segmentMaxTs = Long.MIN_VALUE;
+    private boolean unsynced;
+    private long lastSyncMillis;
+    private Thread writer;
+
+    // 已关闭的段（按顺序），用于按保留时间删除
+    private final Deque<Segment> closedSegments = new ArrayDeque<>();
+
+    private volatile long batches;
+    private volatile long syncs;
+
+    TelemetryWal(Path dir, long segmentBytes, WalFsyncPolicy fsyncPolicy, long fsyncIntervalMs) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+    }
+
+    /**
+     * 回放所有段中的记录
+     * 必须在 start() 之前调用
+     *
+     * @return 回放的记录数
+     */
+    long replay(BiConsumer<DeviceId, TsKvEntry> consumer) throws IOException {
+        return replay(0, consumer);
+    }
+
+    /**
+     * 回放编号 >= fromSegment 的段（之前的段已包含在快照中，只登记不读取）
+     * 必须在 start() 之前调用
+     *
+     * @return 回放的记录数
+     */
+    long replay(long fromSegment, BiConsumer<DeviceId, TsKvEntry> consumer) throws IOException {
+        Files.createDirectories(dir);
+        long records = 0;
+        for (Path path : listSegments()) {
+            long index = indexOf(path);
+            if (index < fromSegment) {
+                // 未读取的段最新时间未知，不按保留时间删除，由下一次快照按编号删除
+                closedSegments.addLast(new Segment(index, path, Long.MAX_VALUE));
+                segmentIndex = Math.max(segmentIndex, index);
+                continue;
+            }
+            long maxTs = Long.MIN_VALUE;
+            try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) in.size());
+                while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+                    // 读满整个段
+                }
+                buffer.flip();
+                CRC32 crc = new CRC32();
+                while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                    int start = buffer.position();
+                    int length = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    if (length <= 0 || length > buffer.remaining()) {
+                        log.warn("WAL 段 {} 在偏移 {} 处记录不完整，停止回放该段", path.getFileName(), start);
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(buffer.array(), buffer.position(), length);
+                    if ((int) crc.getValue() != checksum) {
+                        log.warn("WAL 段 {} 在偏移 {} 处校验失败，停止回放该段", path.getFileName(), start);
+                        break;
+                    }
+                    int end = buffer.position() + length;
+                    DeviceId deviceId = new DeviceId(new UUID(buffer.getLong(), buffer.getLong()));
+                    TsKvEntry entry = decodeEntry(buffer);
+                    buffer.position(end);
+                    maxTs = Math.max(maxTs, entry.getTs());
+                    consumer.accept(deviceId, entry);
+                    records++;
+                }
+            }
+            closedSegments.addLast(new Segment(index, path, maxTs));
+            segmentIndex = Math.max(segmentIndex, index);
+        }
+        return records;
+    }
+
+    /**
+     * 开启新段并启动日志线程
+     */
+    void start() throws IOException {
+        Files.createDirectories(dir);
+        openNextSegment();
+        lastSyncMillis = System.currentTimeMillis();
+        writer = new Thread(this::writeLoop, "telemetry-wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("遥测 WAL 已启动: 目录={}, 段大小={} 字节, 刷盘策略={}", dir, segmentBytes, fsyncPolicy);
+    }
+
+    /**
+     * 追加一条记录
+     * EVERY_BATCH 策略下阻塞到该记录所在批次刷盘完成
+     */
+    void append(DeviceId deviceId, TsKvEntry entry) {
+        appendAll(deviceId, List.of(entry));
+    }
+
+    /**
+     * 追加同一设备的一批记录
+     * 整批编码后只等待一次：EVERY_BATCH 策略下阻塞到最后一条记录所在批次刷盘完成，单个写入线程也只付一次 fsync
+     */
+    void appendAll(DeviceId deviceId, List<TsKvEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            long seq = 0;
+            for (TsKvEntry entry : entries) {
+                checkWritable();
+                while (pending.position() >= MAX_PENDING_BYTES && !closed) {
+                    if (!await()) {
+                        return;
+                    }
+                    checkWritable();
+                }
+                encode(deviceId, entry);
+                pendingMaxTs = Math.max(pendingMaxTs, entry.getTs());
+                seq = ++appendedSeq;
+            }
+            lock.notifyAll();
+            if (fsyncPolicy == WalFsyncPolicy.EVERY_BATCH) {
+                awaitWritten(seq);
+            }
+        }
+    }
+
+    /**
+     * 等待序号 seq 之前的记录写出并刷盘（调用方持有 lock）
+     */
+    private void awaitWritten(long seq) {
+        while (writtenSeq < seq && !closed && failure == null) {
+            if (!await()) {
+                return;
+            }
+        }
+        if (writtenSeq < seq && failure != null) {
+            throw new UncheckedIOException("WAL write failed, records are not durable", failure);
+        }
+    }
+
+    /**
+     * 已关闭或写入失败时拒绝追加（调用方持有 lock）
+     */
+    private void checkWritable() {
+        if (closed) {
+            throw new IllegalStateException("WAL is closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("WAL write failed", failure);
+        }
+    }
+
+    /**
+     * 在当前位置截断：已追加的记录留在当前段，之后的记录写入新段
+     * 只记录截断位置，不等待日志线程
+     */
+    void requestRotation() {
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("WAL is closed");
+            }
+            rotateAt = pending.position();
+            // 日志线程已因写入失败退出时不会再截断
+            rotatedSegment = failure != null ? 0 : -1;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 等待日志线程完成截断
+     * @return 截断后第一个段的编号，失败时返回 0
+     */
+    long awaitRotation() {
+        synchronized (lock) {
+            while (rotatedSegment < 0) {
+                if (!await()) {
+                    return 0;
+                }
+            }
+            return rotatedSegment;
+        }
+    }
+
+    /**
+     * 删除最新记录早于 expireBefore 的已关闭段
+     * @return 删除的字节数
+     */
+    long deleteSegmentsBefore(long expireBefore) {
+        return deleteSegments(segment -> segment.maxTs < expireBefore);
+    }
+
+    /**
+     * 删除编号小于 index 的已关闭段（其中的记录已包含在快照中）
+     * @return 删除的字节数
+     */
+    long deleteSegmentsBeforeIndex(long index) {
+        return deleteSegments(segment -> segment.index < index);
+    }
+
+    private long deleteSegments(Predicate<Segment> expired) {
+        long deleted = 0;
+        synchronized (closedSegments) {
+            while (!closedSegments.isEmpty() && expired.test(closedSegments.peekFirst())) {
+                Segment segment = closedSegments.pollFirst();
+                try {
+                    long size = Files.size(segment.path);
+                    Files.deleteIfExists(segment.path);
+                    deleted += size;
+                } catch (IOException e) {
+                    log.error("删除过期 WAL 段失败: {}", segment.path, e);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    long getBatches() {
+        return batches;
+    }
+
+    long getSyncs() {
+        return syncs;
+    }
+
+    /**
+     * 写出剩余记录、刷盘并关闭
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("遥测 WAL 已关闭: 共 {} 批, {} 次刷盘", batches, syncs);
+    }
+
+    private boolean await() {
+        try {
+            lock.wait();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // ==================== 日志线程 ====================
+
+    private void writeLoop() {
+        while (true) {
+            long batchSeq;
+            long batchMaxTs;
+            int cut;
+            boolean stop;
+            synchronized (lock) {
+                if (pending.position() == 0 && rotateAt < 0 && !closed) {
+                    try {
+                        lock.wait(fsyncPolicy == WalFsyncPolicy.INTERVAL ? fsyncIntervalMs : 0);
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                stop = closed && pending.position() == 0;
+                // 交换双缓冲区，写入线程继续向空缓冲区追加
+                ByteBuffer batch = pending;
+                pending = writing;
+                pending.clear();
+                writing = batch;
+                batchSeq = appendedSeq;
+                batchMaxTs = pendingMaxTs;
+                pendingMaxTs = Long.MIN_VALUE;
+                cut = rotateAt;
+                rotateAt = -1;
+                lock.notifyAll();
+            }
+
+            long rotated;
+            try {
+                rotated = writeBatch(batchMaxTs, cut);
+            } catch (IOException e) {
+                // 失败批次不推进 writtenSeq：等待的写入线程收到异常，而不是被告知已落盘
+                log.error("写入 WAL 失败，停止写入: 段 {}, 未落盘记录序号 ({}, {}]",
+                        segmentIndex, writtenSeq, batchSeq, e);
+                synchronized (lock) {
+                    failure = e;
+                    // 正在等待的截断失败
+                    rotatedSegment = 0;
+                    lock.notifyAll();
+                }
+                break;
+            }
+            synchronized (lock) {
+                writtenSeq = batchSeq;
+                if (cut >= 0) {
+                    rotatedSegment = rotated;
+                }
+                lock.notifyAll();
+            }
+            if (stop) {
+                break;
+            }
+        }
+        closeChannel();
+    }
+
+    /**
+     * 写出一批记录；cut >= 0 时先写出截断点之前的部分，切换到新段后再写剩余部分
+     * @return 截断后第一个段的编号（未截断时为 -1）
+     */
+    private long writeBatch(long batchMaxTs, int cut) throws IOException {
+        long rotated = -1;
+        writing.flip();
+        if (cut >= 0) {
+            int limit = writing.limit();
+            writing.limit(cut);
+            writeRemaining(batchMaxTs);
+            writing.limit(limit);
+            if (segmentSize > 0) {
+                rotate();
+            }
+            rotated = segmentIndex;
+        }
+        writeRemaining(batchMaxTs);
+        long now = System.currentTimeMillis();
+        if (unsynced && (fsyncPolicy == WalFsyncPolicy.EVERY_BATCH
+                || fsyncPolicy == WalFsyncPolicy.INTERVAL && now - lastSyncMillis >= fsyncIntervalMs)) {
+            sync();
+        }
+        if (segmentSize >= segmentBytes) {
+            rotate();
+        }
+        return rotated;
+    }
+
+    private void writeRemaining(long batchMaxTs) throws IOException {
+        if (!writing.hasRemaining()) {
+            return;
+        }
+        int bytes = writing.remaining();
+        while (writing.hasRemaining()) {
+            channel.write(writing);
+        }
+        segmentSize += bytes;
+        segmentMaxTs = Math.max(segmentMaxTs, batchMaxTs);
+        unsynced = true;
+        batches++;
+    }
+
+    private void sync() throws IOException {
+        channel.force(false);
+        unsynced = false;
+        lastSyncMillis = System.currentTimeMillis();
+        syncs++;
+    }
+
+    private void rotate() throws IOException {
+        if (fsyncPolicy != WalFsyncPolicy.NONE && unsynced) {
+            sync();
+        }
+        channel.close();
+        synchronized (closedSegments) {
+            closedSegments.addLast(new Segment(segmentIndex, segmentPath(segmentIndex), segmentMaxTs));
+        }
+        openNextSegment();
+    }
+
+    private void openNextSegment() throws IOException {
+        segmentIndex++;
+        channel = FileChannel.open(segmentPath(segmentIndex),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segmentSize = 0;
+        segmentMaxTs = Long.MIN_VALUE;
+    }
+
+    private void closeChannel() {
+        try {
+            if (fsyncPolicy != WalFsyncPolicy.NONE && unsynced) {
+                sync();
+            }
+            channel.close();
+        } catch (IOException e) {
+            log.error("关闭 WAL 失败", e);
+        }
+    }
+
+    // ==================== 编解码 ====================
+
+    /**
+     * 编码一条记录到待写缓冲区（调用方持有 lock）
+     */
+    private void encode(DeviceId deviceId, TsKvEntry entry) {
+        EncodedEntry encoded = EncodedEntry.of(entry);
+        int length = 16 + encoded.bytes();
+        ensurePending(RECORD_HEADER_BYTES + length);
+
+        int start = pending.position();
+        pending.putInt(length);
+        pending.putInt(0);
+        UUID id = deviceId.getId();
+        pending.putLong(id.getMostSignificantBits());
+        pending.putLong(id.getLeastSignificantBits());
+        encoded.put(pending);
+        CRC32 crc = new CRC32();
+        crc.update(pending.array(), start + RECORD_HEADER_BYTES, length);
+        pending.putInt(start + Integer.BYTES, (int) crc.getValue());
+    }
+
+    /**
+     * 数据点编码（不含设备ID）：[键长度 2B][键 UTF-8][时间戳 8B][类型 1B][空值标志 1B][值]
+     * 快照文件中的最新值使用相同的编码
+     */
+    record EncodedEntry(TsKvEntry entry, byte[] key, byte[] str) {
+
+        static EncodedEntry of(TsKvEntry entry) {
+            Object value = entry.getValue();
+            DataType type = entry.getDataType();
+            byte[] str = value != null && (type == DataType.STRING || type == DataType.JSON)
+                    ? value.toString().getBytes(StandardCharsets.UTF_8) : null;
+            return new EncodedEntry(entry, entry.getKey().getBytes(StandardCharsets.UTF_8), str);
+        }
+
+        int bytes() {
+            int valueBytes = 0;
+            if (entry.getValue() != null) {
+                valueBytes = switch (entry.getDataType()) {
+                    case DOUBLE, LONG -> Long.BYTES;
+                    case BOOLEAN -> 1;
+                    default -> Integer.BYTES + str.length;
+                };
+            }
+            return 2 + key.length + 8 + 1 + 1 + valueBytes;
+        }
+
+        void put(ByteBuffer out) {
+            Object value = entry.getValue();
+            out.putShort((short) key.length);
+            out.put(key);
+            out.putLong(entry.getTs());
+            out.put((byte) entry.getDataType().ordinal());
+            out.put((byte) (value == null ? 1 : 0));
+            if (value != null) {
+                switch (entry.getDataType()) {
+                    case DOUBLE -> out.putDouble((Double) value);
+                    case LONG -> out.putLong((Long) value);
+                    case BOOLEAN -> out.put((byte) ((Boolean) value ? 1 : 0));
+                    default -> {
+                        out.putInt(str.length);
+                        out.put(str);
+                    }
+                }
+            }
+        }
+    }
+
+    static TsKvEntry decodeEntry(ByteBuffer buffer) {
+        byte[] key = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(key);
+        String keyName = new String(key, StandardCharsets.UTF_8);
+        long ts = buffer.getLong();
+        DataType type = TYPES[buffer.get()];
+        boolean isNull = buffer.get() != 0;
+        KvEntry kv = switch (type) {
+            case DOUBLE -> new DoubleDataEntry(keyName, isNull ? null : buffer.getDouble());
+            case LONG -> new LongDataEntry(keyName, isNull ? null : buffer.getLong());
+            case BOOLEAN -> new BooleanDataEntry(keyName, isNull ? null : buffer.get() != 0);
+            case STRING -> new StringDataEntry(keyName, isNull ? null : readString(buffer));
+            case JSON -> new JsonDataEntry(keyName, isNull ? null : readString(buffer));
+        };
+        return new BasicTsKvEntry(ts, kv);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void ensurePending(int bytes) {
+        if (pending.remaining() < bytes) {
+            int capacity = Math.max(pending.capacity() * 2, pending.position() + bytes);
+            ByteBuffer grown = ByteBuffer.allocate(capacity);
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+    }
+
+    // ==================== 段文件 ====================
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).forEach(segments::add);
+        }
+        segments.sort((a, b) -> Long.compare(indexOf(a), indexOf(b)));
+        return segments;
+    }
+
+    private Path segmentPath(long index) {
+        return dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private static long indexOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private record Segment(long index, Path path, long maxTs) {
+    }
+}
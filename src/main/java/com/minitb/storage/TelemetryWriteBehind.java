@@ -0,0 +1,122 @@
+package com.minitb.storage;
+
+import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.telemetry.TsKvEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 遥测异步批量写入（write-behind）
+ *
+ * 规则链 Actor 线程只把数据放入有界批量队列（TelemetryBatchQueue）即返回，
+ * 由独立的写入线程批量取出并调用 TelemetryStorage.saveAll，WAL 刷盘、SQLite 事务等 I/O 不再阻塞规则链
+ *
+ * 批量策略：
+ * - 攒够 flushSize 个数据点，或第一条数据等待超过 lingerMs，即刷写一批
+ * - 一批内同一设备的数据合并为一次写入（一次最新值快照发布、一次仓储事务）
+ *
+ * 分片：
+ * - 每个写入线程拥有独立的缓冲区，设备按哈希固定分配到一个线程，保证同一设备的数据按提交顺序写入
+ *
+ * 背压：
+ * - 缓冲区满时提交线程阻塞等待，不丢弃数据；阻塞次数计入统计
+ */
+@Slf4j
+public class TelemetryWriteBehind {
+
+    private final TelemetryStorage storage;
+    private final TelemetryBatchQueue[] shards;
+
+    private final AtomicLong flushedPoints = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushNanosTotal = new AtomicLong();
+    private final AtomicLong flushNanosMax = new AtomicLong();
+    private volatile long lastFlushNanos;
+
+    /**
+     * @param capacity 缓冲区总容量（消息数），平均分配给各写入线程
+     * @param threads 写入线程数
+     * @param flushSize 每批数据点数
+     * @param lingerMs 批次最长等待时间（毫秒）
+     */
+    public TelemetryWriteBehind(TelemetryStorage storage, int capacity, int threads, int flushSize, long lingerMs) {
+        if (capacity <= 0 || threads <= 0 || flushSize <= 0 || lingerMs < 0) {
+            throw new IllegalArgumentException("capacity, threads and flushSize must be positive, lingerMs non-negative");
+        }
+        this.storage = storage;
+        this.shards = new TelemetryBatchQueue[threads];
+        int shardCapacity = Math.max(1, capacity / threads);
+        for (int i = 0; i < threads; i++) {
+            shards[i] = new TelemetryBatchQueue("telemetry-writer-" + i, shardCapacity, flushSize, lingerMs, this::flush);
+        }
+        log.info("遥测异步写入已启动: {} 个写入线程, 缓冲区容量 {}, 批大小 {}, 等待时间 {}ms",
+                threads, shardCapacity * threads, flushSize, lingerMs);
+    }
+
+    /**
+     * 提交一条消息的数据点，缓冲区满时阻塞（背压）
+     * 关闭后提交或等待被中断时同步写入，保证不丢数据
+     */
+    public void submit(DeviceId deviceId, List<TsKvEntry> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        shards[Math.floorMod(deviceId.hashCode(), shards.length)].submit(Map.of(deviceId, entries));
+    }
+
+    /**
+     * 获取写入统计（队列深度、刷写延迟等）
+     */
+    public TelemetryWriteBehindStats getStats() {
+        int depth = 0;
+        int capacity = 0;
+        long submitted = 0;
+        long backpressureWaits = 0;
+        for (TelemetryBatchQueue shard : shards) {
+            depth += shard.size();
+            capacity += shard.capacity();
+            submitted += shard.getSubmitted();
+            backpressureWaits += shard.getBackpressureWaits();
+        }
+        long flushes = flushCount.get();
+        return TelemetryWriteBehindStats.builder()
+                .queueDepth(depth)
+                .queueCapacity(capacity)
+                .submittedMessages(submitted)
+                .flushedPoints(flushedPoints.get())
+                .flushCount(flushes)
+                .backpressureWaits(backpressureWaits)
+                .lastFlushLatencyMs(lastFlushNanos / 1e6)
+                .avgFlushLatencyMs(flushes > 0 ? flushNanosTotal.get() / 1e6 / flushes : 0.0)
+                .maxFlushLatencyMs(flushNanosMax.get() / 1e6)
+                .build();
+    }
+
+    /**
+     * 停止接收并写完缓冲区中剩余的数据
+     */
+    public void close() {
+        for (TelemetryBatchQueue shard : shards) {
+            shard.close();
+        }
+        log.info("遥测异步写入已停止: 共刷写 {} 批, {} 个数据点", flushCount.get(), flushedPoints.get());
+    }
+
+    private void flush(Map<DeviceId, List<TsKvEntry>> byDevice, int points) {
+        long start = System.nanoTime();
+        try {
+            storage.saveAll(byDevice);
+        } catch (Exception e) {
+            log.error("遥测数据批量写入失败: {} 个设备, {} 个数据点", byDevice.size(), points, e);
+        }
+        long elapsed = System.nanoTime() - start;
+        lastFlushNanos = elapsed;
+        flushNanosTotal.addAndGet(elapsed);
+        flushNanosMax.accumulateAndGet(elapsed, Math::max);
+        flushCount.incrementAndGet();
+        flushedPoints.addAndGet(points);
+    }
+}
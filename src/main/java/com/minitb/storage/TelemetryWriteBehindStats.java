@@ -0,0 +1,39 @@
+package com.minitb.storage;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * 遥测异步写入统计快照
+ */
+@Value
+@Builder
+public class TelemetryWriteBehindStats {
+
+    /**
+     * 缓冲区中等待写入的消息数
+     */
+    int queueDepth;
+
+    int queueCapacity;
+
+    long submittedMessages;
+
+    long flushedPoints;
+
+    long flushCount;
+
+    /**
+     * 缓冲区满导致提交线程阻塞的次数
+     */
+    long backpressureWaits;
+
+    /**
+     * 刷写延迟（一批数据调用 TelemetryStorage.saveAll 的耗时，毫秒）
+     */
+    double lastFlushLatencyMs;
+
+    double avgFlushLatencyMs;
+
+    double maxFlushLatencyMs;
+}
@@ -0,0 +1,185 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.TsKvEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 分层查询计划器 - 把一次范围查询拆分给代价最低的若干数据层（TelemetryTier）
+ *
+ * 计划：
+ * - 数据层按代价升序排列，代价最低且能回答的数据层认领 [startTs, endTs] 中它能完整回答的连续子范围
+ * - 原始数据扫描只考虑 supportsScan() 的数据层，只能回答聚合查询的数据层（汇总桶）不参与
+ * - 认领范围左右两侧剩余的部分，递归交给后面的数据层；没有数据层能回答的部分没有数据
+ * - 例如按小时聚合最近两天：1 小时汇总桶认领对齐的中间部分，首尾不足一小时的部分由 1 分钟汇总桶、
+ *   内存数据块依次认领，早于内存数据的部分由仓储认领
+ *
+ * 执行：
+ * - 计划中的区间互不重叠且按时间先后排列，依次执行就是按时间戳归并，不需要多路归并的堆
+ * - 聚合下推：每个数据层把自己的区间直接交给同一个 AggregationQuery（汇总层合并汇总桶，其余逐点累加）
+ * - 任一区间读取失败时中止查询并抛出 TelemetryQueryException，不返回缺少部分区间的结果；
+ *   visitor 自身抛出的异常原样传给调用方，不计入数据层的失败数
+ *
+ * 每个数据层维护命中区间数、产出数据点数、失败数和累计耗时（LongAdder，查询线程之间不争用）
+ */
+@Slf4j
+final class TieredQueryPlanner {
+
+    private final List<TelemetryTier> tiers;
+    private final List<TierCounters> counters = new ArrayList<>();
+
+    TieredQueryPlanner(List<TelemetryTier> tiers) {
+        this.tiers = new ArrayList<>(tiers);
+        this.tiers.sort(Comparator.comparingInt(TelemetryTier::cost));
+        for (int i = 0; i < this.tiers.size(); i++) {
+            counters.add(new TierCounters());
+        }
+    }
+
+    /**
+     * 生成查询计划：按时间先后排列、互不重叠的区间
+     */
+    List<Segment> plan(TelemetryTier.Request request, long startTs, long endTs) {
+        List<Segment> segments = new ArrayList<>();
+        plan(request, 0, startTs, endTs, segments);
+        return segments;
+    }
+
+    private void plan(TelemetryTier.Request request, int from, long startTs, long endTs, List<Segment> out) {
+        if (startTs > endTs) {
+            return;
+        }
+        for (int i = from; i < tiers.size(); i++) {
+            TelemetryTier tier = tiers.get(i);
+            if (!request.isAggregation() && !tier.supportsScan()) {
+                continue;
+            }
+            TelemetryTier.Range range = tier.coverage(request, startTs, endTs);
+            if (range == null) {
+                continue;
+            }
+            long claimedStart = Math.max(startTs, range.startTs());
+            long claimedEnd = Math.min(endTs, range.endTs());
+            if (claimedStart > claimedEnd) {
+                continue;
+            }
+            plan(request, i + 1, startTs, claimedStart - 1, out);
+            out.add(new Segment(i, claimedStart, claimedEnd));
+            plan(request, i + 1, claimedEnd + 1, endTs, out);
+            return;
+        }
+    }
+
+    /**
+     * 流式扫描原始数据点（按时间戳升序）
+     * @return false 表示 visitor 要求停止
+     */
+    boolean scan(TelemetryTier.Request request, long startTs, long endTs, Predicate<TsKvEntry> visitor) {
+        for (Segment segment : plan(request, startTs, endTs)) {
+            TelemetryTier tier = tiers.get(segment.tier());
+            TierCounters tierCounters = counters.get(segment.tier());
+            long[] points = {0};
+            long begin = System.nanoTime();
+            RuntimeException[] visitorError = {null};
+            boolean proceed;
+            try {
+                proceed = tier.scan(request, segment.startTs(), segment.endTs(), entry -> {
+                    points[0]++;
+                    try {
+                        return visitor.test(entry);
+                    } catch (RuntimeException e) {
+                        visitorError[0] = e;
+                        throw e;
+                    }
+                });
+            } catch (RuntimeException e) {
+                if (e == visitorError[0]) {
+                    throw e;
+                }
+                throw failed(tier, tierCounters, request, segment, e);
+            } finally {
+                tierCounters.record(points[0], System.nanoTime() - begin);
+            }
+            if (!proceed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 聚合查询：各数据层依次把自己的区间交给 query
+     */
+    List<AggregatedPoint> aggregate(TelemetryTier.Request request, AggregationQuery query) {
+        for (Segment segment : plan(request, query.startTs(), query.endTs())) {
+            TelemetryTier tier = tiers.get(segment.tier());
+            TierCounters tierCounters = counters.get(segment.tier());
+            long inputs = query.inputs();
+            long begin = System.nanoTime();
+            try {
+                tier.aggregate(request, segment.startTs(), segment.endTs(), query);
+            } catch (RuntimeException e) {
+                throw failed(tier, tierCounters, request, segment, e);
+            } finally {
+                tierCounters.record(query.inputs() - inputs, System.nanoTime() - begin);
+            }
+        }
+        return query.finish();
+    }
+
+    private static TelemetryQueryException failed(TelemetryTier tier, TierCounters tierCounters,
+                                                  TelemetryTier.Request request, Segment segment, RuntimeException e) {
+        tierCounters.errors.increment();
+        log.warn("从数据层 {} 查询遥测数据失败 [{}, {}]: deviceId={}, key={}",
+                tier.name(), segment.startTs(), segment.endTs(), request.deviceId(), request.key(), e);
+        return new TelemetryQueryException(tier.name(), segment.startTs(), segment.endTs(), e);
+    }
+
+    /**
+     * 各数据层的查询统计（按代价升序）
+     */
+    List<TelemetryTierStats> getStats() {
+        List<TelemetryTierStats> stats = new ArrayList<>(tiers.size());
+        for (int i = 0; i < tiers.size(); i++) {
+            TelemetryTier tier = tiers.get(i);
+            TierCounters tierCounters = counters.get(i);
+            long hits = tierCounters.hits.sum();
+            double totalMs = tierCounters.nanos.sum() / 1_000_000.0;
+            stats.add(TelemetryTierStats.builder()
+                    .name(tier.name())
+                    .cost(tier.cost())
+                    .hits(hits)
+                    .points(tierCounters.points.sum())
+                    .errors(tierCounters.errors.sum())
+                    .totalLatencyMs(totalMs)
+                    .avgLatencyMs(hits > 0 ? totalMs / hits : 0)
+                    .build());
+        }
+        return stats;
+    }
+
+    /**
+     * 查询计划中的一个区间 [startTs, endTs]，由第 tier 个数据层（按代价排序后）回答
+     */
+    record Segment(int tier, long startTs, long endTs) {
+    }
+
+    private static final class TierCounters {
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder points = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        void record(long pointCount, long elapsedNanos) {
+            hits.increment();
+            points.add(pointCount);
+            nanos.add(elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,915 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.DataType;
+import com.minitb.domain.telemetry.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 时间序列 - 单个 (设备, 键) 的全部数据
+ *
+ * 由若干个数据块组成：
+ * - 最后一个数据块通常是可写的列式头块（ColumnarChunk）
+ * - 头块写满、数据类型变化或跨度超过 chunkMaxAgeMs 时封存，并开启新块
+ * - 空闲的头块也会被后台压缩整理封存，之后的写入开启新块
+ * - 启用压缩时，封存的数据块编码为 GorillaChunk，只读且按需流式解码
+ *
+ * 冷数据：
+ * - 最新数据早于冷数据边界的压缩块可以替换为内存映射的副本（见 ColdChunkStore），数据块本身不变
+ *
+ * 汇总：
+ * - 每个数据点写入时增量更新各分辨率的汇总桶（RollupSeries），保留时间长于原始数据
+ *
+ * 时间索引：
+ * - 各数据块按时间顺序排列且互不重叠，块内时间戳非递减
+ * - 范围查询先按块的最大时间戳二分定位起始块，再在块内定位，代价 O(log n + k)
+ * - 同一时间戳后写覆盖先写（upsert）：重复投递的数据点不增加数据点数，汇总桶用新值替换旧值
+ * - 落在头块时间范围内的迟到数据点写入头块的重排缓冲区（见 ColumnarChunk），封存时合并；
+ *   更早的迟到数据点通过写时复制重建目标块插入到正确位置
+ * - 查询结果始终按时间戳排序且无重复，读取时不需要排序
+ *
+ * 环形缓冲区模式（ringCapacity > 0）：
+ * - 只有一个定长的 RingChunk，只保留最近 ringCapacity 个数据点，内存恒定
+ * - 不维护汇总桶，不封存、不下沉、不参与内存预算淘汰；数据类型变化时重新开始
+ * - 整个缓冲区都过期（长时间没有新数据）时与普通序列一样被压缩整理移除
+ *
+ * 占用计数：
+ * - 数据点数和估算字节数（数据块 + 汇总桶）的变化在写锁内按增量计入所属设备的计数器（TelemetryCounters）
+ * - 追加只计算头块的增量；封存、乱序重建、过期、下沉等较少发生的操作重新计算整个序列
+ *
+ * 并发模型（单写多读）：
+ * - 写线程通过 writeLock 串行化，多个规则链线程可以安全地写同一序列
+ * - 数据块数组以写时复制方式整体发布（volatile），只在开启新块或封存时复制
+ * - 读线程读取一次数组快照后无锁扫描，与写线程互不阻塞
+ */
+class TimeSeries {
+
+    private static final TsChunk[] EMPTY = new TsChunk[0];
+
+    private final String key;
+    private final int chunkCapacity;
+    private final boolean compressionEnabled;
+    private final long chunkMaxAgeMs;
+    private final int reorderBufferSize;
+    private final int ringCapacity;
+    private final SlabAllocator allocator;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile TsChunk[] chunks = EMPTY;
+    private final RollupSeries[] rollups;
+    private final TelemetryCounters counters;
+    private volatile long pointCount;
+    private long accountedBytes;
+    private boolean retired;
+
+    TimeSeries(String key, TelemetryStorageConfig config) {
+        this(key, config, null, new TelemetryCounters(null));
+    }
+
+    /**
+     * @param allocator 封存数据块的堆外分配器，为 null 时数据块保留在堆上
+     * @param counters 所属设备的计数器
+     */
+    TimeSeries(String key, TelemetryStorageConfig config, SlabAllocator allocator, TelemetryCounters counters) {
+        this(key, config, allocator, counters, 0);
+    }
+
+    /**
+     * @param ringCapacity 环形缓冲区容量（数据点数），> 0 时使用环形缓冲区模式
+     */
+    TimeSeries(String key, TelemetryStorageConfig config, SlabAllocator allocator, TelemetryCounters counters,
+               int ringCapacity) {
+        this.key = key;
+        this.allocator = allocator;
+        this.counters = counters;
+        this.chunkCapacity = config.getChunkSize();
+        this.compressionEnabled = config.isCompressionEnabled();
+        this.chunkMaxAgeMs = config.getChunkMaxAgeMs();
+        this.reorderBufferSize = config.getReorderBufferSize();
+        this.ringCapacity = ringCapacity;
+        List<Long> intervals = ringCapacity > 0 ? List.of() : config.getRollupIntervalsMs();
+        this.rollups = new RollupSeries[intervals.size()];
+        for (int i = 0; i < rollups.length; i++) {
+            rollups[i] = new RollupSeries(intervals.get(i), config.isRollupSketchesEnabled());
+        }
+        account(0, rollupBytes());
+    }
+
+    /**
+     * 追加数据点
+     * @return false 表示序列已被压缩整理移除（数据全部过期），调用方需重新创建序列
+     */
+    boolean append(TsKvEntry entry) {
+        writeLock.lock();
+        try {
+            if (retired) {
+                return false;
+            }
+            TsChunk[] current = chunks;
+            if (ringCapacity > 0) {
+                appendRing(current, entry);
+                return true;
+            }
+            TsChunk last = current.length > 0 ? current[current.length - 1] : null;
+            long pointDelta = 1;
+            long bytesDelta;
+            if (last != null && entry.getTs() <= last.maxTs()) {
+                // 迟到或重复时间戳的数据点：同一时间戳后写覆盖先写
+                TsKvEntry previous = find(current, entry.getTs());
+                if (previous != null) {
+                    pointDelta = 0;
+                    bytesDelta = replaceRollups(previous, entry);
+                } else {
+                    bytesDelta = updateRollups(entry);
+                }
+                bytesDelta += insertLate(current, entry);
+            } else {
+                ColumnarChunk head = last instanceof ColumnarChunk columnar ? columnar : null;
+                long headBytes = head != null ? head.estimatedBytes() : 0;
+                if (head != null && entry.getTs() - head.minTs() < chunkMaxAgeMs && head.append(entry)) {
+                    bytesDelta = head.estimatedBytes() - headBytes;
+                } else {
+                    TsChunk[] next = Arrays.copyOf(current, current.length + 1);
+                    bytesDelta = 0;
+                    if (head != null) {
+                        next[current.length - 1] = seal(head);
+                        bytesDelta = next[current.length - 1].estimatedBytes() - headBytes;
+                    }
+                    next[current.length] = newChunk(entry);
+                    bytesDelta += next[current.length].estimatedBytes();
+                    chunks = next;
+                }
+                bytesDelta += updateRollups(entry);
+            }
+            pointCount = pointCount + pointDelta;
+            account(pointDelta, bytesDelta);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 环形缓冲区模式的写入（调用方持有写锁）：类型变化时用新的缓冲区替换
+     */
+    private void appendRing(TsChunk[] current, TsKvEntry entry) {
+        RingChunk ring = current.length > 0 ? (RingChunk) current[0] : null;
+        int sizeBefore = ring != null ? ring.size() : 0;
+        long bytesBefore = ring != null ? ring.estimatedBytes() : 0;
+        if (ring == null || ring.getDataType() != entry.getDataType()) {
+            ring = new RingChunk(entry.getDataType(), ringCapacity);
+            ring.append(entry);
+            chunks = new TsChunk[]{ring};
+        } else if (!ring.append(entry)) {
+            return;
+        }
+        pointCount = ring.size();
+        account(ring.size() - sizeBefore, ring.estimatedBytes() - bytesBefore);
+    }
+
+    /**
+     * 把数据转移到另一种存储模式的序列（存储策略变化时）：按时间顺序写入 target，
+     * 由 publish 把索引中的映射切换到 target，之后本序列标记为移除并释放，
+     * 等待写锁的写线程随后重试时写入 target
+     */
+    void transferTo(TimeSeries target, Runnable publish) {
+        writeLock.lock();
+        try {
+            scan(Long.MIN_VALUE, Long.MAX_VALUE, entry -> {
+                target.append(entry);
+                return true;
+            });
+            publish.run();
+            retired = true;
+            TsChunk[] current = chunks;
+            chunks = EMPTY;
+            free(current, 0, current.length);
+            account(-pointCount, -accountedBytes);
+            pointCount = 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 压缩整理：删除最大时间戳早于 expireBefore 的数据块，封存最新数据早于 sealBefore 的空闲头块
+     * 只在替换数组时短暂持有写锁，读线程持有的旧快照不受影响
+     *
+     * 过期以数据块为粒度：跨越过期边界的数据块整体保留，直到其最新数据也过期；
+     * 汇总桶按 rollupExpireBefore 单独过期
+     *
+     * @return true 表示原始数据和汇总数据已全部过期，序列被标记为移除
+     */
+    boolean compact(long expireBefore, long rollupExpireBefore, long sealBefore, CompactionResult result) {
+        writeLock.lock();
+        try {
+            int rollupBuckets = 0;
+            for (RollupSeries rollup : rollups) {
+                result.setRollupBucketsDropped(result.getRollupBucketsDropped() + rollup.expire(rollupExpireBefore));
+                rollupBuckets += rollup.size();
+            }
+
+            TsChunk[] current = chunks;
+            int drop = 0;
+            long pointsDropped = 0;
+            while (drop < current.length && current[drop].maxTs() < expireBefore) {
+                result.addDropped(current[drop]);
+                pointsDropped += current[drop].size();
+                drop++;
+            }
+            pointCount = pointCount - pointsDropped;
+            if (drop == current.length) {
+                chunks = EMPTY;
+                free(current, 0, drop);
+                // 汇总数据比原始数据保留更久，只有两者都过期时才移除序列
+                retired = rollupBuckets == 0;
+                if (retired) {
+                    account(-pointsDropped, -accountedBytes);
+                } else {
+                    reaccount(-pointsDropped);
+                }
+                return retired;
+            }
+
+            TsChunk[] next = drop > 0 ? Arrays.copyOfRange(current, drop, current.length) : current;
+            TsChunk last = next[next.length - 1];
+            if (compressionEnabled && last instanceof ColumnarChunk head && head.maxTs() < sealBefore) {
+                TsChunk sealed = seal(head);
+                result.addSealed(head, sealed);
+                if (next == current) {
+                    next = current.clone();
+                }
+                next[next.length - 1] = sealed;
+            }
+            if (next != current) {
+                chunks = next;
+                free(current, 0, drop);
+            }
+            // 汇总桶过期也可能缩容，整体重新计算
+            reaccount(-pointsDropped);
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 内存预算淘汰：删除最新数据不晚于 cutoffTs 的数据块（从最早的开始，可写的头块保留）
+     * 删除后内存中最早的时间戳后移，更早的查询由历史数据仓储负责
+     */
+    void evict(long cutoffTs, CompactionResult result) {
+        if (ringCapacity > 0) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            TsChunk[] current = chunks;
+            int drop = 0;
+            long pointsEvicted = 0;
+            while (drop < current.length && current[drop].maxTs() <= cutoffTs
+                    && !(drop == current.length - 1 && current[drop] instanceof ColumnarChunk)) {
+                result.addEvicted(current[drop]);
+                pointsEvicted += current[drop].size();
+                drop++;
+            }
+            if (drop == 0) {
+                return;
+            }
+            chunks = drop == current.length ? EMPTY : Arrays.copyOfRange(current, drop, current.length);
+            free(current, 0, drop);
+            pointCount = pointCount - pointsEvicted;
+            reaccount(-pointsEvicted);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 可以被内存预算淘汰的堆上数据块（不含可写头块、堆外和内存映射的数据块），按时间顺序交给 consumer（无锁读取快照）
+     *
+     * @param spillableOnly 只包括可以下沉到冷数据层的压缩块
+     */
+    void forEachEvictable(boolean spillableOnly, EvictableChunkConsumer consumer) {
+        if (ringCapacity > 0) {
+            return;
+        }
+        TsChunk[] snapshot = chunks;
+        for (int i = 0; i < snapshot.length; i++) {
+            TsChunk chunk = snapshot[i];
+            boolean head = i == snapshot.length - 1 && chunk instanceof ColumnarChunk;
+            long bytes = chunk.estimatedBytes();
+            if (head || bytes == 0 || spillableOnly && !(chunk instanceof GorillaChunk)) {
+                continue;
+            }
+            consumer.accept(chunk.maxTs(), bytes);
+        }
+    }
+
+    /**
+     * 可淘汰数据块的消费者（最新时间戳、估算字节数）
+     */
+    @FunctionalInterface
+    interface EvictableChunkConsumer {
+        void accept(long maxTs, long bytes);
+    }
+
+    /**
+     * 可以下沉到冷存储的数据块：尚未映射、最新数据早于 coldBefore 的压缩块（无锁读取快照）
+     * 调用方在读取这些数据块期间需持有读纪元（beginRead）
+     */
+    List<GorillaChunk> coldChunks(long coldBefore) {
+        List<GorillaChunk> result = new ArrayList<>();
+        for (TsChunk chunk : chunks) {
+            if (chunk.maxTs() >= coldBefore) {
+                break;
+            }
+            if (chunk instanceof GorillaChunk gorilla && !gorilla.isMapped()) {
+                result.add(gorilla);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 把数据块替换为内容相同的副本（按对象身份匹配），用于冷数据下沉
+     * 下沉期间被过期删除或因乱序写入重建的数据块会被跳过
+     *
+     * @return 实际替换的数据块数
+     */
+    int replaceChunks(List<GorillaChunk> from, List<GorillaChunk> to, CompactionResult result) {
+        writeLock.lock();
+        try {
+            TsChunk[] next = chunks.clone();
+            int replaced = 0;
+            int j = 0;
+            for (int i = 0; i < next.length && j < from.size(); i++) {
+                while (j < from.size() && from.get(j).maxTs() < next[i].maxTs()) {
+                    j++;
+                }
+                if (j < from.size() && next[i] == from.get(j)) {
+                    result.addOffloaded(next[i], to.get(j));
+                    next[i] = to.get(j);
+                    replaced++;
+                    j++;
+                }
+            }
+            if (replaced > 0) {
+                TsChunk[] previous = chunks;
+                chunks = next;
+                for (TsChunk chunk : previous) {
+                    if (from.contains(chunk)) {
+                        free(chunk);
+                    }
+                }
+                reaccount(0);
+            }
+            return replaced;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 快照当前状态：数据块数组、头块长度、数据点数和汇总桶副本
+     * 持写锁保证各部分一致；头块的重排缓冲区先合并，之后头块的追加只写在快照长度之后，
+     * 迟到数据点只写入新的覆盖层，都不影响快照内容；环形缓冲区复制为一个列式头块
+     */
+    TelemetrySnapshotStore.SeriesState capture(int keyId) {
+        writeLock.lock();
+        try {
+            TsChunk[] current = chunks;
+            if (ringCapacity > 0) {
+                TsChunk[] copy = current.length > 0 ? new TsChunk[]{toColumnar(current[0])} : EMPTY;
+                return new TelemetrySnapshotStore.SeriesState(keyId, copy, copy.length > 0 ? copy[0].size() : 0,
+                        pointCount, new RollupSeries.State[0]);
+            }
+            if (current.length > 0 && current[current.length - 1] instanceof ColumnarChunk head && head.lateCount() > 0) {
+                current = current.clone();
+                current[current.length - 1] = head.merged();
+                chunks = current;
+                reaccount(0);
+            }
+            int headSize = current.length > 0 && current[current.length - 1] instanceof ColumnarChunk head
+                    ? head.size() : 0;
+            RollupSeries.State[] states = new RollupSeries.State[rollups.length];
+            for (int i = 0; i < rollups.length; i++) {
+                states[i] = rollups[i].copy();
+            }
+            return new TelemetrySnapshotStore.SeriesState(keyId, current, headSize, pointCount, states);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 从快照恢复（启动时、序列对外可见之前调用）
+     * 快照时可写的头块（以及未启用压缩时的所有数据块）解码为列式块，其余压缩块按需复制到堆外；
+     * 汇总桶只恢复当前仍配置的分辨率；环形缓冲区模式按时间顺序重新写入
+     */
+    void restore(TelemetrySnapshotStore.SeriesState state) {
+        writeLock.lock();
+        try {
+            if (ringCapacity > 0) {
+                for (TsChunk chunk : state.chunks()) {
+                    ChunkCursor cursor = chunk.cursor(Long.MIN_VALUE);
+                    while (cursor.next()) {
+                        appendRing(chunks, cursor.toEntry(key));
+                    }
+                }
+                return;
+            }
+            TsChunk[] restored = new TsChunk[state.chunks().length];
+            for (int i = 0; i < restored.length; i++) {
+                TsChunk chunk = state.chunks()[i];
+                boolean head = i == restored.length - 1 && state.headSize() > 0;
+                if (head || !compressionEnabled) {
+                    restored[i] = toColumnar(chunk);
+                } else if (allocator != null && chunk instanceof GorillaChunk gorilla) {
+                    restored[i] = GorillaChunk.copyOf(gorilla.data(), allocator);
+                } else {
+                    restored[i] = chunk;
+                }
+            }
+            for (RollupSeries.State rollup : state.rollups()) {
+                for (RollupSeries target : rollups) {
+                    if (target.getIntervalMs() == rollup.intervalMs()) {
+                        target.restore(rollup);
+                    }
+                }
+            }
+            free(chunks, 0, chunks.length);
+            long pointDelta = state.pointCount() - pointCount;
+            chunks = restored;
+            pointCount = state.pointCount();
+            reaccount(pointDelta);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private ColumnarChunk toColumnar(TsChunk chunk) {
+        ColumnarChunk columnar = new ColumnarChunk(chunk.getDataType(), Math.max(chunkCapacity, chunk.size()));
+        ChunkCursor cursor = chunk.cursor(Long.MIN_VALUE);
+        while (cursor.next()) {
+            columnar.append(cursor.toEntry(key));
+        }
+        return columnar;
+    }
+
+    /**
+     * 增量更新各分辨率的汇总桶（仅数值型数据）
+     * @return 汇总桶数组扩容增加的字节数
+     */
+    private long updateRollups(TsKvEntry entry) {
+        if (rollups.length == 0) {
+            return 0;
+        }
+        Double value = numericValue(entry);
+        if (value == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (RollupSeries rollup : rollups) {
+            bytes += rollup.add(entry.getTs(), value);
+        }
+        return bytes;
+    }
+
+    /**
+     * 同一时间戳的数据点被覆盖时，用新值替换汇总桶中的旧值
+     * @return 汇总桶数组扩容增加的字节数
+     */
+    private long replaceRollups(TsKvEntry previous, TsKvEntry entry) {
+        Double oldValue = numericValue(previous);
+        Double newValue = numericValue(entry);
+        if (rollups.length == 0 || Objects.equals(oldValue, newValue)) {
+            return 0;
+        }
+        long bytes = 0;
+        for (RollupSeries rollup : rollups) {
+            bytes += rollup.replace(entry.getTs(), oldValue, newValue);
+        }
+        return bytes;
+    }
+
+    /**
+     * 数值型数据点的值（DOUBLE / LONG），其余类型和空值返回 null
+     */
+    private static Double numericValue(TsKvEntry entry) {
+        if (entry.getDataType() == DataType.DOUBLE) {
+            return entry.getDoubleValue().orElse(null);
+        }
+        if (entry.getDataType() == DataType.LONG) {
+            return entry.getLongValue().map(Long::doubleValue).orElse(null);
+        }
+        return null;
+    }
+
+    /**
+     * 计入数据点数和字节数的增量（调用方持有写锁或在构造中）
+     */
+    private void account(long pointDelta, long bytesDelta) {
+        accountedBytes += bytesDelta;
+        counters.add(pointDelta, bytesDelta);
+    }
+
+    /**
+     * 重新计算整个序列的字节数，把与上次计入值的差额计入计数器（调用方持有写锁）
+     */
+    private void reaccount(long pointDelta) {
+        account(pointDelta, estimatedBytes() + rollupBytes() - accountedBytes);
+    }
+
+    private long rollupBytes() {
+        long bytes = 0;
+        for (RollupSeries rollup : rollups) {
+            bytes += rollup.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    private ColumnarChunk newChunk(TsKvEntry entry) {
+        ColumnarChunk chunk = new ColumnarChunk(entry.getDataType(), chunkCapacity);
+        chunk.append(entry);
+        return chunk;
+    }
+
+    /**
+     * 封存数据块：先合并重排缓冲区，启用压缩时编码为 GorillaChunk（启用堆外存储时写入 slab）
+     */
+    private TsChunk seal(ColumnarChunk chunk) {
+        ColumnarChunk merged = chunk.merged();
+        if (!compressionEnabled) {
+            return merged;
+        }
+        return allocator != null ? GorillaChunk.encode(merged, allocator) : GorillaChunk.encode(merged);
+    }
+
+    /**
+     * 释放已从数据块数组中移除的 slab 块（调用方持有写锁且已发布新数组）
+     */
+    private void free(TsChunk[] removed, int from, int to) {
+        for (int i = from; i < to; i++) {
+            free(removed[i]);
+        }
+    }
+
+    private void free(TsChunk chunk) {
+        if (allocator != null && chunk instanceof GorillaChunk gorilla && gorilla.slabBlock() != null) {
+            allocator.free(gorilla.slabBlock());
+        }
+    }
+
+    /**
+     * 释放序列的所有 slab 块（序列被丢弃时调用）
+     */
+    void release() {
+        writeLock.lock();
+        try {
+            TsChunk[] current = chunks;
+            chunks = EMPTY;
+            free(current, 0, current.length);
+            account(-pointCount, -accountedBytes);
+            pointCount = 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 登记读纪元：持有期间读到的 slab 块不会被复用（未启用堆外存储时为空操作）
+     */
+    long beginRead() {
+        return allocator != null ? allocator.beginRead() : 0L;
+    }
+
+    void endRead(long epoch) {
+        if (allocator != null) {
+            allocator.endRead(epoch);
+        }
+    }
+
+    /**
+     * 查找指定时间戳的数据点（调用方持有写锁），不存在时返回 null
+     */
+    private TsKvEntry find(TsChunk[] snapshot, long ts) {
+        int c = firstChunkEndingAtOrAfter(snapshot, ts);
+        if (c == snapshot.length) {
+            return null;
+        }
+        ChunkCursor cursor = snapshot[c].cursor(ts);
+        return cursor.next() && cursor.ts() == ts ? cursor.toEntry(key) : null;
+    }
+
+    /**
+     * 写入迟到或重复时间戳的数据点
+     * 落在头块时间范围内且类型相同时写入头块的重排缓冲区，缓冲区满时先把它合并进头块（替换为新的头块）；
+     * 其余情况（早于头块、类型不同、头块已满）重建目标块
+     * @return 数据块字节数的变化
+     */
+    private long insertLate(TsChunk[] current, TsKvEntry entry) {
+        int n = current.length;
+        long bytesDelta = 0;
+        if (reorderBufferSize > 0 && current[n - 1] instanceof ColumnarChunk head
+                && head.getDataType() == entry.getDataType()
+                && (n == 1 || entry.getTs() > current[n - 2].maxTs())) {
+            if (head.lateCount() >= reorderBufferSize) {
+                ColumnarChunk merged = head.merged();
+                bytesDelta = merged.estimatedBytes() - head.estimatedBytes();
+                current = current.clone();
+                current[n - 1] = merged;
+                chunks = current;
+                head = merged;
+            }
+            long headBytes = head.estimatedBytes();
+            if (head.upsertLate(entry, reorderBufferSize)) {
+                return bytesDelta + head.estimatedBytes() - headBytes;
+            }
+        }
+        return bytesDelta + insertOutOfOrder(current, entry);
+    }
+
+    /**
+     * 插入乱序数据点
+     * 重建目标块（原数据 + 新数据点，保持有序，同一时间戳的旧数据点被替换），再整体替换数据块数组，
+     * 读线程持有的旧快照不受影响。重建出的非头块直接封存
+     * @return 数据块字节数的变化
+     */
+    private long insertOutOfOrder(TsChunk[] current, TsKvEntry entry) {
+        int target = firstChunkEndingAtOrAfter(current, entry.getTs());
+        TsChunk chunk = current[target];
+        boolean isHead = target == current.length - 1 && chunk instanceof ColumnarChunk;
+
+        List<TsKvEntry> points = new ArrayList<>(chunk.size() + 1);
+        ChunkCursor cursor = chunk.cursor(Long.MIN_VALUE);
+        boolean inserted = false;
+        while (cursor.next()) {
+            if (!inserted && cursor.ts() >= entry.getTs()) {
+                points.add(entry);
+                inserted = true;
+                if (cursor.ts() == entry.getTs()) {
+                    continue;
+                }
+            }
+            points.add(cursor.toEntry(key));
+        }
+        if (!inserted) {
+            points.add(entry);
+        }
+
+        List<ColumnarChunk> rebuilt = new ArrayList<>();
+        ColumnarChunk building = null;
+        for (TsKvEntry point : points) {
+            if (building == null || !building.append(point)) {
+                building = newChunk(point);
+                rebuilt.add(building);
+            }
+        }
+
+        TsChunk[] next = new TsChunk[current.length - 1 + rebuilt.size()];
+        System.arraycopy(current, 0, next, 0, target);
+        for (int i = 0; i < rebuilt.size(); i++) {
+            boolean keepWritable = isHead && i == rebuilt.size() - 1;
+            next[target + i] = keepWritable ? rebuilt.get(i) : seal(rebuilt.get(i));
+        }
+        System.arraycopy(current, target + 1, next, target + rebuilt.size(), current.length - target - 1);
+        chunks = next;
+        free(chunk);
+        long bytesDelta = -chunk.estimatedBytes();
+        for (int i = 0; i < rebuilt.size(); i++) {
+            bytesDelta += next[target + i].estimatedBytes();
+        }
+        return bytesDelta;
+    }
+
+    /**
+     * 二分查找：第一个最大时间戳 >= ts 的数据块下标，不存在时返回数组长度
+     */
+    private static int firstChunkEndingAtOrAfter(TsChunk[] snapshot, long ts) {
+        int lo = 0;
+        int hi = snapshot.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (snapshot[mid].maxTs() < ts) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 查询时间范围内的数据点 [startTs, endTs]
+     */
+    List<TsKvEntry> query(long startTs, long endTs) {
+        return query(startTs, endTs, null);
+    }
+
+    /**
+     * 查询时间范围内指定数据类型的数据点，dataType 为 null 时不过滤类型
+     */
+    List<TsKvEntry> query(long startTs, long endTs, DataType dataType) {
+        long epoch = beginRead();
+        try {
+            List<TsKvEntry> result = new ArrayList<>();
+            if (startTs > endTs) {
+                return result;
+            }
+            TsChunk[] snapshot = chunks;
+            for (int c = firstChunkEndingAtOrAfter(snapshot, startTs); c < snapshot.length; c++) {
+                TsChunk chunk = snapshot[c];
+                if (chunk.minTs() > endTs) {
+                    break;
+                }
+                if (dataType != null && chunk.getDataType() != dataType) {
+                    continue;
+                }
+                ChunkCursor cursor = chunk.cursor(startTs);
+                while (cursor.next() && cursor.ts() <= endTs) {
+                    result.add(cursor.toEntry(key));
+                }
+            }
+            return result;
+        } finally {
+            endRead(epoch);
+        }
+    }
+
+    /**
+     * 流式扫描时间范围内的数据点，逐个物化并交给 visitor，不构建结果列表
+     * @return false 表示 visitor 要求停止
+     */
+    boolean scan(long startTs, long endTs, Predicate<TsKvEntry> visitor) {
+        long epoch = beginRead();
+        try {
+            if (startTs > endTs) {
+                return true;
+            }
+            TsChunk[] snapshot = chunks;
+            for (int c = firstChunkEndingAtOrAfter(snapshot, startTs); c < snapshot.length; c++) {
+                TsChunk chunk = snapshot[c];
+                if (chunk.minTs() > endTs) {
+                    break;
+                }
+                ChunkCursor cursor = chunk.cursor(startTs);
+                while (cursor.next() && cursor.ts() <= endTs) {
+                    if (!visitor.test(cursor.toEntry(key))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } finally {
+            endRead(epoch);
+        }
+    }
+
+    /**
+     * 流式扫描时间范围内的数值型数据点（DOUBLE / LONG，跳过空值），不物化 TsKvEntry
+     */
+    void scanNumeric(long startTs, long endTs, NumericPointConsumer consumer) {
+        long epoch = beginRead();
+        try {
+            if (startTs > endTs) {
+                return;
+            }
+            TsChunk[] snapshot = chunks;
+            for (int c = firstChunkEndingAtOrAfter(snapshot, startTs); c < snapshot.length; c++) {
+                TsChunk chunk = snapshot[c];
+                if (chunk.minTs() > endTs) {
+                    break;
+                }
+                DataType type = chunk.getDataType();
+                if (type != DataType.DOUBLE && type != DataType.LONG) {
+                    continue;
+                }
+                ChunkCursor cursor = chunk.cursor(startTs);
+                while (cursor.next() && cursor.ts() <= endTs) {
+                    if (!cursor.isNull()) {
+                        consumer.accept(cursor.ts(), type == DataType.DOUBLE ? cursor.doubleValue() : cursor.longValue());
+                    }
+                }
+            }
+        } finally {
+            endRead(epoch);
+        }
+    }
+
+    /**
+     * 数值型数据点消费者（避免装箱）
+     */
+    @FunctionalInterface
+    interface NumericPointConsumer {
+        void accept(long ts, double value);
+    }
+
+    /**
+     * 内存中最早的时间戳，没有数据时返回 Long.MAX_VALUE
+     */
+    long minTs() {
+        TsChunk[] current = chunks;
+        return current.length > 0 ? current[0].minTs() : Long.MAX_VALUE;
+    }
+
+    /**
+     * 获取最新写入的数据点
+     */
+    TsKvEntry getLatest() {
+        long epoch = beginRead();
+        try {
+            TsChunk[] current = chunks;
+            if (current.length == 0) {
+                return null;
+            }
+            TsChunk last = current[current.length - 1];
+            // 头块的最新数据点可能被重排缓冲区中同一时间戳的值覆盖，统一通过游标读取
+            ChunkCursor cursor = last.cursor(last.maxTs());
+            TsKvEntry latest = null;
+            while (cursor.next()) {
+                latest = cursor.toEntry(key);
+            }
+            return latest;
+        } finally {
+            endRead(epoch);
+        }
+    }
+
+    /**
+     * 查询指定分辨率的汇总桶，未配置该分辨率时返回 null
+     */
+    List<RollupBucket> queryRollups(long intervalMs, long startTs, long endTs) {
+        for (RollupSeries rollup : rollups) {
+            if (rollup.getIntervalMs() == intervalMs) {
+                return rollup.query(startTs, endTs);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 依次访问指定分辨率下与 [startTs, endTs] 有交集的汇总桶的分位数草图
+     * @return false 表示未配置该分辨率或未启用分位数草图
+     */
+    boolean forEachRollupSketch(long intervalMs, long startTs, long endTs, RollupSeries.SketchConsumer consumer) {
+        for (RollupSeries rollup : rollups) {
+            if (rollup.getIntervalMs() == intervalMs) {
+                return rollup.forEachSketch(startTs, endTs, consumer);
+            }
+        }
+        return false;
+    }
+
+    RollupSeries[] rollups() {
+        return rollups;
+    }
+
+    /**
+     * 本序列维护的汇总分辨率（环形缓冲区模式为空）
+     */
+    List<Long> rollupIntervals() {
+        List<Long> intervals = new ArrayList<>(rollups.length);
+        for (RollupSeries rollup : rollups) {
+            intervals.add(rollup.getIntervalMs());
+        }
+        return intervals;
+    }
+
+    /**
+     * 环形缓冲区容量，0 表示普通序列
+     */
+    int ringCapacity() {
+        return ringCapacity;
+    }
+
+    /**
+     * 当前数据块数组快照（只读）
+     */
+    TsChunk[] chunks() {
+        return chunks;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    long size() {
+        return pointCount;
+    }
+
+    int chunkCount() {
+        return chunks.length;
+    }
+
+    long estimatedBytes() {
+        long bytes = 0;
+        for (TsChunk chunk : chunks) {
+            bytes += chunk.estimatedBytes();
+        }
+        return bytes;
+    }
+}
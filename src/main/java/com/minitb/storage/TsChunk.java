@@ -0,0 +1,36 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.DataType;
+
+/**
+ * 时序数据块接口
+ *
+ * 实现：
+ * - ColumnarChunk: 可写的列式数据块（序列的头块）
+ * - GorillaChunk: 封存后的压缩数据块（只读）
+ *
+ * 约定：数据块不为空，块内时间戳非递减，且只包含一种数据类型
+ */
+interface TsChunk {
+
+    DataType getDataType();
+
+    /**
+     * 数据点数量
+     */
+    int size();
+
+    long minTs();
+
+    long maxTs();
+
+    /**
+     * 估算内存占用（字节）
+     */
+    long estimatedBytes();
+
+    /**
+     * 创建游标，定位到第一个时间戳 >= fromTs 的数据点之前
+     */
+    ChunkCursor cursor(long fromTs);
+}
@@ -0,0 +1,17 @@
+package com.minitb.storage;
+
+/**
+ * 预写日志（WAL）刷盘策略
+ */
+public enum WalFsyncPolicy {
+    NONE,           // 不主动刷盘，由操作系统决定（最快，宕机可能丢失页缓存中的数据）
+    INTERVAL,       // 按固定间隔刷盘（默认，最多丢失一个间隔的数据）
+    EVERY_BATCH;    // 每批写入后刷盘，写入方等待刷盘完成（最安全）
+
+    /**
+     * 解析策略名称（不区分大小写，支持 every-batch 写法）
+     */
+    public static WalFsyncPolicy parse(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
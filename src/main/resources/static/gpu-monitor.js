@@ -4,6 +4,10 @@ let devices = [];
 let currentDeviceId = null;
 let charts = {};
 
+// 历史图表查询参数：时间窗口（秒）和聚合间隔（毫秒）
+const HISTORY_DURATION_SECONDS = 60;
+const HISTORY_INTERVAL_MS = 2000;
+
 // 初始化
 window.addEventListener('DOMContentLoaded', async () => {
     console.log('🚀 初始化 GPU 监控界面...');
@@ -303,35 +307,31 @@ async function updateCharts() {
     }
     
     try {
-        // 获取历史数据（最近 60 秒）
+        // 获取历史数据（最近 60 秒，按 2 秒间隔取平均值，由服务端聚合）
+        const historyQuery = `duration=${HISTORY_DURATION_SECONDS}&interval=${HISTORY_INTERVAL_MS}&agg=AVG`;
         const [tempHistory, utilHistory, powerHistory] = await Promise.all([
-            fetch(`/api/telemetry/${currentDeviceId}/history/gpu_temperature?duration=60`).then(r => r.json()),
-            fetch(`/api/telemetry/${currentDeviceId}/history/gpu_utilization?duration=60`).then(r => r.json()),
-            fetch(`/api/telemetry/${currentDeviceId}/history/power_usage?duration=60`).then(r => r.json())
+            fetch(`/api/telemetry/${currentDeviceId}/history/gpu_temperature?${historyQuery}`).then(r => r.json()),
+            fetch(`/api/telemetry/${currentDeviceId}/history/gpu_utilization?${historyQuery}`).then(r => r.json()),
+            fetch(`/api/telemetry/${currentDeviceId}/history/power_usage?${historyQuery}`).then(r => r.json())
         ]);
         
-        // 计算相对时间（从最早的点开始，单位：秒）
+        // 计算相对时间（距现在的秒数，使用每个间隔的起始时间戳）
         const now = Date.now();
-        
-        // 更新温度图表
-        charts.temperature.data.datasets[0].data = tempHistory.map((d, idx) => ({
-            x: -(tempHistory.length - idx - 1) * 2,  // 相对时间（秒前）
+        const toPoints = history => history.map(d => ({
+            x: Math.round((d.timestamp - now) / 1000),  // 相对时间（秒前）
             y: d.value
         }));
+        
+        // 更新温度图表
+        charts.temperature.data.datasets[0].data = toPoints(tempHistory);
         charts.temperature.update();
         
         // 更新利用率图表
-        charts.utilization.data.datasets[0].data = utilHistory.map((d, idx) => ({
-            x: -(utilHistory.length - idx - 1) * 2,
-            y: d.value
-        }));
+        charts.utilization.data.datasets[0].data = toPoints(utilHistory);
         charts.utilization.update();
         
         // 更新功耗图表
-        charts.power.data.datasets[0].data = powerHistory.map((d, idx) => ({
-            x: -(powerHistory.length - idx - 1) * 2,
-            y: d.value
-        }));
+        charts.power.data.datasets[0].data = toPoints(powerHistory);
         charts.power.update();
         
     } catch (error) {
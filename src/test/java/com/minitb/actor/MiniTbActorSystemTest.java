@@ -0,0 +1,437 @@
+package com.minitb.actor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MiniTbActorSystem 测试
+ *
+ * 测试重点：
+ * - 不同调度器的 Actor 使用独立线程池，一个调度器被占满不影响其他调度器
+ * - 吞吐量限制每次处理的消息数，同一调度器上的 Actor 轮流执行
+ * - 时间片限制每次占用线程的时间，慢消息之后即让出线程
+ * - 自适应批量在邮箱积压时增大批量，并计入每次处理的统计
+ * - 调度器统计（Actor 数、处理消息数、利用率）
+ * - 有界邮箱的溢出策略（拒绝、丢弃最旧、背压）与 tell 的返回结果
+ * - forward 在下游邮箱已满时暂存消息并挂起发送方邮箱，不占用调度器线程，下游消化积压后恢复投递
+ */
+class MiniTbActorSystemTest {
+
+    private static final MiniTbActorMsg MSG = () -> MiniTbActorMsg.ActorMsgType.SYSTEM_SHUTDOWN_MSG;
+
+    private MiniTbActorSystem system;
+
+    @AfterEach
+    void tearDown() {
+        if (system != null) {
+            system.shutdown();
+        }
+    }
+
+    @Test
+    void testBusyDispatcherDoesNotStarveOthers() throws Exception {
+        // Given: 设备调度器只有一个线程，且被一个阻塞的设备 Actor 占住
+        system = new MiniTbActorSystem(List.of(
+                dispatcher(MiniTbActorSystem.DEVICE_DISPATCHER, 1, 10),
+                dispatcher(MiniTbActorSystem.RULE_CHAIN_DISPATCHER, 1, 10),
+                dispatcher(MiniTbActorSystem.SYSTEM_DISPATCHER, 1, 10)));
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        system.createActor("device", actor("device", msg -> {
+            blocked.countDown();
+            await(release);
+        }), MiniTbActorSystem.DEVICE_DISPATCHER);
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch handled = new CountDownLatch(3);
+        system.createActor("chain", actor("chain", msg -> {
+            threads.add(Thread.currentThread().getName());
+            handled.countDown();
+        }), MiniTbActorSystem.RULE_CHAIN_DISPATCHER);
+        system.tell("device", MSG);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            system.tell("chain", MSG);
+        }
+
+        // Then: 规则链 Actor 在自己的线程池中照常处理
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("minitb-rule-chain-")), threads.toString());
+        assertEquals("rule-chain", system.getActor("chain").getDispatcherName());
+        release.countDown();
+        assertThrows(IllegalArgumentException.class,
+                () -> system.createActor("other", actor("other", msg -> { }), "unknown"));
+    }
+
+    @Test
+    void testThroughputInterleavesActorsOnSameDispatcher() throws Exception {
+        // Given: 单线程调度器，吞吐量 2
+        system = new MiniTbActorSystem(List.of(dispatcher(MiniTbActorSystem.SYSTEM_DISPATCHER, 1, 2)));
+        CountDownLatch initialized = new CountDownLatch(3);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(8);
+        system.createActor("gate", actor("gate", initialized, msg -> {
+            blocked.countDown();
+            await(release);
+        }));
+        for (String id : List.of("a", "b")) {
+            system.createActor(id, actor(id, initialized, msg -> {
+                order.add(id);
+                done.countDown();
+            }));
+        }
+        assertTrue(initialized.await(5, TimeUnit.SECONDS));
+        system.tell("gate", MSG);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // When: 线程被占住时两个 Actor 各收到 4 条消息
+        for (int i = 0; i < 4; i++) {
+            system.tell("a", MSG);
+            system.tell("b", MSG);
+        }
+        release.countDown();
+
+        // Then: 每次最多处理 2 条，之后让出线程
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("a", "a", "b", "b", "a", "a", "b", "b"), order);
+        assertEquals(3, system.getDispatcherStats().get(0).getActorCount());
+        // 关闭后线程池中的任务全部结束，计数已更新
+        system.shutdown();
+        MiniTbDispatcherStats stats = system.getDispatcherStats().get(0);
+        assertEquals("system", stats.getName());
+        assertEquals(0, stats.getActorCount());
+        assertEquals(9, stats.getProcessedMessages());
+        assertTrue(stats.getBusyMs() > 0);
+        assertTrue(stats.getUtilization() > 0 && stats.getUtilization() <= 1);
+    }
+
+    @Test
+    void testTimeSliceYieldsAfterSlowMessage() throws Exception {
+        // Given: 单线程调度器，吞吐量 100，时间片 1ms；a 的每条消息耗时 2ms
+        system = new MiniTbActorSystem(List.of(MiniTbDispatcherConfig.builder()
+                .name(MiniTbActorSystem.SYSTEM_DISPATCHER).poolSize(1).throughput(100).timeSliceMicros(1000).build()));
+        CountDownLatch initialized = new CountDownLatch(3);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(6);
+        system.createActor("gate", actor("gate", initialized, msg -> {
+            blocked.countDown();
+            await(release);
+        }));
+        system.createActor("a", actor("a", initialized, msg -> {
+            sleep(2);
+            order.add("a");
+            done.countDown();
+        }));
+        system.createActor("b", actor("b", initialized, msg -> {
+            order.add("b");
+            done.countDown();
+        }));
+        assertTrue(initialized.await(5, TimeUnit.SECONDS));
+        system.tell("gate", MSG);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // When: 线程被占住时两个 Actor 各收到 3 条消息
+        for (int i = 0; i < 3; i++) {
+            system.tell("a", MSG);
+            system.tell("b", MSG);
+        }
+        release.countDown();
+
+        // Then: a 每处理一条就用完时间片，b 不必等 a 处理完全部消息
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("a", "b", "b", "b", "a", "a"), order);
+        system.shutdown();
+        MiniTbDispatcherStats stats = system.getDispatcherStats().get(0);
+        assertEquals(1000, stats.getTimeSliceMicros());
+        assertTrue(stats.getTimeSliceYields() >= 3, stats.toString());
+        assertEquals(0, stats.getThroughputYields());
+        assertEquals(7, stats.getProcessedMessages());
+        assertEquals(3, stats.getMaxMessagesPerTurn());
+    }
+
+    @Test
+    void testAdaptiveThroughputGrowsBatchWhenMailboxIsDeep() throws Exception {
+        // Given: 单线程调度器，吞吐量 2，自适应批量上限 16
+        system = new MiniTbActorSystem(List.of(MiniTbDispatcherConfig.builder()
+                .name(MiniTbActorSystem.SYSTEM_DISPATCHER).poolSize(1).throughput(2)
+                .adaptiveThroughput(true).maxThroughput(16).build()));
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(41);
+        system.createActor("device", actor("device", msg -> {
+            int value = ((NumberedMsg) msg).value;
+            if (value == 0) {
+                blocked.countDown();
+                await(release);
+            }
+            processed.add(value);
+            done.countDown();
+        }));
+        system.tell("device", new NumberedMsg(0, new ArrayList<>()));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // When: 处理线程被占住时积压 40 条消息
+        for (int i = 1; i <= 40; i++) {
+            system.tell("device", new NumberedMsg(i, new ArrayList<>()));
+        }
+        release.countDown();
+
+        // Then: 批量 2 -> 4 -> 8 -> 16 -> 16，消息顺序不变
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i <= 40; i++) {
+            assertEquals(i, processed.get(i));
+        }
+        system.shutdown();
+        MiniTbDispatcherStats stats = system.getDispatcherStats().get(0);
+        assertTrue(stats.isAdaptiveThroughput());
+        assertEquals(16, stats.getMaxThroughput());
+        assertEquals(5, stats.getTurns());
+        assertEquals(16, stats.getMaxMessagesPerTurn());
+        assertEquals(4, stats.getThroughputYields());
+        assertEquals(41.0 / 5, stats.getAvgMessagesPerTurn(), 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> new MiniTbDispatcher(MiniTbDispatcherConfig.builder()
+                .name("bad").poolSize(1).throughput(10).adaptiveThroughput(true).maxThroughput(5).build()));
+    }
+
+    @Test
+    void testBoundedMailboxOverflowPolicies() throws Exception {
+        // Given: 每种溢出策略一个单线程调度器，邮箱容量 5
+        List<MiniTbDispatcherConfig> configs = new ArrayList<>();
+        for (MiniTbMailboxOverflowPolicy policy : MiniTbMailboxOverflowPolicy.values()) {
+            configs.add(MiniTbDispatcherConfig.builder()
+                    .name(policy.name()).poolSize(1).mailboxCapacity(5).overflowPolicy(policy).build());
+        }
+        configs.add(dispatcher(MiniTbActorSystem.SYSTEM_DISPATCHER, 1, 10));
+        system = new MiniTbActorSystem(configs);
+
+        for (MiniTbMailboxOverflowPolicy policy : MiniTbMailboxOverflowPolicy.values()) {
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+            List<Integer> dropped = Collections.synchronizedList(new ArrayList<>());
+            system.createActor(policy.name(), actor(policy.name(), msg -> {
+                int value = ((NumberedMsg) msg).value;
+                if (value == 0) {
+                    blocked.countDown();
+                    await(release);
+                }
+                processed.add(value);
+            }), policy.name());
+            system.tell(policy.name(), new NumberedMsg(0, dropped));
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+            // When: 处理线程被占住时发送 7 条消息
+            List<MiniTbTellResult> results = new ArrayList<>();
+            for (int i = 1; i <= 7; i++) {
+                results.add(system.tell(policy.name(), new NumberedMsg(i, dropped)));
+            }
+            release.countDown();
+            system.stop(policy.name());
+
+            // Then
+            MiniTbTellResult a = MiniTbTellResult.ACCEPTED;
+            switch (policy) {
+                case REJECT -> {
+                    assertEquals(List.of(a, a, a, a, a, MiniTbTellResult.REJECTED, MiniTbTellResult.REJECTED), results);
+                    assertEquals(List.of(6, 7), dropped);
+                }
+                case DROP_OLDEST -> {
+                    MiniTbTellResult d = MiniTbTellResult.DROPPED_OLDEST;
+                    assertEquals(List.of(a, a, a, a, a, d, d), results);
+                    assertEquals(List.of(1, 2), dropped);
+                }
+                case BACKPRESSURE -> {
+                    MiniTbTellResult b = MiniTbTellResult.BACKPRESSURE;
+                    assertEquals(List.of(a, a, a, b, b, MiniTbTellResult.REJECTED, MiniTbTellResult.REJECTED), results);
+                    assertEquals(List.of(6, 7), dropped);
+                }
+            }
+            assertTrue(results.subList(0, 5).stream().allMatch(MiniTbTellResult::isAccepted));
+        }
+
+        // 统计按调度器累计
+        system.shutdown();
+        Map<String, MiniTbDispatcherStats> stats = new HashMap<>();
+        system.getDispatcherStats().forEach(s -> stats.put(s.getName(), s));
+        assertEquals(2, stats.get("REJECT").getRejectedMessages());
+        assertEquals(6, stats.get("REJECT").getProcessedMessages());
+        assertEquals(2, stats.get("DROP_OLDEST").getDroppedMessages());
+        assertEquals(6, stats.get("DROP_OLDEST").getProcessedMessages());
+        assertEquals(2, stats.get("BACKPRESSURE").getBackpressureSignals());
+        assertEquals(2, stats.get("BACKPRESSURE").getRejectedMessages());
+        assertEquals(5, stats.get("BACKPRESSURE").getMailboxCapacity());
+        assertEquals(MiniTbTellResult.NOT_FOUND, system.tell("missing", MSG));
+    }
+
+    @Test
+    void testForwardSuspendsSenderWithoutBlockingDispatcher() throws Exception {
+        // Given: 下游邮箱容量 2（拒绝策略），处理线程被占住且邮箱已满；发送方与另一个 Actor 共用一个设备调度器线程
+        system = new MiniTbActorSystem(List.of(
+                dispatcher(MiniTbActorSystem.DEVICE_DISPATCHER, 1, 10),
+                MiniTbDispatcherConfig.builder().name(MiniTbActorSystem.RULE_CHAIN_DISPATCHER).poolSize(1)
+                        .mailboxCapacity(2).overflowPolicy(MiniTbMailboxOverflowPolicy.REJECT).build(),
+                dispatcher(MiniTbActorSystem.SYSTEM_DISPATCHER, 1, 10)));
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> dropped = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(6);
+        system.createActor("chain", actor("chain", msg -> {
+            int value = ((NumberedMsg) msg).value;
+            if (value == 0) {
+                blocked.countDown();
+                await(release);
+            }
+            processed.add(value);
+            done.countDown();
+        }), MiniTbActorSystem.RULE_CHAIN_DISPATCHER);
+        List<MiniTbTellResult> forwarded = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> highPriority = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch senderInitialized = new CountDownLatch(1);
+        MiniTbActorMailbox sender = system.createActor("sender", new MiniTbActor() {
+            private MiniTbActorContext ctx;
+
+            @Override
+            public void init(MiniTbActorContext ctx) {
+                this.ctx = ctx;
+                senderInitialized.countDown();
+            }
+
+            @Override
+            public boolean process(MiniTbActorMsg msg) {
+                NumberedMsg numbered = (NumberedMsg) msg;
+                if (numbered.value < 0) {
+                    highPriority.add(numbered.value);
+                } else {
+                    forwarded.add(ctx.forward("chain", msg));
+                }
+                return true;
+            }
+
+            @Override
+            public String getActorId() {
+                return "sender";
+            }
+        }, MiniTbActorSystem.DEVICE_DISPATCHER);
+        CountDownLatch otherProcessed = new CountDownLatch(1);
+        system.createActor("other", actor("other", msg -> otherProcessed.countDown()), MiniTbActorSystem.DEVICE_DISPATCHER);
+        assertTrue(senderInitialized.await(5, TimeUnit.SECONDS));
+        system.tell("chain", new NumberedMsg(0, dropped));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        system.tell("chain", new NumberedMsg(1, dropped));
+        system.tell("chain", new NumberedMsg(2, dropped));
+
+        // When: 下游已满时发送方转发
+        for (int i = 3; i < 6; i++) {
+            system.tell("sender", new NumberedMsg(i, dropped));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!sender.isSuspended() && System.nanoTime() < deadline) {
+            sleep(1);
+        }
+
+        // Then: 消息暂存，发送方邮箱挂起，其余消息留在邮箱中；调度器线程不被占用，高优先级消息照常处理
+        assertTrue(sender.isSuspended());
+        assertEquals(List.of(MiniTbTellResult.STASHED), forwarded);
+        assertEquals(2, sender.getQueueSize());
+        system.tell("other", MSG);
+        assertTrue(otherProcessed.await(1, TimeUnit.SECONDS));
+        system.tellWithHighPriority("sender", new NumberedMsg(-1, dropped));
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (highPriority.isEmpty() && System.nanoTime() < deadline) {
+            sleep(1);
+        }
+        assertEquals(List.of(-1), highPriority);
+        assertEquals(2, sender.getQueueSize());
+
+        // When: 下游消化积压
+        release.countDown();
+
+        // Then: 发送方恢复，暂存的消息先投递，顺序不变，没有消息被拒绝或丢弃
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), processed);
+        assertTrue(dropped.isEmpty());
+        assertFalse(sender.isSuspended());
+        system.shutdown();
+        Map<String, MiniTbDispatcherStats> stats = new HashMap<>();
+        system.getDispatcherStats().forEach(st -> stats.put(st.getName(), st));
+        assertEquals(0, stats.get("rule-chain").getRejectedMessages());
+    }
+
+    private static MiniTbDispatcherConfig dispatcher(String name, int poolSize, int throughput) {
+        return MiniTbDispatcherConfig.builder().name(name).poolSize(poolSize).throughput(throughput).build();
+    }
+
+    private static MiniTbActor actor(String id, Consumer<MiniTbActorMsg> handler) {
+        return actor(id, new CountDownLatch(0), handler);
+    }
+
+    private static MiniTbActor actor(String id, CountDownLatch initialized, Consumer<MiniTbActorMsg> handler) {
+        return new MiniTbActor() {
+            @Override
+            public boolean process(MiniTbActorMsg msg) {
+                handler.accept(msg);
+                return true;
+            }
+
+            @Override
+            public String getActorId() {
+                return id;
+            }
+
+            @Override
+            public void init(MiniTbActorContext ctx) {
+                initialized.countDown();
+            }
+        };
+    }
+
+    /**
+     * 带序号的消息，被拒绝或丢弃时记录序号
+     */
+    private record NumberedMsg(int value, List<Integer> dropped) implements MiniTbActorMsg {
+
+        @Override
+        public ActorMsgType getActorMsgType() {
+            return ActorMsgType.SYSTEM_SHUTDOWN_MSG;
+        }
+
+        @Override
+        public void onDropped() {
+            dropped.add(value);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.minitb.actor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MiniTbMailboxQueue 测试
+ *
+ * 测试重点：
+ * - 容量即上限，满时 offer 失败，取出后槽位循环复用
+ * - 多生产者并发写入，每条消息恰好取出一次，同一生产者的消息保持顺序
+ */
+class MiniTbMailboxQueueTest {
+
+    @Test
+    void testBoundedFifoWrapsAround() {
+        MiniTbMailboxQueue<Integer> queue = new MiniTbMailboxQueue<>(3);
+        for (int round = 0; round < 5; round++) {
+            assertTrue(queue.isEmpty());
+            assertTrue(queue.offer(round * 10 + 1));
+            assertTrue(queue.offer(round * 10 + 2));
+            assertTrue(queue.offer(round * 10 + 3));
+            assertFalse(queue.offer(-1));
+            assertEquals(3, queue.size());
+            assertEquals(round * 10 + 1, queue.poll());
+            assertEquals(round * 10 + 2, queue.poll());
+            assertEquals(round * 10 + 3, queue.poll());
+            assertNull(queue.poll());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new MiniTbMailboxQueue<>(0));
+    }
+
+    @Test
+    void testConcurrentProducersSingleConsumer() throws Exception {
+        // Given: 4 个生产者各写入 20000 条（满时让出 CPU 后重试），一个消费者
+        int producers = 4;
+        int perProducer = 20_000;
+        MiniTbMailboxQueue<long[]> queue = new MiniTbMailboxQueue<>(64);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    long[] item = {producer, i};
+                    while (!queue.offer(item)) {
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+
+        // When
+        start.countDown();
+        List<long[]> received = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (received.size() < producers * perProducer && System.nanoTime() < deadline) {
+            long[] item = queue.poll();
+            if (item != null) {
+                received.add(item);
+            } else {
+                Thread.yield();
+            }
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        // Then: 没有丢失或重复，每个生产者的消息按顺序取出
+        assertEquals(producers * perProducer, received.size());
+        assertNull(queue.poll());
+        long[] next = new long[producers];
+        for (long[] item : received) {
+            assertEquals(next[(int) item[0]]++, item[1]);
+        }
+    }
+}
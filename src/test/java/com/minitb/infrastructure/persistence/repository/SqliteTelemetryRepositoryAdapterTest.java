@@ -0,0 +1,102 @@
+package com.minitb.infrastructure.persistence.repository;
+
+import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.telemetry.*;
+import com.minitb.infrastructure.persistence.sqlite.SqliteConnectionManager;
+import com.minitb.infrastructure.persistence.sqlite.telemetry.SqliteTelemetryRepositoryAdapter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SqliteTelemetryRepositoryAdapter 测试
+ *
+ * 测试重点：
+ * - 多行批量插入（超过单条语句行数）在一个事务内完成
+ * - 各数据类型（含空值）的往返
+ * - 相同 (设备, 键, 时间戳) 覆盖写入、按时间删除
+ */
+class SqliteTelemetryRepositoryAdapterTest {
+
+    @TempDir
+    Path dir;
+
+    private SqliteConnectionManager connectionManager;
+    private SqliteTelemetryRepositoryAdapter repository;
+    private final DeviceId deviceId = DeviceId.random();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        connectionManager = new SqliteConnectionManager();
+        ReflectionTestUtils.setField(connectionManager, "dbPath", dir.resolve("telemetry.db").toString());
+        connectionManager.initialize();
+        repository = new SqliteTelemetryRepositoryAdapter(connectionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.cleanup();
+        connectionManager.cleanup();
+    }
+
+    @Test
+    void testBatchInsertAndRangeQuery() {
+        // Given: 250 个点，跨 3 条多行 INSERT 语句，另一个设备的数据不应被查到
+        List<TsKvEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            entries.add(new BasicTsKvEntry(1000L + i, new DoubleDataEntry("temperature", 20.0 + i)));
+        }
+        repository.saveAll(Map.of(
+                deviceId, entries,
+                DeviceId.random(), List.of(new BasicTsKvEntry(1100L, new DoubleDataEntry("temperature", -1.0)))));
+
+        // When
+        List<TsKvEntry> result = repository.findByKey(deviceId, "temperature", 1100L, 1199L);
+
+        // Then
+        assertEquals(100, result.size());
+        assertEquals(1100L, result.get(0).getTs());
+        assertEquals(120.0, result.get(0).getDoubleValue().orElseThrow());
+        assertEquals(1199L, result.get(99).getTs());
+        assertTrue(repository.findByKey(deviceId, "unknown", 0L, Long.MAX_VALUE).isEmpty());
+        List<TsKvEntry> limited = repository.findByKey(deviceId, "temperature", 1100L, Long.MAX_VALUE, 30);
+        assertEquals(30, limited.size());
+        assertEquals(1129L, limited.get(29).getTs());
+    }
+
+    @Test
+    void testAllDataTypesUpsertAndDelete() {
+        // Given
+        repository.saveAll(Map.of(deviceId, List.of(
+                new BasicTsKvEntry(1L, new LongDataEntry("count", 7L)),
+                new BasicTsKvEntry(2L, new LongDataEntry("count", (Long) null)),
+                new BasicTsKvEntry(1L, new BooleanDataEntry("online", false)),
+                new BasicTsKvEntry(1L, new StringDataEntry("status", "运行中")),
+                new BasicTsKvEntry(1L, new JsonDataEntry("meta", "{\"a\":1}")))));
+
+        // When: 相同时间戳再次写入
+        repository.saveAll(Map.of(deviceId, List.of(new BasicTsKvEntry(1L, new LongDataEntry("count", 8L)))));
+
+        // Then
+        List<TsKvEntry> counts = repository.findByKey(deviceId, "count", 0L, 10L);
+        assertEquals(2, counts.size());
+        assertEquals(8L, counts.get(0).getLongValue().orElseThrow());
+        assertEquals(DataType.LONG, counts.get(1).getDataType());
+        assertTrue(counts.get(1).getLongValue().isEmpty());
+        assertFalse(repository.findByKey(deviceId, "online", 0L, 10L).get(0).getBooleanValue().orElseThrow());
+        assertEquals("运行中", repository.findByKey(deviceId, "status", 0L, 10L).get(0).getStrValue().orElseThrow());
+        assertEquals("{\"a\":1}", repository.findByKey(deviceId, "meta", 0L, 10L).get(0).getJsonValue().orElseThrow());
+
+        assertEquals(4, repository.deleteOlderThan(2L));
+        assertEquals(1, repository.findByKey(deviceId, "count", 0L, 10L).size());
+    }
+}
@@ -19,6 +19,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
 
 import java.util.*;
 
@@ -36,6 +37,7 @@ import static org.junit.jupiter.api.Assertions.*;
  * 6. 告警确认
  */
 @SpringBootTest
+@ActiveProfiles("test")
 @Slf4j
 public class AlarmEndToEndTest {
     
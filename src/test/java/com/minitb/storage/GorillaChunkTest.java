@@ -0,0 +1,119 @@
+package com.minitb.storage;
+
+import com.minitb.domain.telemetry.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GorillaChunk 单元测试
+ *
+ * 测试重点：
+ * - 各数据类型编码/解码往返一致（含空值、不规则时间戳、极端值）
+ * - 游标定位（cursor(fromTs)）
+ * - 规律采样数据的压缩率
+ */
+class GorillaChunkTest {
+
+    @Test
+    void testDoubleRoundTripWithIrregularTimestamps() {
+        // Given: 不规则间隔 + 随机值 + 特殊值
+        Random random = new Random(42);
+        List<TsKvEntry> points = new ArrayList<>();
+        long ts = 1_700_000_000_000L;
+        double[] specials = {0.0, -0.0, Double.NaN, Double.MAX_VALUE, Double.MIN_VALUE, -1e-300};
+        for (int i = 0; i < 200; i++) {
+            ts += random.nextInt(5) == 0 ? random.nextInt(100_000) : 1000;
+            double value = i < specials.length ? specials[i] : random.nextGaussian() * 100;
+            points.add(new BasicTsKvEntry(ts, new DoubleDataEntry("v", value)));
+        }
+        points.add(new BasicTsKvEntry(ts + 5_000_000_000L, new DoubleDataEntry("v", (Double) null)));
+        points.add(new BasicTsKvEntry(ts + 5_000_000_000L, new DoubleDataEntry("v", 3.0)));
+
+        // When
+        GorillaChunk chunk = GorillaChunk.encode(columnar(points));
+
+        // Then
+        assertRoundTrip(points, chunk);
+    }
+
+    @Test
+    void testLongBooleanAndStringRoundTrip() {
+        List<TsKvEntry> longs = new ArrayList<>();
+        List<TsKvEntry> booleans = new ArrayList<>();
+        List<TsKvEntry> strings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            long ts = 1000L + i * 10L;
+            longs.add(new BasicTsKvEntry(ts, new LongDataEntry("l", i % 7 == 0 ? Long.MIN_VALUE : (long) i * i)));
+            booleans.add(new BasicTsKvEntry(ts, new BooleanDataEntry("b", i % 10 == 0 ? null : i % 3 == 0)));
+            strings.add(new BasicTsKvEntry(ts, new StringDataEntry("s", i % 5 == 0 ? null : "状态-" + i)));
+        }
+
+        assertRoundTrip(longs, GorillaChunk.encode(columnar(longs)));
+        assertRoundTrip(booleans, GorillaChunk.encode(columnar(booleans)));
+        assertRoundTrip(strings, GorillaChunk.encode(columnar(strings)));
+    }
+
+    @Test
+    void testCursorSeek() {
+        List<TsKvEntry> points = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            points.add(new BasicTsKvEntry(100L + i * 2, new LongDataEntry("l", (long) i)));
+        }
+        GorillaChunk chunk = GorillaChunk.encode(columnar(points));
+
+        // 定位到不存在的时间戳时，从下一个点开始
+        ChunkCursor cursor = chunk.cursor(141L);
+        assertTrue(cursor.next());
+        assertEquals(142L, cursor.ts());
+        assertEquals(21L, cursor.longValue());
+
+        // 超出范围时没有数据
+        assertFalse(chunk.cursor(1000L).next());
+    }
+
+    @Test
+    void testRegularSamplesCompressWell() {
+        // Given: 1 秒间隔、缓慢变化的温度
+        List<TsKvEntry> points = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            points.add(new BasicTsKvEntry(1_700_000_000_000L + i * 1000L,
+                    new DoubleDataEntry("temperature", 60.0 + (i / 16) * 0.5)));
+        }
+
+        // When
+        GorillaChunk chunk = GorillaChunk.encode(columnar(points));
+
+        // Then
+        assertEquals(256 * 16, chunk.uncompressedBytes());
+        assertTrue(chunk.compressedBytes() * 10 < chunk.uncompressedBytes(),
+                "compressed bytes: " + chunk.compressedBytes());
+        assertRoundTrip(points, chunk);
+    }
+
+    private static ColumnarChunk columnar(List<TsKvEntry> points) {
+        ColumnarChunk chunk = new ColumnarChunk(points.get(0).getDataType(), points.size());
+        points.forEach(point -> assertTrue(chunk.append(point)));
+        return chunk;
+    }
+
+    private static void assertRoundTrip(List<TsKvEntry> expected, GorillaChunk chunk) {
+        assertEquals(expected.size(), chunk.size());
+        assertEquals(expected.get(0).getTs(), chunk.minTs());
+        assertEquals(expected.get(expected.size() - 1).getTs(), chunk.maxTs());
+
+        ChunkCursor cursor = chunk.cursor(Long.MIN_VALUE);
+        for (TsKvEntry point : expected) {
+            assertTrue(cursor.next());
+            TsKvEntry actual = cursor.toEntry(point.getKey());
+            assertEquals(point.getTs(), actual.getTs());
+            assertEquals(point.getDataType(), actual.getDataType());
+            assertEquals(point.getValue(), actual.getValue());
+        }
+        assertFalse(cursor.next());
+    }
+}
@@ -0,0 +1,115 @@
+package com.minitb.storage;
+
+import com.minitb.domain.id.DeviceId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TelemetryDictionary / SeriesIndex 测试
+ *
+ * 测试重点：
+ * - 键名、设备编号稳定且可反查，序列编号打包/拆分往返
+ * - 扩容后所有序列仍可查找，移除的槽位被复用
+ * - 每个设备的键编号列表随序列新建、移除更新
+ * - 并发新建同一序列只创建一次
+ */
+class SeriesIndexTest {
+
+    private final TelemetryStorageConfig config = TelemetryStorageConfig.builder().build();
+
+    @Test
+    void testDictionaryEncodingIsStable() {
+        // Given
+        TelemetryDictionary dictionary = new TelemetryDictionary();
+        DeviceId deviceId = DeviceId.random();
+
+        // When
+        int keyId = dictionary.keyId(new String("temperature"));
+        int deviceIndex = dictionary.deviceIndex(deviceId);
+        long seriesId = TelemetryDictionary.seriesId(deviceIndex, keyId);
+
+        // Then: 同名键复用编号和字典中的实例
+        assertEquals(keyId, dictionary.keyId(new String("temperature")));
+        assertSame(dictionary.key(keyId), dictionary.key(dictionary.findKeyId("temperature")));
+        assertEquals(deviceIndex, dictionary.deviceIndex(DeviceId.fromUUID(deviceId.getId())));
+        assertEquals(deviceId, dictionary.device(deviceIndex));
+        assertEquals(-1, dictionary.findKeyId("unknown"));
+        assertEquals(-1, dictionary.findDeviceIndex(DeviceId.random()));
+        assertEquals(deviceIndex, TelemetryDictionary.deviceIndexOf(seriesId));
+        assertEquals(keyId, TelemetryDictionary.keyIdOf(seriesId));
+    }
+
+    @Test
+    void testGrowRemoveAndReuse() {
+        // Given: 3 个设备 × 2000 个键，超过初始容量多次扩容
+        SeriesIndex index = new SeriesIndex();
+        for (int device = 0; device < 3; device++) {
+            for (int key = 0; key < 2000; key++) {
+                index.computeIfAbsent(TelemetryDictionary.seriesId(device, key), id -> newSeries());
+            }
+        }
+
+        // When: 移除设备 1 的偶数键，再重新创建其中一个
+        for (int key = 0; key < 2000; key += 2) {
+            long id = TelemetryDictionary.seriesId(1, key);
+            assertTrue(index.remove(id, index.get(id)));
+        }
+        TimeSeries recreated = index.computeIfAbsent(TelemetryDictionary.seriesId(1, 0), id -> newSeries());
+
+        // Then
+        assertEquals(5001, index.size());
+        assertSame(recreated, index.get(TelemetryDictionary.seriesId(1, 0)));
+        assertNull(index.get(TelemetryDictionary.seriesId(1, 2)));
+        assertNotNull(index.get(TelemetryDictionary.seriesId(2, 1999)));
+        assertEquals(1001, index.getDevice(1).keyIds().length);
+        assertEquals(2000, index.getDevice(0).keyIds().length);
+        assertFalse(index.remove(TelemetryDictionary.seriesId(1, 0), newSeries()));
+        assertNull(index.getDevice(7));
+    }
+
+    @Test
+    void testConcurrentComputeIfAbsentCreatesOnce() throws Exception {
+        // Given
+        SeriesIndex index = new SeriesIndex();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<List<TimeSeries>> seen = new ArrayList<>();
+
+        // When: 4 个线程同时新建相同的 500 个序列
+        for (int t = 0; t < 4; t++) {
+            List<TimeSeries> mine = new ArrayList<>();
+            seen.add(mine);
+            pool.submit(() -> {
+                start.await();
+                for (int key = 0; key < 500; key++) {
+                    mine.add(index.computeIfAbsent(TelemetryDictionary.seriesId(0, key), id -> newSeries()));
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Then
+        assertEquals(500, index.size());
+        assertEquals(500, index.getDevice(0).keyIds().length);
+        for (List<TimeSeries> mine : seen) {
+            for (int key = 0; key < 500; key++) {
+                assertSame(seen.get(0).get(key), mine.get(key));
+            }
+        }
+    }
+
+    private TimeSeries newSeries() {
+        return new TimeSeries("temperature", config);
+    }
+}
@@ -0,0 +1,100 @@
+package com.minitb.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SlabAllocator 测试
+ *
+ * 测试重点：
+ * - 分配大小按 2 的幂取整，块位于直接内存
+ * - 释放的块在推进纪元后才复用，活跃读线程会推迟复用
+ * - 超过 slab 大小或内存上限时返回 null
+ */
+class SlabAllocatorTest {
+
+    @Test
+    void testAllocateRoundsToSizeClass() {
+        // Given
+        SlabAllocator allocator = new SlabAllocator(4096, 0);
+
+        // When
+        SlabAllocator.Block small = allocator.allocate(10);
+        SlabAllocator.Block large = allocator.allocate(100);
+        ByteBuffer buffer = allocator.buffer(large);
+        buffer.put(0, (byte) 42);
+
+        // Then
+        assertTrue(buffer.isDirect());
+        assertEquals(100, buffer.capacity());
+        assertEquals(42, allocator.buffer(large).get(0));
+        assertNotEquals(small.offset(), large.offset());
+        SlabAllocatorStats stats = allocator.getStats();
+        assertEquals(1, stats.getSlabCount());
+        assertEquals(4096, stats.getReservedBytes());
+        assertEquals(64 + 128, stats.getUsedBytes());
+        assertEquals(110, stats.getRequestedBytes());
+        assertEquals(2, stats.getLiveBlocks());
+    }
+
+    @Test
+    void testFreedBlockReusedOnlyAfterEpochAdvance() {
+        // Given
+        SlabAllocator allocator = new SlabAllocator(4096, 0);
+        SlabAllocator.Block block = allocator.allocate(100);
+
+        // When: 释放后立即分配同一大小级别
+        allocator.free(block);
+        SlabAllocator.Block beforeAdvance = allocator.allocate(100);
+
+        // Then: 待回收的块不会被复用
+        assertNotEquals(block.offset(), beforeAdvance.offset());
+        assertEquals(128, allocator.getStats().getRetiredBytes());
+
+        // When: 推进纪元后再分配
+        assertEquals(128, allocator.advanceEpoch());
+        SlabAllocator.Block afterAdvance = allocator.allocate(100);
+
+        // Then
+        assertEquals(block.offset(), afterAdvance.offset());
+        assertEquals(0, allocator.getStats().getRetiredBytes());
+        assertEquals(1, allocator.getStats().getFrees());
+    }
+
+    @Test
+    void testActiveReaderDefersReuse() {
+        // Given: 读线程在块释放前登记
+        SlabAllocator allocator = new SlabAllocator(4096, 0);
+        SlabAllocator.Block block = allocator.allocate(100);
+        long epoch = allocator.beginRead();
+        allocator.free(block);
+
+        // When
+        long reclaimedWhileReading = allocator.advanceEpoch();
+        allocator.endRead(epoch);
+        long reclaimedAfterRead = allocator.advanceEpoch();
+
+        // Then
+        assertEquals(0, reclaimedWhileReading);
+        assertEquals(128, reclaimedAfterRead);
+    }
+
+    @Test
+    void testFallbackWhenTooLargeOrOverLimit() {
+        // Given: 两个 1KB slab 的上限
+        SlabAllocator allocator = new SlabAllocator(1024, 2048);
+
+        // When / Then
+        assertNull(allocator.allocate(2000));
+        assertNotNull(allocator.allocate(1024));
+        assertNotNull(allocator.allocate(1024));
+        assertNull(allocator.allocate(64));
+        SlabAllocatorStats stats = allocator.getStats();
+        assertEquals(2, stats.getSlabCount());
+        assertEquals(2, stats.getFallbacks());
+        assertThrows(IllegalArgumentException.class, () -> new SlabAllocator(1000, 0));
+    }
+}
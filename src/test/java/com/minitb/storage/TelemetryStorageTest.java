@@ -0,0 +1,1192 @@
+package com.minitb.storage;
+
+import com.minitb.domain.device.TelemetryRetentionPolicy;
+import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.telemetry.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TelemetryStorage 单元测试
+ *
+ * 测试重点：
+ * - 列式数据块的写入与物化
+ * - 时间范围查询、类型查询、最新值查询（不可变最新值快照）
+ * - 乱序数据点按时间戳有序返回（重排缓冲区），同一时间戳后写覆盖先写
+ * - 并发写入与无锁读取
+ * - 封存数据块压缩与统计
+ * - 保留策略与压缩整理
+ * - O(1) 占用计数器与内存预算（下沉冷数据层、淘汰最早的数据块）
+ * - 冷数据块下沉到内存映射文件
+ * - 堆外 slab 存储与过期释放
+ * - 超出内存范围的历史数据从仓储读取
+ * - 续页令牌分页与流式扫描
+ * - 环形缓冲区模式（只保留最近的数据点，策略变化时转换）
+ * - 增量汇总桶
+ * - 聚合查询（汇总桶与原始数据扫描结果一致）
+ * - 分位数聚合（合并汇总桶的分位数草图）
+ * - 分层查询计划（汇总桶、内存数据块、仓储拼接，按层统计）
+ * - 设备群并行查询
+ */
+class TelemetryStorageTest {
+
+    private TelemetryStorage storage;
+    private DeviceId deviceId;
+
+    @BeforeEach
+    void setUp() {
+        storage = new TelemetryStorage(false, 8);
+        deviceId = DeviceId.random();
+    }
+
+    @Test
+    void testSaveAndQueryAcrossChunks() {
+        // Given: 20 个点，块容量 8 → 跨 3 个数据块
+        for (int i = 0; i < 20; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(1000L + i, new DoubleDataEntry("temperature", 20.0 + i)));
+        }
+
+        // When
+        List<TsKvEntry> result = storage.query(deviceId, "temperature", 1005L, 1014L);
+
+        // Then
+        assertEquals(10, result.size());
+        assertEquals(1005L, result.get(0).getTs());
+        assertEquals(25.0, result.get(0).getDoubleValue().orElseThrow());
+        assertEquals(1014L, result.get(9).getTs());
+        assertEquals(20, storage.getTotalMessages());
+    }
+
+    @Test
+    void testAllDataTypesRoundTrip() {
+        // Given
+        storage.save(deviceId, List.of(
+                new BasicTsKvEntry(1L, new DoubleDataEntry("d", 1.5)),
+                new BasicTsKvEntry(1L, new LongDataEntry("l", 42L)),
+                new BasicTsKvEntry(1L, new BooleanDataEntry("b", true)),
+                new BasicTsKvEntry(2L, new BooleanDataEntry("b", false)),
+                new BasicTsKvEntry(1L, new StringDataEntry("s", "running")),
+                new BasicTsKvEntry(1L, new JsonDataEntry("j", "{\"a\":1}")),
+                new BasicTsKvEntry(1L, new DoubleDataEntry("n", null))
+        ));
+
+        // Then
+        assertEquals(1.5, storage.getLatest(deviceId, "d").getDoubleValue().orElseThrow());
+        assertEquals(42L, storage.getLatest(deviceId, "l").getLongValue().orElseThrow());
+        assertEquals(DataType.BOOLEAN, storage.getLatest(deviceId, "b").getDataType());
+        assertFalse(storage.getLatest(deviceId, "b").getBooleanValue().orElseThrow());
+        assertTrue(storage.query(deviceId, "b", 1L, 1L).get(0).getBooleanValue().orElseThrow());
+        assertEquals("running", storage.getLatest(deviceId, "s").getStrValue().orElseThrow());
+        assertEquals("{\"a\":1}", storage.getLatest(deviceId, "j").getJsonValue().orElseThrow());
+        assertTrue(storage.getLatest(deviceId, "n").getDoubleValue().isEmpty());
+        assertEquals(DataType.DOUBLE, storage.getLatest(deviceId, "n").getDataType());
+    }
+
+    @Test
+    void testMixedTypesInOneSeries() {
+        // Given: 同一个键先后出现 LONG 和 DOUBLE（设备上报 25 与 25.5）
+        storage.save(deviceId, new BasicTsKvEntry(1L, new LongDataEntry("temperature", 25L)));
+        storage.save(deviceId, new BasicTsKvEntry(2L, new DoubleDataEntry("temperature", 25.5)));
+        storage.save(deviceId, new BasicTsKvEntry(3L, new LongDataEntry("temperature", 26L)));
+
+        // When
+        List<TsKvEntry> all = storage.query(deviceId, "temperature", 0L, 10L);
+        List<TsKvEntry> doubles = storage.queryByType(deviceId, DataType.DOUBLE, 0L, 10L);
+
+        // Then
+        assertEquals(3, all.size());
+        assertEquals(DataType.LONG, all.get(0).getDataType());
+        assertEquals(DataType.DOUBLE, all.get(1).getDataType());
+        assertEquals(26L, all.get(2).getLongValue().orElseThrow());
+        assertEquals(1, doubles.size());
+    }
+
+    @Test
+    void testLatestAllAndKeys() {
+        // Given
+        storage.save(deviceId, new BasicTsKvEntry(1L, new DoubleDataEntry("a", 1.0)));
+        storage.save(deviceId, new BasicTsKvEntry(2L, new DoubleDataEntry("a", 2.0)));
+        storage.save(deviceId, new BasicTsKvEntry(1L, new LongDataEntry("b", 7L)));
+
+        // When
+        Map<String, TsKvEntry> latest = storage.getLatestAll(deviceId);
+
+        // Then
+        assertEquals(2, latest.size());
+        assertEquals(2.0, latest.get("a").getDoubleValue().orElseThrow());
+        assertEquals(7L, latest.get("b").getLongValue().orElseThrow());
+        assertEquals(2, storage.getKeys(deviceId).size());
+        assertTrue(storage.query(DeviceId.random(), "a", 0L, 10L).isEmpty());
+    }
+
+    @Test
+    void testLatestSnapshotIsImmutableAndPublishedPerSave() {
+        // Given: 一批数据只发布一次快照
+        storage.save(deviceId, List.of(
+                new BasicTsKvEntry(10L, new DoubleDataEntry("a", 1.0)),
+                new BasicTsKvEntry(10L, new LongDataEntry("b", 2L))));
+        LatestSnapshot first = storage.getLatestSnapshot(deviceId);
+
+        // When: 再写入一个新值和一个迟到的旧值
+        storage.save(deviceId, new BasicTsKvEntry(20L, new DoubleDataEntry("a", 3.0)));
+        storage.save(deviceId, new BasicTsKvEntry(5L, new LongDataEntry("b", 0L)));
+        LatestSnapshot second = storage.getLatestSnapshot(deviceId);
+
+        // Then: 旧快照不变，迟到数据不覆盖最新值，无写入时读取返回同一快照
+        assertEquals(1.0, first.getEntries().get("a").getDoubleValue().orElseThrow());
+        assertEquals(10L, first.getTimestamp());
+        assertEquals(3.0, second.getEntries().get("a").getDoubleValue().orElseThrow());
+        assertEquals(2L, second.getEntries().get("b").getLongValue().orElseThrow());
+        assertEquals(20L, second.getTimestamp());
+        assertSame(second, storage.getLatestSnapshot(deviceId));
+        assertThrows(UnsupportedOperationException.class, () -> second.getEntries().remove("a"));
+        assertTrue(storage.getLatestSnapshot(DeviceId.random()).isEmpty());
+    }
+
+    @Test
+    void testOutOfOrderPointsReturnedSorted() {
+        // Given: 先写入 0..39 的偶数，再补写奇数（迟到数据）
+        for (int i = 0; i < 40; i += 2) {
+            storage.save(deviceId, new BasicTsKvEntry(i, new DoubleDataEntry("temperature", (double) i)));
+        }
+        for (int i = 1; i < 40; i += 2) {
+            storage.save(deviceId, new BasicTsKvEntry(i, new DoubleDataEntry("temperature", (double) i)));
+        }
+        // 迟到数据类型与所在块不同
+        storage.save(deviceId, new BasicTsKvEntry(-1L, new LongDataEntry("temperature", -1L)));
+
+        // When
+        List<TsKvEntry> all = storage.query(deviceId, "temperature", Long.MIN_VALUE, Long.MAX_VALUE);
+        List<TsKvEntry> window = storage.query(deviceId, "temperature", 10L, 19L);
+
+        // Then
+        assertEquals(41, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(i - 1, all.get(i).getTs());
+        }
+        assertEquals(DataType.LONG, all.get(0).getDataType());
+        assertEquals(10, window.size());
+        assertEquals(10L, window.get(0).getTs());
+        assertEquals(19.0, window.get(9).getDoubleValue().orElseThrow());
+        assertEquals(39L, storage.getLatest(deviceId, "temperature").getTs());
+    }
+
+    @Test
+    void testDuplicateTimestampsUpsertLastWriteWins() {
+        // Given: 20 个数据点（块容量 8 → 2 个封存块 + 头块）
+        for (int i = 0; i < 20; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 1000L, new LongDataEntry("requests", (long) i)));
+        }
+
+        // When: 重复投递封存块、头块和头块最新时间戳的数据点，其中一个重复两次
+        storage.save(deviceId, new BasicTsKvEntry(3000L, new LongDataEntry("requests", 300L)));
+        storage.save(deviceId, new BasicTsKvEntry(17_000L, new LongDataEntry("requests", 170L)));
+        storage.save(deviceId, new BasicTsKvEntry(17_000L, new LongDataEntry("requests", 171L)));
+        storage.save(deviceId, new BasicTsKvEntry(19_000L, new LongDataEntry("requests", 190L)));
+        storage.save(deviceId, new BasicTsKvEntry(5000L, new LongDataEntry("requests", 5L)));
+
+        // Then: 数据点数不变，同一时间戳只保留最后写入的值
+        List<TsKvEntry> all = storage.query(deviceId, "requests", 0L, Long.MAX_VALUE);
+        assertEquals(20, all.size());
+        assertEquals(20, storage.getTotalMessages());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i * 1000L, all.get(i).getTs());
+        }
+        assertEquals(300L, all.get(3).getLongValue().orElseThrow());
+        assertEquals(171L, all.get(17).getLongValue().orElseThrow());
+        assertEquals(190L, all.get(19).getLongValue().orElseThrow());
+        assertEquals(190L, storage.getLatest(deviceId, "requests").getLongValue().orElseThrow());
+
+        // 汇总桶用新值替换旧值
+        RollupBucket minute = storage.queryRollups(deviceId, "requests", 60_000L, 0L, 59_999L).get(0);
+        assertEquals(20, minute.getCount());
+        assertEquals(190 - 3 + 300 - 17 + 171 - 19 + 190, minute.getSum());
+        assertEquals(190.0, minute.getLast());
+    }
+
+    @Test
+    void testLateArrivalsBufferedAndMergedAtSeal() {
+        // Given: 块容量 8，重排缓冲区 2 个数据点
+        storage = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkSize(8)
+                .reorderBufferSize(2)
+                .build());
+        for (int i = 0; i < 8; i += 2) {
+            storage.save(deviceId, new BasicTsKvEntry(i, new DoubleDataEntry("temperature", (double) i)));
+        }
+
+        // When: 头块范围内的迟到数据点（超过缓冲区容量）和一个早于头块最早时间戳的数据点
+        storage.save(deviceId, new BasicTsKvEntry(5L, new DoubleDataEntry("temperature", 5.0)));
+        storage.save(deviceId, new BasicTsKvEntry(1L, new DoubleDataEntry("temperature", 1.0)));
+        storage.save(deviceId, new BasicTsKvEntry(3L, new DoubleDataEntry("temperature", 3.0)));
+        storage.save(deviceId, new BasicTsKvEntry(-1L, new DoubleDataEntry("temperature", -1.0)));
+
+        // Then: 缓冲期间查询结果有序，头块未被重建成多个块
+        List<TsKvEntry> buffered = storage.query(deviceId, "temperature", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(List.of(-1L, 0L, 1L, 2L, 3L, 4L, 5L, 6L), buffered.stream().map(TsKvEntry::getTs).toList());
+        assertEquals(1, storage.getStatistics().getChunkCount());
+        assertEquals(3, storage.query(deviceId, "temperature", 1L, 3L).size());
+
+        // 头块写满后合并封存，压缩块内容有序
+        for (int i = 8; i < 20; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i, new DoubleDataEntry("temperature", (double) i)));
+        }
+        List<TsKvEntry> all = storage.query(deviceId, "temperature", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(20, all.size());
+        assertEquals(20, storage.getTotalMessages());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getTs() < all.get(i).getTs());
+            assertEquals((double) all.get(i).getTs(), all.get(i).getDoubleValue().orElseThrow());
+        }
+        assertTrue(storage.getStatistics().getCompressedChunkCount() >= 2);
+    }
+
+    @Test
+    void testRangeBoundariesAndEmptyRanges() {
+        // Given
+        for (int i = 0; i < 30; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(100L + i * 10, new LongDataEntry("counter", (long) i)));
+        }
+
+        // Then
+        assertEquals(1, storage.query(deviceId, "counter", 100L, 100L).size());
+        assertEquals(2, storage.query(deviceId, "counter", 175L, 195L).size());
+        assertTrue(storage.query(deviceId, "counter", 101L, 109L).isEmpty());
+        assertTrue(storage.query(deviceId, "counter", 0L, 99L).isEmpty());
+        assertTrue(storage.query(deviceId, "counter", 500L, 600L).isEmpty());
+        assertTrue(storage.query(deviceId, "counter", 200L, 100L).isEmpty());
+        assertEquals(30, storage.query(deviceId, "counter", 100L, 390L).size());
+    }
+
+    @Test
+    void testSealedChunksAreCompressed() {
+        // Given: 100 个点，块容量 8 → 12 个封存块 + 1 个头块
+        for (int i = 0; i < 100; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(1000L * i, new DoubleDataEntry("temperature", 50.0)));
+        }
+
+        // When
+        TelemetryStorageStats stats = storage.getStatistics();
+
+        // Then
+        assertEquals(100, stats.getPointCount());
+        assertEquals(13, stats.getChunkCount());
+        assertEquals(12, stats.getCompressedChunkCount());
+        assertTrue(stats.getCompressionRatio() > 1.0);
+        assertEquals(100, storage.query(deviceId, "temperature", 0L, 99_000L).size());
+    }
+
+    @Test
+    void testHeadSealedWhenOlderThanMaxAge() {
+        // Given: 头块跨度超过 1 秒即封存
+        storage = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkSize(1000)
+                .chunkMaxAgeMs(1000)
+                .build());
+        for (int i = 0; i < 10; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 500L, new LongDataEntry("counter", (long) i)));
+        }
+
+        // Then: 每 2 个点一个数据块
+        TelemetryStorageStats stats = storage.getStatistics();
+        assertEquals(5, stats.getChunkCount());
+        assertEquals(4, stats.getCompressedChunkCount());
+
+        // 乱序写入已压缩的数据块
+        storage.save(deviceId, new BasicTsKvEntry(750L, new LongDataEntry("counter", 99L)));
+        List<TsKvEntry> result = storage.query(deviceId, "counter", 500L, 1000L);
+        assertEquals(List.of(500L, 750L, 1000L), result.stream().map(TsKvEntry::getTs).toList());
+        assertEquals(99L, result.get(1).getLongValue().orElseThrow());
+    }
+
+    @Test
+    void testCompactionDropsExpiredChunksAndReportsReclaimedBytes() {
+        // Given: 保留 1 小时，100 个点跨 2 小时（块容量 8）
+        storage = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkSize(8)
+                .rawRetentionMs(3_600_000L)
+                .build());
+        long now = 7_200_000L;
+        for (int i = 0; i < 100; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 72_000L, new DoubleDataEntry("temperature", 20.0 + i)));
+        }
+
+        // When
+        CompactionResult result = storage.compact(now);
+
+        // Then: 最大时间戳早于 1 小时前的数据块被删除，跨越边界的数据块保留
+        assertTrue(result.getChunksDropped() > 0);
+        assertTrue(result.getReclaimedBytes() > 0);
+        assertEquals(100 - result.getPointsDropped(), storage.getTotalMessages());
+        List<TsKvEntry> remaining = storage.query(deviceId, "temperature", 0L, now);
+        assertEquals(storage.getTotalMessages(), remaining.size());
+        assertTrue(remaining.get(0).getTs() < 3_600_000L);
+        assertTrue(remaining.get(0).getTs() > 3_600_000L - 8 * 72_000L);
+        assertEquals(result.getReclaimedBytes(), storage.getStatistics().getReclaimedBytes());
+    }
+
+    @Test
+    void testPerDeviceRetentionAndSeriesRemoval() {
+        // Given: 另一个设备通过保留策略永久保留
+        DeviceId keepForever = DeviceId.random();
+        storage = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .rawRetentionMs(1000L)
+                .rollupRetentionMs(1000L)
+                .build());
+        storage.setRetentionPolicyResolver(id -> id.equals(keepForever)
+                ? TelemetryRetentionPolicy.builder().rawRetentionMs(0L).build()
+                : null);
+        storage.save(deviceId, new BasicTsKvEntry(100L, new LongDataEntry("counter", 1L)));
+        storage.save(keepForever, new BasicTsKvEntry(100L, new LongDataEntry("counter", 1L)));
+
+        // When
+        CompactionResult result = storage.compact(10_000_000L);
+
+        // Then
+        assertEquals(1, result.getSeriesRemoved());
+        assertTrue(storage.getKeys(deviceId).isEmpty());
+        assertTrue(storage.getLatestAll(deviceId).isEmpty());
+        assertNotNull(storage.getLatest(keepForever, "counter"));
+
+        // 被移除的序列再次写入时重新创建
+        storage.save(deviceId, new BasicTsKvEntry(10_000_001L, new LongDataEntry("counter", 2L)));
+        assertEquals(2L, storage.getLatest(deviceId, "counter").getLongValue().orElseThrow());
+    }
+
+    @Test
+    void testCompactionSealsIdleHeadChunk() {
+        // Given: 头块 1 小时无新数据
+        storage = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkMaxAgeMs(3_600_000L)
+                .rawRetentionMs(0L)
+                .build());
+        for (int i = 0; i < 10; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 1000L, new DoubleDataEntry("temperature", 30.0)));
+        }
+
+        // When
+        CompactionResult result = storage.compact(3_700_000L);
+
+        // Then: 头块被封存压缩，之后的写入开启新块
+        assertEquals(1, result.getChunksSealed());
+        assertEquals(1, storage.getStatistics().getCompressedChunkCount());
+        storage.save(deviceId, new BasicTsKvEntry(3_700_000L, new DoubleDataEntry("temperature", 31.0)));
+        assertEquals(2, storage.getStatistics().getChunkCount());
+        assertEquals(11, storage.query(deviceId, "temperature", 0L, 3_700_000L).size());
+    }
+
+    @Test
+    void testUsageCountersMatchFullScan() {
+        // Given: 两个设备，顺序、乱序、不同类型的数据，汇总桶扩容
+        storage = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkSize(8)
+                .rawRetentionMs(3_600_000L)
+                .build());
+        DeviceId other = DeviceId.random();
+        for (int i = 0; i < 200; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 36_000L, new DoubleDataEntry("temperature", 20.0 + i)));
+            storage.save(other, new BasicTsKvEntry(i * 36_000L, new StringDataEntry("status", "s" + i)));
+        }
+        storage.save(deviceId, new BasicTsKvEntry(5_000L, new DoubleDataEntry("temperature", -1.0)));
+        storage.save(deviceId, List.of(new BasicTsKvEntry(1_000L, new LongDataEntry("counter", 1L)),
+                new BasicTsKvEntry(2_000L, new LongDataEntry("counter", 2L))));
+        assertUsageMatchesStatistics();
+        assertEquals(201, storage.getUsage(deviceId).getPointCount() - 2);
+        assertEquals(2, storage.getUsage(deviceId).getSeriesCount());
+        assertEquals(200, storage.getUsage(other).getPointCount());
+
+        // When: 过期删除、封存，整个序列被移除
+        storage.compact(7_200_000L);
+        assertUsageMatchesStatistics();
+
+        // Then: 清空后归零
+        storage.clear();
+        assertEquals(0, storage.getTotalMessages());
+        assertEquals(0, storage.getUsage().getEstimatedBytes());
+        assertEquals(0, storage.getUsage(DeviceId.random()).getPointCount());
+    }
+
+    private void assertUsageMatchesStatistics() {
+        TelemetryStorageStats stats = storage.getStatistics();
+        TelemetryStorageUsage usage = storage.getUsage();
+        assertEquals(stats.getPointCount(), usage.getPointCount());
+        assertEquals(stats.getPointCount(), storage.getTotalMessages());
+        assertEquals(stats.getEstimatedBytes(), usage.getEstimatedBytes());
+        assertEquals(stats.getSeriesCount(), usage.getSeriesCount());
+    }
+
+    @Test
+    void testMemoryBudgetEvictsOldestChunks() {
+        // Given: 内存预算 8KB，写入远超预算的数据
+        storage = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkSize(8)
+                .rawRetentionMs(0L)
+                .rollupIntervalsMs(List.of())
+                .memoryBudgetBytes(8 * 1024L)
+                .build());
+        for (int i = 0; i < 2000; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 1000L, new DoubleDataEntry("temperature", Math.sin(i) * 100)));
+            storage.save(deviceId, new BasicTsKvEntry(i * 1000L, new LongDataEntry("counter", (long) i * i)));
+        }
+
+        // Then: 占用不超过预算，最早的数据被淘汰，内存中保留连续的最新时间窗口
+        TelemetryStorageStats stats = storage.getStatistics();
+        assertTrue(storage.getUsage().getEstimatedBytes() <= 8 * 1024L);
+        assertEquals(stats.getEstimatedBytes(), storage.getUsage().getEstimatedBytes());
+        assertTrue(stats.getEvictedChunks() > 0);
+        assertEquals(4000 - stats.getEvictedPoints(), storage.getTotalMessages());
+        List<TsKvEntry> temperature = storage.query(deviceId, "temperature", 0L, Long.MAX_VALUE);
+        assertEquals(1_999_000L, temperature.get(temperature.size() - 1).getTs());
+        assertTrue(temperature.get(0).getTs() > 0);
+        for (int i = 1; i < temperature.size(); i++) {
+            assertEquals(temperature.get(i - 1).getTs() + 1000L, temperature.get(i).getTs());
+        }
+        assertEquals(1999L * 1999L, storage.getLatest(deviceId, "counter").getLongValue().orElseThrow());
+    }
+
+    @Test
+    void testMemoryBudgetSpillsToColdTierBeforeEvicting(@TempDir Path coldDir) {
+        // Given: 启用冷数据层，下沉阈值很长（不会因时间下沉）
+        storage = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkSize(8)
+                .rawRetentionMs(0L)
+                .rollupIntervalsMs(List.of())
+                .coldTierEnabled(true)
+                .coldTierDir(coldDir.toString())
+                .coldAfterMs(Long.MAX_VALUE / 2)
+                .memoryBudgetBytes(4 * 1024L)
+                .build());
+        for (int i = 0; i < 1000; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 1000L, new DoubleDataEntry("temperature", 20.0 + i % 7)));
+        }
+
+        // Then: 超出预算的压缩块被下沉而不是淘汰，所有数据仍可查询
+        TelemetryStorageStats stats = storage.getStatistics();
+        assertTrue(stats.getMappedChunkCount() > 0);
+        assertEquals(0, stats.getEvictedChunks());
+        assertTrue(storage.getUsage().getEstimatedBytes() <= 4 * 1024L);
+        assertEquals(1000, storage.query(deviceId, "temperature", 0L, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testQueryReadsHistoryOutsideMemoryFromRepository() {
+        // Given: 仓储中保存了重启前的历史数据，内存中只有重启后的数据
+        List<TsKvEntry> persisted = new ArrayList<>();
+        TelemetryRepository repository = new TelemetryRepository() {
+            @Override
+            public void saveAll(Map<DeviceId, List<TsKvEntry>> entries) {
+                entries.values().forEach(persisted::addAll);
+            }
+
+            @Override
+            public List<TsKvEntry> findByKey(DeviceId id, String key, long startTs, long endTs) {
+                return persisted.stream()
+                        .filter(e -> e.getKey().equals(key) && e.getTs() >= startTs && e.getTs() <= endTs)
+                        .toList();
+            }
+
+            @Override
+            public long deleteOlderThan(long ts) {
+                return 0;
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            persisted.add(new BasicTsKvEntry(i * 10L, new LongDataEntry("counter", (long) i)));
+        }
+        storage.setRepository(repository);
+        for (int i = 10; i < 20; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 10L, new LongDataEntry("counter", (long) i)));
+        }
+
+        storage.flushHistory();
+
+        // When
+        List<TsKvEntry> result = storage.query(deviceId, "counter", 50L, 149L);
+
+        // Then: 仓储补齐内存之前的部分，内存范围内的数据不重复
+        assertEquals(20, persisted.size());
+        assertEquals(10, result.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(50L + i * 10L, result.get(i).getTs());
+        }
+        assertEquals(5, storage.query(deviceId, "counter", 0L, 40L).size());
+    }
+
+    @Test
+    void testHistoryWritesAreBatchedOffTheWritePath() {
+        // Given: 记录每次 saveAll（一个事务）的仓储
+        List<Integer> transactions = Collections.synchronizedList(new ArrayList<>());
+        List<TsKvEntry> persisted = Collections.synchronizedList(new ArrayList<>());
+        storage.setRepository(new TelemetryRepository() {
+            @Override
+            public void saveAll(Map<DeviceId, List<TsKvEntry>> entries) {
+                int points = 0;
+                for (List<TsKvEntry> list : entries.values()) {
+                    persisted.addAll(list);
+                    points += list.size();
+                }
+                transactions.add(points);
+            }
+
+            @Override
+            public List<TsKvEntry> findByKey(DeviceId id, String key, long startTs, long endTs) {
+                return List.of();
+            }
+
+            @Override
+            public long deleteOlderThan(long ts) {
+                return 0;
+            }
+        });
+
+        // When: 逐点保存 3000 个数据点
+        for (int i = 0; i < 3000; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 10L, new LongDataEntry("counter", (long) i)));
+        }
+        storage.flushHistory();
+
+        // Then: 按批写入（每批不超过默认批大小），不是一个数据点一个事务
+        assertEquals(3000, persisted.size());
+        assertTrue(transactions.size() < 300, transactions.toString());
+        assertTrue(transactions.stream().allMatch(points -> points <= 1000), transactions.toString());
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(i * 10L, persisted.get(i).getTs());
+        }
+        TelemetryStorageStats stats = storage.getStatistics();
+        assertEquals(3000, stats.getHistoryFlushedPoints());
+        assertEquals(transactions.size(), stats.getHistoryFlushCount());
+    }
+
+    @Test
+    void testFailedHistoryWriteIsRetried() {
+        // Given: 仓储前两次写入失败（例如数据库被锁），之后恢复
+        AtomicInteger failures = new AtomicInteger(2);
+        List<TsKvEntry> persisted = Collections.synchronizedList(new ArrayList<>());
+        storage.setRepository(new TelemetryRepository() {
+            @Override
+            public void saveAll(Map<DeviceId, List<TsKvEntry>> entries) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("database is locked");
+                }
+                entries.values().forEach(persisted::addAll);
+            }
+
+            @Override
+            public List<TsKvEntry> findByKey(DeviceId id, String key, long startTs, long endTs) {
+                return List.of();
+            }
+
+            @Override
+            public long deleteOlderThan(long ts) {
+                return 0;
+            }
+        });
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 10L, new LongDataEntry("counter", (long) i)));
+        }
+        storage.flushHistory();
+
+        // Then: 同一批退避重试后写入，没有数据点被丢弃
+        assertEquals(10, persisted.size());
+        TelemetryStorageStats stats = storage.getStatistics();
+        assertEquals(2, stats.getHistoryRetries());
+        assertEquals(0, stats.getHistoryFailedPoints());
+        assertEquals(10, stats.getHistoryFlushedPoints());
+    }
+
+    @Test
+    void testQueryPageWalksAllPointsWithCursor() {
+        // Given: 100 个数据点，跨多个数据块
+        for (int i = 0; i < 100; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 5L, new LongDataEntry("counter", (long) i)));
+        }
+
+        // When: 每页 7 个点翻到最后一页
+        List<Long> values = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            TelemetryPage page = storage.queryPage(deviceId, "counter", 0L, Long.MAX_VALUE, 7, cursor);
+            page.getEntries().forEach(e -> values.add(e.getLongValue().orElseThrow()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        // Then: 不重复、不遗漏
+        assertEquals(15, pages);
+        assertEquals(100, values.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, values.get(i));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> storage.queryPage(deviceId, "counter", 0L, 100L, 7, "not-a-cursor"));
+
+        // 流式扫描可提前停止
+        List<TsKvEntry> firstThree = new ArrayList<>();
+        storage.scan(deviceId, "counter", 0L, Long.MAX_VALUE, e -> firstThree.add(e) && firstThree.size() < 3);
+        assertEquals(3, firstThree.size());
+    }
+
+    @Test
+    void testColdChunksAreMemoryMapped(@TempDir Path coldDir) {
+        // Given: 启用冷数据层，两个序列各有若干封存的压缩块
+        storage = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkSize(8)
+                .rawRetentionMs(0L)
+                .coldTierEnabled(true)
+                .coldTierDir(coldDir.toString())
+                .coldAfterMs(1_000_000L)
+                .build());
+        for (int i = 0; i < 40; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 1000L, new DoubleDataEntry("temperature", 20.0 + i)));
+            storage.save(deviceId, new BasicTsKvEntry(i * 1000L, new StringDataEntry("status", "s" + i)));
+        }
+        List<String> before = storage.query(deviceId, "temperature", 0L, Long.MAX_VALUE).stream()
+                .map(TsKvEntry::getValueAsString).toList();
+        long heapBefore = storage.getStatistics().getEstimatedBytes();
+
+        // When: 数据块超过冷数据阈值
+        CompactionResult result = storage.compact(1_100_000L);
+
+        // Then: 压缩块被下沉并内存映射，查询结果不变，堆内存下降
+        TelemetryStorageStats stats = storage.getStatistics();
+        assertTrue(result.getChunksOffloaded() > 0);
+        assertEquals(result.getChunksOffloaded(), stats.getMappedChunkCount());
+        assertTrue(stats.getEstimatedBytes() < heapBefore);
+        assertEquals(before, storage.query(deviceId, "temperature", 0L, Long.MAX_VALUE).stream()
+                .map(TsKvEntry::getValueAsString).toList());
+        assertEquals("s39", storage.getLatest(deviceId, "status").getStrValue().orElseThrow());
+        assertEquals(40, storage.query(deviceId, "status", 0L, Long.MAX_VALUE).size());
+
+        // 已下沉的数据块不会重复下沉
+        assertEquals(0, storage.compact(1_100_000L).getChunksOffloaded());
+    }
+
+    @Test
+    void testSealedChunksStoredOffHeapAndFreedOnRetention() {
+        // Given: 启用堆外存储，保留 1 小时，100 个点跨 2 小时（块容量 8）
+        storage = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkSize(8)
+                .rawRetentionMs(3_600_000L)
+                .offHeapEnabled(true)
+                .offHeapSlabBytes(4096)
+                .build());
+        for (int i = 0; i < 100; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 72_000L, new DoubleDataEntry("temperature", 20.0 + i)));
+        }
+        TelemetryStorageStats before = storage.getStatistics();
+
+        // Then: 封存块全部位于堆外，查询结果不变
+        assertEquals(before.getCompressedChunkCount(), before.getOffHeapChunkCount());
+        assertEquals(0, before.getMappedChunkCount());
+        assertEquals(before.getOffHeapChunkCount(), before.getOffHeap().getLiveBlocks());
+        assertEquals(before.getCompressedBytes(), before.getOffHeap().getRequestedBytes());
+        List<TsKvEntry> all = storage.query(deviceId, "temperature", 0L, Long.MAX_VALUE);
+        assertEquals(100, all.size());
+        assertEquals(20.0 + 50, all.get(50).getDoubleValue().orElseThrow());
+
+        // When: 过期数据块被删除
+        CompactionResult result = storage.compact(7_200_000L);
+
+        // Then: 堆外块被释放，下一轮压缩整理放回空闲链表
+        SlabAllocatorStats afterDrop = storage.getStatistics().getOffHeap();
+        assertTrue(result.getChunksDropped() > 0);
+        assertEquals(result.getChunksDropped(), afterDrop.getFrees());
+        assertTrue(afterDrop.getRetiredBytes() > 0);
+        assertEquals(afterDrop.getRetiredBytes(), storage.compact(7_200_000L).getOffHeapBytesReclaimed());
+        assertEquals(0, storage.getStatistics().getOffHeap().getRetiredBytes());
+        assertEquals(storage.getTotalMessages(), storage.query(deviceId, "temperature", 0L, Long.MAX_VALUE).size());
+
+        // 清空后所有块都被释放
+        storage.clear();
+        assertEquals(0, storage.getStatistics().getOffHeap().getLiveBlocks());
+    }
+
+    @Test
+    void testSlowRingPolicyResolverDoesNotBlockOtherSeries() throws Exception {
+        // Given: 解析某台设备的策略时阻塞（模拟查询设备配置的数据库往返）
+        DeviceId slowDevice = DeviceId.random();
+        CountDownLatch resolving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        storage.setRingBufferPolicyResolver((device, key) -> {
+            if (device.equals(slowDevice)) {
+                resolving.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return 0;
+        });
+        Thread slowWriter = new Thread(() ->
+                storage.save(slowDevice, new BasicTsKvEntry(1000L, new DoubleDataEntry("power", 1.0))));
+        slowWriter.start();
+        assertTrue(resolving.await(5, TimeUnit.SECONDS));
+
+        // When: 其他设备同时创建新序列
+        Thread other = new Thread(() ->
+                storage.save(deviceId, new BasicTsKvEntry(1000L, new DoubleDataEntry("power", 2.0))));
+        other.start();
+
+        // Then: 不等待慢的解析完成
+        try {
+            other.join(5000);
+            assertFalse(other.isAlive());
+            assertEquals(1, storage.query(deviceId, "power", 0, Long.MAX_VALUE).size());
+        } finally {
+            release.countDown();
+            slowWriter.join();
+        }
+        assertEquals(1, storage.query(slowDevice, "power", 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testRingBufferSeriesKeepsLastPoints() {
+        // Given: gpu_temperature 使用容量 60 的环形缓冲区，其余键为完整时间序列
+        storage.setRingBufferPolicyResolver((device, key) -> key.equals("gpu_temperature") ? 60 : 0);
+        for (int i = 0; i < 100; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 1000L, new DoubleDataEntry("gpu_temperature", 40.0 + i)));
+            storage.save(deviceId, new BasicTsKvEntry(i * 1000L, new DoubleDataEntry("power_usage", 100.0 + i)));
+        }
+        long bytes = storage.getUsage(deviceId).getEstimatedBytes();
+
+        // When: 再写一轮，覆盖同一时间戳、写入早于缓冲区的迟到数据点
+        for (int i = 100; i < 200; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 1000L, new DoubleDataEntry("gpu_temperature", 40.0 + i)));
+        }
+        storage.save(deviceId, new BasicTsKvEntry(150_000L, new DoubleDataEntry("gpu_temperature", -1.0)));
+        storage.save(deviceId, new BasicTsKvEntry(5_000L, new DoubleDataEntry("gpu_temperature", -2.0)));
+
+        // Then: 只保留最近 60 个数据点，内存不变，最近 60 秒按时间顺序返回
+        List<TsKvEntry> all = storage.query(deviceId, "gpu_temperature", 0, Long.MAX_VALUE);
+        assertEquals(60, all.size());
+        assertEquals(140_000L, all.get(0).getTs());
+        assertEquals(-1.0, all.get(10).getDoubleValue().orElseThrow());
+        assertEquals(bytes, storage.getUsage(deviceId).getEstimatedBytes());
+        List<TsKvEntry> lastMinute = storage.query(deviceId, "gpu_temperature", 170_000L, 199_000L);
+        assertEquals(30, lastMinute.size());
+        assertEquals(170_000L, lastMinute.get(0).getTs());
+        assertEquals(239.0, storage.getLatest(deviceId, "gpu_temperature").getDoubleValue().orElseThrow());
+        assertEquals(1, storage.getStatistics().getRingSeriesCount());
+        assertUsageMatchesStatistics();
+
+        // Then: 不维护汇总桶，聚合查询扫描缓冲区
+        assertTrue(storage.queryRollups(deviceId, "gpu_temperature", 60_000L, 0, Long.MAX_VALUE).isEmpty());
+        assertEquals(60, storage.query(deviceId, "gpu_temperature", 0, 239_999L, 60_000L, Aggregation.COUNT)
+                .stream().mapToLong(AggregatedPoint::getCount).sum());
+
+        // When: 取消策略，已有序列转换回完整时间序列（保留缓冲区中的数据点）
+        storage.setRingBufferPolicyResolver(null);
+        storage.save(deviceId, new BasicTsKvEntry(200_000L, new DoubleDataEntry("gpu_temperature", 240.0)));
+
+        // Then
+        assertEquals(61, storage.query(deviceId, "gpu_temperature", 0, Long.MAX_VALUE).size());
+        assertEquals(100, storage.query(deviceId, "power_usage", 0, Long.MAX_VALUE).size());
+        assertEquals(0, storage.getStatistics().getRingSeriesCount());
+        assertUsageMatchesStatistics();
+    }
+
+    @Test
+    void testRollupsMaintainedIncrementally() {
+        // Given: 3 分钟的数据，每 10 秒一个点，最后补一个迟到数据点
+        for (int i = 0; i < 18; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 10_000L, new LongDataEntry("requests", (long) i)));
+        }
+        storage.save(deviceId, new BasicTsKvEntry(65_000L, new LongDataEntry("requests", 100L)));
+        storage.save(deviceId, new BasicTsKvEntry(75_000L, new StringDataEntry("requests", "ignored")));
+
+        // When
+        List<RollupBucket> minutes = storage.queryRollups(deviceId, "requests", 60_000L, 0L, 179_999L);
+
+        // Then
+        assertEquals(3, minutes.size());
+        RollupBucket second = minutes.get(1);
+        assertEquals(60_000L, second.getStartTs());
+        assertEquals(7, second.getCount());
+        assertEquals(6 + 7 + 8 + 9 + 10 + 11 + 100, second.getSum());
+        assertEquals(6.0, second.getMin());
+        assertEquals(100.0, second.getMax());
+        assertEquals(11.0, second.getLast());
+        assertEquals(((6 + 7 + 8 + 9 + 10 + 11 + 100) / 7.0), second.getAvg(), 1e-9);
+
+        List<RollupBucket> hours = storage.queryRollups(deviceId, "requests", 3_600_000L, 0L, 179_999L);
+        assertEquals(1, hours.size());
+        assertEquals(19, hours.get(0).getCount());
+        assertThrows(IllegalArgumentException.class,
+                () -> storage.queryRollups(deviceId, "requests", 5_000L, 0L, 1L));
+    }
+
+    @Test
+    void testRollupsOutliveRawRetention() {
+        // Given: 原始数据保留 1 小时，汇总数据保留 1 天
+        storage = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkSize(8)
+                .rawRetentionMs(3_600_000L)
+                .rollupRetentionMs(86_400_000L)
+                .build());
+        for (int i = 0; i < 10; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 60_000L, new DoubleDataEntry("temperature", 40.0 + i)));
+        }
+
+        // When: 2 小时后原始数据全部过期
+        storage.compact(2 * 3_600_000L + 600_000L);
+
+        // Then: 汇总数据仍在
+        assertTrue(storage.query(deviceId, "temperature", 0L, Long.MAX_VALUE).isEmpty());
+        List<RollupBucket> hours = storage.queryRollups(deviceId, "temperature", 3_600_000L, 0L, Long.MAX_VALUE);
+        assertEquals(1, hours.size());
+        assertEquals(10, hours.get(0).getCount());
+        assertEquals(49.0, hours.get(0).getMax());
+
+        // 汇总数据也过期后序列被移除
+        CompactionResult result = storage.compact(2 * 86_400_000L);
+        assertEquals(11, result.getRollupBucketsDropped());
+        assertEquals(1, result.getSeriesRemoved());
+        assertTrue(storage.getKeys(deviceId).isEmpty());
+    }
+
+    @Test
+    void testAggregationQueryRawPass() {
+        // Given: 每秒一个点，值为秒数
+        for (int i = 0; i < 10; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i * 1000L, new DoubleDataEntry("temperature", (double) i)));
+        }
+
+        // When: 5 秒间隔（不能被汇总分辨率整除，走原始数据）
+        List<AggregatedPoint> avg = storage.query(deviceId, "temperature", 0L, 9_999L, 5_000L, Aggregation.AVG);
+        List<AggregatedPoint> last = storage.query(deviceId, "temperature", 2_000L, 9_999L, 5_000L, Aggregation.LAST);
+        List<AggregatedPoint> total = storage.query(deviceId, "temperature", 0L, 9_999L, 0L, Aggregation.SUM);
+
+        // Then
+        assertEquals(2, avg.size());
+        assertEquals(0L, avg.get(0).getTs());
+        assertEquals(2.0, avg.get(0).getValue());
+        assertEquals(7.0, avg.get(1).getValue());
+        assertEquals(5, avg.get(1).getCount());
+        assertEquals(4.0, last.get(0).getValue());
+        assertEquals(3, last.get(0).getCount());
+        assertEquals(1, total.size());
+        assertEquals(45.0, total.get(0).getValue());
+        assertTrue(storage.query(DeviceId.random(), "temperature", 0L, 1L, 0L, Aggregation.AVG).isEmpty());
+    }
+
+    @Test
+    void testAggregationFromRollupsMatchesRawScan() {
+        // Given: 同样的数据写入带汇总和不带汇总的两个存储
+        TelemetryStorage rawOnly = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkSize(8)
+                .rollupIntervalsMs(List.of())
+                .build());
+        Random random = new Random(7);
+        for (int i = 0; i < 3000; i++) {
+            long ts = 1_700_000_000_000L + i * 7_000L + random.nextInt(3000);
+            TsKvEntry entry = new BasicTsKvEntry(ts, new DoubleDataEntry("power", random.nextDouble() * 300));
+            storage.save(deviceId, entry);
+            rawOnly.save(deviceId, entry);
+        }
+        long start = 1_700_000_000_000L + 123_456L;
+        long end = start + 5 * 3_600_000L + 777L;
+
+        // Then: 非对齐的查询范围（首尾走原始数据，中间走汇总桶）结果一致
+        for (Aggregation aggregation : Aggregation.values()) {
+            for (long interval : new long[]{0L, 60_000L, 600_000L, 3_600_000L}) {
+                List<AggregatedPoint> expected = rawOnly.query(deviceId, "power", start, end, interval, aggregation);
+                List<AggregatedPoint> actual = storage.query(deviceId, "power", start, end, interval, aggregation);
+                assertEquals(expected.size(), actual.size(), aggregation + "/" + interval);
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getTs(), actual.get(i).getTs());
+                    assertEquals(expected.get(i).getCount(), actual.get(i).getCount());
+                    assertEquals(expected.get(i).getValue(), actual.get(i).getValue(), 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testRawScanIsNeverPlannedOnAggregationOnlyTier() {
+        // Given: 代价最低的数据层只能回答聚合查询，但声称覆盖任意范围
+        TieredQueryPlanner planner = new TieredQueryPlanner(List.of(stubTier("rollup", 1, false), stubTier("raw", 2, true)));
+        TelemetryTier.Request raw = new TelemetryTier.Request(deviceId, "power", null, 0L, null);
+        TelemetryTier.Request avg = new TelemetryTier.Request(deviceId, "power", null, 0L, Aggregation.AVG);
+
+        // Then: 原始数据扫描跳过它，聚合查询仍由它回答
+        assertEquals(List.of(new TieredQueryPlanner.Segment(1, 0L, 999L)), planner.plan(raw, 0L, 999L));
+        assertEquals(List.of(new TieredQueryPlanner.Segment(0, 0L, 999L)), planner.plan(avg, 0L, 999L));
+        assertTrue(planner.scan(raw, 0L, 999L, entry -> true));
+    }
+
+    private static TelemetryTier stubTier(String name, int cost, boolean supportsScan) {
+        return new TelemetryTier() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public int cost() {
+                return cost;
+            }
+
+            @Override
+            public boolean supportsScan() {
+                return supportsScan;
+            }
+
+            @Override
+            public Range coverage(Request request, long startTs, long endTs) {
+                return new Range(startTs, endTs);
+            }
+
+            @Override
+            public boolean scan(Request request, long startTs, long endTs, Predicate<TsKvEntry> visitor) {
+                if (!supportsScan) {
+                    throw new IllegalStateException(name + " cannot scan");
+                }
+                return true;
+            }
+
+            @Override
+            public void aggregate(Request request, long startTs, long endTs, AggregationQuery sink) {
+            }
+        };
+    }
+
+    @Test
+    void testTieredPlanMergesRollupMemoryAndRepositoryTiers() {
+        // Given: 仓储中有前 2 小时的历史数据，内存（含汇总桶）中只有之后 3 小时的数据，每 10 秒一个点
+        List<TsKvEntry> persisted = new ArrayList<>();
+        TelemetryRepository repository = new TelemetryRepository() {
+            @Override
+            public void saveAll(Map<DeviceId, List<TsKvEntry>> entries) {
+                entries.values().forEach(persisted::addAll);
+            }
+
+            @Override
+            public List<TsKvEntry> findByKey(DeviceId id, String key, long startTs, long endTs) {
+                return persisted.stream()
+                        .filter(e -> e.getKey().equals(key) && e.getTs() >= startTs && e.getTs() <= endTs)
+                        .sorted(Comparator.comparingLong(TsKvEntry::getTs))
+                        .toList();
+            }
+
+            @Override
+            public long deleteOlderThan(long ts) {
+                return 0;
+            }
+        };
+        TelemetryStorage rawOnly = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkSize(8)
+                .rollupIntervalsMs(List.of())
+                .build());
+        for (int i = 0; i < 1800; i++) {
+            TsKvEntry entry = new BasicTsKvEntry(i * 10_000L, new DoubleDataEntry("power", (i % 97) * 1.5));
+            if (i < 720) {
+                persisted.add(entry);
+            } else {
+                if (i == 720) {
+                    storage.setRepository(repository);
+                }
+                storage.save(deviceId, entry);
+            }
+            rawOnly.save(deviceId, entry);
+        }
+        storage.flushHistory();
+        long start = 3_600_000L + 12_345L;
+        long end = 4 * 3_600_000L + 1_800_000L + 777L;
+
+        // Then: 汇总桶、内存数据块和仓储拼接的结果与全量原始数据一致，跨层的聚合间隔合并为一个结果点
+        List<TsKvEntry> raw = storage.query(deviceId, "power", start, end);
+        assertEquals(rawOnly.query(deviceId, "power", start, end), raw);
+        for (Aggregation aggregation : List.of(Aggregation.AVG, Aggregation.COUNT, Aggregation.MAX, Aggregation.LAST)) {
+            for (long interval : new long[]{0L, 600_000L, 3_600_000L}) {
+                List<AggregatedPoint> expected = rawOnly.query(deviceId, "power", start, end, interval, aggregation);
+                List<AggregatedPoint> actual = storage.query(deviceId, "power", start, end, interval, aggregation);
+                assertEquals(expected.size(), actual.size(), aggregation + "/" + interval);
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getTs(), actual.get(i).getTs());
+                    assertEquals(expected.get(i).getCount(), actual.get(i).getCount());
+                    assertEquals(expected.get(i).getValue(), actual.get(i).getValue(), 1e-6);
+                }
+            }
+        }
+
+        // 每一层都回答过查询的一部分
+        Map<String, TelemetryTierStats> tiers = new HashMap<>();
+        storage.getStatistics().getTiers().forEach(tier -> tiers.put(tier.getName(), tier));
+        assertEquals(List.of("rollup-3600000ms", "rollup-60000ms", "memory", "repository"),
+                storage.getStatistics().getTiers().stream().map(TelemetryTierStats::getName).toList());
+        for (TelemetryTierStats tier : tiers.values()) {
+            assertTrue(tier.getHits() > 0, tier.getName());
+            assertTrue(tier.getPoints() > 0, tier.getName());
+            assertEquals(0, tier.getErrors());
+        }
+
+        // When: 仓储读取失败
+        storage.setRepository(new TelemetryRepository() {
+            @Override
+            public void saveAll(Map<DeviceId, List<TsKvEntry>> entries) {
+            }
+
+            @Override
+            public List<TsKvEntry> findByKey(DeviceId id, String key, long startTs, long endTs) {
+                throw new IllegalStateException("repository unavailable");
+            }
+
+            @Override
+            public long deleteOlderThan(long ts) {
+                return 0;
+            }
+        });
+
+        // Then: 不返回缺少仓储区间的部分结果，查询失败并计入失败数
+        TelemetryQueryException error = assertThrows(TelemetryQueryException.class,
+                () -> storage.query(deviceId, "power", start, end));
+        assertEquals("repository", error.getTier());
+        assertEquals(1, storage.getStatistics().getTiers().get(3).getErrors());
+    }
+
+    @Test
+    void testPercentilesMergedFromRollupSketches() {
+        // Given: 2 小时、每秒一个点，值为乱序的 1..7200，另有一个汇总桶只有原始数据可用的存储作对照
+        TelemetryStorage rawOnly = new TelemetryStorage(TelemetryStorageConfig.builder()
+                .chunkSize(8)
+                .rollupSketchesEnabled(false)
+                .build());
+        List<Double> values = new ArrayList<>();
+        for (int i = 1; i <= 7200; i++) {
+            values.add((double) i);
+        }
+        Collections.shuffle(values, new Random(11));
+        for (int i = 0; i < values.size(); i++) {
+            TsKvEntry entry = new BasicTsKvEntry(i * 1000L, new DoubleDataEntry("latency", values.get(i)));
+            storage.save(deviceId, entry);
+            rawOnly.save(deviceId, entry);
+        }
+
+        // Then: 整个范围由汇总桶草图合并得出，与精确分位数的相对误差不超过 1%
+        for (Aggregation aggregation : List.of(Aggregation.P50, Aggregation.P90, Aggregation.P95, Aggregation.P99)) {
+            double exact = Math.floor(aggregation.getQuantile() * 7199) + 1;
+            AggregatedPoint point = storage.query(deviceId, "latency", 0, 7_199_999L, 0, aggregation).get(0);
+            assertEquals(7200, point.getCount());
+            assertEquals(exact, point.getValue(), exact * QuantileSketch.RELATIVE_ACCURACY, aggregation.name());
+            // 未启用草图时走原始数据，写入同一种草图，结果相同
+            assertEquals(point.getValue(), rawOnly.query(deviceId, "latency", 0, 7_199_999L, 0, aggregation)
+                    .get(0).getValue());
+        }
+
+        // When: 覆盖最大的 100 个值（upsert），草图精确移除旧值
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) > 7100) {
+                storage.save(deviceId, new BasicTsKvEntry(i * 1000L, new DoubleDataEntry("latency", 0.5)));
+            }
+        }
+
+        // Then: 每小时一个 P99，数据点数不变，分位数反映新值
+        List<AggregatedPoint> hourly = storage.query(deviceId, "latency", 0, 7_199_999L, 3_600_000L, Aggregation.P99);
+        assertEquals(2, hourly.size());
+        assertEquals(7200, hourly.get(0).getCount() + hourly.get(1).getCount());
+        double p99 = storage.query(deviceId, "latency", 0, 7_199_999L, 0, Aggregation.P99).get(0).getValue();
+        assertEquals(7028.0, p99, 7028.0 * QuantileSketch.RELATIVE_ACCURACY);
+    }
+
+    @Test
+    void testFleetQueryGroupsAndAggregatesPerDevice() {
+        // Given: 50 台设备，每台 60 个点（值 = 设备序号），另有一台设备没有数据
+        List<DeviceId> fleet = new ArrayList<>();
+        for (int d = 0; d < 50; d++) {
+            DeviceId device = DeviceId.random();
+            fleet.add(device);
+            for (int i = 0; i < 60; i++) {
+                storage.save(device, new BasicTsKvEntry(i * 1000L, new DoubleDataEntry("gpu_temperature", (double) d + i)));
+            }
+        }
+        fleet.add(DeviceId.random());
+
+        // When
+        Map<DeviceId, List<TsKvEntry>> raw = storage.queryFleet(fleet, "gpu_temperature", 10_000L, 19_999L);
+        Map<DeviceId, List<AggregatedPoint>> max = storage.queryFleet(fleet, "gpu_temperature",
+                0L, 59_999L, 0L, Aggregation.MAX);
+
+        // Then: 按传入顺序分组，没有数据的设备不返回
+        assertEquals(50, raw.size());
+        assertEquals(fleet.subList(0, 50), new ArrayList<>(raw.keySet()));
+        assertEquals(10, raw.get(fleet.get(7)).size());
+        assertEquals(17.0, raw.get(fleet.get(7)).get(0).getDoubleValue().orElseThrow());
+        assertEquals(50, max.size());
+        assertEquals(1, max.get(fleet.get(3)).size());
+        assertEquals(62.0, max.get(fleet.get(3)).get(0).getValue());
+        assertEquals(60, max.get(fleet.get(3)).get(0).getCount());
+    }
+
+    @Test
+    void testConcurrentWritersAndReaders() throws Exception {
+        // Given: 4 个写线程写同一序列，4 个读线程同时扫描
+        int writers = 4;
+        int pointsPerWriter = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 4);
+        CountDownLatch writersDone = new CountDownLatch(writers);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int w = 0; w < writers; w++) {
+            long base = w * 1_000_000L;
+            futures.add(executor.submit(() -> {
+                try {
+                    for (int i = 0; i < pointsPerWriter; i++) {
+                        storage.save(deviceId, new BasicTsKvEntry(base + i, new LongDataEntry("counter", (long) i)));
+                    }
+                } finally {
+                    writersDone.countDown();
+                }
+            }));
+        }
+        for (int r = 0; r < 4; r++) {
+            futures.add(executor.submit(() -> {
+                try {
+                    while (writersDone.getCount() > 0) {
+                        List<TsKvEntry> snapshot = storage.query(deviceId, "counter", 0L, Long.MAX_VALUE);
+                        long previousTs = Long.MIN_VALUE;
+                        for (TsKvEntry entry : snapshot) {
+                            assertEquals(entry.getTs() % 1_000_000L, entry.getLongValue().orElseThrow());
+                            assertTrue(entry.getTs() >= previousTs, "查询结果必须按时间戳排序");
+                            previousTs = entry.getTs();
+                        }
+                        storage.getLatest(deviceId, "counter");
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+
+        // When
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Then
+        assertNull(failure.get(), () -> "读线程出错: " + failure.get());
+        assertEquals(writers * pointsPerWriter, storage.getTotalMessages());
+        assertEquals(writers * pointsPerWriter, storage.query(deviceId, "counter", 0L, Long.MAX_VALUE).size());
+    }
+}
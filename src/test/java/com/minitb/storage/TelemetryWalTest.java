@@ -0,0 +1,314 @@
+package com.minitb.storage;
+
+import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.telemetry.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * TelemetryWal 单元测试
+ *
+ * 测试重点：
+ * - 写入、关闭、重新打开后从 WAL 恢复内存数据（含各数据类型和空值）
+ * - 段文件轮转
+ * - 残缺尾部记录（写入中途崩溃）被忽略，之前的记录正常恢复
+ * - WAL 段按原始数据保留时长删除
+ * - 批量追加只等待一次刷盘；写入或刷盘失败时不把记录当作已落盘
+ * - 从快照恢复并只回放快照之后的 WAL，最新快照损坏时退回到上一个
+ * - 环形缓冲区序列写入快照，恢复后按策略转换
+ */
+class TelemetryWalTest {
+
+    @TempDir
+    Path walDir;
+
+    @TempDir
+    Path snapshotDir;
+
+    private final DeviceId deviceId = DeviceId.random();
+
+    private TelemetryStorage open(WalFsyncPolicy policy, long segmentBytes) {
+        return new TelemetryStorage(TelemetryStorageConfig.builder()
+                .walEnabled(true)
+                .walDir(walDir.toString())
+                .walFsyncPolicy(policy)
+                .walSegmentBytes(segmentBytes)
+                .chunkSize(8)
+                .rawRetentionMs(0)
+                .rollupRetentionMs(0)
+                .build());
+    }
+
+    private TelemetryStorage openWithSnapshots(int retained) {
+        return new TelemetryStorage(TelemetryStorageConfig.builder()
+                .walEnabled(true)
+                .walDir(walDir.toString())
+                .walFsyncPolicy(WalFsyncPolicy.EVERY_BATCH)
+                .snapshotEnabled(true)
+                .snapshotDir(snapshotDir.toString())
+                .snapshotRetained(retained)
+                .chunkSize(8)
+                .rawRetentionMs(0)
+                .rollupRetentionMs(0)
+                .build());
+    }
+
+    @Test
+    void testRecoverAfterRestart() {
+        // Given: 写入各种类型的数据后关闭
+        TelemetryStorage storage = open(WalFsyncPolicy.EVERY_BATCH, 64 * 1024 * 1024L);
+        for (int i = 0; i < 50; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(1000L + i, new DoubleDataEntry("temperature", 20.0 + i)));
+        }
+        storage.save(deviceId, List.of(
+                new BasicTsKvEntry(2000L, new LongDataEntry("count", 42L)),
+                new BasicTsKvEntry(2000L, new BooleanDataEntry("online", true)),
+                new BasicTsKvEntry(2000L, new StringDataEntry("status", "运行中")),
+                new BasicTsKvEntry(2000L, new JsonDataEntry("meta", "{\"a\":1}")),
+                new BasicTsKvEntry(2001L, new StringDataEntry("status", null))));
+        storage.close();
+
+        // When: 重新打开
+        TelemetryStorage recovered = open(WalFsyncPolicy.EVERY_BATCH, 64 * 1024 * 1024L);
+
+        // Then: 数据与汇总桶全部恢复
+        List<TsKvEntry> temperatures = recovered.query(deviceId, "temperature", 0, Long.MAX_VALUE);
+        assertEquals(50, temperatures.size());
+        assertEquals(69.0, temperatures.get(49).getDoubleValue().orElseThrow());
+        assertEquals(42L, recovered.getLatest(deviceId, "count").getLongValue().orElseThrow());
+        assertTrue(recovered.getLatest(deviceId, "online").getBooleanValue().orElseThrow());
+        assertEquals("{\"a\":1}", recovered.getLatest(deviceId, "meta").getJsonValue().orElseThrow());
+        List<TsKvEntry> statuses = recovered.query(deviceId, "status", 0, Long.MAX_VALUE);
+        assertEquals("运行中", statuses.get(0).getStrValue().orElseThrow());
+        assertTrue(statuses.get(1).getStrValue().isEmpty());
+        assertEquals(50, recovered.queryRollups(deviceId, "temperature", 60_000L, 0, Long.MAX_VALUE)
+                .get(0).getCount());
+        recovered.close();
+    }
+
+    @Test
+    void testSegmentRotation() throws IOException {
+        // Given: 很小的段大小，每批写入后都会切换段
+        TelemetryStorage storage = open(WalFsyncPolicy.EVERY_BATCH, 256);
+        for (int i = 0; i < 100; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i, new DoubleDataEntry("v", (double) i)));
+        }
+        storage.close();
+
+        // Then: 产生多个段文件，且重启后数据完整
+        assertTrue(segmentFiles().size() > 1);
+        TelemetryStorage recovered = open(WalFsyncPolicy.NONE, 256);
+        assertEquals(100, recovered.query(deviceId, "v", 0, Long.MAX_VALUE).size());
+        recovered.close();
+    }
+
+    @Test
+    void testTornTailIsIgnored() throws IOException {
+        // Given: 写入后模拟崩溃，最后一条记录只写了一半
+        TelemetryStorage storage = open(WalFsyncPolicy.INTERVAL, 64 * 1024 * 1024L);
+        for (int i = 0; i < 10; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i, new LongDataEntry("v", (long) i)));
+        }
+        storage.close();
+        Path segment = segmentFiles().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        // When
+        TelemetryStorage recovered = open(WalFsyncPolicy.INTERVAL, 64 * 1024 * 1024L);
+        recovered.save(deviceId, new BasicTsKvEntry(100, new LongDataEntry("v", 100L)));
+        recovered.close();
+
+        // Then: 残缺记录之前的 9 条恢复，新数据写入新段，再次重启仍然完整
+        TelemetryStorage again = open(WalFsyncPolicy.INTERVAL, 64 * 1024 * 1024L);
+        List<TsKvEntry> values = again.query(deviceId, "v", 0, Long.MAX_VALUE);
+        assertEquals(10, values.size());
+        assertEquals(8L, values.get(8).getLongValue().orElseThrow());
+        assertEquals(100L, values.get(9).getLongValue().orElseThrow());
+        again.close();
+    }
+
+    @Test
+    void testRestartFromSnapshotReplaysOnlyTail() throws IOException {
+        // Given: 50 个点（含封存块和未写满的头块）写入快照，之后又写入 10 个点后崩溃（不调用 close）
+        TelemetryStorage storage = openWithSnapshots(1);
+        for (int i = 0; i < 50; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(1000L + i, new DoubleDataEntry("temperature", 20.0 + i)));
+        }
+        storage.save(deviceId, new BasicTsKvEntry(1000L, new StringDataEntry("status", "启动")));
+        List<Path> before = segmentFiles();
+        assertTrue(storage.snapshot());
+        for (int i = 50; i < 60; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(1000L + i, new DoubleDataEntry("temperature", 20.0 + i)));
+        }
+        storage.save(deviceId, new BasicTsKvEntry(2000L, new LongDataEntry("count", 7L)));
+
+        // Then: 快照之前的 WAL 段已删除
+        assertTrue(segmentFiles().stream().noneMatch(before::contains));
+
+        // When: 重新打开
+        TelemetryStorage recovered = openWithSnapshots(1);
+
+        // Then: 快照中的数据和之后的日志尾部都恢复，汇总桶不重复计数，头块可以继续写入
+        List<TsKvEntry> temperatures = recovered.query(deviceId, "temperature", 0, Long.MAX_VALUE);
+        assertEquals(60, temperatures.size());
+        assertEquals(79.0, temperatures.get(59).getDoubleValue().orElseThrow());
+        assertEquals(60, recovered.queryRollups(deviceId, "temperature", 60_000L, 0, Long.MAX_VALUE)
+                .get(0).getCount());
+        assertEquals(storage.query(deviceId, "temperature", 0, 59_999L, 0, Aggregation.P90).get(0).getValue(),
+                recovered.query(deviceId, "temperature", 0, 59_999L, 0, Aggregation.P90).get(0).getValue());
+        assertEquals("启动", recovered.getLatest(deviceId, "status").getStrValue().orElseThrow());
+        assertEquals(7L, recovered.getLatest(deviceId, "count").getLongValue().orElseThrow());
+        assertEquals(62, recovered.getTotalMessages());
+        recovered.save(deviceId, new BasicTsKvEntry(1060L, new DoubleDataEntry("temperature", 80.0)));
+        assertEquals(80.0, recovered.getLatest(deviceId, "temperature").getDoubleValue().orElseThrow());
+        recovered.close();
+        storage.close();
+    }
+
+    @Test
+    void testRingBufferSeriesRestoredFromSnapshot() {
+        // Given: 环形缓冲区序列（容量 20）写入 50 个点后写快照
+        TelemetryStorage storage = openWithSnapshots(1);
+        storage.setRingBufferPolicyResolver((device, key) -> 20);
+        for (int i = 0; i < 50; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(1000L + i, new LongDataEntry("fan_speed", (long) i)));
+        }
+        assertTrue(storage.snapshot());
+
+        // When: 重新打开，设置解析器后恢复出的序列转换为环形缓冲区
+        TelemetryStorage recovered = openWithSnapshots(1);
+        recovered.setRingBufferPolicyResolver((device, key) -> 20);
+        recovered.save(deviceId, new BasicTsKvEntry(1050L, new LongDataEntry("fan_speed", 50L)));
+
+        // Then: 快照中只有最近 20 个数据点
+        List<TsKvEntry> points = recovered.query(deviceId, "fan_speed", 0, Long.MAX_VALUE);
+        assertEquals(20, points.size());
+        assertEquals(1031L, points.get(0).getTs());
+        assertEquals(50L, points.get(19).getLongValue().orElseThrow());
+        assertEquals(1, recovered.getStatistics().getRingSeriesCount());
+        recovered.close();
+        storage.close();
+    }
+
+    @Test
+    void testCorruptSnapshotFallsBackToPrevious() throws IOException {
+        // Given: 两个快照之间和之后都有写入，最新快照损坏后崩溃
+        TelemetryStorage storage = openWithSnapshots(2);
+        for (int i = 0; i < 30; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(i, new LongDataEntry("v", (long) i)));
+            if (i == 9 || i == 19) {
+                assertTrue(storage.snapshot());
+            }
+        }
+        List<Path> snapshots;
+        try (Stream<Path> files = Files.list(snapshotDir)) {
+            snapshots = files.sorted().toList();
+        }
+        assertEquals(2, snapshots.size());
+        try (FileChannel channel = FileChannel.open(snapshots.get(1), StandardOpenOption.WRITE)) {
+            channel.write(java.nio.ByteBuffer.wrap(new byte[] {0x7F}), 40);
+        }
+
+        // When
+        TelemetryStorage recovered = openWithSnapshots(2);
+
+        // Then: 从上一个快照和它之后的 WAL 恢复全部数据
+        List<TsKvEntry> values = recovered.query(deviceId, "v", 0, Long.MAX_VALUE);
+        assertEquals(30, values.size());
+        assertEquals(29L, values.get(29).getLongValue().orElseThrow());
+        recovered.close();
+        storage.close();
+    }
+
+    @Test
+    void testWalExpiresWithRawRetention() {
+        // Given: 原始数据保留 1 小时、汇总数据保留 30 天，写入 2 小时前的数据和一个当前数据点
+        long now = 1_700_000_000_000L;
+        TelemetryStorageConfig config = TelemetryStorageConfig.builder()
+                .walEnabled(true)
+                .walDir(walDir.toString())
+                .walFsyncPolicy(WalFsyncPolicy.EVERY_BATCH)
+                .walSegmentBytes(256)
+                .chunkSize(8)
+                .rawRetentionMs(3_600_000L)
+                .rollupRetentionMs(30 * 86_400_000L)
+                .build();
+        TelemetryStorage storage = new TelemetryStorage(config);
+        for (int i = 0; i < 100; i++) {
+            storage.save(deviceId, new BasicTsKvEntry(now - 7_200_000L + i, new LongDataEntry("v", (long) i)));
+        }
+        storage.save(deviceId, new BasicTsKvEntry(now, new LongDataEntry("v", 100L)));
+
+        // When: 压缩整理后重启
+        assertTrue(storage.compact(now).getDiskBytesDeleted() > 0);
+        storage.close();
+        TelemetryStorage recovered = new TelemetryStorage(config);
+
+        // Then: 原始数据过期的 WAL 段已删除，只回放当前数据点所在的最后一段（一段约 5 条记录）
+        List<TsKvEntry> values = recovered.query(deviceId, "v", 0, Long.MAX_VALUE);
+        assertTrue(values.size() < 10);
+        assertEquals(100L, values.get(values.size() - 1).getLongValue().orElseThrow());
+        recovered.close();
+    }
+
+    @Test
+    void testBatchAppendWaitsForOneFsync() throws IOException {
+        // Given: 单个写入线程，每批刷盘
+        TelemetryWal wal = new TelemetryWal(walDir, 64 * 1024 * 1024L, WalFsyncPolicy.EVERY_BATCH, 1000);
+        wal.start();
+        List<TsKvEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entries.add(new BasicTsKvEntry(i, new LongDataEntry("v", (long) i)));
+        }
+
+        // When
+        wal.appendAll(deviceId, entries);
+        long syncs = wal.getSyncs();
+        wal.close();
+
+        // Then: 整批只刷盘一次，重启后全部回放
+        assertEquals(1, syncs);
+        TelemetryWal reopened = new TelemetryWal(walDir, 64 * 1024 * 1024L, WalFsyncPolicy.EVERY_BATCH, 1000);
+        assertEquals(1000, reopened.replay((device, entry) -> { }));
+    }
+
+    @Test
+    void testFailedWriteIsNotReportedAsDurable() throws IOException {
+        Path full = Path.of("/dev/full");
+        assumeTrue(Files.isWritable(full));
+        // Given: 第一个段文件指向 /dev/full，写入总是失败（磁盘已满）
+        Files.createSymbolicLink(walDir.resolve(String.format("wal-%020d.log", 1)), full);
+        TelemetryWal wal = new TelemetryWal(walDir, 64 * 1024 * 1024L, WalFsyncPolicy.EVERY_BATCH, 1000);
+        wal.start();
+
+        // Then: 等待刷盘的写入方收到异常，之后的追加直接失败，快照截断也失败
+        assertThrows(UncheckedIOException.class,
+                () -> wal.append(deviceId, new BasicTsKvEntry(1, new LongDataEntry("v", 1L))));
+        assertThrows(UncheckedIOException.class,
+                () -> wal.append(deviceId, new BasicTsKvEntry(2, new LongDataEntry("v", 2L))));
+        wal.requestRotation();
+        assertEquals(0, wal.awaitRotation());
+        wal.close();
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(walDir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.minitb.storage;
+
+import com.minitb.domain.id.DeviceId;
+import com.minitb.domain.telemetry.BasicTsKvEntry;
+import com.minitb.domain.telemetry.DoubleDataEntry;
+import com.minitb.domain.telemetry.TsKvEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TelemetryWriteBehind 测试
+ *
+ * 测试重点：
+ * - 按批大小合并写入，同一设备保持提交顺序
+ * - 缓冲区满时阻塞提交方（背压），不丢数据
+ * - close() 写完缓冲区中剩余的数据
+ */
+class TelemetryWriteBehindTest {
+
+    private final DeviceId deviceId = DeviceId.random();
+
+    @Test
+    void testBatchesAreFlushedInOrder() {
+        // Given: 批大小 100，等待时间足够长，只按批大小刷写
+        TelemetryStorage storage = new TelemetryStorage(false);
+        TelemetryWriteBehind writer = new TelemetryWriteBehind(storage, 1024, 2, 100, 1000);
+
+        // When
+        for (int i = 0; i < 500; i++) {
+            writer.submit(deviceId, List.of(entry(1000L + i)));
+        }
+        writer.close();
+
+        // Then
+        List<TsKvEntry> data = storage.query(deviceId, "temperature", 0L, Long.MAX_VALUE);
+        assertEquals(500, data.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(1000L + i, data.get(i).getTs());
+        }
+        TelemetryWriteBehindStats stats = writer.getStats();
+        assertEquals(500, stats.getSubmittedMessages());
+        assertEquals(500, stats.getFlushedPoints());
+        assertTrue(stats.getFlushCount() < 500, "数据应被合并为批次写入");
+        assertEquals(0, stats.getQueueDepth());
+    }
+
+    @Test
+    void testFullBufferBlocksInsteadOfDropping() throws Exception {
+        // Given: 写入线程阻塞在第一次刷写，缓冲区容量 2
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TelemetryStorage storage = new TelemetryStorage(false) {
+            @Override
+            public void saveAll(Map<DeviceId, List<TsKvEntry>> entries) {
+                flushing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.saveAll(entries);
+            }
+        };
+        TelemetryWriteBehind writer = new TelemetryWriteBehind(storage, 2, 1, 1, 0);
+        writer.submit(deviceId, List.of(entry(0L)));
+        assertTrue(flushing.await(5, TimeUnit.SECONDS));
+
+        // When: 继续提交，填满缓冲区后提交线程阻塞
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i < 10; i++) {
+                writer.submit(deviceId, List.of(entry(i)));
+            }
+        });
+        producer.start();
+        producer.join(300);
+
+        // Then
+        assertTrue(producer.isAlive(), "缓冲区满时提交方应被阻塞");
+        assertEquals(2, writer.getStats().getQueueDepth());
+        assertTrue(writer.getStats().getBackpressureWaits() > 0);
+
+        release.countDown();
+        producer.join(5000);
+        writer.close();
+        assertEquals(10, storage.query(deviceId, "temperature", 0L, Long.MAX_VALUE).size());
+        assertTrue(writer.getStats().getMaxFlushLatencyMs() > 0);
+    }
+
+    @Test
+    void testSubmitAfterCloseWritesSynchronously() {
+        // Given
+        TelemetryStorage storage = new TelemetryStorage(false);
+        TelemetryWriteBehind writer = new TelemetryWriteBehind(storage, 16, 1, 10, 5);
+        writer.close();
+
+        // When
+        List<TsKvEntry> entries = new ArrayList<>();
+        entries.add(entry(1L));
+        entries.add(entry(2L));
+        writer.submit(deviceId, entries);
+
+        // Then
+        assertEquals(2, storage.query(deviceId, "temperature", 0L, 10L).size());
+        assertEquals(2.0, storage.getLatest(deviceId, "temperature").getDoubleValue().orElseThrow());
+    }
+
+    private static TsKvEntry entry(long ts) {
+        return new BasicTsKvEntry(ts, new DoubleDataEntry("temperature", (double) ts));
+    }
+}